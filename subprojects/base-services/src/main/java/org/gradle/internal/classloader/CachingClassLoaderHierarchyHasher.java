@@ -0,0 +1,53 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.internal.classloader;
+
+import com.google.common.base.Optional;
+import com.google.common.hash.HashCode;
+import org.gradle.api.Nullable;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Remembers the hashes calculated by another hasher, so that the hierarchy of a class loader is only visited once. This must only be used
+ * while the class loaders it is asked about cannot change anymore, for example while tasks are executed.
+ */
+public class CachingClassLoaderHierarchyHasher implements ClassLoaderHierarchyHasher {
+    private final ClassLoaderHierarchyHasher delegate;
+    private final Map<ClassLoader, Optional<HashCode>> hashes = new WeakHashMap<ClassLoader, Optional<HashCode>>();
+
+    public CachingClassLoaderHierarchyHasher(ClassLoaderHierarchyHasher delegate) {
+        this.delegate = delegate;
+    }
+
+    @Nullable
+    @Override
+    public HashCode getClassLoaderHash(ClassLoader classLoader) {
+        synchronized (hashes) {
+            Optional<HashCode> hash = hashes.get(classLoader);
+            if (hash != null) {
+                return hash.orNull();
+            }
+        }
+        // Calculate outside the lock, calculating the same hash twice is harmless
+        Optional<HashCode> hash = Optional.fromNullable(delegate.getClassLoaderHash(classLoader));
+        synchronized (hashes) {
+            hashes.put(classLoader, hash);
+        }
+        return hash.orNull();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.internal.classloader
+
+import com.google.common.hash.HashCode
+import spock.lang.Specification
+
+class CachingClassLoaderHierarchyHasherTest extends Specification {
+    def delegate = Mock(ClassLoaderHierarchyHasher)
+    def hasher = new CachingClassLoaderHierarchyHasher(delegate)
+    def classLoader = new URLClassLoader(new URL[0])
+
+    def "calculates hash of class loader only once"() {
+        def hash = HashCode.fromInt(123)
+
+        when:
+        def first = hasher.getClassLoaderHash(classLoader)
+        def second = hasher.getClassLoaderHash(classLoader)
+
+        then:
+        first == hash
+        second == hash
+        1 * delegate.getClassLoaderHash(classLoader) >> hash
+        0 * _
+    }
+
+    def "remembers class loaders that cannot be hashed"() {
+        when:
+        def first = hasher.getClassLoaderHash(classLoader)
+        def second = hasher.getClassLoaderHash(classLoader)
+
+        then:
+        first == null
+        second == null
+        1 * delegate.getClassLoaderHash(classLoader) >> null
+        0 * _
+    }
+
+    def "calculates hash of each class loader separately"() {
+        def other = new URLClassLoader(new URL[0])
+
+        when:
+        def first = hasher.getClassLoaderHash(classLoader)
+        def second = hasher.getClassLoaderHash(other)
+
+        then:
+        first == HashCode.fromInt(1)
+        second == HashCode.fromInt(2)
+        1 * delegate.getClassLoaderHash(classLoader) >> HashCode.fromInt(1)
+        1 * delegate.getClassLoaderHash(other) >> HashCode.fromInt(2)
+        0 * _
+    }
+}
@@ -18,12 +18,14 @@ package org.gradle.caching.http.internal
 
 import org.apache.http.HttpHeaders
 import org.apache.http.HttpStatus
+import org.gradle.StartParameter
 import org.gradle.api.UncheckedIOException
 import org.gradle.caching.BuildCacheException
 import org.gradle.caching.BuildCacheKey
 import org.gradle.caching.BuildCacheService
 import org.gradle.caching.BuildCacheServiceFactory
 import org.gradle.caching.http.HttpBuildCache
+import org.gradle.caching.internal.ProbingBuildCacheService
 import org.gradle.internal.resource.transport.http.DefaultSslContextFactory
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
 import org.gradle.test.fixtures.server.http.AuthScheme
@@ -73,7 +75,7 @@ class HttpBuildCacheServiceTest extends Specification {
         def config = new HttpBuildCache()
         config.url = server.uri.resolve("/cache/")
         buildCacheDescriber = new NoopBuildCacheDescriber()
-        cache = new DefaultHttpBuildCacheServiceFactory(new DefaultSslContextFactory()).createBuildCacheService(config, buildCacheDescriber)
+        cache = new DefaultHttpBuildCacheServiceFactory(new DefaultSslContextFactory(), new StartParameter()).createBuildCacheService(config, buildCacheDescriber)
     }
 
     def "can cache artifact"() {
@@ -144,6 +146,22 @@ class HttpBuildCacheServiceTest extends Specification {
         !fromCache
     }
 
+    def "probe finds artifact in cache"() {
+        def srcFile = tempDir.file("cached.zip")
+        srcFile.text = "Data"
+        server.expectHead("/cache/${key.hashCode}", srcFile)
+
+        expect:
+        (cache as ProbingBuildCacheService).mightContain(key)
+    }
+
+    def "probe reports cache miss on 404"() {
+        server.expectHeadMissing("/cache/${key.hashCode}")
+
+        expect:
+        !(cache as ProbingBuildCacheService).mightContain(key)
+    }
+
     def "load reports recoverable error on http code #httpCode"(int httpCode) {
         expectError(httpCode, 'GET')
 
@@ -248,7 +266,7 @@ class HttpBuildCacheServiceTest extends Specification {
         configuration.url = server.uri.resolve("/cache/")
         configuration.credentials.username = 'user'
         configuration.credentials.password = 'password'
-        cache = new DefaultHttpBuildCacheServiceFactory(new DefaultSslContextFactory()).createBuildCacheService(configuration, buildCacheDescriber) as HttpBuildCacheService
+        cache = new DefaultHttpBuildCacheServiceFactory(new DefaultSslContextFactory(), new StartParameter()).createBuildCacheService(configuration, buildCacheDescriber) as HttpBuildCacheService
 
         server.authenticationScheme = AuthScheme.BASIC
 
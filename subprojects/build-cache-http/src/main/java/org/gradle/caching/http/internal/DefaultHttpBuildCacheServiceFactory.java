@@ -16,6 +16,7 @@
 
 package org.gradle.caching.http.internal;
 
+import org.gradle.StartParameter;
 import org.gradle.api.GradleException;
 import org.gradle.authentication.Authentication;
 import org.gradle.caching.BuildCacheService;
@@ -38,10 +39,12 @@ import java.util.Collections;
 public class DefaultHttpBuildCacheServiceFactory implements BuildCacheServiceFactory<HttpBuildCache> {
 
     private final SslContextFactory sslContextFactory;
+    private final StartParameter startParameter;
 
     @Inject
-    public DefaultHttpBuildCacheServiceFactory(SslContextFactory sslContextFactory) {
+    public DefaultHttpBuildCacheServiceFactory(SslContextFactory sslContextFactory, StartParameter startParameter) {
         this.sslContextFactory = sslContextFactory;
+        this.startParameter = startParameter;
     }
 
     @Override
@@ -65,10 +68,15 @@ public class DefaultHttpBuildCacheServiceFactory implements BuildCacheServiceFac
             describer.config("authenticated", null);
         }
 
-        HttpClientHelper httpClientHelper = new HttpClientHelper(new DefaultHttpSettings(authentications, sslContextFactory));
+        HttpClientHelper httpClientHelper = new HttpClientHelper(new DefaultHttpSettings(authentications, sslContextFactory, getMaxConnections()));
         return new HttpBuildCacheService(httpClientHelper, url);
     }
 
+    private int getMaxConnections() {
+        // Each worker may load from the cache while entries are pushed and prefetched in the background
+        return Math.max(DefaultHttpSettings.DEFAULT_MAX_CONNECTIONS, 2 * startParameter.getMaxWorkerCount());
+    }
+
     private static URI stripUserInfo(URI uri) {
         try {
             return new URI(uri.getScheme(), null, uri.getHost(), uri.getPort(), uri.getPath(), uri.getQuery(), uri.getFragment());
@@ -24,6 +24,7 @@ import org.apache.http.HttpStatus;
 import org.apache.http.StatusLine;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.utils.HttpClientUtils;
 import org.apache.http.entity.AbstractHttpEntity;
@@ -32,7 +33,7 @@ import org.gradle.caching.BuildCacheEntryReader;
 import org.gradle.caching.BuildCacheEntryWriter;
 import org.gradle.caching.BuildCacheException;
 import org.gradle.caching.BuildCacheKey;
-import org.gradle.caching.BuildCacheService;
+import org.gradle.caching.internal.ProbingBuildCacheService;
 import org.gradle.caching.internal.tasks.TaskOutputPacker;
 import org.gradle.internal.UncheckedException;
 import org.gradle.internal.resource.transport.http.HttpClientHelper;
@@ -51,7 +52,7 @@ import java.util.Set;
 /**
  * Build cache implementation that delegates to a service accessible via HTTP.
  */
-public class HttpBuildCacheService implements BuildCacheService {
+public class HttpBuildCacheService implements ProbingBuildCacheService {
     private static final Logger LOGGER = LoggerFactory.getLogger(HttpBuildCacheService.class);
     static final String BUILD_CACHE_CONTENT_TYPE = "application/vnd.gradle.build-cache-artifact.v" + TaskOutputPacker.CACHE_ENTRY_FORMAT;
 
@@ -113,6 +114,29 @@ public class HttpBuildCacheService implements BuildCacheService {
         }
     }
 
+    @Override
+    public boolean mightContain(BuildCacheKey key) throws BuildCacheException {
+        final URI uri = root.resolve("./" + key.getHashCode());
+        HttpHead httpHead = new HttpHead(uri);
+        httpHead.addHeader(HttpHeaders.ACCEPT, BUILD_CACHE_CONTENT_TYPE + ", */*");
+        addDiagnosticHeaders(httpHead);
+
+        CloseableHttpResponse response = null;
+        try {
+            response = httpClientHelper.performHttpRequest(httpHead);
+            StatusLine statusLine = response.getStatusLine();
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Response for HEAD {}: {}", safeUri(uri), statusLine);
+            }
+            // Servers that do not support HEAD requests are left to answer the GET request
+            return statusLine.getStatusCode() != HttpStatus.SC_NOT_FOUND;
+        } catch (IOException e) {
+            throw new BuildCacheException(String.format("Unable to probe for entry at '%s'", safeUri(uri)), e);
+        } finally {
+            HttpClientUtils.closeQuietly(response);
+        }
+    }
+
     private void addDiagnosticHeaders(HttpMessage request) {
         request.addHeader("X-Gradle-Version", GradleVersion.current().getVersion());
     }
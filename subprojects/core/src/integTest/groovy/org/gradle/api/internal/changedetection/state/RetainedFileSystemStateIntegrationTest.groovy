@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.api.internal.hash.FileHashAlgorithm
+import org.gradle.integtests.fixtures.AbstractIntegrationSpec
+import org.gradle.integtests.fixtures.DirectoryBuildCacheFixture
+
+class RetainedFileSystemStateIntegrationTest extends AbstractIntegrationSpec implements DirectoryBuildCacheFixture {
+    def input = file("input.txt")
+
+    def setup() {
+        executer.requireDaemon()
+        executer.requireIsolatedDaemons()
+
+        input.text = "input"
+        input.lastModified = 1000000000000L
+        buildFile << """
+            import org.gradle.caching.internal.tasks.TaskOutputCachingBuildCacheKey
+            import org.gradle.caching.internal.tasks.TaskOutputCachingListener
+
+            gradle.addListener(new TaskOutputCachingListener() {
+                void cacheKeyEvaluated(Task task, TaskOutputCachingBuildCacheKey key) {
+                    println "Cache key for \${task.path}: \${key.hashCode}"
+                }
+            })
+
+            task copy {
+                inputs.file("input.txt")
+                outputs.file("\$buildDir/output.txt")
+                outputs.cacheIf { true }
+                doLast {
+                    file("\$buildDir/output.txt").text = file("input.txt").text
+                }
+            }
+        """
+    }
+
+    def "file hashes retained from a build without the build cache are not used in the cache key of the next build"() {
+        when:
+        withRetainedFileSystemState()
+        executer.withArgument("-D${FileHashAlgorithm.SYSTEM_PROPERTY}=murmur3_128")
+        succeeds "copy"
+
+        and:
+        withRetainedFileSystemState()
+        withBuildCache().succeeds "copy"
+        def cacheKeyAfterBuildWithoutCache = cacheKey
+
+        and:
+        // Forces the input to be hashed again
+        input.lastModified = 1100000000000L
+        withRetainedFileSystemState()
+        withBuildCache().succeeds "copy"
+
+        then:
+        cacheKeyAfterBuildWithoutCache == cacheKey
+    }
+
+    private void withRetainedFileSystemState() {
+        executer.withArgument("-Dorg.gradle.internal.retainFileSystemState=true")
+    }
+
+    private String getCacheKey() {
+        def matcher = output =~ /Cache key for :copy: (\w+)/
+        assert matcher.find()
+        return matcher.group(1)
+    }
+}
@@ -43,6 +43,7 @@ public abstract class AbstractFileCollectionSnapshotter implements FileCollectio
 
     public void registerSerializers(SerializerRegistry registry) {
         registry.register(DefaultFileCollectionSnapshot.class, new DefaultFileCollectionSnapshot.SerializerImpl(stringInterner));
+        registry.register(CompactFileCollectionSnapshot.class, new CompactFileCollectionSnapshot.SerializerImpl(stringInterner));
     }
 
     public FileCollectionSnapshot snapshot(FileCollection input, FileCollectionSnapshotBuilder fileCollectionSnapshotBuilder) {
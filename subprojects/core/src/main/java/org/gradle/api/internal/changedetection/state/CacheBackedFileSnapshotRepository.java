@@ -18,20 +18,42 @@ package org.gradle.api.internal.changedetection.state;
 import org.gradle.cache.PersistentIndexedCache;
 import org.gradle.internal.id.IdGenerator;
 import org.gradle.internal.id.RandomLongIdGenerator;
+import org.gradle.internal.serialize.BaseSerializerFactory;
 import org.gradle.internal.serialize.Serializer;
 
+/**
+ * Stores file collection snapshots, sharing a single entry between identical snapshots.
+ *
+ * <p>Compact snapshots are keyed by their content hash, and each entry keeps a count of the task histories referencing it.
+ * The entry is only removed once the last reference to it has been removed.</p>
+ */
 public class CacheBackedFileSnapshotRepository implements FileSnapshotRepository {
     private final PersistentIndexedCache<Long, FileCollectionSnapshot> cache;
+    private final PersistentIndexedCache<Long, Integer> referenceCounts;
     private IdGenerator<Long> idGenerator = new RandomLongIdGenerator();
 
     public CacheBackedFileSnapshotRepository(TaskHistoryStore cacheAccess, Serializer<FileCollectionSnapshot> serializer, IdGenerator<Long> idGenerator) {
         this.idGenerator = idGenerator;
         cache = cacheAccess.createCache("fileSnapshots", Long.class, serializer, 12000, false);
+        referenceCounts = cacheAccess.createCache("fileSnapshotReferences", Long.class, BaseSerializerFactory.INTEGER_SERIALIZER, 12000, false);
     }
 
-    public Long add(FileCollectionSnapshot snapshot) {
-        Long id = idGenerator.generateId();
-        cache.put(id, snapshot);
+    public synchronized Long add(FileCollectionSnapshot snapshot) {
+        // Retain the compact form, as the cache keeps entries in memory across builds
+        FileCollectionSnapshot compactSnapshot = CompactFileCollectionSnapshot.of(snapshot);
+        Long id;
+        if (compactSnapshot instanceof CompactFileCollectionSnapshot) {
+            id = ((CompactFileCollectionSnapshot) compactSnapshot).getContentHash().asLong();
+        } else {
+            id = idGenerator.generateId();
+        }
+        Integer references = referenceCounts.get(id);
+        if (references == null) {
+            cache.put(id, compactSnapshot);
+            referenceCounts.put(id, 1);
+        } else {
+            referenceCounts.put(id, references + 1);
+        }
         return id;
     }
 
@@ -39,7 +61,13 @@ public class CacheBackedFileSnapshotRepository implements FileSnapshotRepository
         return cache.get(id);
     }
 
-    public void remove(Long id) {
-        cache.remove(id);
+    public synchronized void remove(Long id) {
+        Integer references = referenceCounts.get(id);
+        if (references != null && references > 1) {
+            referenceCounts.put(id, references - 1);
+        } else {
+            referenceCounts.remove(id);
+            cache.remove(id);
+        }
     }
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.cache.PersistentIndexedCache;
+import org.gradle.internal.serialize.BaseSerializerFactory;
+
+/**
+ * Keeps an exponentially decaying average of the durations of each task. Each new duration moves the estimate a quarter of the way towards it,
+ * so a single slow or fast execution does not skew the estimate, while a lasting change in duration is picked up after a few builds.
+ */
+public class CacheBackedTaskDurationHistory implements TaskDurationHistory {
+    private static final int NEW_DURATION_WEIGHT_DIVISOR = 4;
+    private final PersistentIndexedCache<String, Long> taskDurationCache;
+
+    public CacheBackedTaskDurationHistory(TaskHistoryStore cacheAccess) {
+        taskDurationCache = cacheAccess.createCache("taskDurations", String.class, BaseSerializerFactory.LONG_SERIALIZER, 10000, false);
+    }
+
+    @Override
+    public Long getPreviousDuration(TaskInternal task) {
+        return taskDurationCache.get(task.getPath());
+    }
+
+    @Override
+    public void recordDuration(TaskInternal task, long durationMillis) {
+        Long previousDuration = taskDurationCache.get(task.getPath());
+        long duration = previousDuration == null ? durationMillis : previousDuration + Math.round((double) (durationMillis - previousDuration) / NEW_DURATION_WEIGHT_DIVISOR);
+        taskDurationCache.put(task.getPath(), duration);
+    }
+}
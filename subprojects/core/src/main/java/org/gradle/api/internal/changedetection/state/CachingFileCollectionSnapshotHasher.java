@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import org.gradle.caching.internal.DefaultBuildCacheHasher;
+
+/**
+ * Calculates the build cache hash of file collection snapshots, remembering the hashes of the snapshots it has seen. Tasks often snapshot the
+ * same files, such as a shared classpath, so a snapshot with the same normalized contents as an earlier one reuses its hash instead of
+ * sorting and hashing its entries again.
+ */
+public class CachingFileCollectionSnapshotHasher {
+    private final Cache<SnapshotContents, HashCode> hashes;
+
+    public CachingFileCollectionSnapshotHasher(long maxRememberedEntries) {
+        this.hashes = CacheBuilder.newBuilder()
+            .maximumWeight(maxRememberedEntries)
+            .weigher(new Weigher<SnapshotContents, HashCode>() {
+                @Override
+                public int weigh(SnapshotContents key, HashCode value) {
+                    return key.entries.size() + 1;
+                }
+            })
+            .build();
+    }
+
+    public HashCode hash(FileCollectionSnapshot snapshot) {
+        if (!(snapshot instanceof DefaultFileCollectionSnapshot)) {
+            return calculateHash(snapshot);
+        }
+        DefaultFileCollectionSnapshot defaultSnapshot = (DefaultFileCollectionSnapshot) snapshot;
+        SnapshotContents contents = new SnapshotContents(defaultSnapshot.getCompareStrategy(), ImmutableList.copyOf(defaultSnapshot.getSnapshots().values()));
+        HashCode hash = hashes.getIfPresent(contents);
+        if (hash == null) {
+            hash = calculateHash(snapshot);
+            hashes.put(contents, hash);
+        }
+        return hash;
+    }
+
+    private static HashCode calculateHash(FileCollectionSnapshot snapshot) {
+        DefaultBuildCacheHasher hasher = new DefaultBuildCacheHasher();
+        snapshot.appendToHasher(hasher);
+        return hasher.hash();
+    }
+
+    /**
+     * The parts of a snapshot that its hash is calculated from. The absolute paths of the files do not contribute to the hash.
+     */
+    private static class SnapshotContents {
+        private final TaskFilePropertyCompareStrategy compareStrategy;
+        private final ImmutableList<NormalizedFileSnapshot> entries;
+        private final int hashCode;
+
+        SnapshotContents(TaskFilePropertyCompareStrategy compareStrategy, ImmutableList<NormalizedFileSnapshot> entries) {
+            this.compareStrategy = compareStrategy;
+            this.entries = entries;
+            this.hashCode = 31 * compareStrategy.hashCode() + entries.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            SnapshotContents that = (SnapshotContents) o;
+            return hashCode == that.hashCode
+                && compareStrategy == that.compareStrategy
+                && entries.equals(that.entries);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.gradle.api.internal.cache.StringInterner;
+import org.gradle.api.internal.changedetection.rules.TaskStateChange;
+import org.gradle.caching.internal.BuildCacheHasher;
+import org.gradle.internal.Factories;
+import org.gradle.internal.Factory;
+import org.gradle.internal.serialize.AbstractSerializer;
+import org.gradle.internal.serialize.Decoder;
+import org.gradle.internal.serialize.Encoder;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link FileCollectionSnapshot} that stores its entries in flat arrays instead of one object graph per file.
+ * Used for snapshots that are retained in the task history.
+ *
+ * <p>The entries are kept in the order of the original snapshot, as the order is significant for {@link TaskFilePropertyCompareStrategy#ORDERED}.
+ * The map view of the snapshot is only created on demand and is softly referenced.</p>
+ */
+class CompactFileCollectionSnapshot implements FileCollectionSnapshot {
+    private static final byte DIR_SNAPSHOT = 1;
+    private static final byte MISSING_FILE_SNAPSHOT = 2;
+    private static final byte REGULAR_FILE_SNAPSHOT = 3;
+
+    private static final byte NO_NORMALIZATION = 1 << 2;
+    private static final byte DEFAULT_NORMALIZATION = 2 << 2;
+    private static final byte INDEXED_NORMALIZATION = 3 << 2;
+    private static final byte IGNORED_PATH_NORMALIZATION = 4 << 2;
+
+    private static final int CONTENT_MASK = 0x3;
+    private static final int NORMALIZATION_MASK = 0x7 << 2;
+
+    private final TaskFilePropertyCompareStrategy compareStrategy;
+    private final boolean pathIsAbsolute;
+    private final String[] absolutePaths;
+    // Content and normalization kind of each entry
+    private final byte[] kinds;
+    // Content hashes of the regular files, in entry order
+    private final byte[] hashes;
+    private final int hashLength;
+    // Only allocated when at least one entry uses the corresponding normalization
+    private final String[] normalizedPaths;
+    private final int[] indexes;
+
+    private final Factory<Map<String, NormalizedFileSnapshot>> cachedSnapshotsFactory = Factories.softReferenceCache(new Factory<Map<String, NormalizedFileSnapshot>>() {
+        @Override
+        public Map<String, NormalizedFileSnapshot> create() {
+            return doGetSnapshots();
+        }
+    });
+
+    private CompactFileCollectionSnapshot(TaskFilePropertyCompareStrategy compareStrategy, boolean pathIsAbsolute, String[] absolutePaths, byte[] kinds, byte[] hashes, int hashLength, String[] normalizedPaths, int[] indexes) {
+        this.compareStrategy = compareStrategy;
+        this.pathIsAbsolute = pathIsAbsolute;
+        this.absolutePaths = absolutePaths;
+        this.kinds = kinds;
+        this.hashes = hashes;
+        this.hashLength = hashLength;
+        this.normalizedPaths = normalizedPaths;
+        this.indexes = indexes;
+    }
+
+    /**
+     * Returns a compact copy of the given snapshot, or the snapshot itself when it cannot be represented in compact form.
+     */
+    public static FileCollectionSnapshot of(FileCollectionSnapshot snapshot) {
+        if (!(snapshot instanceof DefaultFileCollectionSnapshot)) {
+            return snapshot;
+        }
+        DefaultFileCollectionSnapshot original = (DefaultFileCollectionSnapshot) snapshot;
+        Map<String, NormalizedFileSnapshot> snapshots = original.getSnapshots();
+        int count = snapshots.size();
+        String[] absolutePaths = new String[count];
+        byte[] kinds = new byte[count];
+        String[] normalizedPaths = null;
+        int[] indexes = null;
+        List<byte[]> fileHashes = Lists.newArrayList();
+        int hashLength = -1;
+
+        int i = 0;
+        for (Map.Entry<String, NormalizedFileSnapshot> entry : snapshots.entrySet()) {
+            NormalizedFileSnapshot value = entry.getValue();
+            FileContentSnapshot content = value.getSnapshot();
+            byte kind;
+            if (content instanceof DirContentSnapshot) {
+                kind = DIR_SNAPSHOT;
+            } else if (content instanceof MissingFileContentSnapshot) {
+                kind = MISSING_FILE_SNAPSHOT;
+            } else if (content instanceof FileHashSnapshot) {
+                byte[] hash = content.getContentMd5().asBytes();
+                if (hashLength == -1) {
+                    hashLength = hash.length;
+                } else if (hashLength != hash.length) {
+                    return snapshot;
+                }
+                fileHashes.add(hash);
+                kind = REGULAR_FILE_SNAPSHOT;
+            } else {
+                return snapshot;
+            }
+
+            if (value instanceof NonNormalizedFileSnapshot) {
+                kind |= NO_NORMALIZATION;
+            } else if (value instanceof DefaultNormalizedFileSnapshot) {
+                if (normalizedPaths == null) {
+                    normalizedPaths = new String[count];
+                }
+                normalizedPaths[i] = value.getNormalizedPath();
+                kind |= DEFAULT_NORMALIZATION;
+            } else if (value instanceof IndexedNormalizedFileSnapshot) {
+                if (indexes == null) {
+                    indexes = new int[count];
+                }
+                indexes[i] = ((IndexedNormalizedFileSnapshot) value).getIndex();
+                kind |= INDEXED_NORMALIZATION;
+            } else if (value instanceof IgnoredPathFileSnapshot) {
+                kind |= IGNORED_PATH_NORMALIZATION;
+            } else {
+                return snapshot;
+            }
+
+            absolutePaths[i] = entry.getKey();
+            kinds[i] = kind;
+            i++;
+        }
+
+        hashLength = Math.max(hashLength, 0);
+        byte[] hashes = new byte[fileHashes.size() * hashLength];
+        int offset = 0;
+        for (byte[] hash : fileHashes) {
+            System.arraycopy(hash, 0, hashes, offset, hashLength);
+            offset += hashLength;
+        }
+        return new CompactFileCollectionSnapshot(original.getCompareStrategy(), original.isPathIsAbsolute(), absolutePaths, kinds, hashes, hashLength, normalizedPaths, indexes);
+    }
+
+    /**
+     * Returns a hash of the complete contents of this snapshot, including the absolute paths of the entries.
+     */
+    HashCode getContentHash() {
+        Hasher hasher = Hashing.md5().newHasher();
+        hasher.putInt(compareStrategy.ordinal());
+        hasher.putBoolean(pathIsAbsolute);
+        hasher.putInt(absolutePaths.length);
+        for (int i = 0; i < absolutePaths.length; i++) {
+            hasher.putString(absolutePaths[i], Charsets.UTF_8);
+            hasher.putByte(kinds[i]);
+            switch (kinds[i] & NORMALIZATION_MASK) {
+                case DEFAULT_NORMALIZATION:
+                    hasher.putString(normalizedPaths[i], Charsets.UTF_8);
+                    break;
+                case INDEXED_NORMALIZATION:
+                    hasher.putInt(indexes[i]);
+                    break;
+                default:
+                    break;
+            }
+        }
+        hasher.putBytes(hashes);
+        return hasher.hash();
+    }
+
+    @Override
+    public Map<String, NormalizedFileSnapshot> getSnapshots() {
+        return cachedSnapshotsFactory.create();
+    }
+
+    private Map<String, NormalizedFileSnapshot> doGetSnapshots() {
+        Map<String, NormalizedFileSnapshot> snapshots = new LinkedHashMap<String, NormalizedFileSnapshot>(absolutePaths.length);
+        int hashOffset = 0;
+        for (int i = 0; i < absolutePaths.length; i++) {
+            String absolutePath = absolutePaths[i];
+            FileContentSnapshot content;
+            switch (kinds[i] & CONTENT_MASK) {
+                case DIR_SNAPSHOT:
+                    content = DirContentSnapshot.getInstance();
+                    break;
+                case MISSING_FILE_SNAPSHOT:
+                    content = MissingFileContentSnapshot.getInstance();
+                    break;
+                case REGULAR_FILE_SNAPSHOT:
+                    byte[] hash = new byte[hashLength];
+                    System.arraycopy(hashes, hashOffset, hash, 0, hashLength);
+                    hashOffset += hashLength;
+                    content = new FileHashSnapshot(HashCode.fromBytes(hash));
+                    break;
+                default:
+                    throw new AssertionError();
+            }
+
+            NormalizedFileSnapshot snapshot;
+            switch (kinds[i] & NORMALIZATION_MASK) {
+                case NO_NORMALIZATION:
+                    snapshot = new NonNormalizedFileSnapshot(absolutePath, content);
+                    break;
+                case DEFAULT_NORMALIZATION:
+                    snapshot = new DefaultNormalizedFileSnapshot(normalizedPaths[i], content);
+                    break;
+                case INDEXED_NORMALIZATION:
+                    snapshot = new IndexedNormalizedFileSnapshot(absolutePath, indexes[i], content);
+                    break;
+                case IGNORED_PATH_NORMALIZATION:
+                    snapshot = new IgnoredPathFileSnapshot(content);
+                    break;
+                default:
+                    throw new AssertionError();
+            }
+            snapshots.put(absolutePath, snapshot);
+        }
+        return snapshots;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return absolutePaths.length == 0;
+    }
+
+    @Override
+    public Iterator<TaskStateChange> iterateContentChangesSince(FileCollectionSnapshot oldSnapshot, String fileType) {
+        return compareStrategy.iterateContentChangesSince(getSnapshots(), oldSnapshot.getSnapshots(), fileType, pathIsAbsolute);
+    }
+
+    @Override
+    public void appendToHasher(BuildCacheHasher hasher) {
+        compareStrategy.appendToHasher(hasher, getSnapshots().values());
+    }
+
+    @Override
+    public List<File> getElements() {
+        List<File> files = Lists.newArrayListWithCapacity(absolutePaths.length);
+        for (String absolutePath : absolutePaths) {
+            files.add(new File(absolutePath));
+        }
+        return files;
+    }
+
+    @Override
+    public List<File> getFiles() {
+        List<File> files = Lists.newArrayList();
+        for (int i = 0; i < absolutePaths.length; i++) {
+            if ((kinds[i] & CONTENT_MASK) == REGULAR_FILE_SNAPSHOT) {
+                files.add(new File(absolutePaths[i]));
+            }
+        }
+        return files;
+    }
+
+    public static class SerializerImpl extends AbstractSerializer<CompactFileCollectionSnapshot> {
+        private final StringInterner stringInterner;
+
+        public SerializerImpl(StringInterner stringInterner) {
+            this.stringInterner = stringInterner;
+        }
+
+        public CompactFileCollectionSnapshot read(Decoder decoder) throws Exception {
+            TaskFilePropertyCompareStrategy compareStrategy = TaskFilePropertyCompareStrategy.values()[decoder.readSmallInt()];
+            boolean pathIsAbsolute = decoder.readBoolean();
+            int count = decoder.readSmallInt();
+            int hashLength = decoder.readSmallInt();
+            byte[] hashes = new byte[decoder.readSmallInt() * hashLength];
+            String[] absolutePaths = new String[count];
+            byte[] kinds = new byte[count];
+            String[] normalizedPaths = null;
+            int[] indexes = null;
+            int hashOffset = 0;
+            for (int i = 0; i < count; i++) {
+                absolutePaths[i] = stringInterner.intern(decoder.readString());
+                byte kind = decoder.readByte();
+                switch (kind & CONTENT_MASK) {
+                    case DIR_SNAPSHOT:
+                    case MISSING_FILE_SNAPSHOT:
+                        break;
+                    case REGULAR_FILE_SNAPSHOT:
+                        decoder.readBytes(hashes, hashOffset, hashLength);
+                        hashOffset += hashLength;
+                        break;
+                    default:
+                        throw new RuntimeException("Unable to read serialized file snapshot. Unrecognized value found in the data stream.");
+                }
+                switch (kind & NORMALIZATION_MASK) {
+                    case NO_NORMALIZATION:
+                    case IGNORED_PATH_NORMALIZATION:
+                        break;
+                    case DEFAULT_NORMALIZATION:
+                        if (normalizedPaths == null) {
+                            normalizedPaths = new String[count];
+                        }
+                        normalizedPaths[i] = stringInterner.intern(decoder.readString());
+                        break;
+                    case INDEXED_NORMALIZATION:
+                        if (indexes == null) {
+                            indexes = new int[count];
+                        }
+                        indexes[i] = decoder.readSmallInt();
+                        break;
+                    default:
+                        throw new RuntimeException("Unable to read serialized file snapshot. Unrecognized value found in the data stream.");
+                }
+                kinds[i] = kind;
+            }
+            return new CompactFileCollectionSnapshot(compareStrategy, pathIsAbsolute, absolutePaths, kinds, hashes, hashLength, normalizedPaths, indexes);
+        }
+
+        public void write(Encoder encoder, CompactFileCollectionSnapshot value) throws Exception {
+            encoder.writeSmallInt(value.compareStrategy.ordinal());
+            encoder.writeBoolean(value.pathIsAbsolute);
+            encoder.writeSmallInt(value.absolutePaths.length);
+            encoder.writeSmallInt(value.hashLength);
+            encoder.writeSmallInt(value.hashLength == 0 ? 0 : value.hashes.length / value.hashLength);
+            int hashOffset = 0;
+            for (int i = 0; i < value.absolutePaths.length; i++) {
+                encoder.writeString(value.absolutePaths[i]);
+                byte kind = value.kinds[i];
+                encoder.writeByte(kind);
+                if ((kind & CONTENT_MASK) == REGULAR_FILE_SNAPSHOT) {
+                    encoder.writeBytes(value.hashes, hashOffset, value.hashLength);
+                    hashOffset += value.hashLength;
+                }
+                switch (kind & NORMALIZATION_MASK) {
+                    case DEFAULT_NORMALIZATION:
+                        encoder.writeString(value.normalizedPaths[i]);
+                        break;
+                    case INDEXED_NORMALIZATION:
+                        encoder.writeSmallInt(value.indexes[i]);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+    }
+}
@@ -61,6 +61,14 @@ class DefaultFileCollectionSnapshot implements FileCollectionSnapshot {
         return snapshots;
     }
 
+    TaskFilePropertyCompareStrategy getCompareStrategy() {
+        return compareStrategy;
+    }
+
+    boolean isPathIsAbsolute() {
+        return pathIsAbsolute;
+    }
+
     @Override
     public boolean isEmpty() {
         return snapshots.isEmpty();
@@ -16,34 +16,64 @@
 
 package org.gradle.api.internal.changedetection.state;
 
+import com.google.common.collect.Maps;
 import org.gradle.api.Nullable;
+import org.gradle.api.file.FileVisitDetails;
+import org.gradle.api.file.FileVisitor;
+import org.gradle.api.internal.file.collections.DirectoryFileTreeFactory;
 import org.gradle.api.internal.tasks.execution.TaskOutputsGenerationListener;
 import org.gradle.initialization.RootBuildLifecycleListener;
 import org.gradle.internal.classpath.CachedJarFileStore;
 import org.gradle.internal.file.DefaultFileHierarchySet;
 import org.gradle.internal.file.FileHierarchySet;
+import org.gradle.internal.nativeintegration.filesystem.FileMetadataSnapshot;
+import org.gradle.internal.nativeintegration.filesystem.FileSystem;
+import org.gradle.internal.nativeintegration.filesystem.FileType;
 
 import java.io.File;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * See {@link DefaultFileSystemSnapshotter} for some more details
+ *
+ * <p>When a {@link FileSystem} is provided, state about files that do not live in an append-only cache is retained across builds.
+ * The first time retained state is used in a build, it is checked against the file system: the type, modification time and length
+ * of the file, or of every file in the directory tree, have to be unchanged. This only stats the files, which is much cheaper than hashing them again.
+ * As for the cached file hashes, a modification time that the {@link FileTimeStampInspector} cannot use to detect a change means the state is not used.</p>
  */
 public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGenerationListener, RootBuildLifecycleListener {
-    // Maps from interned absolute path for a file to known details for the file.
-    private final Map<String, FileSnapshot> files = new ConcurrentHashMap<String, FileSnapshot>();
+    // Maps from interned absolute path for a file to known details for the file. Sorted, so that the state for a path and its descendants can be found by prefix.
+    private final ConcurrentNavigableMap<String, FileSnapshot> files = new ConcurrentSkipListMap<String, FileSnapshot>();
     private final Map<String, FileSnapshot> cacheFiles = new ConcurrentHashMap<String, FileSnapshot>();
     // Maps from interned absolute path for a directory to known details for the directory.
-    private final Map<String, FileTreeSnapshot> trees = new ConcurrentHashMap<String, FileTreeSnapshot>();
+    private final ConcurrentNavigableMap<String, FileTreeSnapshot> trees = new ConcurrentSkipListMap<String, FileTreeSnapshot>();
     private final Map<String, FileTreeSnapshot> cacheTrees = new ConcurrentHashMap<String, FileTreeSnapshot>();
     // Maps from interned absolute path to a snapshot
-    private final Map<String, Snapshot> snapshots = new ConcurrentHashMap<String, Snapshot>();
+    private final ConcurrentNavigableMap<String, Snapshot> snapshots = new ConcurrentSkipListMap<String, Snapshot>();
     private final Map<String, Snapshot> cacheSnapshots = new ConcurrentHashMap<String, Snapshot>();
     private final FileHierarchySet cachedDirectories;
 
+    @Nullable
+    private final FileSystem fileSystem;
+    @Nullable
+    private final DirectoryFileTreeFactory directoryFileTreeFactory;
+    @Nullable
+    private final FileTimeStampInspector timeStampInspector;
+    // Paths whose state was retained from a previous build and has not been checked against the file system in this build yet
+    private final Set<String> retainedFiles = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> retainedTrees = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
     public DefaultFileSystemMirror(List<CachedJarFileStore> fileStores) {
+        this(fileStores, null, null, null);
+    }
+
+    public DefaultFileSystemMirror(List<CachedJarFileStore> fileStores, @Nullable FileSystem fileSystem, @Nullable DirectoryFileTreeFactory directoryFileTreeFactory, @Nullable FileTimeStampInspector timeStampInspector) {
         FileHierarchySet cachedDirectories = DefaultFileHierarchySet.of();
         for (CachedJarFileStore fileStore : fileStores) {
             for (File file : fileStore.getFileStoreRoots()) {
@@ -51,6 +81,9 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGen
             }
         }
         this.cachedDirectories = cachedDirectories;
+        this.fileSystem = fileSystem;
+        this.directoryFileTreeFactory = directoryFileTreeFactory;
+        this.timeStampInspector = timeStampInspector;
     }
 
     @Nullable
@@ -61,7 +94,15 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGen
         if (cachedDirectories.contains(path)) {
             return cacheFiles.get(path);
         } else {
-            return files.get(path);
+            FileSnapshot snapshot = files.get(path);
+            if (snapshot != null && retainedFiles.contains(path)) {
+                if (!isUpToDate(snapshot)) {
+                    files.remove(path, snapshot);
+                    snapshot = null;
+                }
+                retainedFiles.remove(path);
+            }
+            return snapshot;
         }
     }
 
@@ -71,6 +112,7 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGen
             cacheFiles.put(file.getPath(), file);
         } else {
             files.put(file.getPath(), file);
+            retainedFiles.remove(file.getPath());
         }
     }
 
@@ -101,7 +143,15 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGen
         if (cachedDirectories.contains(path)) {
             return cacheTrees.get(path);
         } else {
-            return trees.get(path);
+            FileTreeSnapshot snapshot = trees.get(path);
+            if (snapshot != null && retainedTrees.contains(path)) {
+                if (!isUpToDate(snapshot)) {
+                    trees.remove(path, snapshot);
+                    snapshot = null;
+                }
+                retainedTrees.remove(path);
+            }
+            return snapshot;
         }
     }
 
@@ -111,30 +161,119 @@ public class DefaultFileSystemMirror implements FileSystemMirror, TaskOutputsGen
             cacheTrees.put(directory.getPath(), directory);
         } else {
             trees.put(directory.getPath(), directory);
+            retainedTrees.remove(directory.getPath());
         }
     }
 
     @Override
     public void beforeTaskOutputsGenerated() {
         // When the task outputs are generated, throw away all state for files that do not live in an append-only cache.
-        // This is intentionally very simple, to be improved later
         files.clear();
         trees.clear();
         snapshots.clear();
     }
 
+    @Override
+    public void beforeTaskOutputsGenerated(Iterable<String> affectedOutputPaths) {
+        // Throw away the state for the output roots, their descendants and their ancestors. Everything else stays valid.
+        for (String path : affectedOutputPaths) {
+            if (!cachedDirectories.contains(path)) {
+                removeSelfAndDescendants(files, path);
+                removeSelfAndDescendants(trees, path);
+                removeSelfAndDescendants(snapshots, path);
+                for (File ancestor = new File(path).getParentFile(); ancestor != null; ancestor = ancestor.getParentFile()) {
+                    String ancestorPath = ancestor.getPath();
+                    files.remove(ancestorPath);
+                    trees.remove(ancestorPath);
+                    snapshots.remove(ancestorPath);
+                }
+            }
+        }
+    }
+
     @Override
     public void afterStart() {
     }
 
     @Override
     public void beforeComplete() {
-        // We throw away all state between builds
-        files.clear();
+        if (fileSystem != null) {
+            // Keep the state about files and trees, to be checked against the file system when next used.
+            // There is nothing to check a content snapshot against, so throw those away
+            retainedFiles.addAll(files.keySet());
+            retainedTrees.addAll(trees.keySet());
+        } else {
+            files.clear();
+            trees.clear();
+        }
+        snapshots.clear();
+        // State for files that live in the caches is cheap to recalculate, so throw it away between builds
         cacheFiles.clear();
-        trees.clear();
         cacheTrees.clear();
-        snapshots.clear();
         cacheSnapshots.clear();
     }
+
+    private boolean isUpToDate(FileSnapshot snapshot) {
+        FileMetadataSnapshot stat = fileSystem.stat(new File(snapshot.getPath()));
+        if (stat.getType() != snapshot.getType()) {
+            return false;
+        }
+        if (stat.getType() == FileType.RegularFile) {
+            return isUpToDate(snapshot.getPath(), snapshot.getContent(), stat.getLastModified(), stat.getLength());
+        }
+        return true;
+    }
+
+    /**
+     * Walks the tree again, without hashing the files, and checks that it still contains the same files with the same modification time and length.
+     */
+    private boolean isUpToDate(FileTreeSnapshot tree) {
+        final Map<String, FileSnapshot> descendants = Maps.newHashMapWithExpectedSize(tree.getDescendants().size());
+        for (FileSnapshot descendant : tree.getDescendants()) {
+            descendants.put(descendant.getPath(), descendant);
+        }
+        final boolean[] upToDate = {true};
+        directoryFileTreeFactory.create(new File(tree.getPath())).visit(new FileVisitor() {
+            @Override
+            public void visitDir(FileVisitDetails dirDetails) {
+                FileSnapshot snapshot = descendants.remove(dirDetails.getFile().getAbsolutePath());
+                if (snapshot == null || snapshot.getType() != FileType.Directory) {
+                    changed(dirDetails);
+                }
+            }
+
+            @Override
+            public void visitFile(FileVisitDetails fileDetails) {
+                FileSnapshot snapshot = descendants.remove(fileDetails.getFile().getAbsolutePath());
+                if (snapshot == null || snapshot.getType() != FileType.RegularFile || !isUpToDate(snapshot.getPath(), snapshot.getContent(), fileDetails.getLastModified(), fileDetails.getSize())) {
+                    changed(fileDetails);
+                }
+            }
+
+            private void changed(FileVisitDetails details) {
+                upToDate[0] = false;
+                details.stopVisiting();
+            }
+        });
+        return upToDate[0] && descendants.isEmpty();
+    }
+
+    private boolean isUpToDate(String path, FileContentSnapshot content, long lastModified, long length) {
+        if (!(content instanceof FileHashSnapshot)) {
+            return false;
+        }
+        FileHashSnapshot fileHashSnapshot = (FileHashSnapshot) content;
+        return fileHashSnapshot.getLastModified() == lastModified && fileHashSnapshot.getLength() == length
+            && timeStampInspector.timestampCanBeUsedToDetectFileChange(path, lastModified);
+    }
+
+    /**
+     * Removes the entries for the given path and its descendants. The descendants are the entries in the range of paths that start with the given path followed by a separator.
+     */
+    private static void removeSelfAndDescendants(ConcurrentNavigableMap<String, ?> entries, String path) {
+        entries.remove(path);
+        String prefix = path.endsWith(File.separator) ? path : path + File.separatorChar;
+        String end = prefix.substring(0, prefix.length() - 1) + (char) (File.separatorChar + 1);
+        entries.subMap(prefix, end).clear();
+    }
 }
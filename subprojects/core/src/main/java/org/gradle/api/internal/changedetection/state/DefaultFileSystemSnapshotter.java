@@ -36,11 +36,14 @@ import org.gradle.cache.internal.ProducerGuard;
 import org.gradle.caching.internal.BuildCacheHasher;
 import org.gradle.caching.internal.DefaultBuildCacheHasher;
 import org.gradle.internal.Factory;
+import org.gradle.internal.concurrent.Stoppable;
 import org.gradle.internal.nativeintegration.filesystem.FileMetadataSnapshot;
 import org.gradle.internal.nativeintegration.filesystem.FileSystem;
 
 import java.io.File;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Responsible for snapshotting various aspects of the file system.
@@ -51,7 +54,10 @@ import java.util.List;
  *
  * The implementations are currently intentionally very, very simple, and so there are a number of ways in which they can be made much more efficient. This can happen over time.
  */
-public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
+public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter, Stoppable {
+    private static final int MIN_FILES_TO_HASH_IN_PARALLEL = 256;
+    private static final int FILES_PER_HASHING_TASK = 64;
+
     private final FileHasher hasher;
     private final StringInterner stringInterner;
     private final FileSystem fileSystem;
@@ -61,6 +67,8 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
     private final ProducerGuard<String> producingTrees = new DefaultProducerGuard<String>();
     private final ProducerGuard<String> producingAllSnapshots = new DefaultProducerGuard<String>();
     private final DefaultGenericFileCollectionSnapshotter snapshotter;
+    private final Object lock = new Object();
+    private ForkJoinPool hashingPool;
 
     public DefaultFileSystemSnapshotter(FileHasher hasher, StringInterner stringInterner, FileSystem fileSystem, DirectoryFileTreeFactory directoryFileTreeFactory, FileSystemMirror fileSystemMirror) {
         this.hasher = hasher;
@@ -162,11 +170,37 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
 
     private FileTreeSnapshot doSnapshot(DirectoryFileTree directoryTree) {
         String path = getPath(directoryTree.getDir());
+        // Walk the tree first, then hash the contents of the files it contains. The walk is cheap compared to the hashing, which is spread across multiple threads for large trees
         List<FileSnapshot> elements = Lists.newArrayList();
-        directoryTree.visit(new FileVisitorImpl(elements));
+        List<PendingFile> files = Lists.newArrayList();
+        directoryTree.visit(new DeferredHashingFileVisitor(elements, files));
+        if (files.size() >= MIN_FILES_TO_HASH_IN_PARALLEL) {
+            getHashingPool().invoke(new HashFilesAction(elements, files, 0, files.size()));
+        } else {
+            new HashFilesAction(elements, files, 0, files.size()).compute();
+        }
         return new DirectoryTreeDetails(path, ImmutableList.copyOf(elements));
     }
 
+    private ForkJoinPool getHashingPool() {
+        synchronized (lock) {
+            if (hashingPool == null) {
+                hashingPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+            }
+            return hashingPool;
+        }
+    }
+
+    @Override
+    public void stop() {
+        synchronized (lock) {
+            if (hashingPool != null) {
+                hashingPool.shutdown();
+                hashingPool = null;
+            }
+        }
+    }
+
     private String getPath(File file) {
         return stringInterner.intern(file.getAbsolutePath());
     }
@@ -187,11 +221,11 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
     }
 
     private FileHashSnapshot fileSnapshot(FileTreeElement fileDetails) {
-        return new FileHashSnapshot(hasher.hash(fileDetails), fileDetails.getLastModified());
+        return new FileHashSnapshot(hasher.hash(fileDetails), fileDetails.getLastModified(), fileDetails.getSize());
     }
 
     private FileHashSnapshot fileSnapshot(File file, FileMetadataSnapshot fileDetails) {
-        return new FileHashSnapshot(hasher.hash(file, fileDetails), fileDetails.getLastModified());
+        return new FileHashSnapshot(hasher.hash(file, fileDetails), fileDetails.getLastModified(), fileDetails.getLength());
     }
 
     private static class HashBackedSnapshot implements Snapshot {
@@ -207,6 +241,71 @@ public class DefaultFileSystemSnapshotter implements FileSystemSnapshotter {
         }
     }
 
+    /**
+     * Collects the elements of a tree in visiting order, leaving a placeholder for each regular file whose content has not been hashed yet.
+     */
+    private class DeferredHashingFileVisitor implements FileVisitor {
+        private final List<FileSnapshot> fileTreeElements;
+        private final List<PendingFile> files;
+
+        DeferredHashingFileVisitor(List<FileSnapshot> fileTreeElements, List<PendingFile> files) {
+            this.fileTreeElements = fileTreeElements;
+            this.files = files;
+        }
+
+        @Override
+        public void visitDir(FileVisitDetails dirDetails) {
+            fileTreeElements.add(new DirectoryFileSnapshot(getPath(dirDetails.getFile()), dirDetails.getRelativePath(), false));
+        }
+
+        @Override
+        public void visitFile(FileVisitDetails fileDetails) {
+            fileTreeElements.add(null);
+            files.add(new PendingFile(fileDetails, fileTreeElements.size() - 1));
+        }
+    }
+
+    /**
+     * Hashes a range of the files collected by {@link DeferredHashingFileVisitor}, splitting the range when it is large so that idle threads can steal the work.
+     */
+    private class HashFilesAction extends RecursiveAction {
+        private final List<FileSnapshot> fileTreeElements;
+        private final List<PendingFile> files;
+        private final int start;
+        private final int end;
+
+        HashFilesAction(List<FileSnapshot> fileTreeElements, List<PendingFile> files, int start, int end) {
+            this.fileTreeElements = fileTreeElements;
+            this.files = files;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= FILES_PER_HASHING_TASK) {
+                for (int i = start; i < end; i++) {
+                    PendingFile file = files.get(i);
+                    // Each action writes to distinct elements, so there is no need to synchronize on the list
+                    fileTreeElements.set(file.index, new RegularFileSnapshot(getPath(file.details.getFile()), file.details.getRelativePath(), false, fileSnapshot(file.details)));
+                }
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new HashFilesAction(fileTreeElements, files, start, middle), new HashFilesAction(fileTreeElements, files, middle, end));
+            }
+        }
+    }
+
+    private static class PendingFile {
+        private final FileVisitDetails details;
+        private final int index;
+
+        PendingFile(FileVisitDetails details, int index) {
+            this.details = details;
+            this.index = index;
+        }
+    }
+
     private class FileVisitorImpl implements FileVisitor {
         private final List<FileSnapshot> fileTreeElements;
 
@@ -23,14 +23,31 @@ import org.gradle.internal.nativeintegration.filesystem.FileType;
 class FileHashSnapshot implements FileContentSnapshot {
     private final HashCode hash;
     private final transient long lastModified; // Currently not persisted
+    private final transient long length; // Currently not persisted
 
     public FileHashSnapshot(HashCode hash) {
         this(hash, 0L);
     }
 
     public FileHashSnapshot(HashCode hash, long lastModified) {
+        this(hash, lastModified, -1L);
+    }
+
+    public FileHashSnapshot(HashCode hash, long lastModified, long length) {
         this.hash = hash;
         this.lastModified = lastModified;
+        this.length = length;
+    }
+
+    long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Returns the length of the file when it was hashed, or -1 when not known.
+     */
+    long getLength() {
+        return length;
     }
 
     public boolean isContentUpToDate(FileContentSnapshot snapshot) {
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state;
+
+import org.gradle.api.internal.hash.FileHashAlgorithm;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Holds a separate {@link FileSystemMirror} for each {@link FileHashAlgorithm}, as the mirror contains the content hashes of the files.
+ * This way, the hashes calculated in a build using one algorithm are never used by a build, or a snapshotter, using another algorithm.
+ */
+public class FileSystemMirrorRegistry {
+    private final Map<FileHashAlgorithm, FileSystemMirror> mirrors;
+
+    public FileSystemMirrorRegistry(Map<FileHashAlgorithm, ? extends FileSystemMirror> mirrors) {
+        this.mirrors = new EnumMap<FileHashAlgorithm, FileSystemMirror>(mirrors);
+    }
+
+    public FileSystemMirror getMirror(FileHashAlgorithm algorithm) {
+        FileSystemMirror mirror = mirrors.get(algorithm);
+        if (mirror == null) {
+            throw new IllegalArgumentException(String.format("No file system mirror for file hash algorithm %s.", algorithm));
+        }
+        return mirror;
+    }
+}
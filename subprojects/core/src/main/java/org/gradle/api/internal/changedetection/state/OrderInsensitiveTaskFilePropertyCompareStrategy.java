@@ -21,21 +21,19 @@ import com.google.common.collect.Iterators;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.PeekingIterator;
 import org.gradle.api.internal.changedetection.rules.ChangeType;
 import org.gradle.api.internal.changedetection.rules.FileChange;
 import org.gradle.api.internal.changedetection.rules.TaskStateChange;
 import org.gradle.caching.internal.BuildCacheHasher;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 
 class OrderInsensitiveTaskFilePropertyCompareStrategy implements TaskFilePropertyCompareStrategy.Impl {
 
@@ -63,49 +61,54 @@ class OrderInsensitiveTaskFilePropertyCompareStrategy implements TaskFilePropert
 
     /**
      * A more efficient implementation when absolute paths are used.
+     *
+     * Looks up each current entry in the previous snapshot instead of copying the previous snapshot, so nothing is allocated
+     * until a change is found. Removed and added files are found by a second pass over the snapshots, which is only required
+     * when the entries do not all match.
      */
     private Iterator<TaskStateChange> iterateChangesForAbsolutePaths(final Map<String, NormalizedFileSnapshot> current, final Map<String, NormalizedFileSnapshot> previous, final String fileType) {
-        final Set<String> unaccountedForPreviousSnapshots = new LinkedHashSet<String>(previous.keySet());
         final Iterator<Entry<String, NormalizedFileSnapshot>> currentEntries = current.entrySet().iterator();
-        final List<String> added = new ArrayList<String>();
         return new AbstractIterator<TaskStateChange>() {
-            private Iterator<String> unaccountedForPreviousSnapshotsIterator;
-            private Iterator<String> addedIterator;
+            private int matched;
+            private Iterator<String> previousPathsIterator;
+            private Iterator<String> currentPathsIterator;
 
             @Override
             protected TaskStateChange computeNext() {
                 while (currentEntries.hasNext()) {
                     Entry<String, NormalizedFileSnapshot> currentEntry = currentEntries.next();
                     String currentAbsolutePath = currentEntry.getKey();
-                    NormalizedFileSnapshot currentNormalizedSnapshot = currentEntry.getValue();
-                    FileContentSnapshot currentSnapshot = currentNormalizedSnapshot.getSnapshot();
-                    if (unaccountedForPreviousSnapshots.remove(currentAbsolutePath)) {
-                        NormalizedFileSnapshot previousNormalizedSnapshot = previous.get(currentAbsolutePath);
+                    NormalizedFileSnapshot previousNormalizedSnapshot = previous.get(currentAbsolutePath);
+                    if (previousNormalizedSnapshot != null) {
+                        matched++;
+                        FileContentSnapshot currentSnapshot = currentEntry.getValue().getSnapshot();
                         FileContentSnapshot previousSnapshot = previousNormalizedSnapshot.getSnapshot();
                         if (!currentSnapshot.isContentUpToDate(previousSnapshot)) {
                             return new FileChange(currentAbsolutePath, ChangeType.MODIFIED, fileType);
                         }
                         // else, unchanged; check next file
-                    } else {
-                        added.add(currentAbsolutePath);
                     }
                 }
 
-                if (unaccountedForPreviousSnapshotsIterator == null) {
-                    unaccountedForPreviousSnapshotsIterator = unaccountedForPreviousSnapshots.iterator();
+                if (previousPathsIterator == null) {
+                    previousPathsIterator = matched == previous.size() ? Iterators.<String>emptyIterator() : previous.keySet().iterator();
                 }
-                if (unaccountedForPreviousSnapshotsIterator.hasNext()) {
-                    String previousAbsolutePath = unaccountedForPreviousSnapshotsIterator.next();
-                    return new FileChange(previousAbsolutePath, ChangeType.REMOVED, fileType);
+                while (previousPathsIterator.hasNext()) {
+                    String previousAbsolutePath = previousPathsIterator.next();
+                    if (!current.containsKey(previousAbsolutePath)) {
+                        return new FileChange(previousAbsolutePath, ChangeType.REMOVED, fileType);
+                    }
                 }
 
                 if (includeAdded) {
-                    if (addedIterator == null) {
-                        addedIterator = added.iterator();
+                    if (currentPathsIterator == null) {
+                        currentPathsIterator = matched == current.size() ? Iterators.<String>emptyIterator() : current.keySet().iterator();
                     }
-                    if (addedIterator.hasNext()) {
-                        String newAbsolutePath = addedIterator.next();
-                        return new FileChange(newAbsolutePath, ChangeType.ADDED, fileType);
+                    while (currentPathsIterator.hasNext()) {
+                        String currentAbsolutePath = currentPathsIterator.next();
+                        if (!previous.containsKey(currentAbsolutePath)) {
+                            return new FileChange(currentAbsolutePath, ChangeType.ADDED, fileType);
+                        }
                     }
                 }
 
@@ -114,14 +117,25 @@ class OrderInsensitiveTaskFilePropertyCompareStrategy implements TaskFilePropert
         };
     }
 
-    private Iterator<TaskStateChange> iterateChangesForRelativePaths(final Map<String, NormalizedFileSnapshot> current, Map<String, NormalizedFileSnapshot> previous, final String fileType) {
+    private Iterator<TaskStateChange> iterateChangesForRelativePaths(Map<String, NormalizedFileSnapshot> current, Map<String, NormalizedFileSnapshot> previous, final String fileType) {
+        // Skip the common prefix of both snapshots, so the lookup structure only needs to hold the entries after the first difference
+        final PeekingIterator<Entry<String, NormalizedFileSnapshot>> currentEntries = Iterators.peekingIterator(current.entrySet().iterator());
+        PeekingIterator<Entry<String, NormalizedFileSnapshot>> previousEntries = Iterators.peekingIterator(previous.entrySet().iterator());
+        while (currentEntries.hasNext() && previousEntries.hasNext() && currentEntries.peek().getValue().equals(previousEntries.peek().getValue())) {
+            currentEntries.next();
+            previousEntries.next();
+        }
+        if (!currentEntries.hasNext() && !previousEntries.hasNext()) {
+            return Iterators.emptyIterator();
+        }
+
         final ListMultimap<NormalizedFileSnapshot, IncrementalFileSnapshotWithAbsolutePath> unaccountedForPreviousSnapshots = MultimapBuilder.hashKeys().linkedListValues().build();
-        for (Entry<String, NormalizedFileSnapshot> entry : previous.entrySet()) {
+        while (previousEntries.hasNext()) {
+            Entry<String, NormalizedFileSnapshot> entry = previousEntries.next();
             String absolutePath = entry.getKey();
             NormalizedFileSnapshot previousSnapshot = entry.getValue();
             unaccountedForPreviousSnapshots.put(previousSnapshot, new IncrementalFileSnapshotWithAbsolutePath(absolutePath, previousSnapshot.getSnapshot()));
         }
-        final Iterator<Entry<String, NormalizedFileSnapshot>> currentEntries = current.entrySet().iterator();
         return new AbstractIterator<TaskStateChange>() {
             private Iterator<Entry<NormalizedFileSnapshot, IncrementalFileSnapshotWithAbsolutePath>> unaccountedForPreviousSnapshotsIterator;
             private final ListMultimap<String, IncrementalFileSnapshotWithAbsolutePath> addedFiles = MultimapBuilder.hashKeys().linkedListValues().build();
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.hash;
+
+import com.google.common.hash.HashCode;
+import org.gradle.internal.UncheckedException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Calculates a hash from content passed as byte buffers, without copying direct or mapped buffers into the heap first.
+ */
+abstract class ContentHasher {
+    public abstract void putBytes(ByteBuffer buffer);
+
+    public void putBytes(byte[] bytes, int offset, int length) {
+        putBytes(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    public abstract HashCode hash();
+
+    static ContentHasher messageDigest(String algorithm) {
+        try {
+            return new MessageDigestContentHasher(MessageDigest.getInstance(algorithm));
+        } catch (NoSuchAlgorithmException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    static ContentHasher murmur3_128() {
+        return new Murmur3ContentHasher();
+    }
+
+    private static class MessageDigestContentHasher extends ContentHasher {
+        private final MessageDigest digest;
+
+        MessageDigestContentHasher(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        public void putBytes(ByteBuffer buffer) {
+            digest.update(buffer);
+        }
+
+        @Override
+        public HashCode hash() {
+            return HashCode.fromBytes(digest.digest());
+        }
+    }
+
+    /**
+     * The 128-bit x64 variant of murmur3 with a seed of 0, which gives the same hashes as {@code Hashing.murmur3_128()}.
+     */
+    private static class Murmur3ContentHasher extends ContentHasher {
+        private static final int BLOCK_SIZE = 16;
+        private static final long C1 = 0x87c37b91114253d5L;
+        private static final long C2 = 0x4cf5ad432745937fL;
+
+        private final ByteBuffer pending = ByteBuffer.allocate(BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        private long h1;
+        private long h2;
+        private long length;
+
+        @Override
+        public void putBytes(ByteBuffer buffer) {
+            ByteBuffer input = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            length += input.remaining();
+            if (pending.position() > 0) {
+                while (pending.hasRemaining() && input.hasRemaining()) {
+                    pending.put(input.get());
+                }
+                if (pending.hasRemaining()) {
+                    buffer.position(buffer.limit());
+                    return;
+                }
+                pending.flip();
+                mixBlock(pending.getLong(), pending.getLong());
+                pending.clear();
+            }
+            while (input.remaining() >= BLOCK_SIZE) {
+                mixBlock(input.getLong(), input.getLong());
+            }
+            pending.put(input);
+            buffer.position(buffer.limit());
+        }
+
+        private void mixBlock(long k1, long k2) {
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        @Override
+        public HashCode hash() {
+            if (pending.position() > 0) {
+                // The remaining bytes, padded with zeros
+                while (pending.hasRemaining()) {
+                    pending.put((byte) 0);
+                }
+                pending.flip();
+                h1 ^= mixK1(pending.getLong());
+                h2 ^= mixK2(pending.getLong());
+                pending.clear();
+            }
+
+            h1 ^= length;
+            h2 ^= length;
+            h1 += h2;
+            h2 += h1;
+            h1 = fmix64(h1);
+            h2 = fmix64(h2);
+            h1 += h2;
+            h2 += h1;
+
+            return HashCode.fromBytes(ByteBuffer.allocate(BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN).putLong(h1).putLong(h2).array());
+        }
+
+        private static long mixK1(long k1) {
+            k1 *= C1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= C2;
+            return k1;
+        }
+
+        private static long mixK2(long k2) {
+            k2 *= C2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= C1;
+            return k2;
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb9fe1a85ec53L;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
@@ -17,82 +17,134 @@ package org.gradle.api.internal.hash;
 
 import com.google.common.base.Charsets;
 import com.google.common.hash.HashCode;
-import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.api.file.FileTreeElement;
 import org.gradle.internal.nativeintegration.filesystem.FileMetadataSnapshot;
+import org.gradle.internal.os.OperatingSystem;
 import org.gradle.internal.resource.TextResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Queue;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 public class DefaultFileHasher implements FileHasher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DefaultFileHasher.class);
     private static final byte[] SIGNATURE = Hashing.md5().hashString(DefaultFileHasher.class.getName(), Charsets.UTF_8).asBytes();
-    private final Queue<byte[]> buffers = new ArrayBlockingQueue<byte[]>(16);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Files at least this large are mapped into memory instead of being read
+    private static final long MAP_THRESHOLD = 4 * 1024 * 1024;
+    private static final long MAP_REGION_SIZE = 64 * 1024 * 1024;
+    // A mapped file cannot be deleted on Windows until the mapping has been released
+    private static final boolean CAN_MAP_FILES = !OperatingSystem.current().isWindows();
+
+    // Each thread that hashes files keeps its own buffers, so that they are neither shared nor allocated again for every file
+    private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers();
+        }
+    };
+
+    private final FileHashAlgorithm algorithm;
+
+    public DefaultFileHasher() {
+        this(FileHashAlgorithm.MD5);
+    }
+
+    public DefaultFileHasher(FileHashAlgorithm algorithm) {
+        this.algorithm = algorithm;
+    }
 
     @Override
     public HashCode hash(InputStream inputStream) {
         try {
             return doHash(inputStream);
         } catch (IOException e) {
-            throw new UncheckedIOException("Failed to create MD5 hash for file content.", e);
+            throw new UncheckedIOException(String.format("Failed to create %s hash for file content.", algorithm), e);
         }
     }
 
     @Override
     public HashCode hash(TextResource resource) {
-        Hasher hasher = createFileHasher();
-        hasher.putString(resource.getText(), Charsets.UTF_8);
+        ContentHasher hasher = createFileHasher();
+        byte[] bytes = resource.getText().getBytes(Charsets.UTF_8);
+        hasher.putBytes(bytes, 0, bytes.length);
         return hasher.hash();
     }
 
     @Override
     public HashCode hash(File file) {
         try {
-            InputStream inputStream = new FileInputStream(file);
-            return doHash(inputStream);
+            return doHash(file);
         } catch (IOException e) {
-            throw new UncheckedIOException(String.format("Failed to create MD5 hash for file '%s'.", file), e);
+            throw new UncheckedIOException(String.format("Failed to create %s hash for file '%s'.", algorithm, file), e);
         }
     }
 
     private HashCode doHash(InputStream inputStream) throws IOException {
         try {
-            byte[] buffer = takeBuffer();
-            try {
-                Hasher hasher = createFileHasher();
-                while (true) {
-                    int nread = inputStream.read(buffer);
-                    if (nread < 0) {
-                        break;
-                    }
-                    hasher.putBytes(buffer, 0, nread);
+            ContentHasher hasher = createFileHasher();
+            byte[] bytes = BUFFERS.get().getBytes();
+            while (true) {
+                int nread = inputStream.read(bytes);
+                if (nread < 0) {
+                    break;
                 }
-                return hasher.hash();
-            } finally {
-                returnBuffer(buffer);
+                hasher.putBytes(bytes, 0, nread);
             }
+            return hasher.hash();
         } finally {
             inputStream.close();
         }
     }
 
-    private void returnBuffer(byte[] buffer) {
-        // Retain buffer if there is capacity in the queue, otherwise discard
-        buffers.offer(buffer);
+    private HashCode doHash(File file) throws IOException {
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            FileChannel channel = inputStream.getChannel();
+            ContentHasher hasher = createFileHasher();
+            long size = channel.size();
+            if (CAN_MAP_FILES && size >= MAP_THRESHOLD) {
+                hashMapped(channel, size, hasher);
+            } else {
+                hashRead(channel, hasher);
+            }
+            return hasher.hash();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static void hashRead(FileChannel channel, ContentHasher hasher) throws IOException {
+        ByteBuffer buffer = BUFFERS.get().getDirect();
+        while (true) {
+            buffer.clear();
+            int nread = channel.read(buffer);
+            if (nread < 0) {
+                break;
+            }
+            buffer.flip();
+            hasher.putBytes(buffer);
+        }
     }
 
-    private byte[] takeBuffer() {
-        byte[] buffer = buffers.poll();
-        if (buffer == null) {
-            buffer = new byte[8192];
+    private static void hashMapped(FileChannel channel, long size, ContentHasher hasher) throws IOException {
+        for (long position = 0; position < size; position += MAP_REGION_SIZE) {
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_REGION_SIZE, size - position));
+            try {
+                hasher.putBytes(region);
+            } finally {
+                Unmapper.unmap(region);
+            }
         }
-        return buffer;
     }
 
     @Override
@@ -105,9 +157,62 @@ public class DefaultFileHasher implements FileHasher {
         return hash(fileDetails.getFile());
     }
 
-    private static Hasher createFileHasher() {
-        Hasher hasher = Hashing.md5().newHasher();
-        hasher.putBytes(SIGNATURE);
+    private ContentHasher createFileHasher() {
+        ContentHasher hasher = algorithm.newHasher();
+        hasher.putBytes(SIGNATURE, 0, SIGNATURE.length);
         return hasher;
     }
+
+    private static class Buffers {
+        private ByteBuffer direct;
+        private byte[] bytes;
+
+        ByteBuffer getDirect() {
+            if (direct == null) {
+                direct = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            }
+            return direct;
+        }
+
+        byte[] getBytes() {
+            if (bytes == null) {
+                bytes = new byte[BUFFER_SIZE];
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Releases mapped regions right away instead of when they are garbage collected, so that the mapping does not outlive the hashing of the file.
+     * A mapped file that is truncated by another process while the mapping exists crashes the JVM when the missing part is accessed.
+     */
+    private static class Unmapper {
+        private static final Method CLEANER = findCleaner();
+
+        private static Method findCleaner() {
+            try {
+                Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+                cleaner.setAccessible(true);
+                return cleaner;
+            } catch (Exception e) {
+                LOGGER.debug("Cannot release mapped files explicitly.", e);
+                return null;
+            }
+        }
+
+        static void unmap(MappedByteBuffer buffer) {
+            if (CLEANER == null) {
+                return;
+            }
+            try {
+                Object cleaner = CLEANER.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (Exception e) {
+                // Released once the buffer is garbage collected
+                LOGGER.debug("Could not release mapped file.", e);
+            }
+        }
+    }
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.hash;
+
+/**
+ * The algorithm used to hash the content of files for up-to-date checks.
+ *
+ * <p>Content hashes that end up in build cache keys, or in the hashes of classpaths, must always be calculated using {@link #MD5}.</p>
+ */
+public enum FileHashAlgorithm {
+    MD5("fileHashes") {
+        @Override
+        ContentHasher newHasher() {
+            return ContentHasher.messageDigest("MD5");
+        }
+    },
+    MURMUR3_128("fileHashes-murmur3-128") {
+        @Override
+        ContentHasher newHasher() {
+            return ContentHasher.murmur3_128();
+        }
+    };
+
+    public static final String SYSTEM_PROPERTY = "org.gradle.internal.fileHashAlgorithm";
+
+    private final String cacheName;
+
+    FileHashAlgorithm(String cacheName) {
+        this.cacheName = cacheName;
+    }
+
+    abstract ContentHasher newHasher();
+
+    /**
+     * The name of the persistent cache that holds the hashes calculated with this algorithm.
+     */
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    /**
+     * Returns the algorithm to use for up-to-date checks. The build cache key includes the content hashes of the input files, so only MD5 is used when the build cache is enabled.
+     */
+    public static FileHashAlgorithm forUpToDateChecks(boolean buildCacheEnabled) {
+        return buildCacheEnabled ? MD5 : fromSystemProperty();
+    }
+
+    private static FileHashAlgorithm fromSystemProperty() {
+        String value = System.getProperty(SYSTEM_PROPERTY);
+        if (value == null) {
+            return MD5;
+        }
+        for (FileHashAlgorithm algorithm : values()) {
+            if (algorithm.name().equalsIgnoreCase(value.replace('-', '_'))) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unknown file hash algorithm '%s' specified for system property '%s'.", value, SYSTEM_PROPERTY));
+    }
+}
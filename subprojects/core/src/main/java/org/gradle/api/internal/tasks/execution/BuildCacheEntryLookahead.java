@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.execution;
+
+import org.gradle.api.Nullable;
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.TaskOutputsInternal;
+import org.gradle.api.internal.changedetection.TaskArtifactState;
+import org.gradle.api.internal.changedetection.TaskArtifactStateRepository;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.internal.BuildCacheEntryPrefetcher;
+import org.gradle.caching.internal.tasks.TaskOutputCachingBuildCacheKey;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.concurrent.StoppableExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Starts looking up the cached outputs of tasks that are about to become executable, so that a remote build cache can be asked for them
+ * while other tasks execute. Tasks that are up-to-date, or whose outputs cannot be loaded from the cache, are not looked up.
+ *
+ * The cache keys are calculated on a separate thread, so that the thread executing tasks is not held up. A task that starts executing before
+ * its key has been calculated waits for a calculation in progress, and skips one that has not started yet.
+ *
+ * The cache key of a task can change before it executes, for example when a task that executes in the meantime changes its inputs. In that case,
+ * the lookup is for an entry that is never loaded, and the task loads its entry as usual.
+ */
+public class BuildCacheEntryLookahead implements TaskExecutionLookahead, Stoppable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BuildCacheEntryLookahead.class);
+
+    private final TaskArtifactStateRepository repository;
+    private final BuildCacheEntryPrefetcher prefetcher;
+    private final StoppableExecutor executor;
+    private final ConcurrentMap<TaskInternal, Lookup> lookups = new ConcurrentHashMap<TaskInternal, Lookup>();
+
+    public BuildCacheEntryLookahead(TaskArtifactStateRepository repository, BuildCacheEntryPrefetcher prefetcher, ExecutorFactory executorFactory) {
+        this.repository = repository;
+        this.prefetcher = prefetcher;
+        this.executor = executorFactory.create("Build cache lookahead", 1);
+    }
+
+    @Override
+    public void lookAhead(Iterable<? extends TaskInternal> tasks) {
+        for (TaskInternal task : tasks) {
+            Lookup lookup = new Lookup(task);
+            if (lookups.putIfAbsent(task, lookup) == null) {
+                executor.execute(lookup);
+            }
+        }
+    }
+
+    @Override
+    public void taskStarting(TaskInternal task) {
+        // Also prevents a lookup for the task from being started from now on
+        Lookup lookup = new Lookup(task);
+        Lookup existing = lookups.putIfAbsent(task, lookup);
+        (existing != null ? existing : lookup).awaitOrSkip();
+    }
+
+    @Override
+    public void taskExecuted(TaskInternal task) {
+        Lookup lookup = lookups.remove(task);
+        if (lookup != null) {
+            BuildCacheKey cacheKey = lookup.awaitOrSkip();
+            if (cacheKey != null) {
+                prefetcher.discard(cacheKey);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        for (Lookup lookup : lookups.values()) {
+            lookup.awaitOrSkip();
+        }
+        executor.stop();
+    }
+
+    @Nullable
+    private BuildCacheKey determineKeyToLookUp(TaskInternal task) {
+        TaskOutputsInternal outputs = task.getOutputs();
+        if (task.getTaskActions().isEmpty() || !outputs.getHasOutput()) {
+            return null;
+        }
+        TaskArtifactState taskArtifactState = repository.getStateFor(task);
+        outputs.setHistory(taskArtifactState.getExecutionHistory());
+        try {
+            if (!taskArtifactState.isAllowedToUseCachedResults() || !outputs.getCachingState().isEnabled()) {
+                return null;
+            }
+            TaskOutputCachingBuildCacheKey cacheKey = taskArtifactState.calculateCacheKey();
+            if (!cacheKey.isValid() || taskArtifactState.isUpToDate(null)) {
+                return null;
+            }
+            return cacheKey;
+        } catch (Exception e) {
+            // Reported when the task executes
+            LOGGER.debug("Could not determine the build cache key of {} ahead of its execution.", task, e);
+            return null;
+        } finally {
+            outputs.setHistory(null);
+            taskArtifactState.finished();
+        }
+    }
+
+    private enum LookupState {
+        PENDING, CALCULATING, DONE
+    }
+
+    private class Lookup implements Runnable {
+        private final TaskInternal task;
+        private LookupState state = LookupState.PENDING;
+        private BuildCacheKey cacheKey;
+
+        Lookup(TaskInternal task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (state != LookupState.PENDING) {
+                    // The task has started executing
+                    return;
+                }
+                state = LookupState.CALCULATING;
+            }
+            BuildCacheKey key = null;
+            try {
+                key = determineKeyToLookUp(task);
+                if (key != null) {
+                    prefetcher.prefetch(key);
+                }
+            } catch (Exception e) {
+                LOGGER.debug("Could not look up the build cache entry of {} ahead of its execution.", task, e);
+            } finally {
+                synchronized (this) {
+                    cacheKey = key;
+                    state = LookupState.DONE;
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Waits for the calculation of the key when it is in progress, and prevents it from starting when it has not started yet. Returns the key that was looked up, if any.
+         */
+        @Nullable
+        synchronized BuildCacheKey awaitOrSkip() {
+            if (state == LookupState.PENDING) {
+                state = LookupState.DONE;
+            }
+            while (state == LookupState.CALCULATING) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw UncheckedException.throwAsUncheckedException(e);
+                }
+            }
+            return cacheKey;
+        }
+    }
+}
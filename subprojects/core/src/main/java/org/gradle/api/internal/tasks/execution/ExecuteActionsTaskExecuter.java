@@ -19,6 +19,7 @@ import com.google.common.collect.Lists;
 import org.gradle.api.GradleException;
 import org.gradle.api.execution.TaskActionListener;
 import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.TaskOutputsInternal;
 import org.gradle.api.internal.tasks.ContextAwareTaskAction;
 import org.gradle.api.internal.tasks.TaskExecuter;
 import org.gradle.api.internal.tasks.TaskExecutionContext;
@@ -63,7 +64,13 @@ public class ExecuteActionsTaskExecuter implements TaskExecuter {
     public void execute(TaskInternal task, TaskStateInternal state, TaskExecutionContext context) {
         listener.beforeActions(task);
         if (!task.getTaskActions().isEmpty()) {
-            outputsGenerationListener.beforeTaskOutputsGenerated();
+            TaskOutputsInternal taskOutputs = task.getOutputs();
+            if (taskOutputs.hasDeclaredOutputs()) {
+                outputsGenerationListener.beforeTaskOutputsGenerated(TaskOutputRootPaths.of(taskOutputs.getFileProperties()));
+            } else {
+                // The task may change any file
+                outputsGenerationListener.beforeTaskOutputsGenerated();
+            }
         }
         state.setExecuting(true);
         try {
@@ -16,12 +16,16 @@
 
 package org.gradle.api.internal.tasks.execution;
 
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
 import org.gradle.api.internal.TaskInternal;
 import org.gradle.api.internal.TaskOutputsInternal;
 import org.gradle.api.internal.changedetection.TaskArtifactState;
 import org.gradle.api.internal.tasks.TaskExecuter;
 import org.gradle.api.internal.tasks.TaskExecutionContext;
 import org.gradle.api.internal.tasks.TaskExecutionOutcome;
+import org.gradle.api.internal.tasks.TaskOutputFilePropertySpec;
 import org.gradle.api.internal.tasks.TaskStateInternal;
 import org.gradle.caching.BuildCacheEntryReader;
 import org.gradle.caching.BuildCacheEntryWriter;
@@ -29,6 +33,9 @@ import org.gradle.caching.BuildCacheService;
 import org.gradle.caching.internal.tasks.TaskOutputCachingBuildCacheKey;
 import org.gradle.caching.internal.tasks.TaskOutputPacker;
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginFactory;
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginMetadata;
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginReader;
+import org.gradle.caching.internal.tasks.statistics.TaskOutputCacheStatistics;
 import org.gradle.internal.time.Timer;
 import org.gradle.internal.time.Timers;
 import org.slf4j.Logger;
@@ -45,13 +52,16 @@ public class SkipCachedTaskExecuter implements TaskExecuter {
     private final TaskExecuter delegate;
     private final TaskOutputsGenerationListener taskOutputsGenerationListener;
     private final TaskOutputOriginFactory taskOutputOriginFactory;
+    private final TaskOutputCacheStatistics statistics;
 
     public SkipCachedTaskExecuter(TaskOutputOriginFactory taskOutputOriginFactory,
                                   BuildCacheService buildCache,
                                   TaskOutputPacker packer,
                                   TaskOutputsGenerationListener taskOutputsGenerationListener,
+                                  TaskOutputCacheStatistics statistics,
                                   TaskExecuter delegate) {
         this.taskOutputOriginFactory = taskOutputOriginFactory;
+        this.statistics = statistics;
         this.buildCache = buildCache;
         this.packer = packer;
         this.taskOutputsGenerationListener = taskOutputsGenerationListener;
@@ -75,18 +85,33 @@ public class SkipCachedTaskExecuter implements TaskExecuter {
             if (cacheKey.isValid()) {
                 TaskArtifactState taskState = context.getTaskArtifactState();
                 if (taskState.isAllowedToUseCachedResults()) {
+                    final Timer loadClock = Timers.startTimer();
+                    final CacheEntryDetails loadedEntry = new CacheEntryDetails();
                     boolean found = buildCache.load(cacheKey, new BuildCacheEntryReader() {
                         @Override
                         public void readFrom(final InputStream input) {
-                            taskOutputsGenerationListener.beforeTaskOutputsGenerated();
-                            packer.unpack(taskOutputs.getFileProperties(), input, taskOutputOriginFactory.createReader(task));
+                            ImmutableSortedSet<TaskOutputFilePropertySpec> outputFileProperties = taskOutputs.getFileProperties();
+                            taskOutputsGenerationListener.beforeTaskOutputsGenerated(TaskOutputRootPaths.of(outputFileProperties));
+                            final TaskOutputOriginReader originReader = taskOutputOriginFactory.createReader(task);
+                            CountingInputStream countingInput = new CountingInputStream(input);
+                            packer.unpack(outputFileProperties, countingInput, new TaskOutputOriginReader() {
+                                @Override
+                                public TaskOutputOriginMetadata execute(InputStream inputStream) {
+                                    loadedEntry.origin = originReader.execute(inputStream);
+                                    return loadedEntry.origin;
+                                }
+                            });
+                            loadedEntry.size = countingInput.getCount();
                             LOGGER.info("Unpacked output for {} from cache (took {}).", task, clock.getElapsed());
                         }
                     });
                     if (found) {
+                        long originalExecutionTime = loadedEntry.origin == null ? 0 : loadedEntry.origin.getExecutionTime();
+                        statistics.loaded(task.getClass(), loadedEntry.size, loadClock.getElapsedMillis(), originalExecutionTime);
                         state.setOutcome(TaskExecutionOutcome.FROM_CACHE);
                         return;
                     }
+                    statistics.missed(task.getClass());
                 } else {
                     LOGGER.info("Not loading {} from cache because pulling from cache is disabled for this task", task);
                 }
@@ -100,13 +125,22 @@ public class SkipCachedTaskExecuter implements TaskExecuter {
         if (taskOutputCachingEnabled) {
             if (cacheKey.isValid()) {
                 if (state.getFailure() == null) {
+                    final long executionTime = clock.getElapsedMillis();
+                    final Timer storeClock = Timers.startTimer();
+                    final CacheEntryDetails storedEntry = new CacheEntryDetails();
                     buildCache.store(cacheKey, new BuildCacheEntryWriter() {
                         @Override
                         public void writeTo(OutputStream output) {
                             LOGGER.info("Packing {}", task.getPath());
-                            packer.pack(taskOutputs.getFileProperties(), output, taskOutputOriginFactory.createWriter(task, clock.getElapsedMillis()));
+                            CountingOutputStream countingOutput = new CountingOutputStream(output);
+                            packer.pack(taskOutputs.getFileProperties(), countingOutput, taskOutputOriginFactory.createWriter(task, executionTime));
+                            storedEntry.size = countingOutput.getCount();
+                            storedEntry.written = true;
                         }
                     });
+                    if (storedEntry.written) {
+                        statistics.stored(task.getClass(), storedEntry.size, storeClock.getElapsedMillis(), executionTime);
+                    }
                 } else {
                     LOGGER.debug("Not pushing result from {} to cache because the task failed", task);
                 }
@@ -115,4 +149,10 @@ public class SkipCachedTaskExecuter implements TaskExecuter {
             }
         }
     }
+
+    private static class CacheEntryDetails {
+        long size;
+        boolean written;
+        TaskOutputOriginMetadata origin;
+    }
 }
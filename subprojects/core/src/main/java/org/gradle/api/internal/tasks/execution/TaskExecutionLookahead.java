@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.execution;
+
+import org.gradle.api.internal.TaskInternal;
+
+/**
+ * Prepares for the execution of tasks that are likely to be executed soon.
+ */
+public interface TaskExecutionLookahead {
+    TaskExecutionLookahead NONE = new TaskExecutionLookahead() {
+        @Override
+        public void lookAhead(Iterable<? extends TaskInternal> tasks) {
+        }
+
+        @Override
+        public void taskStarting(TaskInternal task) {
+        }
+
+        @Override
+        public void taskExecuted(TaskInternal task) {
+        }
+    };
+
+    /**
+     * Prepares for the execution of the given tasks, none of which has started executing. Called on the thread that is about to execute another task,
+     * so the preparation should not hold up that thread.
+     */
+    void lookAhead(Iterable<? extends TaskInternal> tasks);
+
+    /**
+     * Called before the given task starts executing, whether or not it was looked ahead at. Once this returns, no preparation for the task is in progress.
+     */
+    void taskStarting(TaskInternal task);
+
+    /**
+     * Called once the given task has been executed, whether or not it was looked ahead at.
+     */
+    void taskExecuted(TaskInternal task);
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.execution;
+
+import com.google.common.collect.ImmutableList;
+import org.gradle.api.internal.tasks.TaskOutputFilePropertySpec;
+
+import java.io.File;
+
+class TaskOutputRootPaths {
+    private TaskOutputRootPaths() {
+    }
+
+    /**
+     * Returns the absolute paths of the roots of the declared output files and directories.
+     */
+    static ImmutableList<String> of(Iterable<TaskOutputFilePropertySpec> outputFileProperties) {
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+        for (TaskOutputFilePropertySpec propertySpec : outputFileProperties) {
+            for (File file : propertySpec.getPropertyFiles()) {
+                builder.add(file.getAbsolutePath());
+            }
+        }
+        return builder.build();
+    }
+}
@@ -22,4 +22,11 @@ public interface TaskOutputsGenerationListener {
      * This is for example just before the task actions are executed or the outputs are loaded from the cache.
      */
     void beforeTaskOutputsGenerated();
+
+    /**
+     * Invoked when the outputs for a task are about to be generated, and the task is known to only change the files in the given locations.
+     *
+     * @param affectedOutputPaths the absolute paths of the output roots of the task. A change may affect the root itself and any of its descendants.
+     */
+    void beforeTaskOutputsGenerated(Iterable<String> affectedOutputPaths);
 }
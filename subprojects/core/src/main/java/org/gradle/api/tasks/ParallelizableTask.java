@@ -0,0 +1,42 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.tasks;
+
+import org.gradle.api.Incubating;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>Attached to a task type to indicate that tasks of this type do not access mutable project state while executing,
+ * and so may run in parallel with other parallelizable tasks of the same project.</p>
+ *
+ * <p>Tasks of the same project are only executed in parallel when parallel execution is enabled and the
+ * {@code org.gradle.parallel.intra} system property is set to {@code true}. Tasks with overlapping outputs are never executed in parallel.</p>
+ *
+ * <p>The annotation is not inherited. A task with actions added via {@link org.gradle.api.Task#doFirst(org.gradle.api.Action)} or
+ * {@link org.gradle.api.Task#doLast(org.gradle.api.Action)} is not executed in parallel with other tasks of its project, as there are no guarantees about what these actions do.</p>
+ */
+@Incubating
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface ParallelizableTask {
+}
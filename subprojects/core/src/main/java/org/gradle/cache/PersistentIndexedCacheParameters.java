@@ -26,6 +26,30 @@ public class PersistentIndexedCacheParameters<K, V> {
     private final Serializer<K> keySerializer;
     private final Serializer<V> valueSerializer;
     private CacheDecorator cacheDecorator;
+    private StoreType storeType = StoreType.BTREE;
+
+    /**
+     * The file format used to persist the cache entries.
+     */
+    public enum StoreType {
+        /**
+         * Entries are stored in a B-tree, updated in place.
+         */
+        BTREE,
+        /**
+         * Entries are appended to a log, which is compacted from time to time. Better suited to caches that are written often.
+         */
+        APPEND_ONLY_LOG;
+
+        public static final String SYSTEM_PROPERTY = "org.gradle.internal.cache.appendOnlyLog";
+
+        /**
+         * Returns the store type to use for caches that support both types.
+         */
+        public static StoreType fromSystemProperty() {
+            return Boolean.getBoolean(SYSTEM_PROPERTY) ? APPEND_ONLY_LOG : BTREE;
+        }
+    }
 
     public PersistentIndexedCacheParameters(String cacheName, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
         this.cacheName = cacheName;
@@ -67,4 +91,14 @@ public class PersistentIndexedCacheParameters<K, V> {
         this.cacheDecorator = cacheDecorator;
         return this;
     }
+
+    public StoreType getStoreType() {
+        return storeType;
+    }
+
+    public PersistentIndexedCacheParameters<K, V> storeType(StoreType storeType) {
+        assert storeType != null;
+        this.storeType = storeType;
+        return this;
+    }
 }
@@ -20,9 +20,15 @@ import org.gradle.api.Nullable;
 import org.gradle.api.Transformer;
 import org.gradle.internal.Factory;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 public class AsyncCacheAccessDecoratedCache<K, V> implements MultiProcessSafeAsyncPersistentIndexedCache<K, V> {
     private final AsyncCacheAccess asyncCacheAccess;
     private final MultiProcessSafePersistentIndexedCache<K, V> persistentCache;
+    private final Map<K, PendingWrite> pendingWrites = new HashMap<K, PendingWrite>();
 
     public AsyncCacheAccessDecoratedCache(AsyncCacheAccess asyncCacheAccess, MultiProcessSafePersistentIndexedCache<K, V> persistentCache) {
         this.asyncCacheAccess = asyncCacheAccess;
@@ -52,30 +58,75 @@ public class AsyncCacheAccessDecoratedCache<K, V> implements MultiProcessSafeAsy
 
     @Override
     public void putLater(final K key, final V value, final Runnable completion) {
-        asyncCacheAccess.enqueue(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    persistentCache.put(key, value);
-                } finally {
-                    completion.run();
-                }
-            }
-        });
+        write(key, value, false, completion);
     }
 
     @Override
     public void removeLater(final K key, final Runnable completion) {
-        asyncCacheAccess.enqueue(new Runnable() {
-            @Override
-            public void run() {
-                try {
+        write(key, null, true, completion);
+    }
+
+    /**
+     * Queues a write of the given key. When a write of the same key is still queued, the value is replaced in that write instead, so that only the most
+     * recent value is written.
+     */
+    private void write(K key, @Nullable V value, boolean remove, Runnable completion) {
+        PendingWrite pendingWrite;
+        synchronized (pendingWrites) {
+            pendingWrite = pendingWrites.get(key);
+            if (pendingWrite != null) {
+                pendingWrite.update(value, remove, completion);
+                return;
+            }
+            pendingWrite = new PendingWrite(key, value, remove, completion);
+            pendingWrites.put(key, pendingWrite);
+        }
+        // Enqueue outside the lock, as this blocks when the queue is full
+        try {
+            asyncCacheAccess.enqueue(pendingWrite);
+        } catch (RuntimeException e) {
+            synchronized (pendingWrites) {
+                pendingWrites.remove(key);
+            }
+            throw e;
+        }
+    }
+
+    private class PendingWrite implements Runnable {
+        private final K key;
+        private final List<Runnable> completions = new ArrayList<Runnable>(1);
+        private V value;
+        private boolean remove;
+
+        PendingWrite(K key, V value, boolean remove, Runnable completion) {
+            this.key = key;
+            update(value, remove, completion);
+        }
+
+        void update(V value, boolean remove, Runnable completion) {
+            this.value = value;
+            this.remove = remove;
+            completions.add(completion);
+        }
+
+        @Override
+        public void run() {
+            // Take the write out of the pending writes before running it, so that later writes to the same key are queued again
+            synchronized (pendingWrites) {
+                pendingWrites.remove(key);
+            }
+            try {
+                if (remove) {
                     persistentCache.remove(key);
-                } finally {
+                } else {
+                    persistentCache.put(key, value);
+                }
+            } finally {
+                for (Runnable completion : completions) {
                     completion.run();
                 }
             }
-        });
+        }
     }
 
     @Override
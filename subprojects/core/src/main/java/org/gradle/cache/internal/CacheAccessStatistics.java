@@ -0,0 +1,156 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import net.jcip.annotations.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects statistics about the workers that apply queued updates to the caches opened by this process, so that they can be reported for each build.
+ */
+@ThreadSafe
+public class CacheAccessStatistics {
+    private final Map<String, WorkerCounters> workers = new LinkedHashMap<String, WorkerCounters>();
+
+    synchronized WorkerCounters forCache(String cacheDisplayName) {
+        WorkerCounters counters = workers.get(cacheDisplayName);
+        if (counters == null) {
+            counters = new WorkerCounters(cacheDisplayName);
+            workers.put(cacheDisplayName, counters);
+        }
+        return counters;
+    }
+
+    /**
+     * Returns the statistics of each cache whose worker has done some work since the previous call, and starts counting again.
+     */
+    public synchronized List<WorkerStatistics> takeStatistics() {
+        List<WorkerStatistics> statistics = new ArrayList<WorkerStatistics>();
+        for (WorkerCounters counters : workers.values()) {
+            WorkerStatistics worker = counters.take();
+            if (worker != null) {
+                statistics.add(worker);
+            }
+        }
+        return statistics;
+    }
+
+    @ThreadSafe
+    static class WorkerCounters {
+        private final String cacheDisplayName;
+        private long operations;
+        private long batches;
+        private int maxBatchSize;
+        private int flushes;
+        private long flushWaitMillis;
+        private long maxFlushWaitMillis;
+
+        private WorkerCounters(String cacheDisplayName) {
+            this.cacheDisplayName = cacheDisplayName;
+        }
+
+        synchronized void batchCompleted(int operations, int batchSize) {
+            this.operations += operations;
+            batches++;
+            maxBatchSize = Math.max(maxBatchSize, batchSize);
+        }
+
+        synchronized void flushCompleted(long waitMillis) {
+            flushes++;
+            flushWaitMillis += waitMillis;
+            maxFlushWaitMillis = Math.max(maxFlushWaitMillis, waitMillis);
+        }
+
+        private synchronized WorkerStatistics take() {
+            if (batches == 0 && flushes == 0) {
+                return null;
+            }
+            WorkerStatistics statistics = new WorkerStatistics(cacheDisplayName, operations, batches, maxBatchSize, flushes, flushWaitMillis, maxFlushWaitMillis);
+            operations = 0;
+            batches = 0;
+            maxBatchSize = 0;
+            flushes = 0;
+            flushWaitMillis = 0;
+            maxFlushWaitMillis = 0;
+            return statistics;
+        }
+    }
+
+    public static class WorkerStatistics {
+        private final String cacheDisplayName;
+        private final long operations;
+        private final long batches;
+        private final int maxBatchSize;
+        private final int flushes;
+        private final long flushWaitMillis;
+        private final long maxFlushWaitMillis;
+
+        public WorkerStatistics(String cacheDisplayName, long operations, long batches, int maxBatchSize, int flushes, long flushWaitMillis, long maxFlushWaitMillis) {
+            this.cacheDisplayName = cacheDisplayName;
+            this.operations = operations;
+            this.batches = batches;
+            this.maxBatchSize = maxBatchSize;
+            this.flushes = flushes;
+            this.flushWaitMillis = flushWaitMillis;
+            this.maxFlushWaitMillis = maxFlushWaitMillis;
+        }
+
+        public String getCacheDisplayName() {
+            return cacheDisplayName;
+        }
+
+        /**
+         * The number of queued operations the worker ran.
+         */
+        public long getOperations() {
+            return operations;
+        }
+
+        /**
+         * The number of batches the operations were run in, each while holding the cache lock once.
+         */
+        public long getBatches() {
+            return batches;
+        }
+
+        /**
+         * The largest number of queued operations and commands taken by the worker at once.
+         */
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        /**
+         * The number of times a thread waited for the queued operations to complete.
+         */
+        public int getFlushes() {
+            return flushes;
+        }
+
+        public long getFlushWaitMillis() {
+            return flushWaitMillis;
+        }
+
+        public long getMaxFlushWaitMillis() {
+            return maxFlushWaitMillis;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import org.gradle.BuildAdapter;
+import org.gradle.BuildResult;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
+
+import java.util.List;
+
+/**
+ * Reports the {@link CacheAccessStatistics} collected during the build as the result of a build operation at the end of the build.
+ */
+public class CacheAccessStatisticsReporter extends BuildAdapter {
+    private final CacheAccessStatistics statistics;
+    private final BuildOperationExecutor buildOperationExecutor;
+
+    public CacheAccessStatisticsReporter(CacheAccessStatistics statistics, BuildOperationExecutor buildOperationExecutor) {
+        this.statistics = statistics;
+        this.buildOperationExecutor = buildOperationExecutor;
+    }
+
+    @Override
+    public void buildFinished(BuildResult result) {
+        // Do not report stats for nested builds, which would take the stats of the root build
+        if (result.getGradle() == null || result.getGradle().getParent() != null) {
+            return;
+        }
+        final List<CacheAccessStatistics.WorkerStatistics> caches = statistics.takeStatistics();
+        if (caches.isEmpty()) {
+            return;
+        }
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                context.setResult(new ReportCacheAccessStatisticsDetails.Result(caches));
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Report cache access statistics")
+                    .details(new ReportCacheAccessStatisticsDetails());
+            }
+        });
+    }
+}
@@ -23,6 +23,7 @@ import org.gradle.internal.UncheckedException;
 import org.gradle.internal.concurrent.ExecutorPolicy;
 import org.gradle.internal.concurrent.Stoppable;
 import org.gradle.internal.time.CountdownTimer;
+import org.gradle.internal.time.Timer;
 import org.gradle.internal.time.Timers;
 
 import java.util.ArrayList;
@@ -46,10 +47,12 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
     private boolean stopSeen;
     private final CountDownLatch doneSignal = new CountDownLatch(1);
     private final ExecutorPolicy.CatchAndRecordFailures failureHandler = new ExecutorPolicy.CatchAndRecordFailures();
+    private final CacheAccessStatistics.WorkerCounters statistics;
 
-    CacheAccessWorker(String displayName, CacheAccess cacheAccess) {
+    CacheAccessWorker(String displayName, CacheAccess cacheAccess, CacheAccessStatistics.WorkerCounters statistics) {
         this.displayName = displayName;
         this.cacheAccess = cacheAccess;
+        this.statistics = statistics;
         this.batchWindowMillis = 200;
         this.maximumLockingTimeMillis = 5000;
         HeapProportionalCacheSizer heapProportionalCacheSizer = new HeapProportionalCacheSizer();
@@ -93,9 +96,11 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
     @Override
     public synchronized void flush() {
         if (!workerCompleted && !closed) {
+            Timer timer = Timers.startTimer();
             FlushOperationsCommand flushOperationsCommand = new FlushOperationsCommand();
             addToQueue(flushOperationsCommand);
             flushOperationsCommand.await();
+            statistics.flushCompleted(timer.getElapsedMillis());
         }
         rethrowFailure();
     }
@@ -175,25 +180,36 @@ class CacheAccessWorker implements Runnable, Stoppable, AsyncCacheAccess {
                 @Override
                 public void run() {
                     CountdownTimer timer = Timers.startTimer(maximumLockingTimeMillis, TimeUnit.MILLISECONDS);
-                    if (updateOperation != null) {
-                        failureHandler.onExecute(updateOperation);
-                    }
-                    Runnable otherOperation;
+                    List<Runnable> batch = new ArrayList<Runnable>();
+                    batch.add(updateOperation);
                     try {
-                        while ((otherOperation = workQueue.poll(batchWindowMillis, TimeUnit.MILLISECONDS)) != null) {
-                            failureHandler.onExecute(otherOperation);
-                            final Class<? extends Runnable> runnableClass = otherOperation.getClass();
-                            if (runnableClass == FlushOperationsCommand.class) {
-                                flushOperations.add((FlushOperationsCommand) otherOperation);
+                        while (true) {
+                            // Take everything that is queued, so the operations are run without contending on the queue
+                            workQueue.drainTo(batch);
+                            int operations = 0;
+                            boolean releaseLock = false;
+                            for (Runnable operation : batch) {
+                                Class<? extends Runnable> runnableClass = operation.getClass();
+                                if (runnableClass == FlushOperationsCommand.class) {
+                                    flushOperations.add((FlushOperationsCommand) operation);
+                                    releaseLock = true;
+                                } else if (runnableClass == ShutdownOperationsCommand.class) {
+                                    stopSeen = true;
+                                } else if (!stopSeen) {
+                                    operations++;
+                                    failureHandler.onExecute(operation);
+                                }
                             }
-                            if (runnableClass == ShutdownOperationsCommand.class) {
-                                stopSeen = true;
+                            statistics.batchCompleted(operations, batch.size());
+                            batch.clear();
+                            if (releaseLock || stopSeen || timer.hasExpired()) {
+                                break;
                             }
-                            if (runnableClass == ShutdownOperationsCommand.class
-                                    || runnableClass == FlushOperationsCommand.class
-                                    || timer.hasExpired()) {
+                            Runnable nextOperation = workQueue.poll(batchWindowMillis, TimeUnit.MILLISECONDS);
+                            if (nextOperation == null) {
                                 break;
                             }
+                            batch.add(nextOperation);
                         }
                     } catch (InterruptedException e) {
                         throw UncheckedException.throwAsUncheckedException(e);
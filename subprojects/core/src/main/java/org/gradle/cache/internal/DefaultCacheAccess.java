@@ -25,6 +25,7 @@ import org.gradle.cache.PersistentIndexedCacheParameters;
 import org.gradle.cache.internal.btree.BTreePersistentIndexedCache;
 import org.gradle.cache.internal.cacheops.CacheAccessOperationsStack;
 import org.gradle.cache.internal.filelock.LockOptions;
+import org.gradle.cache.internal.logstructured.LogStructuredPersistentIndexedCache;
 import org.gradle.internal.Factories;
 import org.gradle.internal.Factory;
 import org.gradle.internal.SystemProperties;
@@ -40,6 +41,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -60,6 +62,7 @@ public class DefaultCacheAccess implements CacheCoordinator {
     private final File baseDir;
     private final CacheCleanupAction cleanupAction;
     private final ExecutorFactory executorFactory;
+    private final CacheAccessStatistics statistics;
     private final FileAccess fileAccess = new UnitOfWorkFileAccess();
     private final Map<String, IndexedCacheEntry> caches = new HashMap<String, IndexedCacheEntry>();
     private final AbstractCrossProcessCacheAccess crossProcessCacheAccess;
@@ -67,6 +70,8 @@ public class DefaultCacheAccess implements CacheCoordinator {
 
     private StoppableExecutor cacheUpdateExecutor;
     private CacheAccessWorker cacheAccessWorker;
+    private final Object compactionExecutorLock = new Object();
+    private StoppableExecutor compactionExecutor;
     private final Lock stateLock = new ReentrantLock(); // protects the following state
     private final Condition condition = stateLock.newCondition();
 
@@ -77,11 +82,12 @@ public class DefaultCacheAccess implements CacheCoordinator {
     private Runnable fileLockHeldByOwner;
     private int cacheClosedCount;
 
-    public DefaultCacheAccess(String cacheDisplayName, File lockTarget, LockOptions lockOptions, File baseDir, FileLockManager lockManager, CacheInitializationAction initializationAction, CacheCleanupAction cleanupAction, ExecutorFactory executorFactory) {
+    public DefaultCacheAccess(String cacheDisplayName, File lockTarget, LockOptions lockOptions, File baseDir, FileLockManager lockManager, CacheInitializationAction initializationAction, CacheCleanupAction cleanupAction, ExecutorFactory executorFactory, CacheAccessStatistics statistics) {
         this.cacheDisplayName = cacheDisplayName;
         this.baseDir = baseDir;
         this.cleanupAction = cleanupAction;
         this.executorFactory = executorFactory;
+        this.statistics = statistics;
         this.operations = new CacheAccessOperationsStack();
 
         Action<FileLock> onFileLockAcquireAction = new Action<FileLock>() {
@@ -114,13 +120,23 @@ public class DefaultCacheAccess implements CacheCoordinator {
 
     private synchronized AsyncCacheAccess getCacheAccessWorker() {
         if (cacheAccessWorker == null) {
-            cacheAccessWorker = new CacheAccessWorker(cacheDisplayName, this);
+            cacheAccessWorker = new CacheAccessWorker(cacheDisplayName, this, statistics.forCache(cacheDisplayName));
             cacheUpdateExecutor = executorFactory.create("Cache worker for " + cacheDisplayName);
             cacheUpdateExecutor.execute(cacheAccessWorker);
         }
         return cacheAccessWorker;
     }
 
+    private Executor getCompactionExecutor() {
+        // Not guarded by this access, as the caches are created while the thread that closes this access may be waiting for them
+        synchronized (compactionExecutorLock) {
+            if (compactionExecutor == null) {
+                compactionExecutor = executorFactory.create("Cache compaction for " + cacheDisplayName);
+            }
+            return compactionExecutor;
+        }
+    }
+
     @Override
     public void open() {
         stateLock.lock();
@@ -178,6 +194,12 @@ public class DefaultCacheAccess implements CacheCoordinator {
             fileLockHeldByOwner = null;
             stateLock.unlock();
         }
+        synchronized (compactionExecutorLock) {
+            if (compactionExecutor != null) {
+                compactionExecutor.stop();
+                compactionExecutor = null;
+            }
+        }
     }
 
     @Override
@@ -269,10 +291,22 @@ public class DefaultCacheAccess implements CacheCoordinator {
         IndexedCacheEntry entry = caches.get(parameters.getCacheName());
         try {
             if (entry == null) {
-                final File cacheFile = new File(baseDir, parameters.getCacheName() + ".bin");
+                final boolean appendOnlyLog = parameters.getStoreType() == PersistentIndexedCacheParameters.StoreType.APPEND_ONLY_LOG;
+                final File cacheFile = new File(baseDir, parameters.getCacheName() + (appendOnlyLog ? ".log" : ".bin"));
                 LOG.info("Creating new cache for {}, path {}, access {}", parameters.getCacheName(), cacheFile, this);
-                Factory<BTreePersistentIndexedCache<K, V>> indexedCacheFactory = new Factory<BTreePersistentIndexedCache<K, V>>() {
-                    public BTreePersistentIndexedCache<K, V> create() {
+                Factory<IndexedCacheStore<K, V>> indexedCacheFactory = new Factory<IndexedCacheStore<K, V>>() {
+                    // Kept between uses, so that its index does not need to be loaded again each time the cache is locked
+                    private LogStructuredPersistentIndexedCache<K, V> logStructuredCache;
+
+                    public IndexedCacheStore<K, V> create() {
+                        if (appendOnlyLog) {
+                            if (logStructuredCache == null) {
+                                logStructuredCache = doCreateLogStructuredCache(cacheFile, parameters.getKeySerializer(), parameters.getValueSerializer());
+                            } else {
+                                logStructuredCache.reopen();
+                            }
+                            return logStructuredCache;
+                        }
                         return doCreateCache(cacheFile, parameters.getKeySerializer(), parameters.getValueSerializer());
                     }
                 };
@@ -303,6 +337,10 @@ public class DefaultCacheAccess implements CacheCoordinator {
         return new BTreePersistentIndexedCache<K, V>(cacheFile, keySerializer, valueSerializer);
     }
 
+    <K, V> LogStructuredPersistentIndexedCache<K, V> doCreateLogStructuredCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
+        return new LogStructuredPersistentIndexedCache<K, V>(cacheFile, keySerializer, valueSerializer, getCompactionExecutor());
+    }
+
     /**
      * Called just after the file lock has been acquired.
      */
@@ -431,6 +469,7 @@ public class DefaultCacheAccess implements CacheCoordinator {
             checkCompatibleKeySerializer(faultMessages, parameters.getKeySerializer());
             checkCompatibleValueSerializer(faultMessages, parameters.getValueSerializer());
             checkCompatibleCacheDecorator(faultMessages, parameters.getCacheDecorator());
+            checkCompatibleStoreType(faultMessages, parameters.getStoreType());
 
             if (!faultMessages.isEmpty()) {
                 String lineSeparator = SystemProperties.getInstance().getLineSeparator();
@@ -473,6 +512,14 @@ public class DefaultCacheAccess implements CacheCoordinator {
                         cacheDecorator, parameters.getCacheDecorator()));
             }
         }
+
+        private void checkCompatibleStoreType(Collection<String> faultMessages, PersistentIndexedCacheParameters.StoreType storeType) {
+            if (storeType != parameters.getStoreType()) {
+                faultMessages.add(
+                    String.format(" * Requested store type (%s) doesn't match current store type (%s)",
+                        storeType, parameters.getStoreType()));
+            }
+        }
     }
 
     private static class InvalidCacheReuseException extends GradleException {
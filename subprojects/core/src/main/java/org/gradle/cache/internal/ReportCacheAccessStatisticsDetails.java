@@ -0,0 +1,50 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal;
+
+import org.gradle.internal.progress.BuildOperationDetails;
+
+import java.util.List;
+
+/**
+ * Reports how the updates to persistent caches were applied in the background during the build.
+ *
+ * This operation fires at the end of the root build, when any of the caches have been updated.
+ *
+ * This class is intentionally internal and consumed by the build scan plugin.
+ *
+ * @see CacheAccessStatistics
+ */
+public final class ReportCacheAccessStatisticsDetails implements BuildOperationDetails<ReportCacheAccessStatisticsDetails.Result> {
+
+    public static class Result {
+
+        private final List<CacheAccessStatistics.WorkerStatistics> caches;
+
+        public Result(List<CacheAccessStatistics.WorkerStatistics> caches) {
+            this.caches = caches;
+        }
+
+        /**
+         * The statistics of each cache that was updated during the build.
+         */
+        public List<CacheAccessStatistics.WorkerStatistics> getCaches() {
+            return caches;
+        }
+    }
+
+}
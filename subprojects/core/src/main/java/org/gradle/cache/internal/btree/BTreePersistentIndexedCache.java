@@ -16,6 +16,7 @@
 package org.gradle.cache.internal.btree;
 
 import org.gradle.api.UncheckedIOException;
+import org.gradle.cache.internal.IndexedCacheStore;
 import org.gradle.internal.io.StreamByteBuffer;
 import org.gradle.internal.serialize.Serializer;
 import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
@@ -44,8 +45,10 @@ import java.util.List;
 // todo - free list leaks disk space
 // todo - merge adjacent free blocks
 // todo - use more efficient lookup for free block with nearest size
-public class BTreePersistentIndexedCache<K, V> {
+public class BTreePersistentIndexedCache<K, V> implements IndexedCacheStore<K, V> {
     private static final Logger LOGGER = LoggerFactory.getLogger(BTreePersistentIndexedCache.class);
+    // The blocks changed by this many updates are written to the file together. Until then, they are read from memory
+    private static final int MAX_UNFLUSHED_UPDATES = 100;
     private final File cacheFile;
     private final KeyHasher<K> keyHasher;
     private final Serializer<V> serializer;
@@ -53,6 +56,7 @@ public class BTreePersistentIndexedCache<K, V> {
     private final int minIndexChildNodes;
     private final StateCheckBlockStore store;
     private HeaderBlock header;
+    private int unflushedUpdates;
 
     public BTreePersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
         this(cacheFile, keySerializer, valueSerializer, (short) 512, 512);
@@ -152,7 +156,7 @@ public class BTreePersistentIndexedCache<K, V> {
                 store.write(newBlock);
                 lookup.indexBlock.put(hashCode, newBlock.getPos());
             }
-            store.flush();
+            updated();
         } catch (Exception e) {
             throw new UncheckedIOException(String.format("Could not add entry '%s' to %s.", key, this), e);
         }
@@ -167,12 +171,27 @@ public class BTreePersistentIndexedCache<K, V> {
             lookup.indexBlock.remove(lookup.entry);
             DataBlock block = store.read(lookup.entry.dataBlock, DataBlock.class);
             store.remove(block);
-            store.flush();
+            updated();
         } catch (Exception e) {
             throw new UncheckedIOException(String.format("Could not remove entry '%s' from %s.", key, this), e);
         }
     }
 
+    private void updated() {
+        unflushedUpdates++;
+        if (unflushedUpdates >= MAX_UNFLUSHED_UPDATES) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the blocks changed by the updates since the last flush to the file. Also happens when the cache is closed.
+     */
+    public void flush() {
+        unflushedUpdates = 0;
+        store.flush();
+    }
+
     private IndexBlock load(BlockPointer pos, IndexRoot root, IndexBlock parent, int index) {
         IndexBlock block = store.read(pos, IndexBlock.class);
         block.root = root;
@@ -192,6 +211,7 @@ public class BTreePersistentIndexedCache<K, V> {
 
     public void close() {
         LOGGER.debug("Closing {}", this);
+        unflushedUpdates = 0;
         try {
             store.close();
         } catch (Exception e) {
@@ -24,17 +24,33 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Allows a stream of bytes to be read from a particular location of some backing byte stream.
+ *
+ * <p>Can optionally read through a memory mapping of the file. The mapping is extended when reads go past its end and the file has grown by
+ * at least {@link #MIN_MAPPING_GROWTH} bytes since it was created. Reads that are not covered by the mapping go to the file.</p>
  */
 class ByteInput {
+    static final long MIN_MAPPING_GROWTH = 1024 * 1024;
+
     private final RandomAccessFile file;
+    private final boolean memoryMapped;
     private final ResettableBufferedInputStream bufferedInputStream;
     private CountingInputStream countingInputStream;
+    private MappedByteBuffer mapping;
+    private long mappedLength;
 
     public ByteInput(RandomAccessFile file) {
+        this(file, false);
+    }
+
+    public ByteInput(RandomAccessFile file, boolean memoryMapped) {
         this.file = file;
+        this.memoryMapped = memoryMapped;
         bufferedInputStream = new ResettableBufferedInputStream(new RandomAccessFileInputStream(file));
     }
 
@@ -42,9 +58,17 @@ class ByteInput {
      * Starts reading from the given offset.
      */
     public DataInputStream start(long offset) throws IOException {
-        file.seek(offset);
-        bufferedInputStream.clear();
-        countingInputStream = new CountingInputStream(bufferedInputStream);
+        InputStream source;
+        if (memoryMapped && isMapped(offset)) {
+            ByteBuffer buffer = mapping.duplicate();
+            buffer.position((int) offset);
+            source = new MappedInputStream(buffer);
+        } else {
+            file.seek(offset);
+            bufferedInputStream.clear();
+            source = bufferedInputStream;
+        }
+        countingInputStream = new CountingInputStream(source);
         return new DataInputStream(countingInputStream);
     }
 
@@ -62,6 +86,69 @@ class ByteInput {
         countingInputStream = null;
     }
 
+    /**
+     * Discards the memory mapping. Must be called when the file is truncated.
+     */
+    public void discardMapping() {
+        mapping = null;
+        mappedLength = 0;
+    }
+
+    private boolean isMapped(long offset) throws IOException {
+        if (offset < mappedLength) {
+            return true;
+        }
+        long length = file.length();
+        if (offset >= length || length > Integer.MAX_VALUE || length - mappedLength < MIN_MAPPING_GROWTH) {
+            return false;
+        }
+        mapping = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        mappedLength = length;
+        return true;
+    }
+
+    /**
+     * Reads from the mapping, and continues reading from the file once the end of the mapping has been reached.
+     */
+    private class MappedInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        private boolean readingFile;
+
+        MappedInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (buffer.hasRemaining()) {
+                return buffer.get() & 0xFF;
+            }
+            return startReadingFile().read();
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (buffer.hasRemaining()) {
+                int count = Math.min(length, buffer.remaining());
+                buffer.get(bytes, offset, count);
+                return count;
+            }
+            return startReadingFile().read(bytes, offset, length);
+        }
+
+        private InputStream startReadingFile() throws IOException {
+            if (!readingFile) {
+                file.seek(buffer.position());
+                bufferedInputStream.clear();
+                readingFile = true;
+            }
+            return bufferedInputStream;
+        }
+    }
+
     private static class ResettableBufferedInputStream extends BufferedInputStream {
         ResettableBufferedInputStream(InputStream input) {
             super(input);
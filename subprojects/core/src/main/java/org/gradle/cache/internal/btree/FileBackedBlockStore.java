@@ -16,6 +16,7 @@
 package org.gradle.cache.internal.btree;
 
 import org.gradle.api.UncheckedIOException;
+import org.gradle.internal.os.OperatingSystem;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -24,7 +25,12 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 
 public class FileBackedBlockStore implements BlockStore {
+    public static final String MEMORY_MAPPED_READS_PROPERTY = "org.gradle.internal.cache.memoryMappedReads";
+    // Mapped files cannot be truncated on Windows
+    private static final boolean MEMORY_MAPPED_READS = Boolean.getBoolean(MEMORY_MAPPED_READS_PROPERTY) && !OperatingSystem.current().isWindows();
+
     private final File cacheFile;
+    private final boolean memoryMapped;
     private RandomAccessFile file;
     private ByteOutput output;
     private ByteInput input;
@@ -33,7 +39,15 @@ public class FileBackedBlockStore implements BlockStore {
     private long currentFileSize;
 
     public FileBackedBlockStore(File cacheFile) {
+        this(cacheFile, MEMORY_MAPPED_READS);
+    }
+
+    /**
+     * @param memoryMapped when true, blocks are read through a memory mapping of the file rather than with a seek and read per block.
+     */
+    public FileBackedBlockStore(File cacheFile, boolean memoryMapped) {
         this.cacheFile = cacheFile;
+        this.memoryMapped = memoryMapped;
     }
 
     @Override
@@ -47,7 +61,7 @@ public class FileBackedBlockStore implements BlockStore {
             cacheFile.getParentFile().mkdirs();
             file = new RandomAccessFile(cacheFile, "rw");
             output = new ByteOutput(file);
-            input = new ByteInput(file);
+            input = new ByteInput(file, memoryMapped);
             currentFileSize = file.length();
             nextBlock = currentFileSize;
             if (currentFileSize == 0) {
@@ -60,6 +74,7 @@ public class FileBackedBlockStore implements BlockStore {
 
     public void close() {
         try {
+            input.discardMapping();
             file.close();
         } catch (IOException e) {
             throw new UncheckedIOException(e);
@@ -68,6 +83,7 @@ public class FileBackedBlockStore implements BlockStore {
 
     public void clear() {
         try {
+            input.discardMapping();
             file.setLength(0);
             currentFileSize = 0;
         } catch (IOException e) {
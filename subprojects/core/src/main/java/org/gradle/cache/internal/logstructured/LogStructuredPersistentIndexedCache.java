@@ -0,0 +1,606 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.logstructured;
+
+import org.gradle.api.UncheckedIOException;
+import org.gradle.cache.internal.IndexedCacheStore;
+import org.gradle.cache.internal.btree.KeyHasher;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.io.RandomAccessFileInputStream;
+import org.gradle.internal.serialize.Serializer;
+import org.gradle.internal.serialize.kryo.KryoBackedDecoder;
+import org.gradle.internal.serialize.kryo.KryoBackedEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent indexed cache that appends every update to a log file, and keeps the location of the current value of each key in memory.
+ *
+ * <p>Updates never rewrite existing parts of the file. Superseded records are discarded by compacting the log, once they make up most of the log and
+ * the log has grown to several times its size after the previous compaction. Compaction starts in the background when the cache is opened, and copies
+ * the live records to a new log while the cache is in use. When the cache is closed, the records appended since are copied to the new log, which then
+ * replaces the existing log. A compaction that has not finished shortly after the cache is closed is abandoned. The in-memory index is written to a separate
+ * file when the cache is closed, so that it can be reopened without replaying the whole log. Only the part of the log written after the index is
+ * replayed on open. When the cache is reopened with {@link #reopen()} and the log has only been appended to since, the in-memory index is kept.</p>
+ *
+ * <p>Like {@link org.gradle.cache.internal.btree.BTreePersistentIndexedCache}, entries are identified by a hash of the serialized key.</p>
+ */
+public class LogStructuredPersistentIndexedCache<K, V> implements IndexedCacheStore<K, V> {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LogStructuredPersistentIndexedCache.class);
+
+    private static final int LOG_MAGIC = 0x4c4f4731;
+    private static final int INDEX_MAGIC = 0x49445832;
+    private static final int HEADER_SIZE = 4 + 8;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    // type, key hash, value length, checksum
+    private static final int RECORD_OVERHEAD = 1 + 8 + 4 + 4;
+    private static final long MIN_SIZE_TO_COMPACT = 1024 * 1024;
+    // Compacting rewrites every live record, so the log is left to grow this many times over before it is compacted again
+    private static final int GROWTH_FACTOR_TO_COMPACT = 4;
+    // How long closing the cache waits for a compaction in progress before abandoning it
+    private static final long MAX_COMPACTION_WAIT_MILLIS = 1000;
+
+    private final File logFile;
+    private final File indexFile;
+    private final KeyHasher<K> keyHasher;
+    private final Serializer<V> serializer;
+    private final Executor compactionExecutor;
+    private final Map<Long, Long> index = new HashMap<Long, Long>();
+    private final CRC32 checksum = new CRC32();
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+    private final byte[] recordHeader = new byte[RECORD_OVERHEAD - 4];
+    private RandomAccessFile file;
+    private long generation;
+    private long length;
+    // The length of the log after it was last compacted
+    private long compactedLength;
+    private long supersededRecords;
+    private boolean modified;
+    private Compaction compaction;
+
+    public LogStructuredPersistentIndexedCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer, Executor compactionExecutor) {
+        this.logFile = cacheFile;
+        this.indexFile = new File(cacheFile.getParentFile(), cacheFile.getName() + ".idx");
+        this.keyHasher = new KeyHasher<K>(keySerializer);
+        this.serializer = valueSerializer;
+        this.compactionExecutor = compactionExecutor;
+        try {
+            open();
+            startCompactionIfRequired();
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not open %s.", this), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "cache " + logFile.getName() + " (" + logFile + ")";
+    }
+
+    /**
+     * Reopens the cache after it has been closed. The in-memory index is kept when the log has only been appended to since the cache was closed,
+     * in which case only the appended records are replayed.
+     */
+    public void reopen() {
+        try {
+            file = new RandomAccessFile(logFile, "rw");
+            long currentLength = file.length();
+            modified = false;
+            if (currentLength >= length && currentLength >= HEADER_SIZE && file.readInt() == LOG_MAGIC && file.readLong() == generation) {
+                LOGGER.debug("Reopening {}", this);
+                long indexedLength = length;
+                length = currentLength;
+                replay(indexedLength);
+            } else {
+                // Compacted, discarded or truncated by another process
+                file.close();
+                open();
+            }
+            startCompactionIfRequired();
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not open %s.", this), e);
+        }
+    }
+
+    private void open() throws IOException {
+        LOGGER.debug("Opening {}", this);
+        index.clear();
+        supersededRecords = 0;
+        modified = false;
+        logFile.getParentFile().mkdirs();
+        file = new RandomAccessFile(logFile, "rw");
+        length = file.length();
+        if (length < HEADER_SIZE || file.readInt() != LOG_MAGIC) {
+            if (length > 0) {
+                LOGGER.warn("{} is corrupt. Discarding.", this);
+            }
+            initialize();
+            return;
+        }
+        generation = file.readLong();
+        long replayFrom = readIndex();
+        replay(replayFrom);
+    }
+
+    private void initialize() throws IOException {
+        index.clear();
+        supersededRecords = 0;
+        generation = new Random().nextLong();
+        file.setLength(0);
+        file.seek(0);
+        file.writeInt(LOG_MAGIC);
+        file.writeLong(generation);
+        length = HEADER_SIZE;
+        compactedLength = HEADER_SIZE;
+        indexFile.delete();
+    }
+
+    /**
+     * Loads the index written when the cache was last closed, and returns the position in the log up to which the index is current.
+     */
+    private long readIndex() {
+        // Not known without the index, so assume the log has just been compacted
+        compactedLength = length;
+        if (!indexFile.isFile()) {
+            return HEADER_SIZE;
+        }
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                if (input.readInt() != INDEX_MAGIC || input.readLong() != generation) {
+                    return HEADER_SIZE;
+                }
+                long indexedLength = input.readLong();
+                if (indexedLength > length) {
+                    return HEADER_SIZE;
+                }
+                long compacted = input.readLong();
+                long superseded = input.readLong();
+                int count = input.readInt();
+                for (int i = 0; i < count; i++) {
+                    index.put(input.readLong(), input.readLong());
+                }
+                compactedLength = compacted;
+                supersededRecords = superseded;
+                return indexedLength;
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            LOGGER.debug("Could not read index of {}. Replaying log.", this, e);
+            index.clear();
+            supersededRecords = 0;
+            return HEADER_SIZE;
+        }
+    }
+
+    /**
+     * Applies the records found in the log after the given position to the index. Discards an incomplete or corrupt tail of the log.
+     */
+    private void replay(long position) throws IOException {
+        file.seek(position);
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new RandomAccessFileInputStream(file)));
+        byte[] value = new byte[0];
+        long validLength = position;
+        try {
+            while (validLength < length) {
+                byte type = input.readByte();
+                long keyHash = input.readLong();
+                int valueLength = 0;
+                if (type == PUT) {
+                    valueLength = input.readInt();
+                    if (valueLength < 0 || validLength + RECORD_OVERHEAD + valueLength > length) {
+                        break;
+                    }
+                    if (value.length < valueLength) {
+                        value = new byte[valueLength];
+                    }
+                    input.readFully(value, 0, valueLength);
+                } else if (type != REMOVE) {
+                    break;
+                }
+                int recordChecksum = input.readInt();
+                if (recordChecksum != checksum(type, keyHash, value, valueLength)) {
+                    break;
+                }
+                if (type == PUT) {
+                    apply(keyHash, validLength);
+                    validLength += RECORD_OVERHEAD + valueLength;
+                } else {
+                    apply(keyHash, null);
+                    validLength += RECORD_OVERHEAD - 4;
+                }
+            }
+        } catch (EOFException e) {
+            // Incomplete record at the end of the log
+        }
+        if (validLength < length) {
+            LOGGER.warn("{} contains an incomplete or corrupt record. Discarding the end of the log.", this);
+            file.setLength(validLength);
+            length = validLength;
+            modified = true;
+        }
+    }
+
+    private void apply(long keyHash, Long position) {
+        Long previous = position == null ? index.remove(keyHash) : index.put(keyHash, position);
+        if (previous != null) {
+            supersededRecords++;
+        }
+        if (position == null) {
+            supersededRecords++;
+        }
+    }
+
+    @Override
+    public V get(K key) {
+        try {
+            Long position = index.get(keyHasher.getHashCode(key));
+            if (position == null) {
+                return null;
+            }
+            byte[] value = readValue(position);
+            if (value == null) {
+                LOGGER.warn("{} contains a corrupt record. Discarding the entry for '{}'.", this, key);
+                index.remove(keyHasher.getHashCode(key));
+                return null;
+            }
+            return serializer.read(new KryoBackedDecoder(new ByteArrayInputStream(value)));
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not read entry '%s' from %s.", key, this), e);
+        }
+    }
+
+    private byte[] readValue(long position) throws IOException {
+        return readValue(file, length, position, recordHeader, checksum);
+    }
+
+    private static byte[] readValue(RandomAccessFile file, long length, long position, byte[] recordHeader, CRC32 checksum) throws IOException {
+        if (position + recordHeader.length > length) {
+            return null;
+        }
+        // Read the record in two chunks, rather than a few bytes at a time
+        file.seek(position);
+        file.readFully(recordHeader);
+        DataInputStream header = new DataInputStream(new ByteArrayInputStream(recordHeader));
+        byte type = header.readByte();
+        long keyHash = header.readLong();
+        int valueLength = header.readInt();
+        if (type != PUT || valueLength < 0 || position + RECORD_OVERHEAD + valueLength > length) {
+            return null;
+        }
+        byte[] record = new byte[valueLength + 4];
+        file.readFully(record);
+        int recordChecksum = new DataInputStream(new ByteArrayInputStream(record, valueLength, 4)).readInt();
+        if (recordChecksum != checksum(checksum, type, keyHash, record, valueLength)) {
+            return null;
+        }
+        return valueLength == record.length ? record : Arrays.copyOf(record, valueLength);
+    }
+
+    @Override
+    public void put(K key, V value) {
+        try {
+            recordBuffer.reset();
+            KryoBackedEncoder encoder = new KryoBackedEncoder(recordBuffer);
+            serializer.write(encoder, value);
+            encoder.flush();
+            long keyHash = keyHasher.getHashCode(key);
+            long position = length;
+            append(PUT, keyHash, recordBuffer.toByteArray());
+            apply(keyHash, position);
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not add entry '%s' to %s.", key, this), e);
+        }
+    }
+
+    @Override
+    public void remove(K key) {
+        try {
+            long keyHash = keyHasher.getHashCode(key);
+            if (!index.containsKey(keyHash)) {
+                return;
+            }
+            append(REMOVE, keyHash, null);
+            apply(keyHash, null);
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not remove entry '%s' from %s.", key, this), e);
+        }
+    }
+
+    private void append(byte type, long keyHash, byte[] value) throws IOException {
+        int valueLength = value == null ? 0 : value.length;
+        ByteArrayOutputStream record = new ByteArrayOutputStream(RECORD_OVERHEAD + valueLength);
+        DataOutputStream output = new DataOutputStream(record);
+        output.writeByte(type);
+        output.writeLong(keyHash);
+        if (value != null) {
+            output.writeInt(valueLength);
+            output.write(value);
+        }
+        output.writeInt(checksum(type, keyHash, value, valueLength));
+        file.seek(length);
+        file.write(record.toByteArray());
+        length += record.size();
+        modified = true;
+    }
+
+    private int checksum(byte type, long keyHash, byte[] value, int valueLength) {
+        return checksum(checksum, type, keyHash, value, valueLength);
+    }
+
+    private static int checksum(CRC32 checksum, byte type, long keyHash, byte[] value, int valueLength) {
+        checksum.reset();
+        checksum.update(type);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            checksum.update((int) (keyHash >>> shift));
+        }
+        if (value != null) {
+            checksum.update(value, 0, valueLength);
+        }
+        return (int) checksum.getValue();
+    }
+
+    @Override
+    public void close() {
+        LOGGER.debug("Closing {}", this);
+        try {
+            try {
+                if (compaction != null) {
+                    finishCompaction();
+                }
+                if (modified) {
+                    writeIndex();
+                }
+            } finally {
+                file.close();
+            }
+        } catch (Exception e) {
+            throw new UncheckedIOException(String.format("Could not close %s.", this), e);
+        }
+    }
+
+    private boolean shouldCompact() {
+        return length >= MIN_SIZE_TO_COMPACT && length >= GROWTH_FACTOR_TO_COMPACT * compactedLength && supersededRecords > index.size();
+    }
+
+    private void startCompactionIfRequired() {
+        if (compaction == null && shouldCompact()) {
+            LOGGER.debug("Compacting {}", this);
+            compaction = new Compaction(new HashMap<Long, Long>(index), length, supersededRecords);
+            compactionExecutor.execute(compaction);
+        }
+    }
+
+    /**
+     * Replaces the log with the compacted log, once the records appended since the compaction started have been copied to it.
+     */
+    private void finishCompaction() throws IOException {
+        Compaction compaction = this.compaction;
+        this.compaction = null;
+        if (!compaction.awaitCompletion()) {
+            LOGGER.debug("Abandoned compaction of {}.", this);
+            compaction.compactedFile.delete();
+            return;
+        }
+        long appendedLength = length - compaction.snapshotLength;
+        RandomAccessFile output = new RandomAccessFile(compaction.compactedFile, "rw");
+        try {
+            output.seek(compaction.compactedLength);
+            file.seek(compaction.snapshotLength);
+            byte[] buffer = new byte[64 * 1024];
+            long remaining = appendedLength;
+            while (remaining > 0) {
+                int count = (int) Math.min(buffer.length, remaining);
+                file.readFully(buffer, 0, count);
+                output.write(buffer, 0, count);
+                remaining -= count;
+            }
+        } finally {
+            output.close();
+        }
+        Map<Long, Long> compactedIndex = new HashMap<Long, Long>(index.size());
+        for (Map.Entry<Long, Long> entry : index.entrySet()) {
+            long position = entry.getValue();
+            if (position >= compaction.snapshotLength) {
+                compactedIndex.put(entry.getKey(), compaction.compactedLength + position - compaction.snapshotLength);
+            } else {
+                // Unchanged since the compaction started, unless the record was found to be corrupt
+                Long compactedPosition = compaction.index.get(entry.getKey());
+                if (compactedPosition != null) {
+                    compactedIndex.put(entry.getKey(), compactedPosition);
+                }
+            }
+        }
+        file.close();
+        Files.move(compaction.compactedFile.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        file = new RandomAccessFile(logFile, "rw");
+        index.clear();
+        index.putAll(compactedIndex);
+        generation = compaction.generation;
+        length = compaction.compactedLength + appendedLength;
+        compactedLength = compaction.compactedLength;
+        // Records superseded since the compaction started, some of which may have been discarded by it
+        supersededRecords = Math.max(0, supersededRecords - compaction.snapshotSupersededRecords);
+        modified = true;
+    }
+
+    /**
+     * Copies the current value of each entry, as of when the compaction started, to a new log. Only reads the part of the log that existed when
+     * the compaction started, which is not changed while the cache is in use.
+     */
+    private class Compaction implements Runnable {
+        private final File compactedFile = new File(logFile.getParentFile(), logFile.getName() + ".compact");
+        private final long generation = new Random().nextLong();
+        private final Map<Long, Long> snapshot;
+        private final long snapshotLength;
+        private final long snapshotSupersededRecords;
+        private final Map<Long, Long> index = new HashMap<Long, Long>();
+        private final CRC32 checksum = new CRC32();
+        private final byte[] recordHeader = new byte[RECORD_OVERHEAD - 4];
+        private long compactedLength;
+        // The following state is guarded by this compaction
+        private boolean started;
+        private boolean finished;
+        private boolean completed;
+        private boolean cancelled;
+
+        Compaction(Map<Long, Long> snapshot, long snapshotLength, long snapshotSupersededRecords) {
+            this.snapshot = snapshot;
+            this.snapshotLength = snapshotLength;
+            this.snapshotSupersededRecords = snapshotSupersededRecords;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                started = true;
+            }
+            boolean result = false;
+            try {
+                result = compact();
+            } catch (Exception e) {
+                LOGGER.debug("Could not compact {}.", LogStructuredPersistentIndexedCache.this, e);
+            } finally {
+                synchronized (this) {
+                    finished = true;
+                    completed = result;
+                    notifyAll();
+                }
+            }
+        }
+
+        private synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        private boolean compact() throws IOException {
+            RandomAccessFile input = new RandomAccessFile(logFile, "r");
+            try {
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compactedFile)));
+                try {
+                    output.writeInt(LOG_MAGIC);
+                    output.writeLong(generation);
+                    long position = HEADER_SIZE;
+                    // Read the live records in the order they appear in the log
+                    List<Map.Entry<Long, Long>> entries = new ArrayList<Map.Entry<Long, Long>>(snapshot.entrySet());
+                    Collections.sort(entries, new Comparator<Map.Entry<Long, Long>>() {
+                        @Override
+                        public int compare(Map.Entry<Long, Long> left, Map.Entry<Long, Long> right) {
+                            return left.getValue().compareTo(right.getValue());
+                        }
+                    });
+                    for (Map.Entry<Long, Long> entry : entries) {
+                        if (isCancelled()) {
+                            return false;
+                        }
+                        byte[] value = readValue(input, snapshotLength, entry.getValue(), recordHeader, checksum);
+                        if (value == null) {
+                            continue;
+                        }
+                        long keyHash = entry.getKey();
+                        output.writeByte(PUT);
+                        output.writeLong(keyHash);
+                        output.writeInt(value.length);
+                        output.write(value);
+                        output.writeInt(checksum(checksum, PUT, keyHash, value, value.length));
+                        index.put(keyHash, position);
+                        position += RECORD_OVERHEAD + value.length;
+                    }
+                    compactedLength = position;
+                    return true;
+                } finally {
+                    output.close();
+                }
+            } finally {
+                input.close();
+            }
+        }
+
+        /**
+         * Waits a bounded time for the compaction to finish, and cancels it when it has not. Returns true when the compaction has completed.
+         */
+        synchronized boolean awaitCompletion() {
+            if (!started) {
+                // Not worth waiting for a compaction that has not started
+                cancelled = true;
+                return false;
+            }
+            long deadline = System.currentTimeMillis() + MAX_COMPACTION_WAIT_MILLIS;
+            while (!finished) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    // Stops before it reads the next record
+                    cancelled = true;
+                }
+                try {
+                    wait(cancelled ? 0 : remaining);
+                } catch (InterruptedException e) {
+                    throw UncheckedException.throwAsUncheckedException(e);
+                }
+            }
+            return completed;
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            output.writeInt(INDEX_MAGIC);
+            output.writeLong(generation);
+            output.writeLong(length);
+            output.writeLong(compactedLength);
+            output.writeLong(supersededRecords);
+            output.writeInt(index.size());
+            for (Map.Entry<Long, Long> entry : index.entrySet()) {
+                output.writeLong(entry.getKey());
+                output.writeLong(entry.getValue());
+            }
+        } finally {
+            output.close();
+        }
+    }
+}
@@ -16,6 +16,9 @@
 
 package org.gradle.caching.internal;
 
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
+
 public abstract class AbstractRoleAwareBuildCacheServiceDecorator extends ForwardingBuildCacheService implements RoleAwareBuildCacheService {
     private final RoleAwareBuildCacheService delegate;
 
@@ -28,6 +31,11 @@ public abstract class AbstractRoleAwareBuildCacheServiceDecorator extends Forwar
         return delegate;
     }
 
+    @Override
+    public boolean mightContain(BuildCacheKey key) throws BuildCacheException {
+        return delegate().mightContain(key);
+    }
+
     @Override
     public String getRole() {
         return delegate().getRole();
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal;
+
+import com.google.common.io.Files;
+import org.gradle.api.internal.file.TemporaryFileProvider;
+import org.gradle.caching.BuildCacheEntryWriter;
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.StoppableExecutor;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
+import org.gradle.util.GFileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores entries in the decorated build cache in the background, so that the build can continue while entries are being uploaded.
+ *
+ * Entries are written to a spool file when they are stored, and uploaded from there by a bounded number of threads. Storing an entry blocks when too
+ * many entries are waiting to be uploaded. Failures to store an entry are logged against that entry, as they can no longer be reported to the caller.
+ * Closing the decorator waits for the pending uploads to complete, up to a timeout, and cancels the remaining ones before closing the decorated service.
+ */
+public class AsyncPushBuildCacheServiceDecorator extends AbstractRoleAwareBuildCacheServiceDecorator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AsyncPushBuildCacheServiceDecorator.class);
+    private static final int CANCEL_TIMEOUT_SECONDS = 1;
+
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final TemporaryFileProvider temporaryFileProvider;
+    private final StoppableExecutor executor;
+    private final int maxPendingPushes;
+    private final Semaphore pendingPushes;
+    private final int drainTimeoutSeconds;
+    // Spool files of the entries that have not been pushed yet
+    private final Set<File> spoolFiles = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+    private volatile boolean cancelled;
+
+    public AsyncPushBuildCacheServiceDecorator(ExecutorFactory executorFactory, BuildOperationExecutor buildOperationExecutor, TemporaryFileProvider temporaryFileProvider, int maxParallelPushes, int maxPendingPushes, int drainTimeoutSeconds, RoleAwareBuildCacheService delegate) {
+        super(delegate);
+        this.buildOperationExecutor = buildOperationExecutor;
+        this.temporaryFileProvider = temporaryFileProvider;
+        this.executor = executorFactory.create("Push to " + delegate.getRole() + " build cache", maxParallelPushes);
+        this.maxPendingPushes = maxPendingPushes;
+        this.pendingPushes = new Semaphore(maxPendingPushes);
+        this.drainTimeoutSeconds = drainTimeoutSeconds;
+    }
+
+    @Override
+    public void store(final BuildCacheKey key, BuildCacheEntryWriter writer) throws BuildCacheException {
+        final File spoolFile = temporaryFileProvider.createTemporaryFile("gradle_cache_push", "entry");
+        spoolFiles.add(spoolFile);
+        boolean submitted = false;
+        try {
+            spool(writer, spoolFile);
+            pendingPushes.acquire();
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            if (!cancelled) {
+                                push(key, spoolFile);
+                            }
+                        } catch (Exception e) {
+                            LOGGER.warn("Could not store entry {} in {} build cache", key, getRole(), e);
+                        } finally {
+                            deleteSpoolFile(spoolFile);
+                            pendingPushes.release();
+                        }
+                    }
+                });
+            } catch (RuntimeException e) {
+                pendingPushes.release();
+                throw e;
+            }
+            submitted = true;
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        } catch (Exception e) {
+            // Not handled by the decorated service, as the entry never reaches it
+            LOGGER.warn("Could not store entry {} in {} build cache", key, getRole(), e);
+        } finally {
+            if (!submitted) {
+                deleteSpoolFile(spoolFile);
+            }
+        }
+    }
+
+    private static void spool(BuildCacheEntryWriter writer, File spoolFile) throws IOException {
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(spoolFile));
+        try {
+            writer.writeTo(output);
+        } finally {
+            output.close();
+        }
+    }
+
+    private void push(final BuildCacheKey key, final File spoolFile) {
+        // Runs without a parent, as the operation that stored the entry, and the one that created this decorator, have usually completed by now
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                AsyncPushBuildCacheServiceDecorator.super.store(key, new BuildCacheEntryWriter() {
+                    @Override
+                    public void writeTo(OutputStream output) throws IOException {
+                        Files.copy(spoolFile, output);
+                    }
+                });
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Push entry " + key + " to " + getRole() + " build cache");
+            }
+        });
+    }
+
+    private void deleteSpoolFile(File spoolFile) {
+        spoolFiles.remove(spoolFile);
+        GFileUtils.deleteQuietly(spoolFile);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (!pendingPushes.tryAcquire(maxPendingPushes, drainTimeoutSeconds, TimeUnit.SECONDS)) {
+                LOGGER.warn("Stopped pushing entries to {} build cache, as they did not complete within {} seconds.", getRole(), drainTimeoutSeconds);
+                // Pushes that have not started yet are skipped, and the ones in progress are interrupted
+                cancelled = true;
+            }
+            executor.stop(CANCEL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (IllegalStateException e) {
+            LOGGER.debug("Pushes to {} build cache did not stop after being cancelled.", getRole(), e);
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        } finally {
+            // Pushes that were still queued when the executor stopped never run
+            for (File spoolFile : spoolFiles) {
+                deleteSpoolFile(spoolFile);
+            }
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal;
+
+import org.gradle.caching.BuildCacheKey;
+
+/**
+ * Looks up build cache entries ahead of their use.
+ */
+public interface BuildCacheEntryPrefetcher {
+    BuildCacheEntryPrefetcher NO_OP = new BuildCacheEntryPrefetcher() {
+        @Override
+        public void prefetch(BuildCacheKey key) {
+        }
+
+        @Override
+        public void discard(BuildCacheKey key) {
+        }
+    };
+
+    /**
+     * Starts looking up the entry with the given key in the background, as it is likely to be loaded soon.
+     */
+    void prefetch(BuildCacheKey key);
+
+    /**
+     * Discards what was prefetched for the given key, if the entry has not been loaded.
+     */
+    void discard(BuildCacheKey key);
+}
@@ -24,11 +24,15 @@ import org.gradle.api.internal.file.TemporaryFileProvider;
 import org.gradle.api.internal.tasks.GeneratedSubclasses;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
 import org.gradle.caching.BuildCacheService;
 import org.gradle.caching.BuildCacheServiceFactory;
 import org.gradle.caching.configuration.BuildCache;
 import org.gradle.caching.configuration.internal.BuildCacheConfigurationInternal;
+import org.gradle.caching.internal.tasks.TaskOutputCompression;
 import org.gradle.internal.Cast;
+import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.operations.BuildOperationContext;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.operations.CallableBuildOperation;
@@ -46,20 +50,31 @@ import java.util.TreeMap;
 public class BuildCacheServiceProvider {
     private static final Logger LOGGER = Logging.getLogger(BuildCacheServiceProvider.class);
     private static final int MAX_ERROR_COUNT_FOR_BUILD_CACHE = 3;
+    private static final String COMPRESSION_PROPERTY_PATTERN = "org.gradle.caching.%s.compression";
+    private static final String SYNCHRONOUS_REMOTE_PUSH_PROPERTY = "org.gradle.caching.remote.synchronousPush";
+    private static final int MAX_PARALLEL_REMOTE_PUSHES = 4;
+    private static final int MAX_PENDING_REMOTE_PUSHES = 64;
+    private static final int REMOTE_PUSH_DRAIN_TIMEOUT_SECONDS = 300;
+    private static final int MAX_PARALLEL_PREFETCHES = 8;
+    private static final int MAX_PENDING_PREFETCHES = 32;
+    private static final String MAX_WRITE_THROUGH_ENTRY_SIZE_PROPERTY = "org.gradle.caching.local.maxWriteThroughEntrySize";
+    private static final long DEFAULT_MAX_WRITE_THROUGH_ENTRY_SIZE = 100 * 1024 * 1024;
 
     private final BuildCacheConfigurationInternal buildCacheConfiguration;
     private final BuildOperationExecutor buildOperationExecutor;
     private final Instantiator instantiator;
     private final StartParameter startParameter;
     private final TemporaryFileProvider temporaryFileProvider;
+    private final ExecutorFactory executorFactory;
 
     @Inject
-    public BuildCacheServiceProvider(BuildCacheConfigurationInternal buildCacheConfiguration, StartParameter startParameter, Instantiator instantiator, BuildOperationExecutor buildOperationExecutor, TemporaryFileProvider temporaryFileProvider) {
+    public BuildCacheServiceProvider(BuildCacheConfigurationInternal buildCacheConfiguration, StartParameter startParameter, Instantiator instantiator, BuildOperationExecutor buildOperationExecutor, TemporaryFileProvider temporaryFileProvider, ExecutorFactory executorFactory) {
         this.buildCacheConfiguration = buildCacheConfiguration;
         this.startParameter = startParameter;
         this.instantiator = instantiator;
         this.buildOperationExecutor = buildOperationExecutor;
         this.temporaryFileProvider = temporaryFileProvider;
+        this.executorFactory = executorFactory;
     }
 
     public BuildCacheService createBuildCacheService() {
@@ -97,22 +112,29 @@ public class BuildCacheServiceProvider {
                     remoteDescribedService == null ? null : remoteDescribedService.description
                 ));
 
+                TaskOutputCompression localCompression = compressionFor("local");
+                TaskOutputCompression remoteCompression = compressionFor("remote");
+
                 //noinspection ConstantConditions
                 RoleAwareBuildCacheService localRoleAware = localEnabled
-                    ? decorate(localDescribedService.service, "local")
+                    ? decorate(localDescribedService.service, "local", localCompression, false)
                     : null;
 
                 //noinspection ConstantConditions
                 RoleAwareBuildCacheService remoteRoleAware = remoteEnabled
-                    ? decorate(remoteDescribedService.service, "remote")
+                    ? decorate(remoteDescribedService.service, "remote", remoteCompression, remote.isPush() && !Boolean.getBoolean(SYNCHRONOUS_REMOTE_PUSH_PROPERTY))
                     : null;
 
                 if (localEnabled && remoteEnabled) {
-                    return new DispatchingBuildCacheService(localRoleAware, local.isPush(), remoteRoleAware, remote.isPush(), temporaryFileProvider);
+                    // Entries loaded from the remote cache are stored in the local cache, so that later builds don't need to download them again
+                    long maxWriteThroughEntrySize = Long.getLong(MAX_WRITE_THROUGH_ENTRY_SIZE_PROPERTY, DEFAULT_MAX_WRITE_THROUGH_ENTRY_SIZE);
+                    // Entries pushed to both caches only need to be compressed once, unless the caches use different compression
+                    TaskOutputCompression sharedCompression = localCompression == remoteCompression ? localCompression : null;
+                    return new DispatchingBuildCacheService(localRoleAware, local.isPush(), prefetch(remoteRoleAware), remote.isPush(), maxWriteThroughEntrySize, sharedCompression, temporaryFileProvider, buildOperationExecutor);
                 } else if (localEnabled) {
                     return preventPushIfNecessary(localRoleAware, local.isPush());
                 } else if (remoteEnabled) {
-                    return preventPushIfNecessary(remoteRoleAware, remote.isPush());
+                    return prefetch(preventPushIfNecessary(remoteRoleAware, remote.isPush()));
                 } else {
                     LOGGER.warn("Task output caching is enabled, but no build caches are configured or enabled.");
                     return new NoOpBuildCacheService();
@@ -128,6 +150,11 @@ public class BuildCacheServiceProvider {
     }
 
 
+    private RoleAwareBuildCacheService prefetch(RoleAwareBuildCacheService buildCacheService) {
+        // Only worth it for a remote cache
+        return new PrefetchingBuildCacheServiceDecorator(executorFactory, temporaryFileProvider, MAX_PARALLEL_PREFETCHES, MAX_PENDING_PREFETCHES, buildCacheService);
+    }
+
     private static RoleAwareBuildCacheService preventPushIfNecessary(RoleAwareBuildCacheService buildCacheService, boolean pushEnabled) {
         return pushEnabled ? buildCacheService : preventPush(buildCacheService);
     }
@@ -136,10 +163,20 @@ public class BuildCacheServiceProvider {
         return new PushOrPullPreventingBuildCacheServiceDecorator(true, false, buildCacheService);
     }
 
-    private RoleAwareBuildCacheService decorate(BuildCacheService rawService, String role) {
+    private static TaskOutputCompression compressionFor(String role) {
+        return TaskOutputCompression.fromSystemProperty(String.format(COMPRESSION_PROPERTY_PATTERN, role), TaskOutputCompression.DEFAULT);
+    }
+
+    private RoleAwareBuildCacheService decorate(BuildCacheService rawService, String role, TaskOutputCompression compression, boolean pushInBackground) {
         RoleAwareBuildCacheService decoratedService = new BuildCacheServiceWithRole(role, rawService);
         decoratedService = new BuildOperationFiringBuildCacheServiceDecorator(buildOperationExecutor, decoratedService);
         decoratedService = new ShortCircuitingErrorHandlerBuildCacheServiceDecorator(MAX_ERROR_COUNT_FOR_BUILD_CACHE, decoratedService);
+        if (pushInBackground) {
+            // Failures of background pushes are then counted against the entry that failed
+            decoratedService = new AsyncPushBuildCacheServiceDecorator(executorFactory, buildOperationExecutor, temporaryFileProvider, MAX_PARALLEL_REMOTE_PUSHES, MAX_PENDING_REMOTE_PUSHES, REMOTE_PUSH_DRAIN_TIMEOUT_SECONDS, decoratedService);
+        }
+        // Outermost, so that entries that are already compressed can be recognized
+        decoratedService = new CompressingBuildCacheServiceDecorator(compression, decoratedService);
         return decoratedService;
     }
 
@@ -201,6 +238,11 @@ public class BuildCacheServiceProvider {
             return delegate;
         }
 
+        @Override
+        public boolean mightContain(BuildCacheKey key) throws BuildCacheException {
+            return !(delegate instanceof ProbingBuildCacheService) || ((ProbingBuildCacheService) delegate).mightContain(key);
+        }
+
         @Override
         public String getRole() {
             return role;
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal;
+
+import org.gradle.internal.progress.BuildOperationDetails;
+
+/**
+ * Reports how often entries were found in each build cache, when both a local and a remote build cache are used.
+ *
+ * This operation fires when the build cache is closed at the end of the build.
+ *
+ * This class is intentionally internal and consumed by the build scan plugin.
+ *
+ * @see DispatchingBuildCacheService
+ */
+public final class BuildCacheStatisticsDetails implements BuildOperationDetails<BuildCacheStatisticsDetails.Result> {
+
+    public static class Result {
+
+        private final int localHits;
+        private final int remoteHits;
+        private final int misses;
+        private final int writtenThrough;
+        private final int tooLargeToWriteThrough;
+
+        public Result(int localHits, int remoteHits, int misses, int writtenThrough, int tooLargeToWriteThrough) {
+            this.localHits = localHits;
+            this.remoteHits = remoteHits;
+            this.misses = misses;
+            this.writtenThrough = writtenThrough;
+            this.tooLargeToWriteThrough = tooLargeToWriteThrough;
+        }
+
+        /**
+         * The number of entries found in the local build cache.
+         */
+        public int getLocalHits() {
+            return localHits;
+        }
+
+        /**
+         * The number of entries found in the remote build cache, and not in the local build cache.
+         */
+        public int getRemoteHits() {
+            return remoteHits;
+        }
+
+        /**
+         * The number of entries found in neither build cache.
+         */
+        public int getMisses() {
+            return misses;
+        }
+
+        /**
+         * The number of entries found in the remote build cache that were stored in the local build cache.
+         */
+        public int getWrittenThrough() {
+            return writtenThrough;
+        }
+
+        /**
+         * The number of entries found in the remote build cache that were too large to be stored in the local build cache.
+         */
+        public int getTooLargeToWriteThrough() {
+            return tooLargeToWriteThrough;
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal;
+
+import org.apache.commons.io.IOUtils;
+import org.gradle.caching.BuildCacheEntryWriter;
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.internal.tasks.TaskOutputCompression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Compresses entries stored in the decorated build cache. Loaded entries are passed on as they are, as the compression can be detected from the entry.
+ * Entries that are already compressed, as marked by {@link CompressedBuildCacheEntryWriter}, are stored as they are.
+ */
+public class CompressingBuildCacheServiceDecorator extends AbstractRoleAwareBuildCacheServiceDecorator {
+    private final TaskOutputCompression compression;
+
+    public CompressingBuildCacheServiceDecorator(TaskOutputCompression compression, RoleAwareBuildCacheService delegate) {
+        super(delegate);
+        this.compression = compression;
+    }
+
+    @Override
+    public void store(BuildCacheKey key, BuildCacheEntryWriter writer) throws BuildCacheException {
+        super.store(key, writer instanceof CompressedBuildCacheEntryWriter ? writer : compress(compression, writer));
+    }
+
+    /**
+     * Returns a writer that writes the entry of the given writer compressed with the given compression.
+     */
+    public static CompressedBuildCacheEntryWriter compress(final TaskOutputCompression compression, final BuildCacheEntryWriter writer) {
+        return new CompressedBuildCacheEntryWriter() {
+            @Override
+            public void writeTo(OutputStream output) throws IOException {
+                OutputStream compressedOutput = compression.compress(output);
+                try {
+                    writer.writeTo(compressedOutput);
+                    compressedOutput.close();
+                } finally {
+                    IOUtils.closeQuietly(compressedOutput);
+                }
+            }
+        };
+    }
+}
@@ -19,23 +19,40 @@ package org.gradle.caching.internal;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.io.Files;
 import org.apache.commons.io.IOUtils;
+import org.gradle.api.Nullable;
 import org.gradle.api.UncheckedIOException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
 import org.gradle.api.internal.file.TemporaryFileProvider;
 import org.gradle.caching.BuildCacheEntryReader;
 import org.gradle.caching.BuildCacheEntryWriter;
 import org.gradle.caching.BuildCacheException;
 import org.gradle.caching.BuildCacheKey;
+import org.gradle.caching.internal.tasks.TaskOutputCompression;
 import org.gradle.internal.concurrent.CompositeStoppable;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
 import org.gradle.util.GFileUtils;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class DispatchingBuildCacheService implements RoleAwareBuildCacheService {
+/**
+ * Loads entries from the local cache, or from the remote cache when the local cache does not have them.
+ * When the remote cache prefetches entries, only the entries the local cache does not have are prefetched.
+ */
+public class DispatchingBuildCacheService implements RoleAwareBuildCacheService, BuildCacheEntryPrefetcher {
+    private static final Logger LOGGER = Logging.getLogger(DispatchingBuildCacheService.class);
 
     @VisibleForTesting
     final RoleAwareBuildCacheService local;
@@ -46,21 +63,114 @@ public class DispatchingBuildCacheService implements RoleAwareBuildCacheService
     @VisibleForTesting
     final boolean pushToRemote;
 
+    @VisibleForTesting
+    final long maxWriteThroughEntrySize;
+
+    @VisibleForTesting
+    final TaskOutputCompression compression;
+
     private final TemporaryFileProvider temporaryFileProvider;
+    private final BuildOperationExecutor buildOperationExecutor;
     private final String role;
+    private final AtomicInteger localHits = new AtomicInteger();
+    private final AtomicInteger remoteHits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private final AtomicInteger writtenThrough = new AtomicInteger();
+    private final AtomicInteger tooLargeToWriteThrough = new AtomicInteger();
+
+    DispatchingBuildCacheService(RoleAwareBuildCacheService local, boolean pushToLocal, RoleAwareBuildCacheService remote, boolean pushToRemote, TemporaryFileProvider temporaryFileProvider, BuildOperationExecutor buildOperationExecutor) {
+        this(local, pushToLocal, remote, pushToRemote, 0, temporaryFileProvider, buildOperationExecutor);
+    }
+
+    /**
+     * When {@code maxWriteThroughEntrySize} is positive and pushing to the local cache is enabled, entries loaded from the remote cache are
+     * stored in the local cache as well, unless they are larger than the given size.
+     */
+    DispatchingBuildCacheService(RoleAwareBuildCacheService local, boolean pushToLocal, RoleAwareBuildCacheService remote, boolean pushToRemote, long maxWriteThroughEntrySize, TemporaryFileProvider temporaryFileProvider, BuildOperationExecutor buildOperationExecutor) {
+        this(local, pushToLocal, remote, pushToRemote, maxWriteThroughEntrySize, null, temporaryFileProvider, buildOperationExecutor);
+    }
 
-    DispatchingBuildCacheService(RoleAwareBuildCacheService local, boolean pushToLocal, RoleAwareBuildCacheService remote, boolean pushToRemote, TemporaryFileProvider temporaryFileProvider) {
+    /**
+     * When {@code compression} is given, entries pushed to both caches are compressed once with it, instead of by each cache.
+     */
+    DispatchingBuildCacheService(RoleAwareBuildCacheService local, boolean pushToLocal, RoleAwareBuildCacheService remote, boolean pushToRemote, long maxWriteThroughEntrySize, @Nullable TaskOutputCompression compression, TemporaryFileProvider temporaryFileProvider, BuildOperationExecutor buildOperationExecutor) {
         this.local = local;
         this.pushToLocal = pushToLocal;
         this.remote = remote;
         this.pushToRemote = pushToRemote;
+        this.maxWriteThroughEntrySize = maxWriteThroughEntrySize;
+        this.compression = compression;
         this.temporaryFileProvider = temporaryFileProvider;
+        this.buildOperationExecutor = buildOperationExecutor;
         this.role = local.getRole() + " and " + remote.getRole();
     }
 
     @Override
     public boolean load(BuildCacheKey key, BuildCacheEntryReader reader) throws BuildCacheException {
-        return local.load(key, reader) || remote.load(key, reader);
+        if (local.load(key, reader)) {
+            localHits.incrementAndGet();
+            return true;
+        }
+        boolean found = pushToLocal && maxWriteThroughEntrySize > 0
+            ? loadFromRemoteAndWriteThrough(key, reader)
+            : remote.load(key, reader);
+        if (found) {
+            remoteHits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
+        }
+        return found;
+    }
+
+    @Override
+    public boolean mightContain(BuildCacheKey key) throws BuildCacheException {
+        return local.mightContain(key) || remote.mightContain(key);
+    }
+
+    @Override
+    public void prefetch(BuildCacheKey key) {
+        if (remote instanceof BuildCacheEntryPrefetcher && !local.mightContain(key)) {
+            ((BuildCacheEntryPrefetcher) remote).prefetch(key);
+        }
+    }
+
+    @Override
+    public void discard(BuildCacheKey key) {
+        if (remote instanceof BuildCacheEntryPrefetcher) {
+            ((BuildCacheEntryPrefetcher) remote).discard(key);
+        }
+    }
+
+    private boolean loadFromRemoteAndWriteThrough(BuildCacheKey key, final BuildCacheEntryReader reader) {
+        final File destination = temporaryFileProvider.createTemporaryFile("gradle_cache", "entry");
+        try {
+            final AtomicBoolean complete = new AtomicBoolean();
+            // The entry is copied while it is being read, and only stored locally when it could be read successfully
+            boolean found = remote.load(key, new BuildCacheEntryReader() {
+                @Override
+                public void readFrom(InputStream input) throws IOException {
+                    SpoolingInputStream spoolingInput = new SpoolingInputStream(input, destination, maxWriteThroughEntrySize);
+                    try {
+                        reader.readFrom(spoolingInput);
+                        complete.set(spoolingInput.finish());
+                    } finally {
+                        spoolingInput.abort();
+                    }
+                }
+            });
+            if (found) {
+                if (complete.get()) {
+                    // The entry is stored as it was loaded, compressed or not
+                    local.store(key, new CompressedCopyBuildCacheEntryWriter(destination));
+                    writtenThrough.incrementAndGet();
+                } else {
+                    tooLargeToWriteThrough.incrementAndGet();
+                }
+            }
+            return found;
+        } finally {
+            GFileUtils.deleteQuietly(destination);
+        }
     }
 
     @Override
@@ -77,8 +187,14 @@ public class DispatchingBuildCacheService implements RoleAwareBuildCacheService
     private void pushToLocalAndRemote(BuildCacheKey key, BuildCacheEntryWriter writer) {
         File destination = temporaryFileProvider.createTemporaryFile("gradle_cache", "entry");
         try {
-            writeCacheEntryLocally(writer, destination);
-            BuildCacheEntryWriter copier = new CopyBuildCacheEntryWriter(destination);
+            BuildCacheEntryWriter copier;
+            if (compression != null) {
+                writeCacheEntryLocally(CompressingBuildCacheServiceDecorator.compress(compression, writer), destination);
+                copier = new CompressedCopyBuildCacheEntryWriter(destination);
+            } else {
+                writeCacheEntryLocally(writer, destination);
+                copier = new CopyBuildCacheEntryWriter(destination);
+            }
             local.store(key, copier);
             remote.store(key, copier);
         } catch (IOException e) {
@@ -107,7 +223,31 @@ public class DispatchingBuildCacheService implements RoleAwareBuildCacheService
 
     @Override
     public void close() throws IOException {
-        CompositeStoppable.stoppable(local, remote).stop();
+        try {
+            reportStatistics();
+        } finally {
+            CompositeStoppable.stoppable(local, remote).stop();
+        }
+    }
+
+    private void reportStatistics() {
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                BuildCacheStatisticsDetails.Result result = new BuildCacheStatisticsDetails.Result(
+                    localHits.get(), remoteHits.get(), misses.get(), writtenThrough.get(), tooLargeToWriteThrough.get());
+                LOGGER.info("Build cache hits: {} from {}, {} from {}, {} misses. Stored {} entries loaded from {} in {}, skipped {} too large entries.",
+                    result.getLocalHits(), local.getRole(), result.getRemoteHits(), remote.getRole(), result.getMisses(),
+                    result.getWrittenThrough(), remote.getRole(), local.getRole(), result.getTooLargeToWriteThrough());
+                context.setResult(result);
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Report build cache statistics")
+                    .details(new BuildCacheStatisticsDetails());
+            }
+        });
     }
 
     private class CopyBuildCacheEntryWriter implements BuildCacheEntryWriter {
@@ -122,4 +262,117 @@ public class DispatchingBuildCacheService implements RoleAwareBuildCacheService
             Files.copy(source, output);
         }
     }
+
+    private class CompressedCopyBuildCacheEntryWriter extends CopyBuildCacheEntryWriter implements CompressedBuildCacheEntryWriter {
+        private CompressedCopyBuildCacheEntryWriter(File source) {
+            super(source);
+        }
+    }
+
+    /**
+     * Copies the bytes read from the wrapped stream to a file, as long as they fit into the given size.
+     * Readers usually close the stream when they are done, so what they left in the stream is spooled on close.
+     */
+    private static class SpoolingInputStream extends FilterInputStream {
+        private final File destination;
+        private final long maxSize;
+        private OutputStream spool;
+        private long size;
+        private boolean drained;
+        private boolean complete;
+
+        SpoolingInputStream(InputStream input, File destination, long maxSize) throws IOException {
+            super(input);
+            this.destination = destination;
+            this.maxSize = maxSize;
+            this.spool = new BufferedOutputStream(new FileOutputStream(destination));
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                spool(new byte[]{(byte) b}, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                spool(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Read the skipped bytes so that they are spooled
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int count = read(buffer, 0, buffer.length);
+            return Math.max(count, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void spool(byte[] b, int off, int len) throws IOException {
+            if (spool == null) {
+                return;
+            }
+            size += len;
+            if (size > maxSize) {
+                abort();
+            } else {
+                spool.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+            } catch (IOException e) {
+                // The reader is done with the entry, failing to copy the rest only means it is not stored locally
+                abort();
+            } finally {
+                super.close();
+            }
+        }
+
+        /**
+         * Reads what the reader left in the stream and completes the spooled copy, unless this already happened when the stream was closed.
+         *
+         * @return whether the whole entry has been spooled.
+         */
+        boolean finish() throws IOException {
+            drain();
+            return complete;
+        }
+
+        private void drain() throws IOException {
+            if (drained) {
+                return;
+            }
+            drained = true;
+            byte[] buffer = new byte[8192];
+            while (spool != null) {
+                if (read(buffer, 0, buffer.length) < 0) {
+                    spool.close();
+                    spool = null;
+                    complete = true;
+                }
+            }
+        }
+
+        void abort() {
+            if (spool != null) {
+                IOUtils.closeQuietly(spool);
+                spool = null;
+            }
+        }
+    }
 }
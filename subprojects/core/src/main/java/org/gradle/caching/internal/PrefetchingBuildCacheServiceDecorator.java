@@ -0,0 +1,238 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal;
+
+import com.google.common.io.Files;
+import org.gradle.api.Nullable;
+import org.gradle.api.internal.file.TemporaryFileProvider;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.caching.BuildCacheEntryReader;
+import org.gradle.caching.BuildCacheException;
+import org.gradle.caching.BuildCacheKey;
+import org.gradle.internal.UncheckedException;
+import org.gradle.internal.concurrent.ExecutorFactory;
+import org.gradle.internal.concurrent.StoppableExecutor;
+import org.gradle.util.GFileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Downloads the entries it is asked to prefetch from the decorated build cache in the background, and keeps them in spool files until they are loaded.
+ * Loading an entry that has been prefetched reads it from its spool file, waiting for the download when it is in progress, and loading an entry that
+ * the decorated build cache turned out not to have does not request it again. Loading an entry whose download has not started yet loads it from the
+ * decorated build cache directly.
+ *
+ * At most a given number of entries are being prefetched or kept at the same time, further requests to prefetch are ignored.
+ * Failures to prefetch an entry are not reported, instead the entry is loaded from the decorated build cache.
+ */
+public class PrefetchingBuildCacheServiceDecorator extends AbstractRoleAwareBuildCacheServiceDecorator implements BuildCacheEntryPrefetcher {
+    private static final Logger LOGGER = Logging.getLogger(PrefetchingBuildCacheServiceDecorator.class);
+
+    private final TemporaryFileProvider temporaryFileProvider;
+    private final StoppableExecutor executor;
+    private final Semaphore prefetchPermits;
+    private final ConcurrentMap<String, Prefetch> prefetches = new ConcurrentHashMap<String, Prefetch>();
+
+    public PrefetchingBuildCacheServiceDecorator(ExecutorFactory executorFactory, TemporaryFileProvider temporaryFileProvider, int maxParallelPrefetches, int maxPendingPrefetches, RoleAwareBuildCacheService delegate) {
+        super(delegate);
+        this.temporaryFileProvider = temporaryFileProvider;
+        this.executor = executorFactory.create("Prefetch from " + delegate.getRole() + " build cache", maxParallelPrefetches);
+        this.prefetchPermits = new Semaphore(maxPendingPrefetches);
+    }
+
+    @Override
+    public void prefetch(BuildCacheKey key) {
+        if (prefetches.containsKey(key.getHashCode()) || !prefetchPermits.tryAcquire()) {
+            return;
+        }
+        Prefetch prefetch = new Prefetch(key);
+        if (prefetches.putIfAbsent(key.getHashCode(), prefetch) != null) {
+            prefetchPermits.release();
+            return;
+        }
+        try {
+            executor.execute(prefetch);
+        } catch (RuntimeException e) {
+            discard(key);
+            throw e;
+        }
+    }
+
+    @Override
+    public void discard(BuildCacheKey key) {
+        Prefetch prefetch = remove(key);
+        if (prefetch != null) {
+            prefetch.cancel();
+        }
+    }
+
+    @Override
+    public boolean load(BuildCacheKey key, BuildCacheEntryReader reader) throws BuildCacheException {
+        Prefetch prefetch = remove(key);
+        if (prefetch != null) {
+            PrefetchState state = prefetch.awaitDownload();
+            if (state == PrefetchState.FOUND) {
+                prefetch.readFrom(reader);
+                return true;
+            }
+            if (state == PrefetchState.MISSING) {
+                return false;
+            }
+        }
+        return super.load(key, reader);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            for (String hashCode : prefetches.keySet()) {
+                Prefetch prefetch = prefetches.remove(hashCode);
+                if (prefetch != null) {
+                    prefetchPermits.release();
+                    prefetch.cancel();
+                }
+            }
+            executor.stop();
+        } finally {
+            super.close();
+        }
+    }
+
+    @Nullable
+    private Prefetch remove(BuildCacheKey key) {
+        Prefetch prefetch = prefetches.remove(key.getHashCode());
+        if (prefetch != null) {
+            prefetchPermits.release();
+        }
+        return prefetch;
+    }
+
+    private enum PrefetchState {
+        PENDING, DOWNLOADING, FOUND, MISSING, FAILED, CANCELLED
+    }
+
+    private class Prefetch implements Runnable {
+        private final BuildCacheKey key;
+        private final Object lock = new Object();
+        private PrefetchState state = PrefetchState.PENDING;
+        private File spoolFile;
+
+        Prefetch(BuildCacheKey key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            synchronized (lock) {
+                if (state != PrefetchState.PENDING) {
+                    // Already loaded or discarded
+                    return;
+                }
+                state = PrefetchState.DOWNLOADING;
+            }
+            File file = null;
+            PrefetchState result;
+            try {
+                file = temporaryFileProvider.createTemporaryFile("gradle_cache_prefetch", "entry");
+                final File target = file;
+                boolean found = PrefetchingBuildCacheServiceDecorator.super.load(key, new BuildCacheEntryReader() {
+                    @Override
+                    public void readFrom(InputStream input) throws IOException {
+                        Files.asByteSink(target).writeFrom(input);
+                    }
+                });
+                result = found ? PrefetchState.FOUND : PrefetchState.MISSING;
+            } catch (Exception e) {
+                LOGGER.debug("Could not prefetch entry {} from {} build cache", key, getRole(), e);
+                result = PrefetchState.FAILED;
+            }
+            synchronized (lock) {
+                if (state == PrefetchState.DOWNLOADING) {
+                    state = result;
+                    if (result == PrefetchState.FOUND) {
+                        spoolFile = file;
+                        file = null;
+                    }
+                }
+                lock.notifyAll();
+            }
+            if (file != null) {
+                GFileUtils.deleteQuietly(file);
+            }
+        }
+
+        /**
+         * Waits for the download to complete when it is in progress, and prevents it from starting when it has not started yet.
+         */
+        PrefetchState awaitDownload() {
+            synchronized (lock) {
+                if (state == PrefetchState.PENDING) {
+                    state = PrefetchState.CANCELLED;
+                }
+                while (state == PrefetchState.DOWNLOADING) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        throw UncheckedException.throwAsUncheckedException(e);
+                    }
+                }
+                return state;
+            }
+        }
+
+        void readFrom(BuildCacheEntryReader reader) {
+            File file;
+            synchronized (lock) {
+                file = spoolFile;
+                spoolFile = null;
+            }
+            try {
+                InputStream input = new BufferedInputStream(new FileInputStream(file));
+                try {
+                    reader.readFrom(input);
+                } finally {
+                    input.close();
+                }
+            } catch (IOException e) {
+                throw new BuildCacheException("Could not read prefetched entry " + key + " from " + getRole() + " build cache", e);
+            } finally {
+                GFileUtils.deleteQuietly(file);
+            }
+        }
+
+        void cancel() {
+            File file;
+            synchronized (lock) {
+                // A download in progress deletes its spool file once it completes
+                state = PrefetchState.CANCELLED;
+                file = spoolFile;
+                spoolFile = null;
+            }
+            if (file != null) {
+                GFileUtils.deleteQuietly(file);
+            }
+        }
+    }
+}
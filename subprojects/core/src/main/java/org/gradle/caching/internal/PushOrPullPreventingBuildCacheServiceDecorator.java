@@ -44,6 +44,11 @@ public class PushOrPullPreventingBuildCacheServiceDecorator extends AbstractRole
         return super.load(key, reader);
     }
 
+    @Override
+    public boolean mightContain(BuildCacheKey key) throws BuildCacheException {
+        return !pullDisabled && super.mightContain(key);
+    }
+
     @Override
     public void store(BuildCacheKey key, BuildCacheEntryWriter writer) throws BuildCacheException {
         if (pushDisabled) {
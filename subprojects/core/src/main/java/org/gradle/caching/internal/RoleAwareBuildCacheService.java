@@ -16,8 +16,6 @@
 
 package org.gradle.caching.internal;
 
-import org.gradle.caching.BuildCacheService;
-
-public interface RoleAwareBuildCacheService extends BuildCacheService {
+public interface RoleAwareBuildCacheService extends ProbingBuildCacheService {
     String getRole();
 }
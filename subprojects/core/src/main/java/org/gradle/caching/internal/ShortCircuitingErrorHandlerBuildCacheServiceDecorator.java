@@ -68,6 +68,20 @@ public class ShortCircuitingErrorHandlerBuildCacheServiceDecorator extends Abstr
         return false;
     }
 
+    @Override
+    public boolean mightContain(BuildCacheKey key) {
+        if (enabled.get()) {
+            try {
+                return super.mightContain(key);
+            } catch (BuildCacheException e) {
+                // Leave it to loading the entry to report the problem
+                LOGGER.debug("Could not probe for entry {} in {} build cache", key, getRole(), e);
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     public void store(BuildCacheKey key, BuildCacheEntryWriter writer) {
         if (enabled.get()) {
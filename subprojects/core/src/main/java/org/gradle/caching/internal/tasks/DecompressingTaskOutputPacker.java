@@ -21,50 +21,72 @@ import org.gradle.api.UncheckedIOException;
 import org.gradle.api.internal.tasks.TaskOutputFilePropertySpec;
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginReader;
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginWriter;
+import org.gradle.internal.concurrent.Stoppable;
+import org.gradle.internal.concurrent.StoppableExecutor;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.SortedSet;
 import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 /**
- * Adds compression and CRC32 checks to the packed task output.
+ * Decompresses packed task output written with any {@link TaskOutputCompression}, detecting the compression from the entry itself.
+ *
+ * Task output is packed uncompressed, as the compression is chosen per build cache, see {@link org.gradle.caching.internal.CompressingBuildCacheServiceDecorator}.
+ *
+ * Entries are decompressed on the given executor, which is shared with the delegate and stopped along with this packer.
  */
-public class GZipTaskOutputPacker implements TaskOutputPacker {
+public class DecompressingTaskOutputPacker implements TaskOutputPacker, Stoppable {
+    private static final int READ_AHEAD_CHUNK_SIZE = 64 * 1024;
+    private static final int READ_AHEAD_CHUNKS = 16;
+
     private final TaskOutputPacker delegate;
+    private final StoppableExecutor executor;
 
-    public GZipTaskOutputPacker(TaskOutputPacker delegate) {
+    public DecompressingTaskOutputPacker(TaskOutputPacker delegate, StoppableExecutor executor) {
         this.delegate = delegate;
+        this.executor = executor;
     }
 
     @Override
     public void pack(SortedSet<TaskOutputFilePropertySpec> propertySpecs, OutputStream output, TaskOutputOriginWriter writeOrigin) {
-        GZIPOutputStream gzipOutput = createGzipOutputStream(output);
+        delegate.pack(propertySpecs, output, writeOrigin);
+    }
+
+    @Override
+    public void unpack(SortedSet<TaskOutputFilePropertySpec> propertySpecs, InputStream input, TaskOutputOriginReader readOrigin) {
+        BufferedInputStream bufferedInput = new BufferedInputStream(input);
+        if (!isCompressed(bufferedInput)) {
+            delegate.unpack(propertySpecs, bufferedInput, readOrigin);
+            return;
+        }
+        GZIPInputStream gzipInput = createGzipInputStream(bufferedInput);
         try {
-            delegate.pack(propertySpecs, gzipOutput, writeOrigin);
+            // Decompress on a separate thread, while the delegate consumes the previously decompressed data
+            ReadAheadInputStream decompressedInput = new ReadAheadInputStream(gzipInput, executor, READ_AHEAD_CHUNK_SIZE, READ_AHEAD_CHUNKS);
+            try {
+                delegate.unpack(propertySpecs, decompressedInput, readOrigin);
+            } finally {
+                decompressedInput.close();
+            }
         } finally {
-            IOUtils.closeQuietly(gzipOutput);
+            IOUtils.closeQuietly(gzipInput);
         }
     }
 
-    private GZIPOutputStream createGzipOutputStream(OutputStream output) {
+    private static boolean isCompressed(BufferedInputStream input) {
         try {
-            return new GZIPOutputStream(output);
+            return TaskOutputCompression.isCompressed(input);
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
     }
 
     @Override
-    public void unpack(SortedSet<TaskOutputFilePropertySpec> propertySpecs, InputStream input, TaskOutputOriginReader readOrigin) {
-        GZIPInputStream gzipInput = createGzipInputStream(input);
-        try {
-            delegate.unpack(propertySpecs, gzipInput, readOrigin);
-        } finally {
-            IOUtils.closeQuietly(gzipInput);
-        }
+    public void stop() {
+        executor.stop();
     }
 
     private GZIPInputStream createGzipInputStream(InputStream input) {
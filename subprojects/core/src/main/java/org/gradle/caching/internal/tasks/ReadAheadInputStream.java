@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import org.gradle.internal.UncheckedException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+/**
+ * Reads the given stream ahead on a separate thread, into a bounded number of buffers. Buffers that have been read are reused for the chunks
+ * that follow. Closing this stream does not close the source stream, but stops reading from it and waits for the reading thread to finish.
+ */
+class ReadAheadInputStream extends InputStream {
+    private static final Chunk END = new Chunk(new byte[0], 0);
+
+    private final BlockingQueue<Chunk> chunks;
+    private final BlockingQueue<byte[]> freeBuffers;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile Exception failure;
+    private volatile boolean closed;
+    private Chunk current;
+    private int position;
+
+    ReadAheadInputStream(final InputStream source, Executor executor, final int chunkSize, int maxChunks) {
+        this.chunks = new ArrayBlockingQueue<Chunk>(maxChunks);
+        // The queued chunks, plus the chunk being read and the chunk being filled
+        this.freeBuffers = new ArrayBlockingQueue<byte[]>(maxChunks + 2);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    readChunks(source, chunkSize);
+                } catch (InterruptedException e) {
+                    throw UncheckedException.throwAsUncheckedException(e);
+                } finally {
+                    finished.countDown();
+                }
+            }
+        });
+    }
+
+    private void readChunks(InputStream source, int chunkSize) throws InterruptedException {
+        try {
+            while (!closed) {
+                byte[] buffer = freeBuffers.poll();
+                if (buffer == null) {
+                    buffer = new byte[chunkSize];
+                }
+                int length = 0;
+                int read = 0;
+                while (length < chunkSize && (read = source.read(buffer, length, chunkSize - length)) >= 0) {
+                    length += read;
+                }
+                if (length > 0) {
+                    chunks.put(new Chunk(buffer, length));
+                }
+                if (read < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            chunks.put(END);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextChunk()) {
+            return -1;
+        }
+        return current.buffer[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current.buffer, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return current == null || current == END ? 0 : current.length - position;
+    }
+
+    private boolean nextChunk() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+        if (current != null && position < current.length) {
+            return true;
+        }
+        if (current == END) {
+            return false;
+        }
+        if (current != null) {
+            freeBuffers.offer(current.buffer);
+        }
+        try {
+            current = chunks.take();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+        position = 0;
+        if (current == END) {
+            Exception failure = this.failure;
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        // Make room for the reading thread, should it be waiting for the queue
+        chunks.clear();
+        try {
+            finished.await();
+        } catch (InterruptedException e) {
+            throw UncheckedException.throwAsUncheckedException(e);
+        }
+    }
+
+    private static class Chunk {
+        final byte[] buffer;
+        final int length;
+
+        Chunk(byte[] buffer, int length) {
+            this.buffer = buffer;
+            this.length = length;
+        }
+    }
+}
@@ -20,6 +20,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Strings;
 import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.input.CloseShieldInputStream;
@@ -43,6 +44,7 @@ import org.gradle.api.specs.Specs;
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginReader;
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginWriter;
 import org.gradle.internal.IoActions;
+import org.gradle.internal.UncheckedException;
 import org.gradle.internal.nativeplatform.filesystem.FileSystem;
 
 import java.io.ByteArrayOutputStream;
@@ -50,9 +52,15 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
@@ -67,13 +75,17 @@ public class TarTaskOutputPacker implements TaskOutputPacker {
     private static final String METADATA_PATH = "METADATA";
     private static final Pattern PROPERTY_PATH = Pattern.compile("(missing-)?property-([^/]+)(?:/(.*))?");
     private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final int MAX_BUFFERED_FILE_SIZE = 128 * 1024;
+    private static final int MAX_QUEUED_ACTIONS = 128;
 
     private final DefaultDirectoryWalkerFactory directoryWalkerFactory;
     private final FileSystem fileSystem;
+    private final Executor executor;
 
-    public TarTaskOutputPacker(FileSystem fileSystem) {
+    public TarTaskOutputPacker(FileSystem fileSystem, Executor executor) {
         this.directoryWalkerFactory = new DefaultDirectoryWalkerFactory(JavaVersion.current(), fileSystem);
         this.fileSystem = fileSystem;
+        this.executor = executor;
     }
 
     @Override
@@ -203,19 +215,27 @@ public class TarTaskOutputPacker implements TaskOutputPacker {
 
     @Override
     public void unpack(final SortedSet<TaskOutputFilePropertySpec> propertySpecs, InputStream input, final TaskOutputOriginReader readOrigin) {
-        IoActions.withResource(new TarInputStream(input), new Action<TarInputStream>() {
-            @Override
-            public void execute(TarInputStream tarInput) {
-                try {
-                    unpack(propertySpecs, tarInput, readOrigin);
-                } catch (IOException e) {
-                    throw new UncheckedIOException(e);
+        // Entries are parsed on the calling thread, while the output files are written on a separate thread
+        final OutputWriter outputWriter = new OutputWriter();
+        executor.execute(outputWriter);
+        try {
+            IoActions.withResource(new TarInputStream(input), new Action<TarInputStream>() {
+                @Override
+                public void execute(TarInputStream tarInput) {
+                    try {
+                        unpack(propertySpecs, tarInput, readOrigin, outputWriter);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
                 }
-            }
-        });
+            });
+            outputWriter.awaitCompletion();
+        } finally {
+            outputWriter.stop();
+        }
     }
 
-    private void unpack(SortedSet<TaskOutputFilePropertySpec> propertySpecs, TarInputStream tarInput, TaskOutputOriginReader readOriginAction) throws IOException {
+    private void unpack(SortedSet<TaskOutputFilePropertySpec> propertySpecs, TarInputStream tarInput, TaskOutputOriginReader readOriginAction, OutputWriter outputWriter) throws IOException {
         Map<String, TaskOutputFilePropertySpec> propertySpecsMap = Maps.uniqueIndex(propertySpecs, new Function<TaskFilePropertySpec, String>() {
             @Override
             public String apply(TaskFilePropertySpec propertySpec) {
@@ -246,7 +266,7 @@ public class TarTaskOutputPacker implements TaskOutputPacker {
 
                 boolean outputMissing = matcher.group(1) != null;
                 String childPath = matcher.group(3);
-                unpackPropertyEntry(propertySpec, tarInput, entry, childPath, outputMissing);
+                unpackPropertyEntry(propertySpec, tarInput, entry, childPath, outputMissing, outputWriter);
             }
         }
         if (!originSeen) {
@@ -254,27 +274,32 @@ public class TarTaskOutputPacker implements TaskOutputPacker {
         }
     }
 
-    private void unpackPropertyEntry(CacheableTaskOutputFilePropertySpec propertySpec, InputStream input, TarEntry entry, String childPath, boolean missing) throws IOException {
-        File propertyRoot = propertySpec.getOutputFile();
+    private void unpackPropertyEntry(CacheableTaskOutputFilePropertySpec propertySpec, InputStream input, TarEntry entry, String childPath, boolean missing, OutputWriter outputWriter) throws IOException {
+        final File propertyRoot = propertySpec.getOutputFile();
         if (propertyRoot == null) {
             throw new IllegalStateException("Optional property should have a value: " + propertySpec.getPropertyName());
         }
 
-        File outputFile;
+        final File outputFile;
         boolean isDirEntry = entry.isDirectory();
         if (Strings.isNullOrEmpty(childPath)) {
             // We are handling the root of the property here
             if (missing) {
-                if (!makeDirectory(propertyRoot.getParentFile())) {
-                    // Make sure output is removed if it exists already
-                    if (propertyRoot.exists()) {
-                        FileUtils.forceDelete(propertyRoot);
+                outputWriter.add(new OutputAction() {
+                    @Override
+                    public void execute() throws IOException {
+                        if (!makeDirectory(propertyRoot.getParentFile())) {
+                            // Make sure output is removed if it exists already
+                            if (propertyRoot.exists()) {
+                                FileUtils.forceDelete(propertyRoot);
+                            }
+                        }
                     }
-                }
+                });
                 return;
             }
 
-            OutputType outputType = propertySpec.getOutputType();
+            final OutputType outputType = propertySpec.getOutputType();
             if (isDirEntry) {
                 if (outputType != OutputType.DIRECTORY) {
                     throw new IllegalStateException("Property should be an output directory property: " + propertySpec.getPropertyName());
@@ -284,21 +309,47 @@ public class TarTaskOutputPacker implements TaskOutputPacker {
                     throw new IllegalStateException("Property should be an output file property: " + propertySpec.getPropertyName());
                 }
             }
-            ensureDirectoryForProperty(outputType, propertyRoot);
+            outputWriter.add(new OutputAction() {
+                @Override
+                public void execute() throws IOException {
+                    ensureDirectoryForProperty(outputType, propertyRoot);
+                }
+            });
             outputFile = propertyRoot;
         } else {
             outputFile = new File(propertyRoot, childPath);
         }
 
+        //noinspection OctalInteger
+        final int mode = entry.getMode() & 0777;
+        final long lastModified = getModificationTime(entry);
         if (isDirEntry) {
-            FileUtils.forceMkdir(outputFile);
+            outputWriter.add(new OutputAction() {
+                @Override
+                public void execute() throws IOException {
+                    FileUtils.forceMkdir(outputFile);
+                    restoreAttributes(outputFile, mode, lastModified);
+                }
+            });
+        } else if (entry.getSize() <= MAX_BUFFERED_FILE_SIZE) {
+            final byte[] content = ByteStreams.toByteArray(input);
+            outputWriter.add(new OutputAction() {
+                @Override
+                public void execute() throws IOException {
+                    Files.write(content, outputFile);
+                    restoreAttributes(outputFile, mode, lastModified);
+                }
+            });
         } else {
+            // Stream large files directly from the input, once everything before them has been written
+            outputWriter.awaitCompletion();
             Files.asByteSink(outputFile).writeFrom(input);
+            restoreAttributes(outputFile, mode, lastModified);
         }
+    }
 
-        //noinspection OctalInteger
-        fileSystem.chmod(outputFile, entry.getMode() & 0777);
-        long lastModified = getModificationTime(entry);
+    private void restoreAttributes(File outputFile, int mode, long lastModified) {
+        fileSystem.chmod(outputFile, mode);
         if (!outputFile.setLastModified(lastModified)) {
             throw new UnsupportedOperationException(String.format("Could not set modification time for '%s'", outputFile));
         }
@@ -352,4 +403,114 @@ public class TarTaskOutputPacker implements TaskOutputPacker {
         lastModified += TimeUnit.NANOSECONDS.toMillis(excessNanos);
         return lastModified;
     }
+
+    private interface OutputAction {
+        void execute() throws IOException;
+    }
+
+    private static class Barrier implements OutputAction {
+        private final CountDownLatch reached = new CountDownLatch(1);
+
+        @Override
+        public void execute() {
+            reached.countDown();
+        }
+    }
+
+    /**
+     * Applies the changes to the output files in the order they were added, on a single thread. Only a bounded number of changes are queued, so
+     * that parsing entries cannot get arbitrarily far ahead of writing them.
+     */
+    private static class OutputWriter implements Runnable {
+        private static final OutputAction END = new OutputAction() {
+            @Override
+            public void execute() {
+            }
+        };
+
+        private final BlockingQueue<OutputAction> queue = new ArrayBlockingQueue<OutputAction>(MAX_QUEUED_ACTIONS);
+        private volatile Throwable failure;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile boolean stopped;
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    OutputAction action = queue.take();
+                    if (action == END) {
+                        return;
+                    }
+                    if (action instanceof Barrier) {
+                        // Reached after a failure as well, so that the parser stops waiting and sees the failure
+                        action.execute();
+                        continue;
+                    }
+                    // Keep draining the queue after a failure, so that the parser does not block
+                    if (failure == null && !stopped) {
+                        try {
+                            action.execute();
+                        } catch (Throwable t) {
+                            failure = t;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            } finally {
+                List<OutputAction> remaining = new ArrayList<OutputAction>();
+                queue.drainTo(remaining);
+                for (OutputAction action : remaining) {
+                    if (action instanceof Barrier) {
+                        action.execute();
+                    }
+                }
+                finished.countDown();
+            }
+        }
+
+        void add(OutputAction action) {
+            rethrowFailure();
+            try {
+                queue.put(action);
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+        }
+
+        /**
+         * Blocks until all changes added so far have been applied, rethrowing any failure.
+         */
+        void awaitCompletion() {
+            Barrier barrier = new Barrier();
+            add(barrier);
+            try {
+                barrier.reached.await();
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+            rethrowFailure();
+        }
+
+        /**
+         * Discards any changes not yet applied and waits for the writer thread to finish.
+         */
+        void stop() {
+            stopped = true;
+            queue.clear();
+            try {
+                queue.put(END);
+                finished.await();
+            } catch (InterruptedException e) {
+                throw UncheckedException.throwAsUncheckedException(e);
+            }
+        }
+
+        private void rethrowFailure() {
+            Throwable failure = this.failure;
+            if (failure != null) {
+                throw UncheckedException.throwAsUncheckedException(failure);
+            }
+        }
+    }
 }
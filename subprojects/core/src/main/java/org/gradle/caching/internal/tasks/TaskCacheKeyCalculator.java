@@ -17,6 +17,7 @@
 package org.gradle.caching.internal.tasks;
 
 import com.google.common.hash.HashCode;
+import org.gradle.api.internal.changedetection.state.CachingFileCollectionSnapshotHasher;
 import org.gradle.api.internal.changedetection.state.FileCollectionSnapshot;
 import org.gradle.api.internal.changedetection.state.TaskExecution;
 import org.gradle.api.internal.changedetection.state.ValueSnapshot;
@@ -28,6 +29,11 @@ import java.util.SortedMap;
 import java.util.SortedSet;
 
 public class TaskCacheKeyCalculator {
+    private final CachingFileCollectionSnapshotHasher fileCollectionSnapshotHasher;
+
+    public TaskCacheKeyCalculator(CachingFileCollectionSnapshotHasher fileCollectionSnapshotHasher) {
+        this.fileCollectionSnapshotHasher = fileCollectionSnapshotHasher;
+    }
 
     public TaskOutputCachingBuildCacheKey calculate(TaskExecution execution) {
         DefaultTaskOutputCachingBuildCacheKeyBuilder builder = new DefaultTaskOutputCachingBuildCacheKeyBuilder();
@@ -48,10 +54,7 @@ public class TaskCacheKeyCalculator {
 
         SortedMap<String, FileCollectionSnapshot> inputFilesSnapshots = execution.getInputFilesSnapshot();
         for (Map.Entry<String, FileCollectionSnapshot> entry : inputFilesSnapshots.entrySet()) {
-            FileCollectionSnapshot snapshot = entry.getValue();
-            DefaultBuildCacheHasher newHasher = new DefaultBuildCacheHasher();
-            snapshot.appendToHasher(newHasher);
-            HashCode hash = newHasher.hash();
+            HashCode hash = fileCollectionSnapshotHasher.hash(entry.getValue());
             builder.appendInputPropertyHash(entry.getKey(), hash);
         }
 
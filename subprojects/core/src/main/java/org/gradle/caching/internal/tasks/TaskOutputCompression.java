@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks;
+
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The compression applied to a cache entry when storing it in a build cache. Compressed entries use the GZIP format, which records its own
+ * header, so entries written with any of these can be read back without knowing how they were written.
+ *
+ * <p>Uncompressed entries are TAR streams, which never start with the GZIP magic bytes.</p>
+ */
+public enum TaskOutputCompression {
+    NONE(0),
+    FAST(Deflater.BEST_SPEED),
+    DEFAULT(Deflater.DEFAULT_COMPRESSION),
+    HIGH(Deflater.BEST_COMPRESSION);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final int level;
+
+    TaskOutputCompression(int level) {
+        this.level = level;
+    }
+
+    /**
+     * Returns a stream that compresses into the given output. Closing the returned stream completes the compressed data, but does not close the
+     * given output.
+     */
+    public OutputStream compress(OutputStream output) throws IOException {
+        OutputStream shieldedOutput = new CloseShieldOutputStream(output);
+        if (this == NONE) {
+            return shieldedOutput;
+        }
+        return new GZIPOutputStream(shieldedOutput, BUFFER_SIZE) {
+            {
+                def.setLevel(level);
+            }
+        };
+    }
+
+    /**
+     * Returns whether the entry read from the given input is compressed, by looking for the GZIP magic bytes. The input must support {@link InputStream#mark(int)},
+     * and is reset to the start of the entry.
+     */
+    public static boolean isCompressed(InputStream input) throws IOException {
+        input.mark(2);
+        int first = input.read();
+        int second = input.read();
+        input.reset();
+        return first == (GZIPInputStream.GZIP_MAGIC & 0xff) && second == (GZIPInputStream.GZIP_MAGIC >> 8);
+    }
+
+    /**
+     * Returns the compression given by the system property with the given name, or the given default when the property is not set.
+     */
+    public static TaskOutputCompression fromSystemProperty(String propertyName, TaskOutputCompression defaultValue) {
+        String value = System.getProperty(propertyName);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.US));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("Invalid value '%s' for system property '%s', expected one of none, fast, default or high.", value, propertyName));
+        }
+    }
+}
@@ -80,7 +80,7 @@ public class TaskOutputOriginFactory {
     public TaskOutputOriginReader createReader(final TaskInternal task) {
         return new TaskOutputOriginReader() {
             @Override
-            public void execute(InputStream inputStream) {
+            public TaskOutputOriginMetadata execute(InputStream inputStream) {
                 // TODO: Replace this with something better
                 Properties properties = new Properties();
                 try {
@@ -92,6 +92,11 @@ public class TaskOutputOriginFactory {
                     throw new IllegalStateException("Cached result format error, corrupted origin metadata.");
                 }
                 LOGGER.info("Origin for {}: {}", task, properties);
+                try {
+                    return new TaskOutputOriginMetadata(Long.parseLong(properties.getProperty("executionTime")));
+                } catch (NumberFormatException e) {
+                    throw new IllegalStateException("Cached result format error, invalid execution time in origin metadata.", e);
+                }
             }
         };
     }
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.caching.internal.tasks.origin;
+
+/**
+ * The origin information of a cache entry that is used when loading it.
+ */
+public class TaskOutputOriginMetadata {
+    private final long executionTime;
+
+    public TaskOutputOriginMetadata(long executionTime) {
+        this.executionTime = executionTime;
+    }
+
+    /**
+     * The time in milliseconds it took to execute the task that produced the entry.
+     */
+    public long getExecutionTime() {
+        return executionTime;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.caching.internal.tasks.statistics;
+
+import com.google.common.collect.Lists;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Collects, per task type, how often the outputs of tasks are loaded from or stored in the build cache and how long that takes compared to
+ * executing the tasks.
+ */
+public class TaskOutputCacheStatistics {
+    private static final String DECORATED_SUFFIX = "_Decorated";
+
+    private final ConcurrentMap<String, TaskTypeStatistics> taskTypes = new ConcurrentHashMap<String, TaskTypeStatistics>();
+
+    /**
+     * Records that the outputs of a task have been loaded from the build cache.
+     *
+     * @param entrySize the number of bytes read from the build cache
+     * @param loadTime the time in milliseconds it took to load the entry
+     * @param originalExecutionTime the time in milliseconds it took to execute the task when the entry was created
+     */
+    public void loaded(Class<?> taskType, long entrySize, long loadTime, long originalExecutionTime) {
+        get(taskType).loaded(entrySize, loadTime, originalExecutionTime);
+    }
+
+    /**
+     * Records that no outputs of a task could be found in the build cache.
+     */
+    public void missed(Class<?> taskType) {
+        get(taskType).missed();
+    }
+
+    /**
+     * Records that the outputs of a task have been stored in the build cache.
+     *
+     * @param entrySize the number of bytes packed, before the entry is compressed
+     * @param storeTime the time in milliseconds it took to store the entry
+     * @param executionTime the time in milliseconds it took to execute the task
+     */
+    public void stored(Class<?> taskType, long entrySize, long storeTime, long executionTime) {
+        get(taskType).stored(entrySize, storeTime, executionTime);
+    }
+
+    public boolean isEmpty() {
+        return taskTypes.isEmpty();
+    }
+
+    /**
+     * Returns the statistics for each task type, ordered by the time saved by loading from the cache, largest first.
+     */
+    public List<TaskTypeStatistics> getTaskTypes() {
+        List<TaskTypeStatistics> result = Lists.newArrayList(taskTypes.values());
+        Collections.sort(result, new Comparator<TaskTypeStatistics>() {
+            @Override
+            public int compare(TaskTypeStatistics o1, TaskTypeStatistics o2) {
+                long saved1 = o1.getSavedTime();
+                long saved2 = o2.getSavedTime();
+                if (saved1 != saved2) {
+                    return saved1 > saved2 ? -1 : 1;
+                }
+                return o1.getTaskType().compareTo(o2.getTaskType());
+            }
+        });
+        return result;
+    }
+
+    private TaskTypeStatistics get(Class<?> taskType) {
+        String name = getTypeName(taskType);
+        TaskTypeStatistics statistics = taskTypes.get(name);
+        if (statistics == null) {
+            statistics = new TaskTypeStatistics(name);
+            TaskTypeStatistics existing = taskTypes.putIfAbsent(name, statistics);
+            if (existing != null) {
+                statistics = existing;
+            }
+        }
+        return statistics;
+    }
+
+    private static String getTypeName(Class<?> taskType) {
+        // Report the type declared in the build rather than the one generated for it
+        if (taskType.getName().endsWith(DECORATED_SUFFIX) && taskType.getSuperclass() != null) {
+            return taskType.getSuperclass().getName();
+        }
+        return taskType.getName();
+    }
+
+    public static class TaskTypeStatistics {
+        private final String taskType;
+        private int hits;
+        private int misses;
+        private int stores;
+        private long loadedBytes;
+        private long storedBytes;
+        private long loadTime;
+        private long storeTime;
+        private long originalExecutionTime;
+        private long executionTime;
+
+        TaskTypeStatistics(String taskType) {
+            this.taskType = taskType;
+        }
+
+        synchronized void loaded(long entrySize, long loadTime, long originalExecutionTime) {
+            hits++;
+            loadedBytes += entrySize;
+            this.loadTime += loadTime;
+            this.originalExecutionTime += originalExecutionTime;
+        }
+
+        synchronized void missed() {
+            misses++;
+        }
+
+        synchronized void stored(long entrySize, long storeTime, long executionTime) {
+            stores++;
+            storedBytes += entrySize;
+            this.storeTime += storeTime;
+            this.executionTime += executionTime;
+        }
+
+        public String getTaskType() {
+            return taskType;
+        }
+
+        public synchronized int getHits() {
+            return hits;
+        }
+
+        public synchronized int getMisses() {
+            return misses;
+        }
+
+        public synchronized int getStores() {
+            return stores;
+        }
+
+        public synchronized long getLoadedBytes() {
+            return loadedBytes;
+        }
+
+        public synchronized long getStoredBytes() {
+            return storedBytes;
+        }
+
+        public synchronized long getLoadTime() {
+            return loadTime;
+        }
+
+        public synchronized long getStoreTime() {
+            return storeTime;
+        }
+
+        /**
+         * The time it took to execute the tasks whose outputs were loaded from the cache, when they were executed to create the entries.
+         */
+        public synchronized long getOriginalExecutionTime() {
+            return originalExecutionTime;
+        }
+
+        /**
+         * The time it took to execute the tasks whose outputs were stored in the cache.
+         */
+        public synchronized long getExecutionTime() {
+            return executionTime;
+        }
+
+        /**
+         * The time saved by loading outputs from the cache instead of executing the tasks. Negative when loading took longer.
+         */
+        public synchronized long getSavedTime() {
+            return originalExecutionTime - loadTime;
+        }
+
+        /**
+         * Whether caching the outputs of tasks of this type costs more time than executing them, either because loading the outputs takes longer
+         * than executing the tasks did, or because storing them takes longer than executing them.
+         */
+        public synchronized boolean isMoreExpensiveThanExecuting() {
+            return (hits > 0 && loadTime > originalExecutionTime) || (stores > 0 && storeTime > executionTime);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.caching.internal.tasks.statistics;
+
+import com.google.common.base.Joiner;
+import org.gradle.BuildAdapter;
+import org.gradle.BuildResult;
+import org.gradle.api.UncheckedIOException;
+import org.gradle.api.invocation.Gradle;
+import org.gradle.api.logging.LogLevel;
+import org.gradle.internal.logging.ConsoleRenderer;
+import org.gradle.internal.logging.text.StyledTextOutput;
+import org.gradle.internal.logging.text.StyledTextOutputFactory;
+import org.gradle.util.GFileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+import static org.gradle.internal.time.Clock.prettyTime;
+
+/**
+ * Summarizes the {@link TaskOutputCacheStatistics} of the build on the console at the end of the build. When a report is requested,
+ * the summary is shown at lifecycle level and the statistics per task type are written to a CSV file next to the profile report.
+ */
+public class TaskOutputCacheStatisticsReporter extends BuildAdapter {
+    private static final String[] COLUMNS = {
+        "taskType", "hits", "misses", "stores", "loadedBytes", "storedBytes", "loadTimeMillis", "storeTimeMillis",
+        "originalExecutionTimeMillis", "executionTimeMillis", "savedTimeMillis", "moreExpensiveThanExecuting"
+    };
+
+    private static final Joiner CSV_JOINER = Joiner.on(',');
+
+    private final TaskOutputCacheStatistics statistics;
+    private final StyledTextOutputFactory textOutputFactory;
+    private final boolean writeReport;
+    private final long buildStarted;
+    private File buildDir;
+
+    public TaskOutputCacheStatisticsReporter(TaskOutputCacheStatistics statistics, StyledTextOutputFactory textOutputFactory, boolean writeReport, long buildStarted) {
+        this.statistics = statistics;
+        this.textOutputFactory = textOutputFactory;
+        this.writeReport = writeReport;
+        this.buildStarted = buildStarted;
+    }
+
+    @Override
+    public void projectsEvaluated(Gradle gradle) {
+        buildDir = gradle.getRootProject().getBuildDir();
+    }
+
+    @Override
+    public void buildFinished(BuildResult result) {
+        // Do not report stats for nested builds
+        if (result.getGradle() == null || result.getGradle().getParent() != null || statistics.isEmpty()) {
+            return;
+        }
+        List<TaskOutputCacheStatistics.TaskTypeStatistics> taskTypes = statistics.getTaskTypes();
+        renderSummary(taskTypes);
+        if (writeReport && buildDir != null) {
+            File reportFile = new File(buildDir, "reports/build-cache/statistics-" + new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss").format(new Date(buildStarted)) + ".csv");
+            writeReport(taskTypes, reportFile);
+            StyledTextOutput textOutput = textOutputFactory.create(TaskOutputCacheStatisticsReporter.class, LogLevel.WARN);
+            textOutput.formatln("See the build cache statistics at: %s", new ConsoleRenderer().asClickableFileUrl(reportFile));
+        }
+    }
+
+    private void renderSummary(List<TaskOutputCacheStatistics.TaskTypeStatistics> taskTypes) {
+        int hits = 0;
+        int misses = 0;
+        int stores = 0;
+        long savedTime = 0;
+        for (TaskOutputCacheStatistics.TaskTypeStatistics taskType : taskTypes) {
+            hits += taskType.getHits();
+            misses += taskType.getMisses();
+            stores += taskType.getStores();
+            savedTime += taskType.getSavedTime();
+        }
+        StyledTextOutput textOutput = textOutputFactory.create(TaskOutputCacheStatisticsReporter.class, writeReport ? LogLevel.LIFECYCLE : LogLevel.INFO);
+        textOutput.formatln("Build cache: %d hits, %d misses, %d stores, %s %s by loading from the cache.",
+            hits, misses, stores, prettyTime(Math.abs(savedTime)), savedTime >= 0 ? "saved" : "lost");
+        for (TaskOutputCacheStatistics.TaskTypeStatistics taskType : taskTypes) {
+            if (taskType.isMoreExpensiveThanExecuting()) {
+                textOutput.formatln("  Caching the outputs of %s takes longer than executing it (load %s, store %s, execute %s).",
+                    taskType.getTaskType(), prettyTime(taskType.getLoadTime()), prettyTime(taskType.getStoreTime()),
+                    prettyTime(taskType.getOriginalExecutionTime() + taskType.getExecutionTime()));
+            }
+        }
+    }
+
+    private static void writeReport(List<TaskOutputCacheStatistics.TaskTypeStatistics> taskTypes, File reportFile) {
+        GFileUtils.mkdirs(reportFile.getParentFile());
+        try {
+            PrintWriter writer = new PrintWriter(reportFile, "UTF-8");
+            try {
+                writer.println(CSV_JOINER.join(COLUMNS));
+                for (TaskOutputCacheStatistics.TaskTypeStatistics taskType : taskTypes) {
+                    writer.println(CSV_JOINER.join(
+                        taskType.getTaskType(),
+                        taskType.getHits(),
+                        taskType.getMisses(),
+                        taskType.getStores(),
+                        taskType.getLoadedBytes(),
+                        taskType.getStoredBytes(),
+                        taskType.getLoadTime(),
+                        taskType.getStoreTime(),
+                        taskType.getOriginalExecutionTime(),
+                        taskType.getExecutionTime(),
+                        taskType.getSavedTime(),
+                        taskType.isMoreExpensiveThanExecuting()
+                    ));
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Could not write build cache statistics to '%s'.", reportFile), e);
+        }
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashingOutputStream;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closer;
+import com.google.common.io.CountingInputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.tools.tar.TarEntry;
+import org.apache.tools.tar.TarInputStream;
+import org.apache.tools.tar.TarOutputStream;
+import org.gradle.caching.internal.tasks.TaskOutputCompression;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stores the contents of the files in directory build cache entries by their hash, so that a file that is part of several entries is only stored once.
+ *
+ * A deduplicated entry is stored as a manifest in place of the packed task output. The manifest records the TAR headers of the packed output, along with
+ * either the contents of each file, for small files, or the hash of the blob holding the contents. When the entry is loaded, the packed output is
+ * reassembled from the manifest and the blobs while it is being read. Blobs are added along with the manifest while holding the cache lock, and are
+ * removed by {@link DirectoryBuildCacheCleanup} once no remaining entry refers to them.
+ */
+class DirectoryBuildCacheBlobStore {
+    static final String BLOBS_DIR_NAME = "blobs";
+    // Not a valid start of a TAR or GZIP stream
+    private static final int MANIFEST_MAGIC = 0x47424d31;
+    private static final int TAR_RECORD_SIZE = 512;
+    private static final int MIN_BLOB_SIZE = 4 * 1024;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final File baseDir;
+    private final File blobsDir;
+
+    DirectoryBuildCacheBlobStore(File baseDir) {
+        this.baseDir = baseDir;
+        this.blobsDir = new File(baseDir, BLOBS_DIR_NAME);
+    }
+
+    File getBlobFile(String hash) {
+        return new File(new File(blobsDir, hash.substring(0, 2)), hash);
+    }
+
+    /**
+     * Writes a manifest for the packed task output in the given entry file, and writes the contents of its larger files to temporary files.
+     *
+     * @return the temporary files holding the blobs referenced by the manifest, by their hash. These are added to the store by {@link #commit(Map, boolean)}.
+     */
+    Map<String, File> deduplicate(File entryFile, File manifestFile) throws IOException {
+        Map<String, File> blobs = new LinkedHashMap<String, File>();
+        Closer closer = Closer.create();
+        try {
+            CountingInputStream input = new CountingInputStream(decompress(new BufferedInputStream(new FileInputStream(entryFile))));
+            TarInputStream tarInput = closer.register(new TarInputStream(input, "utf-8"));
+            DataOutputStream manifest = closer.register(openManifestForWriting(manifestFile));
+            TarEntry entry;
+            boolean empty = true;
+            while ((entry = nextEntry(tarInput)) != null) {
+                empty = false;
+                if (entry.getLinkName().length() > 0) {
+                    // Task output is packed without links
+                    throw new IOException(String.format("Cannot deduplicate link '%s'.", entry.getName()));
+                }
+                manifest.writeBoolean(true);
+                writeHeader(entry, manifest);
+                if (entry.getSize() < MIN_BLOB_SIZE) {
+                    byte[] contents = new byte[(int) entry.getSize()];
+                    ByteStreams.readFully(tarInput, contents);
+                    manifest.writeBoolean(false);
+                    manifest.write(contents);
+                } else {
+                    String hash = writeBlob(tarInput, blobs);
+                    manifest.writeBoolean(true);
+                    manifest.writeUTF(hash);
+                }
+            }
+            // TAR streams consist of whole records, other data may still be read as an entry
+            ByteStreams.copy(input, ByteStreams.nullOutputStream());
+            if (empty || input.getCount() % TAR_RECORD_SIZE != 0) {
+                throw new IOException("Cannot deduplicate entry that is not a TAR stream.");
+            }
+            manifest.writeBoolean(false);
+        } catch (Throwable e) {
+            for (File blob : blobs.values()) {
+                FileUtils.deleteQuietly(blob);
+            }
+            throw closer.rethrow(e, IOException.class);
+        } finally {
+            closer.close();
+        }
+        return blobs;
+    }
+
+    private static TarEntry nextEntry(TarInputStream tarInput) throws IOException {
+        try {
+            return tarInput.getNextEntry();
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Cannot deduplicate entry that is not a TAR stream.", e);
+        }
+    }
+
+    private String writeBlob(InputStream input, Map<String, File> blobs) throws IOException {
+        File tempFile = File.createTempFile("blob", ".part", baseDir);
+        HashingOutputStream output = new HashingOutputStream(Hashing.md5(), new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            ByteStreams.copy(input, output);
+        } finally {
+            output.close();
+        }
+        String hash = output.hash().toString();
+        if (blobs.containsKey(hash)) {
+            FileUtils.deleteQuietly(tempFile);
+        } else {
+            blobs.put(hash, tempFile);
+        }
+        return hash;
+    }
+
+    /**
+     * Adds the blobs written by {@link #deduplicate(File, File)} that are not in the store yet. Must be called while holding the cache lock.
+     *
+     * @param replaceExisting whether to also replace the blobs that are in the store already, for example when they may be corrupt.
+     */
+    void commit(Map<String, File> blobs, boolean replaceExisting) throws IOException {
+        for (Map.Entry<String, File> entry : blobs.entrySet()) {
+            File blobFile = getBlobFile(entry.getKey());
+            // An existing blob has the same contents, and may be being read without holding the lock, so is only ever replaced atomically
+            if (replaceExisting || !blobFile.exists()) {
+                FileUtils.forceMkdir(blobFile.getParentFile());
+                Files.move(entry.getValue().toPath(), blobFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * Opens the given entry file for reading, reassembling the packed task output if the entry is deduplicated.
+     *
+     * The entry is read without holding the cache lock. All the blobs it refers to are opened up front, so that a cleanup running in another process
+     * cannot remove them while the entry is being read.
+     *
+     * @return the entry's contents, or {@code null} when some of the blobs the entry refers to are missing.
+     * @throws FileNotFoundException when the entry file is missing.
+     */
+    InputStream open(File entryFile) throws IOException {
+        FileInputStream entryInput = new FileInputStream(entryFile);
+        Map<String, FileInputStream> blobs = new HashMap<String, FileInputStream>();
+        try {
+            InputStream input = new BufferedInputStream(entryInput);
+            if (!isManifest(input)) {
+                return input;
+            }
+            for (String hash : readBlobReferences(input)) {
+                try {
+                    blobs.put(hash, new FileInputStream(getBlobFile(hash)));
+                } catch (FileNotFoundException e) {
+                    closeAll(entryInput, blobs);
+                    return null;
+                }
+            }
+            entryInput.getChannel().position(4);
+            return new ReassemblingInputStream(openManifestForReading(new BufferedInputStream(entryInput)), blobs);
+        } catch (IOException e) {
+            closeAll(entryInput, blobs);
+            throw e;
+        }
+    }
+
+    private static void closeAll(InputStream entryInput, Map<String, FileInputStream> blobs) {
+        IOUtils.closeQuietly(entryInput);
+        for (InputStream blob : blobs.values()) {
+            IOUtils.closeQuietly(blob);
+        }
+    }
+
+    /**
+     * Returns the hashes of the blobs the given entry file refers to. Entries that are not deduplicated, or missing, do not refer to any blobs.
+     *
+     * @throws IOException when the entry cannot be read, for example when its manifest is corrupt.
+     */
+    Set<String> getBlobReferences(File entryFile) throws IOException {
+        InputStream input;
+        try {
+            input = new BufferedInputStream(new FileInputStream(entryFile));
+        } catch (FileNotFoundException e) {
+            return Collections.emptySet();
+        }
+        try {
+            return isManifest(input) ? readBlobReferences(input) : Collections.<String>emptySet();
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Returns the size of each blob in the store, by its hash.
+     */
+    Map<String, Long> getBlobSizes() {
+        Map<String, Long> blobs = new HashMap<String, Long>();
+        File[] prefixDirs = blobsDir.listFiles();
+        if (prefixDirs != null) {
+            for (File prefixDir : prefixDirs) {
+                File[] files = prefixDir.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        blobs.put(file.getName(), file.length());
+                    }
+                }
+            }
+        }
+        return blobs;
+    }
+
+    private static InputStream decompress(BufferedInputStream input) throws IOException {
+        return TaskOutputCompression.isCompressed(input) ? new GZIPInputStream(input) : input;
+    }
+
+    private static boolean isManifest(InputStream input) throws IOException {
+        input.mark(4);
+        DataInputStream dataInput = new DataInputStream(input);
+        try {
+            if (dataInput.readInt() == MANIFEST_MAGIC) {
+                return true;
+            }
+        } catch (EOFException e) {
+            // Too short to be a manifest
+        }
+        input.reset();
+        return false;
+    }
+
+    private static DataOutputStream openManifestForWriting(File manifestFile) throws IOException {
+        OutputStream output = new FileOutputStream(manifestFile);
+        new DataOutputStream(output).writeInt(MANIFEST_MAGIC);
+        return new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(output)));
+    }
+
+    private static DataInputStream openManifestForReading(InputStream input) {
+        return new DataInputStream(new BufferedInputStream(new InflaterInputStream(input)));
+    }
+
+    private static Set<String> readBlobReferences(InputStream input) throws IOException {
+        Set<String> blobs = Sets.newHashSet();
+        DataInputStream manifest = openManifestForReading(input);
+        while (manifest.readBoolean()) {
+            TarEntry entry = readHeader(manifest);
+            if (manifest.readBoolean()) {
+                blobs.add(manifest.readUTF());
+            } else {
+                ByteStreams.skipFully(manifest, entry.getSize());
+            }
+        }
+        return blobs;
+    }
+
+    private static void writeHeader(TarEntry entry, DataOutputStream manifest) throws IOException {
+        manifest.writeUTF(entry.getName());
+        manifest.writeInt(entry.getMode());
+        manifest.writeLong(entry.getModTime().getTime());
+        manifest.writeLong(entry.getLongUserId());
+        manifest.writeLong(entry.getLongGroupId());
+        manifest.writeUTF(entry.getUserName());
+        manifest.writeUTF(entry.getGroupName());
+        manifest.writeLong(entry.getSize());
+    }
+
+    private static TarEntry readHeader(DataInputStream manifest) throws IOException {
+        // Whether the entry is a file or a directory is determined by its name
+        TarEntry entry = new TarEntry(manifest.readUTF());
+        entry.setMode(manifest.readInt());
+        entry.setModTime(manifest.readLong());
+        entry.setUserId(manifest.readLong());
+        entry.setGroupId(manifest.readLong());
+        entry.setUserName(manifest.readUTF());
+        entry.setGroupName(manifest.readUTF());
+        entry.setSize(manifest.readLong());
+        return entry;
+    }
+
+    /**
+     * Writes the TAR stream described by a manifest as it is being read, so that the packed output never needs to be written in full.
+     */
+    private static class ReassemblingInputStream extends InputStream {
+        private final DataInputStream manifest;
+        private final Map<String, FileInputStream> blobs;
+        private final Buffer buffer = new Buffer();
+        private final TarOutputStream tarOutput;
+        private final byte[] copyBuffer = new byte[COPY_BUFFER_SIZE];
+        private int position;
+        private InputStream blob;
+        private boolean finished;
+
+        ReassemblingInputStream(DataInputStream manifest, Map<String, FileInputStream> blobs) {
+            this.manifest = manifest;
+            this.blobs = blobs;
+            this.tarOutput = new TarOutputStream(buffer, "utf-8");
+            // Same settings as used for packing task output
+            tarOutput.setLongFileMode(TarOutputStream.LONGFILE_POSIX);
+            tarOutput.setBigNumberMode(TarOutputStream.BIGNUMBER_POSIX);
+            tarOutput.setAddPaxHeadersForNonAsciiNames(true);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int count = read(single, 0, 1);
+            return count < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (position == buffer.size()) {
+                buffer.reset();
+                position = 0;
+                if (!writeNext()) {
+                    return -1;
+                }
+            }
+            int count = Math.min(len, buffer.size() - position);
+            System.arraycopy(buffer.bytes(), position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        /**
+         * Writes the next part of the TAR stream to the buffer. This may not add any bytes to the buffer, as the TAR stream is written in blocks.
+         *
+         * @return false when the end of the stream has been reached.
+         */
+        private boolean writeNext() throws IOException {
+            if (finished) {
+                return false;
+            }
+            if (blob != null) {
+                int count = blob.read(copyBuffer);
+                if (count < 0) {
+                    blob = null;
+                    tarOutput.closeEntry();
+                } else {
+                    tarOutput.write(copyBuffer, 0, count);
+                }
+                return true;
+            }
+            if (!manifest.readBoolean()) {
+                tarOutput.close();
+                finished = true;
+                return true;
+            }
+            TarEntry entry = readHeader(manifest);
+            tarOutput.putNextEntry(entry);
+            if (manifest.readBoolean()) {
+                FileInputStream blobInput = blobs.get(manifest.readUTF());
+                // The same blob can be referred to by several files of the entry
+                blobInput.getChannel().position(0);
+                blob = blobInput;
+            } else {
+                byte[] contents = new byte[(int) entry.getSize()];
+                manifest.readFully(contents);
+                tarOutput.write(contents);
+                tarOutput.closeEntry();
+            }
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (InputStream blobInput : blobs.values()) {
+                IOUtils.closeQuietly(blobInput);
+            }
+            manifest.close();
+        }
+    }
+
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(2 * COPY_BUFFER_SIZE);
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.apache.commons.io.FileUtils;
+import org.gradle.api.Action;
+import org.gradle.api.Nullable;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.cache.PersistentCache;
+import org.gradle.internal.operations.BuildOperationContext;
+import org.gradle.internal.operations.BuildOperationExecutor;
+import org.gradle.internal.operations.RunnableBuildOperation;
+import org.gradle.internal.progress.BuildOperationDescriptor;
+import org.gradle.util.GFileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removes the least recently used entries from a directory build cache until it fits the target size, based on the {@link DirectoryBuildCacheIndex}.
+ *
+ * The cache directory is not listed to find the entries. Records of entries whose file has gone are dropped when the entry is evicted, or when
+ * loading it finds it missing. Every few days, the cache directory is scanned for entries without a record, for example stored by an older Gradle
+ * version, and for temporary files left behind by stores that did not complete.
+ *
+ * The blobs of deduplicated entries count towards the size of the most recently used entry that refers to them, and are removed along with the last
+ * entry that refers to them.
+ */
+class DirectoryBuildCacheCleanup implements Action<PersistentCache> {
+    private static final Logger LOGGER = Logging.getLogger(DirectoryBuildCacheCleanup.class);
+    // Temporary files are only written while storing an entry, so older ones belong to a store that did not complete
+    private static final long STALE_TEMPORARY_FILE_AGE = TimeUnit.HOURS.toMillis(1);
+    static final String LAST_SCAN_FILE_NAME = "last-scan";
+    private static final long SCAN_INTERVAL = TimeUnit.DAYS.toMillis(7);
+    private static final Comparator<Map.Entry<String, DirectoryBuildCacheIndex.Entry>> NEWEST_FIRST = new Comparator<Map.Entry<String, DirectoryBuildCacheIndex.Entry>>() {
+        @Override
+        public int compare(Map.Entry<String, DirectoryBuildCacheIndex.Entry> left, Map.Entry<String, DirectoryBuildCacheIndex.Entry> right) {
+            long leftAccess = left.getValue().getLastAccess();
+            long rightAccess = right.getValue().getLastAccess();
+            return leftAccess > rightAccess ? -1 : leftAccess < rightAccess ? 1 : 0;
+        }
+    };
+
+    private final BuildOperationExecutor buildOperationExecutor;
+    private final DirectoryBuildCacheIndex index;
+    private final DirectoryBuildCacheBlobStore blobStore;
+    private final long targetSizeInMB;
+
+    DirectoryBuildCacheCleanup(BuildOperationExecutor buildOperationExecutor, DirectoryBuildCacheIndex index, DirectoryBuildCacheBlobStore blobStore, long targetSizeInMB) {
+        this.buildOperationExecutor = buildOperationExecutor;
+        this.index = index;
+        this.blobStore = blobStore;
+        this.targetSizeInMB = targetSizeInMB;
+    }
+
+    @Override
+    public void execute(final PersistentCache persistentCache) {
+        buildOperationExecutor.run(new RunnableBuildOperation() {
+            @Override
+            public void run(BuildOperationContext context) {
+                cleanup(persistentCache);
+            }
+
+            @Override
+            public BuildOperationDescriptor.Builder description() {
+                return BuildOperationDescriptor.displayName("Cleaning up " + persistentCache);
+            }
+        });
+    }
+
+    void cleanup(PersistentCache persistentCache) {
+        Map<String, DirectoryBuildCacheIndex.Entry> entries = index.read();
+        File lastScanFile = new File(persistentCache.getBaseDir(), LAST_SCAN_FILE_NAME);
+        if (lastScanFile.lastModified() < System.currentTimeMillis() - SCAN_INTERVAL) {
+            scanCacheDirectory(persistentCache.getBaseDir(), entries);
+            GFileUtils.touch(lastScanFile);
+        }
+        List<Map.Entry<String, DirectoryBuildCacheIndex.Entry>> newestFirst = Lists.newArrayList(entries.entrySet());
+        Collections.sort(newestFirst, NEWEST_FIRST);
+        Map<String, Long> blobSizes = blobStore.getBlobSizes();
+
+        // All sizes are in bytes
+        long totalSize = 0;
+        long targetSize = targetSizeInMB * 1024 * 1024;
+        List<String> keysForDeletion = Lists.newArrayList();
+        Set<String> retainedBlobs = Sets.newHashSet();
+        for (Map.Entry<String, DirectoryBuildCacheIndex.Entry> entry : newestFirst) {
+            totalSize += entry.getValue().getSize();
+            Set<String> newBlobs = Collections.emptySet();
+            if (totalSize <= targetSize && !blobSizes.isEmpty()) {
+                Set<String> references = getBlobReferences(index.getEntryFile(entry.getKey()));
+                if (references == null) {
+                    keysForDeletion.add(entry.getKey());
+                    continue;
+                }
+                newBlobs = Sets.difference(references, retainedBlobs).immutableCopy();
+                for (String blob : newBlobs) {
+                    Long blobSize = blobSizes.get(blob);
+                    totalSize += blobSize == null ? 0 : blobSize;
+                }
+            }
+            if (totalSize > targetSize) {
+                keysForDeletion.add(entry.getKey());
+            } else {
+                retainedBlobs.addAll(newBlobs);
+            }
+        }
+        LOGGER.info("{} consuming {} MB (target: {} MB).", persistentCache, FileUtils.byteCountToDisplaySize(totalSize), targetSizeInMB);
+
+        long removedSize = 0;
+        int removedCount = 0;
+        for (String key : keysForDeletion) {
+            File file = index.getEntryFile(key);
+            if (file.delete() || !file.exists()) {
+                removedSize += entries.remove(key).getSize();
+                removedCount++;
+            } else {
+                LOGGER.debug("Could not clean up cache entry {}", file);
+                if (!blobSizes.isEmpty()) {
+                    Set<String> references = getBlobReferences(file);
+                    if (references != null) {
+                        retainedBlobs.addAll(references);
+                    }
+                }
+            }
+        }
+        // Also compacts the journal
+        index.write(entries);
+        if (removedCount > 0) {
+            LOGGER.info("{} removing {} cache entries ({} MB reclaimed).", persistentCache, removedCount, FileUtils.byteCountToDisplaySize(removedSize));
+        }
+        removeUnreferencedBlobs(persistentCache, blobSizes, retainedBlobs);
+    }
+
+    /**
+     * Adds the entries in the cache directory that have no record, and drops the records of entries that are not in the cache directory.
+     * Also removes the temporary files left behind by stores that did not complete.
+     */
+    private void scanCacheDirectory(File cacheDir, Map<String, DirectoryBuildCacheIndex.Entry> entries) {
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Set<String> existingEntries = Sets.newHashSet();
+        long staleBefore = System.currentTimeMillis() - STALE_TEMPORARY_FILE_AGE;
+        for (File file : files) {
+            String name = file.getName();
+            if (DirectoryBuildCacheIndex.isEntryFile(file)) {
+                existingEntries.add(name);
+                if (!entries.containsKey(name)) {
+                    entries.put(name, new DirectoryBuildCacheIndex.Entry(file.length(), file.lastModified()));
+                }
+            } else if ((name.endsWith(".part") || name.endsWith(".part.manifest")) && file.lastModified() < staleBefore) {
+                if (!file.delete()) {
+                    LOGGER.debug("Could not clean up temporary file {}", file);
+                }
+            }
+        }
+        entries.keySet().retainAll(existingEntries);
+    }
+
+    /**
+     * Returns the blobs the given entry refers to, or {@code null} when the entry cannot be read, so it should be removed.
+     */
+    @Nullable
+    private Set<String> getBlobReferences(File entryFile) {
+        try {
+            return blobStore.getBlobReferences(entryFile);
+        } catch (IOException e) {
+            LOGGER.debug("Could not read cache entry {}, removing it.", entryFile, e);
+            return null;
+        }
+    }
+
+    private void removeUnreferencedBlobs(PersistentCache persistentCache, Map<String, Long> blobSizes, Set<String> retainedBlobs) {
+        long removedSize = 0;
+        int removedCount = 0;
+        for (Map.Entry<String, Long> blob : blobSizes.entrySet()) {
+            if (retainedBlobs.contains(blob.getKey())) {
+                continue;
+            }
+            File file = blobStore.getBlobFile(blob.getKey());
+            if (file.delete() || !file.exists()) {
+                removedSize += blob.getValue();
+                removedCount++;
+            } else {
+                LOGGER.debug("Could not clean up cache blob {}", file);
+            }
+        }
+        if (removedCount > 0) {
+            LOGGER.info("{} removing {} blobs no longer used by any cache entry ({} MB reclaimed).", persistentCache, removedCount, FileUtils.byteCountToDisplaySize(removedSize));
+        }
+    }
+}
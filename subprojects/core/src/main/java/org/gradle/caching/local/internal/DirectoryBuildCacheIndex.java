@@ -0,0 +1,201 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal;
+
+import org.gradle.api.UncheckedIOException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * An index of the size and last access time of the entries in a directory build cache, so that entries can be evicted without scanning the cache
+ * directory. The size of a deduplicated entry does not include the blobs it refers to.
+ *
+ * The index is a journal of entry records, where a later record for the same entry replaces the earlier ones. Records are appended as entries are
+ * stored, used or found to be missing, and the journal is rewritten to contain only the remaining entries during cleanup. When there is no journal,
+ * it is created from the entries in the cache directory.
+ *
+ * The index must only be used while holding the cache lock.
+ */
+class DirectoryBuildCacheIndex {
+    static final String JOURNAL_FILE_NAME = "entries.journal";
+    private static final Pattern ENTRY_NAME = Pattern.compile("\\p{XDigit}+");
+    // Size recorded for an entry whose file no longer exists
+    private static final long REMOVED = -1;
+
+    private final File baseDir;
+    private final File journalFile;
+
+    DirectoryBuildCacheIndex(File baseDir) {
+        this.baseDir = baseDir;
+        this.journalFile = new File(baseDir, JOURNAL_FILE_NAME);
+    }
+
+    File getEntryFile(String key) {
+        return new File(baseDir, key);
+    }
+
+    /**
+     * Records the given entries, replacing any earlier records of them.
+     */
+    void append(Map<String, Entry> entries) {
+        append(entries, Collections.<String>emptySet());
+    }
+
+    /**
+     * Records the given entries, and drops the records of the given removed entries.
+     */
+    void append(Map<String, Entry> entries, Collection<String> removedEntries) {
+        if (entries.isEmpty() && removedEntries.isEmpty()) {
+            return;
+        }
+        if (!journalFile.exists()) {
+            write(scan());
+        }
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+            try {
+                writeEntries(entries, output);
+                for (String key : removedEntries) {
+                    writeRecord(key, REMOVED, 0, output);
+                }
+            } finally {
+                output.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the most recent record of each entry.
+     */
+    Map<String, Entry> read() {
+        if (!journalFile.exists()) {
+            return scan();
+        }
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        try {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+            try {
+                while (true) {
+                    String key = input.readUTF();
+                    long size = input.readLong();
+                    long lastAccess = input.readLong();
+                    if (!ENTRY_NAME.matcher(key).matches()) {
+                        // Records following a record that was not completely written cannot be read, ignore them
+                        break;
+                    }
+                    if (size == REMOVED) {
+                        entries.remove(key);
+                    } else {
+                        entries.put(key, new Entry(size, lastAccess));
+                    }
+                }
+            } catch (EOFException e) {
+                // End of the journal, or a record that was not completely written
+            } catch (UTFDataFormatException e) {
+                // Records following a record that was not completely written cannot be read, ignore them
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return entries;
+    }
+
+    /**
+     * Replaces all records with the given entries.
+     */
+    void write(Map<String, Entry> entries) {
+        File tempFile = new File(baseDir, JOURNAL_FILE_NAME + ".tmp");
+        try {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            try {
+                writeEntries(entries, output);
+            } finally {
+                output.close();
+            }
+            Files.move(tempFile.toPath(), journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeEntries(Map<String, Entry> entries, DataOutputStream output) throws IOException {
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            writeRecord(entry.getKey(), entry.getValue().getSize(), entry.getValue().getLastAccess(), output);
+        }
+    }
+
+    private static void writeRecord(String key, long size, long lastAccess, DataOutputStream output) throws IOException {
+        output.writeUTF(key);
+        output.writeLong(size);
+        output.writeLong(lastAccess);
+    }
+
+    private Map<String, Entry> scan() {
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        File[] files = baseDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (isEntryFile(file)) {
+                    entries.put(file.getName(), new Entry(file.length(), file.lastModified()));
+                }
+            }
+        }
+        return entries;
+    }
+
+    static boolean isEntryFile(File file) {
+        return ENTRY_NAME.matcher(file.getName()).matches() && file.isFile();
+    }
+
+    static class Entry {
+        private final long size;
+        private final long lastAccess;
+
+        Entry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLastAccess() {
+            return lastAccess;
+        }
+    }
+}
@@ -16,42 +16,72 @@
 
 package org.gradle.caching.local.internal;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Closer;
 import org.apache.commons.io.FileUtils;
 import org.gradle.api.UncheckedIOException;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
 import org.gradle.cache.CacheBuilder;
 import org.gradle.cache.CacheRepository;
 import org.gradle.cache.PersistentCache;
-import org.gradle.cache.internal.FixedSizeOldestCacheCleanup;
 import org.gradle.caching.BuildCacheEntryReader;
 import org.gradle.caching.BuildCacheEntryWriter;
 import org.gradle.caching.BuildCacheException;
 import org.gradle.caching.BuildCacheKey;
-import org.gradle.caching.BuildCacheService;
-import org.gradle.internal.Factory;
+import org.gradle.caching.internal.ProbingBuildCacheService;
 import org.gradle.internal.operations.BuildOperationExecutor;
-import org.gradle.internal.resource.local.LocallyAvailableResource;
-import org.gradle.internal.resource.local.PathKeyFileStore;
-import org.gradle.util.GFileUtils;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static org.gradle.cache.internal.FileLockManager.LockMode.None;
 import static org.gradle.cache.internal.filelock.LockOptionsBuilder.mode;
 
-public class DirectoryBuildCacheService implements BuildCacheService {
-    private final PathKeyFileStore fileStore;
+/**
+ * A build cache backed by a directory, with one file per entry.
+ *
+ * Entries are only ever added by atomically renaming a completely written file, and are never replaced, so they are read without holding the cache
+ * lock. Instead of touching entries as they are used, their access times are collected and recorded in the {@link DirectoryBuildCacheIndex} when the
+ * cache is closed, which is then used to evict the least recently used entries. Entries found missing when loading them are dropped from the index
+ * at the same time.
+ *
+ * When deduplication is enabled, the files in stored entries are kept in a {@link DirectoryBuildCacheBlobStore}, so that files shared between entries
+ * only take up space once. Deduplicated entries are read regardless of whether deduplication is enabled.
+ */
+public class DirectoryBuildCacheService implements ProbingBuildCacheService {
+    private static final Logger LOGGER = Logging.getLogger(DirectoryBuildCacheService.class);
+
     private final PersistentCache persistentCache;
+    private final DirectoryBuildCacheIndex index;
+    private final DirectoryBuildCacheBlobStore blobStore;
+    private final boolean deduplicate;
+    private final ConcurrentMap<String, DirectoryBuildCacheIndex.Entry> usedEntries = new ConcurrentHashMap<String, DirectoryBuildCacheIndex.Entry>();
+    // Entries that could not be loaded, which are replaced when stored again
+    private final Set<String> corruptEntries = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Set<String> missingEntries = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
-    public DirectoryBuildCacheService(CacheRepository cacheRepository, BuildOperationExecutor buildOperationExecutor, File baseDir, long targetCacheSize) {
-        this.fileStore = new PathKeyFileStore(baseDir);
+    public DirectoryBuildCacheService(CacheRepository cacheRepository, BuildOperationExecutor buildOperationExecutor, File baseDir, long targetCacheSize, boolean deduplicate) {
+        this.index = new DirectoryBuildCacheIndex(baseDir);
+        this.blobStore = new DirectoryBuildCacheBlobStore(baseDir);
+        this.deduplicate = deduplicate;
         this.persistentCache = cacheRepository
             .cache(checkDirectory(baseDir))
-            .withCleanup(new FixedSizeOldestCacheCleanup(buildOperationExecutor, targetCacheSize))
+            .withCleanup(new DirectoryBuildCacheCleanup(buildOperationExecutor, index, blobStore, targetCacheSize))
             .withDisplayName("Build cache")
             .withLockOptions(mode(None))
             .withCrossVersionCache(CacheBuilder.LockTarget.DefaultTarget)
@@ -78,33 +108,49 @@ public class DirectoryBuildCacheService implements BuildCacheService {
     }
 
     @Override
-    public boolean load(final BuildCacheKey key, final BuildCacheEntryReader reader) throws BuildCacheException {
-        // We need to lock here because garbage collection can be under way in another process
-        return persistentCache.withFileLock(new Factory<Boolean>() {
-            @Override
-            public Boolean create() {
-                LocallyAvailableResource resource = fileStore.get(key.getHashCode());
-                if (resource == null) {
-                    return false;
-                }
-
-                try {
-                    // Mark as recently used
-                    GFileUtils.touch(resource.getFile());
-
-                    Closer closer = Closer.create();
-                    FileInputStream stream = closer.register(new FileInputStream(resource.getFile()));
-                    try {
-                        reader.readFrom(stream);
-                        return true;
-                    } finally {
-                        closer.close();
-                    }
-                } catch (IOException ex) {
-                    throw new UncheckedIOException(ex);
+    public boolean load(BuildCacheKey key, BuildCacheEntryReader reader) throws BuildCacheException {
+        String hashCode = key.getHashCode();
+        try {
+            File entryFile = index.getEntryFile(hashCode);
+            InputStream stream;
+            try {
+                stream = blobStore.open(entryFile);
+            } catch (FileNotFoundException e) {
+                // Missing, or removed by a cleanup in another process
+                missingEntries.add(hashCode);
+                return false;
+            } catch (IOException e) {
+                corruptEntries.add(hashCode);
+                throw e;
+            }
+            if (stream == null) {
+                // Files of the entry removed by a cleanup in another process
+                corruptEntries.add(hashCode);
+                return false;
+            }
+            Closer closer = Closer.create();
+            closer.register(stream);
+            boolean loaded = false;
+            try {
+                // Mark as recently used
+                usedEntries.put(hashCode, new DirectoryBuildCacheIndex.Entry(entryFile.length(), System.currentTimeMillis()));
+                reader.readFrom(stream);
+                loaded = true;
+                return true;
+            } finally {
+                if (!loaded) {
+                    corruptEntries.add(hashCode);
                 }
+                closer.close();
             }
-        });
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public boolean mightContain(BuildCacheKey key) throws BuildCacheException {
+        return index.getEntryFile(key.getHashCode()).exists();
     }
 
     @Override
@@ -116,6 +162,8 @@ public class DirectoryBuildCacheService implements BuildCacheService {
         } catch (IOException ex) {
             throw new UncheckedIOException(ex);
         }
+        File manifestFile = null;
+        Map<String, File> blobs = Collections.emptyMap();
 
         try {
             try {
@@ -129,19 +177,68 @@ public class DirectoryBuildCacheService implements BuildCacheService {
             } catch (IOException ex) {
                 throw new UncheckedIOException(ex);
             }
+            if (deduplicate) {
+                manifestFile = new File(tempFile.getPath() + ".manifest");
+                try {
+                    blobs = blobStore.deduplicate(tempFile, manifestFile);
+                } catch (IOException e) {
+                    LOGGER.debug("Could not deduplicate build cache entry {}, storing it as it is.", hashCode, e);
+                    FileUtils.deleteQuietly(manifestFile);
+                    manifestFile = null;
+                }
+            }
+            final File storedFile = manifestFile != null ? manifestFile : tempFile;
+            final Map<String, File> storedBlobs = blobs;
             persistentCache.useCache(new Runnable() {
                 @Override
                 public void run() {
-                    fileStore.move(hashCode, tempFile);
+                    File entryFile = index.getEntryFile(hashCode);
+                    // An existing entry has the same contents, and may be being read without holding the lock.
+                    // A corrupt entry is replaced atomically, so that readers see either the old or the new file
+                    boolean corrupt = corruptEntries.remove(hashCode);
+                    if (corrupt || !entryFile.exists()) {
+                        try {
+                            // Blobs are added first, so that the entry never refers to missing blobs
+                            blobStore.commit(storedBlobs, corrupt);
+                            Files.move(storedFile.toPath(), entryFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    missingEntries.remove(hashCode);
+                    index.append(ImmutableMap.of(hashCode, new DirectoryBuildCacheIndex.Entry(entryFile.length(), System.currentTimeMillis())));
                 }
             });
         } finally {
             FileUtils.deleteQuietly(tempFile);
+            FileUtils.deleteQuietly(manifestFile);
+            for (File blob : blobs.values()) {
+                FileUtils.deleteQuietly(blob);
+            }
         }
     }
 
     @Override
     public void close() throws IOException {
+        if (!usedEntries.isEmpty() || !missingEntries.isEmpty()) {
+            final Map<String, DirectoryBuildCacheIndex.Entry> entries = new HashMap<String, DirectoryBuildCacheIndex.Entry>(usedEntries);
+            final Set<String> removedEntries = new HashSet<String>(missingEntries);
+            usedEntries.clear();
+            missingEntries.clear();
+            persistentCache.useCache(new Runnable() {
+                @Override
+                public void run() {
+                    // Another process may have stored the entry in the meantime
+                    Iterator<String> iterator = removedEntries.iterator();
+                    while (iterator.hasNext()) {
+                        if (index.getEntryFile(iterator.next()).exists()) {
+                            iterator.remove();
+                        }
+                    }
+                    index.append(entries, removedEntries);
+                }
+            });
+        }
         persistentCache.close();
     }
 }
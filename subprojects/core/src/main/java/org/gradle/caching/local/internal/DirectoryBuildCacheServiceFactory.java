@@ -31,7 +31,11 @@ import java.io.File;
 public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFactory<DirectoryBuildCache> {
     private static final String BUILD_CACHE_VERSION = "1";
     private static final String BUILD_CACHE_KEY = "build-cache-" + BUILD_CACHE_VERSION;
+    // Deduplicated entries cannot be read by other Gradle versions, so they are kept apart from the regular entries
+    private static final String DEDUPLICATED_BUILD_CACHE_VERSION = "1";
+    private static final String DEDUPLICATED_BUILD_CACHE_KEY = "build-cache-deduplicated-" + DEDUPLICATED_BUILD_CACHE_VERSION;
     private static final String DIRECTORY_BUILD_CACHE_TYPE = "directory";
+    private static final String DEDUPLICATE_PROPERTY = "org.gradle.caching.local.deduplicate";
 
     private final CacheRepository cacheRepository;
     private final CacheScopeMapping cacheScopeMapping;
@@ -48,16 +52,23 @@ public class DirectoryBuildCacheServiceFactory implements BuildCacheServiceFacto
 
     @Override
     public BuildCacheService createBuildCacheService(DirectoryBuildCache configuration, Describer describer) {
+        boolean deduplicate = Boolean.getBoolean(DEDUPLICATE_PROPERTY);
         Object cacheDirectory = configuration.getDirectory();
         File target;
         if (cacheDirectory != null) {
             target = resolver.resolve(cacheDirectory);
+            if (deduplicate) {
+                target = new File(target, DEDUPLICATED_BUILD_CACHE_KEY);
+            }
         } else {
-            target = cacheScopeMapping.getBaseDirectory(null, BUILD_CACHE_KEY, VersionStrategy.SharedCache);
+            target = cacheScopeMapping.getBaseDirectory(null, deduplicate ? DEDUPLICATED_BUILD_CACHE_KEY : BUILD_CACHE_KEY, VersionStrategy.SharedCache);
         }
 
         describer.type(DIRECTORY_BUILD_CACHE_TYPE).config("location", target.getAbsolutePath());
+        if (deduplicate) {
+            describer.config("deduplicate", "true");
+        }
 
-        return new DirectoryBuildCacheService(cacheRepository, buildOperationExecutor, target, configuration.getTargetSizeInMB());
+        return new DirectoryBuildCacheService(cacheRepository, buildOperationExecutor, target, configuration.getTargetSizeInMB(), deduplicate);
     }
 }
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Maps;
+import org.gradle.api.Nullable;
+import org.gradle.api.internal.TaskInternal;
+import org.gradle.internal.Pair;
+
+import java.io.File;
+import java.util.Map;
+
+/**
+ * The output paths of the currently executing tasks, indexed by path segment. Finding whether a path overlaps
+ * a claimed path only walks the segments of that path, regardless of how many tasks are executing.
+ *
+ * <p>Paths are expected to be canonical. Not thread-safe.</p>
+ */
+class ClaimedOutputPaths {
+    private static final Splitter PATH_SPLITTER = Splitter.on(File.separatorChar).omitEmptyStrings();
+
+    private final Node root = new Node(null);
+
+    /**
+     * Returns the owner of a claimed path that is equal to, contains or is contained in the given path, along with the shorter of the two paths.
+     */
+    @Nullable
+    public Pair<TaskInternal, String> findOverlap(String path) {
+        Node node = root;
+        for (String segment : PATH_SPLITTER.split(path)) {
+            if (node.owner != null) {
+                return Pair.of(node.owner, node.ownerPath);
+            }
+            node = node.children.get(segment);
+            if (node == null) {
+                return null;
+            }
+        }
+        if (node.claims == 0) {
+            return null;
+        }
+        // Some path at or below the given path is claimed
+        while (node.owner == null) {
+            for (Node child : node.children.values()) {
+                if (child.claims > 0) {
+                    node = child;
+                    break;
+                }
+            }
+        }
+        return Pair.of(node.owner, path);
+    }
+
+    public void claim(TaskInternal task, String path) {
+        Node node = root;
+        node.claims++;
+        for (String segment : PATH_SPLITTER.split(path)) {
+            Node child = node.children.get(segment);
+            if (child == null) {
+                child = new Node(segment);
+                child.parent = node;
+                node.children.put(segment, child);
+            }
+            node = child;
+            node.claims++;
+        }
+        node.owner = task;
+        node.ownerPath = path;
+        node.ownerClaims++;
+    }
+
+    public void release(String path) {
+        Node node = root;
+        for (String segment : PATH_SPLITTER.split(path)) {
+            node = node.children.get(segment);
+            if (node == null) {
+                return;
+            }
+        }
+        if (node.ownerClaims == 0) {
+            return;
+        }
+        node.ownerClaims--;
+        if (node.ownerClaims == 0) {
+            node.owner = null;
+            node.ownerPath = null;
+        }
+        for (; node != null; node = node.parent) {
+            node.claims--;
+            if (node.claims == 0 && node.parent != null) {
+                node.parent.children.remove(node.segment);
+            }
+        }
+    }
+
+    public void clear() {
+        root.children.clear();
+        root.claims = 0;
+        root.owner = null;
+        root.ownerPath = null;
+        root.ownerClaims = 0;
+    }
+
+    private static class Node {
+        private final String segment;
+        private final Map<String, Node> children = Maps.newHashMap();
+        private Node parent;
+        // The number of claims on this node and the nodes below it
+        private int claims;
+        private TaskInternal owner;
+        private String ownerPath;
+        private int ownerClaims;
+
+        Node(String segment) {
+            this.segment = segment;
+        }
+    }
+}
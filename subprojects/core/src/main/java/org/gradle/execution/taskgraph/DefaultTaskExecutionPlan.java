@@ -18,11 +18,13 @@ package org.gradle.execution.taskgraph;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
-import com.google.common.base.StandardSystemProperty;
+import com.google.common.collect.Collections2;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.HashMultiset;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multiset;
 import com.google.common.collect.Sets;
 import org.gradle.api.Action;
 import org.gradle.api.BuildCancelledException;
@@ -34,13 +36,16 @@ import org.gradle.api.Transformer;
 import org.gradle.api.UncheckedIOException;
 import org.gradle.api.internal.GradleInternal;
 import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.changedetection.state.TaskDurationHistory;
 import org.gradle.api.internal.project.ProjectInternal;
 import org.gradle.api.internal.tasks.CachingTaskDependencyResolveContext;
+import org.gradle.api.internal.tasks.GeneratedSubclasses;
 import org.gradle.api.internal.tasks.TaskContainerInternal;
 import org.gradle.api.logging.Logger;
 import org.gradle.api.logging.Logging;
 import org.gradle.api.specs.Spec;
 import org.gradle.api.specs.Specs;
+import org.gradle.api.tasks.ParallelizableTask;
 import org.gradle.execution.MultipleBuildFailures;
 import org.gradle.execution.TaskFailureHandler;
 import org.gradle.initialization.BuildCancellationToken;
@@ -57,7 +62,6 @@ import org.gradle.internal.resources.ResourceLockState;
 import org.gradle.internal.work.WorkerLeaseRegistry.WorkerLease;
 import org.gradle.internal.work.WorkerLeaseService;
 import org.gradle.util.CollectionUtils;
-import org.gradle.util.TextUtil;
 
 import java.io.File;
 import java.io.IOException;
@@ -66,19 +70,20 @@ import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
 import java.util.TreeSet;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static org.gradle.internal.resources.DefaultResourceLockCoordinationService.unlock;
@@ -95,7 +100,33 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     private final Set<TaskInfo> entryTasks = new LinkedHashSet<TaskInfo>();
     private final TaskDependencyGraph graph = new TaskDependencyGraph();
     private final LinkedHashMap<Task, TaskInfo> executionPlan = new LinkedHashMap<Task, TaskInfo>();
-    private final List<TaskInfo> executionQueue = new LinkedList<TaskInfo>();
+    private final Map<TaskInfo, Integer> planPositions = Maps.newHashMap();
+    // The expected duration of each task plus the longest chain of tasks that have to wait for it
+    private final Map<TaskInfo, Long> remainingDurations = Maps.newHashMap();
+    private final Comparator<TaskInfo> selectionOrder = new Comparator<TaskInfo>() {
+        @Override
+        public int compare(TaskInfo left, TaskInfo right) {
+            int result = remainingDurations.get(right).compareTo(remainingDurations.get(left));
+            if (result != 0) {
+                return result;
+            }
+            return planPositions.get(left).compareTo(planPositions.get(right));
+        }
+    };
+    // Tasks that have not been selected for execution yet, and are not complete
+    private final Set<TaskInfo> pendingTasks = Sets.newHashSet();
+    // Tasks whose dependencies are complete, by project and in selection order. May contain tasks that are no longer ready, which are dropped when selecting
+    private final Map<Project, TreeSet<TaskInfo>> readyTasks = Maps.newLinkedHashMap();
+    // Projects with tasks in their ready queue, ordered by the first of these. A project is removed before its queue changes and added again afterwards
+    private final TreeSet<Project> readyProjects = new TreeSet<Project>(new Comparator<Project>() {
+        @Override
+        public int compare(Project left, Project right) {
+            return selectionOrder.compare(readyTasks.get(left).first(), readyTasks.get(right).first());
+        }
+    });
+    // Counts the changes that may allow an idle worker to select a task, that is tasks becoming ready or completing
+    private final Object readyTasksChanged = new Object();
+    private long readyTasksChanges;
     private final Map<Project, ResourceLock> projectLocks = Maps.newHashMap();
     private final List<Throwable> failures = new ArrayList<Throwable>();
     private Spec<? super Task> filter = Specs.satisfyAll();
@@ -105,18 +136,30 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     private final Set<TaskInternal> runningTasks = Sets.newIdentityHashSet();
     private final Set<Task> filteredTasks = Sets.newIdentityHashSet();
     private final Map<Task, Set<String>> canonicalizedOutputCache = Maps.newIdentityHashMap();
+    private final ClaimedOutputPaths claimedOutputPaths = new ClaimedOutputPaths();
+    // Running tasks whose outputs have not been claimed yet. Outputs are only resolved once a second task runs at the same time, so a build that runs one task at a time never resolves them
+    private final Set<TaskInternal> tasksWithUnclaimedOutputs = Sets.newIdentityHashSet();
     private final ResourceLockCoordinationService coordinationService;
     private final WorkerLeaseService workerLeaseService;
+    private final TaskDurationHistory taskDurationHistory;
+    private final boolean intraProjectParallelism;
+    // Parallelizable tasks run without holding their project lock, these are counted per project instead
+    private final Set<TaskInfo> runningParallelizableTasks = Sets.newHashSet();
+    private final Multiset<Project> parallelizableTasksByProject = HashMultiset.create();
+    // Projects with a task that is not parallelizable waiting for the running parallelizable tasks to finish, no more parallelizable tasks are started for these
+    private final Set<Project> projectsDrainingParallelizableTasks = Sets.newHashSet();
     private boolean tasksCancelled;
 
-    public DefaultTaskExecutionPlan(BuildCancellationToken cancellationToken, ResourceLockCoordinationService coordinationService, WorkerLeaseService workerLeaseService) {
+    public DefaultTaskExecutionPlan(BuildCancellationToken cancellationToken, ResourceLockCoordinationService coordinationService, WorkerLeaseService workerLeaseService, TaskDurationHistory taskDurationHistory, boolean intraProjectParallelism) {
         this.cancellationToken = cancellationToken;
         this.coordinationService = coordinationService;
         this.workerLeaseService = workerLeaseService;
+        this.taskDurationHistory = taskDurationHistory;
+        this.intraProjectParallelism = intraProjectParallelism;
     }
 
     public void addToTaskGraph(Collection<? extends Task> tasks) {
-        List<TaskInfo> queue = new ArrayList<TaskInfo>();
+        Deque<TaskInfo> queue = new ArrayDeque<TaskInfo>();
 
         List<Task> sortedTasks = new ArrayList<Task>(tasks);
         Collections.sort(sortedTasks);
@@ -135,10 +178,10 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         CachingTaskDependencyResolveContext context = new CachingTaskDependencyResolveContext();
 
         while (!queue.isEmpty()) {
-            TaskInfo node = queue.get(0);
+            TaskInfo node = queue.getFirst();
             if (node.getDependenciesProcessed()) {
                 // Have already visited this task - skip it
-                queue.remove(0);
+                queue.removeFirst();
                 continue;
             }
 
@@ -146,7 +189,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
             boolean filtered = !filter.isSatisfiedBy(task);
             if (filtered) {
                 // Task is not required - skip it
-                queue.remove(0);
+                queue.removeFirst();
                 node.dependenciesProcessed();
                 node.doNotRequire();
                 filteredTasks.add(task);
@@ -163,14 +206,14 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                     TaskInfo targetNode = graph.addNode(dependsOnTask);
                     node.addDependencySuccessor(targetNode);
                     if (!visiting.contains(targetNode)) {
-                        queue.add(0, targetNode);
+                        queue.addFirst(targetNode);
                     }
                 }
                 for (Task finalizerTask : task.getFinalizedBy().getDependencies(task)) {
                     TaskInfo targetNode = graph.addNode(finalizerTask);
                     addFinalizerNode(node, targetNode);
                     if (!visiting.contains(targetNode)) {
-                        queue.add(0, targetNode);
+                        queue.addFirst(targetNode);
                     }
                 }
                 for (Task mustRunAfter : task.getMustRunAfter().getDependencies(task)) {
@@ -192,7 +235,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                 }
             } else {
                 // Have visited this task's dependencies - add it to the graph
-                queue.remove(0);
+                queue.removeFirst();
                 visiting.remove(node);
                 node.dependenciesProcessed();
             }
@@ -201,24 +244,24 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     }
 
     private void resolveTasksInUnknownState() {
-        List<TaskInfo> queue = new ArrayList<TaskInfo>(tasksInUnknownState);
+        Deque<TaskInfo> queue = new ArrayDeque<TaskInfo>(tasksInUnknownState);
         Set<TaskInfo> visiting = new HashSet<TaskInfo>();
 
         while (!queue.isEmpty()) {
-            TaskInfo task = queue.get(0);
+            TaskInfo task = queue.getFirst();
             if (task.isInKnownState()) {
-                queue.remove(0);
+                queue.removeFirst();
                 continue;
             }
 
             if (visiting.add(task)) {
                 for (TaskInfo hardPredecessor : task.getDependencyPredecessors()) {
                     if (!visiting.contains(hardPredecessor)) {
-                        queue.add(0, hardPredecessor);
+                        queue.addFirst(hardPredecessor);
                     }
                 }
             } else {
-                queue.remove(0);
+                queue.removeFirst();
                 visiting.remove(task);
                 task.mustNotRun();
                 for (TaskInfo predecessor : task.getDependencyPredecessors()) {
@@ -258,7 +301,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     }
 
     public void determineExecutionPlan() {
-        List<TaskInfoInVisitingSegment> nodeQueue = Lists.newArrayList(Iterables.transform(entryTasks, new Function<TaskInfo, TaskInfoInVisitingSegment>() {
+        Deque<TaskInfoInVisitingSegment> nodeQueue = new ArrayDeque<TaskInfoInVisitingSegment>(Collections2.transform(entryTasks, new Function<TaskInfo, TaskInfoInVisitingSegment>() {
             int index;
 
             public TaskInfoInVisitingSegment apply(TaskInfo taskInfo) {
@@ -273,12 +316,12 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         HashMap<TaskInfo, Integer> planBeforeVisiting = new HashMap<TaskInfo, Integer>();
 
         while (!nodeQueue.isEmpty()) {
-            TaskInfoInVisitingSegment taskInfoInVisitingSegment = nodeQueue.get(0);
+            TaskInfoInVisitingSegment taskInfoInVisitingSegment = nodeQueue.getFirst();
             int currentSegment = taskInfoInVisitingSegment.visitingSegment;
             TaskInfo taskNode = taskInfoInVisitingSegment.taskInfo;
 
             if (taskNode.isIncludeInGraph() || executionPlan.containsKey(taskNode.getTask())) {
-                nodeQueue.remove(0);
+                removeFirst(nodeQueue);
                 visitingNodes.remove(taskNode, currentSegment);
                 maybeRemoveProcessedShouldRunAfterEdge(walkedShouldRunAfterEdges, taskNode);
                 continue;
@@ -309,31 +352,88 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                             onOrderingCycle();
                         }
                     }
-                    nodeQueue.add(0, new TaskInfoInVisitingSegment(successor, currentSegment));
+                    nodeQueue.addFirst(new TaskInfoInVisitingSegment(successor, currentSegment));
                 }
                 path.push(taskNode);
             } else {
                 // Have visited this task's dependencies - add it to the end of the plan
-                nodeQueue.remove(0);
+                removeFirst(nodeQueue);
                 maybeRemoveProcessedShouldRunAfterEdge(walkedShouldRunAfterEdges, taskNode);
                 visitingNodes.remove(taskNode, currentSegment);
                 path.pop();
                 executionPlan.put(taskNode.getTask(), taskNode);
                 Project project = taskNode.getTask().getProject();
-                projectLocks.put(project, getOrCreateProjectLock(project));
+                if (!projectLocks.containsKey(project)) {
+                    projectLocks.put(project, getOrCreateProjectLock(project));
+                }
                 // Add any finalizers to the queue
                 ArrayList<TaskInfo> finalizerTasks = new ArrayList<TaskInfo>();
                 addAllReversed(finalizerTasks, taskNode.getFinalizers());
                 for (TaskInfo finalizer : finalizerTasks) {
                     if (!visitingNodes.containsKey(finalizer)) {
-                        nodeQueue.add(finalizerTaskPosition(finalizer, nodeQueue), new TaskInfoInVisitingSegment(finalizer, visitingSegmentCounter++));
+                        addFinalizerToQueue(nodeQueue, new TaskInfoInVisitingSegment(finalizer, visitingSegmentCounter++));
                     }
                 }
             }
         }
-        executionQueue.clear();
-        executionQueue.addAll(executionPlan.values());
+        initializeReadyTasks();
+    }
 
+    private void initializeReadyTasks() {
+        planPositions.clear();
+        pendingTasks.clear();
+        readyTasks.clear();
+        readyProjects.clear();
+        for (TaskInfo taskInfo : executionPlan.values()) {
+            planPositions.put(taskInfo, planPositions.size());
+        }
+        calculateRemainingDurations();
+        for (TaskInfo taskInfo : executionPlan.values()) {
+            int incompleteDependencies = 0;
+            for (TaskInfo dependency : Iterables.concat(taskInfo.getMustSuccessors(), taskInfo.getDependencySuccessors())) {
+                if (!dependency.isComplete()) {
+                    incompleteDependencies++;
+                }
+            }
+            taskInfo.setIncompleteDependencies(incompleteDependencies);
+            if (!taskInfo.isComplete()) {
+                pendingTasks.add(taskInfo);
+            }
+            addIfReady(taskInfo);
+        }
+    }
+
+    /**
+     * Estimates for each task how long it takes until the tasks that have to wait for it are complete, using the durations of previous builds.
+     * Tasks without a previous duration are assumed to take as long as the average task. When nothing is known, all estimates are zero and tasks are selected in plan order.
+     */
+    private void calculateRemainingDurations() {
+        remainingDurations.clear();
+        Map<TaskInfo, Long> previousDurations = Maps.newHashMap();
+        long totalPreviousDuration = 0;
+        for (TaskInfo taskInfo : executionPlan.values()) {
+            Long previousDuration = taskDurationHistory.getPreviousDuration(taskInfo.getTask());
+            if (previousDuration != null) {
+                previousDurations.put(taskInfo, previousDuration);
+                totalPreviousDuration += previousDuration;
+            }
+        }
+        long defaultDuration = previousDurations.isEmpty() ? 0 : totalPreviousDuration / previousDurations.size();
+
+        // The tasks that have to wait for a task come after it in the plan, so walk the plan backwards
+        List<TaskInfo> tasks = Lists.newArrayList(executionPlan.values());
+        for (int i = tasks.size() - 1; i >= 0; i--) {
+            TaskInfo taskInfo = tasks.get(i);
+            long longestDependentDuration = 0;
+            for (TaskInfo dependent : Iterables.concat(taskInfo.getMustPredecessors(), taskInfo.getDependencyPredecessors())) {
+                Long dependentDuration = remainingDurations.get(dependent);
+                if (dependentDuration != null) {
+                    longestDependentDuration = Math.max(longestDependentDuration, dependentDuration);
+                }
+            }
+            Long previousDuration = previousDurations.get(taskInfo);
+            remainingDurations.put(taskInfo, (previousDuration != null ? previousDuration : defaultDuration) + longestDependentDuration);
+        }
     }
 
     private void maybeRemoveProcessedShouldRunAfterEdge(Stack<GraphEdge> walkedShouldRunAfterEdges, TaskInfo taskNode) {
@@ -353,13 +453,25 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         }
     }
 
-    private void restoreQueue(List<TaskInfoInVisitingSegment> nodeQueue, HashMultimap<TaskInfo, Integer> visitingNodes, GraphEdge toBeRemoved) {
+    private void restoreQueue(Deque<TaskInfoInVisitingSegment> nodeQueue, HashMultimap<TaskInfo, Integer> visitingNodes, GraphEdge toBeRemoved) {
         TaskInfoInVisitingSegment nextInQueue = null;
         while (nextInQueue == null || !toBeRemoved.from.equals(nextInQueue.taskInfo)) {
-            nextInQueue = nodeQueue.get(0);
+            nextInQueue = nodeQueue.getFirst();
             visitingNodes.remove(nextInQueue.taskInfo, nextInQueue.visitingSegment);
             if (!toBeRemoved.from.equals(nextInQueue.taskInfo)) {
-                nodeQueue.remove(0);
+                removeFirst(nodeQueue);
+            }
+        }
+    }
+
+    /**
+     * Removes the head of the node queue, moving any finalizers queued after it to the head of the queue.
+     */
+    private static void removeFirst(Deque<TaskInfoInVisitingSegment> nodeQueue) {
+        TaskInfoInVisitingSegment removed = nodeQueue.removeFirst();
+        if (removed.finalizersAfter != null) {
+            for (TaskInfoInVisitingSegment finalizer : removed.finalizersAfter) {
+                nodeQueue.addFirst(finalizer);
             }
         }
     }
@@ -399,25 +511,43 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     }
 
     /**
-     * Given a finalizer task, determine where in the current node queue that it should be inserted.
-     * The finalizer should be inserted after any of it's preceding tasks.
+     * Adds a finalizer task to the node queue, after any of its preceding tasks.
+     *
+     * The finalizer is not inserted into the queue itself, but recorded against the queued preceding task that comes last. It enters the
+     * queue once that task has been removed from it, ahead of any finalizers recorded against that task earlier.
      */
-    private int finalizerTaskPosition(TaskInfo finalizer, final List<TaskInfoInVisitingSegment> nodeQueue) {
-        if (nodeQueue.size() == 0) {
-            return 0;
-        }
-
-        Set<TaskInfo> precedingTasks = getAllPrecedingTasks(finalizer);
-        Set<Integer> precedingTaskIndices = CollectionUtils.collect(precedingTasks, new Transformer<Integer, TaskInfo>() {
-            public Integer transform(final TaskInfo dependsOnTask) {
-                return Iterables.indexOf(nodeQueue, new Predicate<TaskInfoInVisitingSegment>() {
-                    public boolean apply(TaskInfoInVisitingSegment taskInfoInVisitingSegment) {
-                        return taskInfoInVisitingSegment.taskInfo.equals(dependsOnTask);
+    private void addFinalizerToQueue(Deque<TaskInfoInVisitingSegment> nodeQueue, TaskInfoInVisitingSegment finalizer) {
+        Set<TaskInfo> precedingTasks = getAllPrecedingTasks(finalizer.taskInfo);
+        TaskInfoInVisitingSegment lastPrecedingTask = null;
+        Set<TaskInfo> seen = new HashSet<TaskInfo>();
+        Deque<TaskInfoInVisitingSegment> entries = new ArrayDeque<TaskInfoInVisitingSegment>();
+        for (TaskInfoInVisitingSegment queued : nodeQueue) {
+            // Visit the entry, followed by the finalizers queued after it
+            entries.push(queued);
+            while (!entries.isEmpty()) {
+                TaskInfoInVisitingSegment next = entries.pop();
+                // Only the first occurrence of a task in the queue counts
+                if (precedingTasks.contains(next.taskInfo) && seen.add(next.taskInfo)) {
+                    lastPrecedingTask = next;
+                }
+                if (next.finalizersAfter != null) {
+                    for (TaskInfoInVisitingSegment queuedFinalizer : next.finalizersAfter) {
+                        entries.push(queuedFinalizer);
                     }
-                });
+                }
             }
-        });
-        return Collections.max(precedingTaskIndices) + 1;
+            if (seen.size() == precedingTasks.size()) {
+                break;
+            }
+        }
+        if (lastPrecedingTask == null) {
+            nodeQueue.addFirst(finalizer);
+        } else {
+            if (lastPrecedingTask.finalizersAfter == null) {
+                lastPrecedingTask.finalizersAfter = new ArrayList<TaskInfoInVisitingSegment>();
+            }
+            lastPrecedingTask.finalizersAfter.add(finalizer);
+        }
     }
 
     private Set<TaskInfo> getAllPrecedingTasks(TaskInfo finalizer) {
@@ -477,10 +607,19 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                 graph.clear();
                 entryTasks.clear();
                 executionPlan.clear();
-                executionQueue.clear();
+                planPositions.clear();
+                remainingDurations.clear();
+                pendingTasks.clear();
+                readyTasks.clear();
+                readyProjects.clear();
                 projectLocks.clear();
                 failures.clear();
                 canonicalizedOutputCache.clear();
+                claimedOutputPaths.clear();
+                tasksWithUnclaimedOutputs.clear();
+                runningParallelizableTasks.clear();
+                parallelizableTasksByProject.clear();
+                projectsDrainingParallelizableTasks.clear();
                 runningTasks.clear();
                 return FINISHED;
             }
@@ -508,6 +647,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     public boolean executeWithTask(final WorkerLease workerLease, final Action<TaskInfo> taskExecution) {
         final AtomicReference<TaskInfo> selected = new AtomicReference<TaskInfo>();
         final AtomicBoolean workRemaining = new AtomicBoolean();
+        final AtomicLong observedChanges = new AtomicLong();
         coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
             @Override
             public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
@@ -522,62 +662,188 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                     return FINISHED;
                 }
 
-                if (allProjectsLocked()) {
-                    return RETRY;
-                }
-
                 selected.set(selectNextTask(workerLease));
-
-                if (selected.get() == null && workRemaining.get()) {
+                if (selected.get() == null && !readyProjects.isEmpty()) {
+                    // Some tasks are ready, but are held up by a lock or by the outputs of a running task, so wait for a lock to be released
                     return RETRY;
-                } else {
-                    return FINISHED;
                 }
+                observedChanges.set(getReadyTasksChanges());
+                return FINISHED;
             }
         });
 
-
         TaskInfo selectedTask = selected.get();
+        if (selectedTask == null && workRemaining.get()) {
+            awaitReadyTasksChanged(observedChanges.get());
+        }
         execute(selectedTask, workerLease, taskExecution);
         return workRemaining.get();
     }
 
+    private long getReadyTasksChanges() {
+        synchronized (readyTasksChanged) {
+            return readyTasksChanges;
+        }
+    }
+
+    /**
+     * Wakes up the workers that found no ready task. Called while holding the state lock, while the workers wait without holding it.
+     */
+    private void signalReadyTasksChanged() {
+        synchronized (readyTasksChanged) {
+            readyTasksChanges++;
+            readyTasksChanged.notifyAll();
+        }
+    }
+
+    private void awaitReadyTasksChanged(long observedChanges) {
+        synchronized (readyTasksChanged) {
+            while (readyTasksChanges == observedChanges) {
+                try {
+                    readyTasksChanged.wait();
+                } catch (InterruptedException e) {
+                    throw UncheckedException.throwAsUncheckedException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns some of the tasks that are ready to execute and belong to a project locked by the current thread, so that no other thread can start them.
+     */
+    public List<TaskInternal> getReadyTasksLockedByCurrentThread(final int maxTasks) {
+        final List<TaskInternal> tasks = new ArrayList<TaskInternal>();
+        coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+            @Override
+            public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                for (Map.Entry<Project, TreeSet<TaskInfo>> entry : readyTasks.entrySet()) {
+                    ResourceLock projectLock = projectLocks.get(entry.getKey());
+                    if (projectLock == null || !projectLock.isLockedByCurrentThread()) {
+                        continue;
+                    }
+                    for (TaskInfo taskInfo : entry.getValue()) {
+                        if (tasks.size() == maxTasks) {
+                            return FINISHED;
+                        }
+                        if (taskInfo.isReady() && taskInfo.allDependenciesComplete() && taskInfo.allDependenciesSuccessful()) {
+                            tasks.add(taskInfo.getTask());
+                        }
+                    }
+                }
+                return FINISHED;
+            }
+        });
+        return tasks;
+    }
+
+    @Nullable
     private TaskInfo selectNextTask(final WorkerLease workerLease) {
+        // Only the tasks known to be ready are considered, starting with the project whose next task has the longest chain of tasks waiting for it
+        Project project = readyProjects.isEmpty() ? null : readyProjects.first();
+        while (project != null) {
+            Project nextProject = readyProjects.higher(project);
+            if (!projectLocks.get(project).isLocked()) {
+                readyProjects.remove(project);
+                TreeSet<TaskInfo> projectTasks = readyTasks.get(project);
+                TaskInfo selected = selectNextTask(projectTasks.iterator(), workerLease);
+                if (!projectTasks.isEmpty()) {
+                    readyProjects.add(project);
+                }
+                if (selected != null) {
+                    return selected;
+                }
+            }
+            project = nextProject;
+        }
+        return null;
+    }
+
+    @Nullable
+    private TaskInfo selectNextTask(final Iterator<TaskInfo> iterator, final WorkerLease workerLease) {
         final AtomicReference<TaskInfo> selected = new AtomicReference<TaskInfo>();
-        final Iterator<TaskInfo> iterator = executionQueue.iterator();
         while (iterator.hasNext()) {
             final TaskInfo taskInfo = iterator.next();
-            if (taskInfo.isReady() && taskInfo.allDependenciesComplete()) {
-                coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
-                    @Override
-                    public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
-                        ResourceLock projectLock = getProjectLock(taskInfo);
-                        // TODO: convert output file checks to a resource lock
-                        if (!projectLock.tryLock() || !workerLease.tryLock() || !canRunWithCurrentlyExecutedTasks(taskInfo)) {
-                            return FAILED;
-                        }
-
-                        selected.set(taskInfo);
-                        iterator.remove();
-                        if (taskInfo.allDependenciesSuccessful()) {
-                            taskInfo.startExecution();
-                            recordTaskStarted(taskInfo);
-                        } else {
-                            taskInfo.skipExecution();
-                        }
-                        return FINISHED;
+            if (!taskInfo.isReady() || !taskInfo.allDependenciesComplete()) {
+                // No longer ready, will be added again once it is
+                iterator.remove();
+                continue;
+            }
+            coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+                @Override
+                public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                    boolean parallelizable = isParallelizable(taskInfo);
+                    // TODO: convert output file checks to a resource lock
+                    if (!tryLockProject(taskInfo, parallelizable) || !workerLease.tryLock() || !canRunWithCurrentlyExecutedTasks(taskInfo)) {
+                        return FAILED;
                     }
-                });
 
-                if (selected.get() != null) {
-                    break;
+                    if (parallelizable) {
+                        runningParallelizableTasks.add(taskInfo);
+                        parallelizableTasksByProject.add(taskInfo.getTask().getProject());
+                    }
+                    selected.set(taskInfo);
+                    iterator.remove();
+                    pendingTasks.remove(taskInfo);
+                    if (taskInfo.allDependenciesSuccessful()) {
+                        taskInfo.startExecution();
+                        recordTaskStarted(taskInfo);
+                    } else {
+                        taskInfo.skipExecution();
+                        dependencyComplete(taskInfo);
+                    }
+                    return FINISHED;
                 }
+            });
+
+            if (selected.get() != null) {
+                return selected.get();
+            }
+        }
+        return null;
+    }
+
+    private void addIfReady(TaskInfo taskInfo) {
+        if (taskInfo.isReady() && taskInfo.getIncompleteDependencies() == 0 && planPositions.containsKey(taskInfo)) {
+            Project project = taskInfo.getTask().getProject();
+            TreeSet<TaskInfo> projectTasks = readyTasks.get(project);
+            if (projectTasks == null) {
+                projectTasks = new TreeSet<TaskInfo>(selectionOrder);
+                readyTasks.put(project, projectTasks);
+            } else if (!projectTasks.isEmpty()) {
+                readyProjects.remove(project);
             }
+            projectTasks.add(taskInfo);
+            readyProjects.add(project);
+            signalReadyTasksChanged();
         }
-        return selected.get();
     }
 
-    private void execute(TaskInfo selectedTask, WorkerLease workerLease, Action<TaskInfo> taskExecution) {
+    /**
+     * Counts down the incomplete dependencies of the tasks that depend on or must run after the given task, which has just completed.
+     */
+    private void dependencyComplete(TaskInfo taskInfo) {
+        for (TaskInfo dependent : Iterables.concat(taskInfo.getMustPredecessors(), taskInfo.getDependencyPredecessors())) {
+            if (planPositions.containsKey(dependent)) {
+                dependent.setIncompleteDependencies(dependent.getIncompleteDependencies() - 1);
+                addIfReady(dependent);
+            }
+        }
+        // Also wakes up workers waiting for this task to finish, to let them find out that there is no work remaining, or that the outputs of this task have been released
+        signalReadyTasksChanged();
+    }
+
+    /**
+     * Counts up the incomplete dependencies of the tasks that depend on or must run after the given task, which was complete but is now going to run.
+     */
+    private void dependencyIncomplete(TaskInfo taskInfo) {
+        for (TaskInfo dependent : Iterables.concat(taskInfo.getMustPredecessors(), taskInfo.getDependencyPredecessors())) {
+            if (planPositions.containsKey(dependent)) {
+                dependent.setIncompleteDependencies(dependent.getIncompleteDependencies() + 1);
+            }
+        }
+    }
+
+    private void execute(final TaskInfo selectedTask, final WorkerLease workerLease, Action<TaskInfo> taskExecution) {
         if (selectedTask == null) {
             return;
         }
@@ -586,17 +852,74 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                 taskExecution.execute(selectedTask);
             }
         } finally {
-            coordinationService.withStateLock(unlock(workerLease, getProjectLock(selectedTask)));
+            coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+                @Override
+                public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                    if (runningParallelizableTasks.remove(selectedTask)) {
+                        Project project = selectedTask.getTask().getProject();
+                        parallelizableTasksByProject.remove(project);
+                        if (!parallelizableTasksByProject.contains(project)) {
+                            projectsDrainingParallelizableTasks.remove(project);
+                        }
+                        return unlock(workerLease).transform(resourceLockState);
+                    }
+                    return unlock(workerLease, getProjectLock(selectedTask)).transform(resourceLockState);
+                }
+            });
         }
     }
 
-    private boolean allProjectsLocked() {
-        for (ResourceLock lock : projectLocks.values()) {
-            if (!lock.isLocked()) {
-                return false;
+    /**
+     * A parallelizable task only needs the project lock to be free, and does not hold it while executing. Any other task needs the project lock,
+     * and no parallelizable tasks of the project to be running. Once such a task is waiting, no more parallelizable tasks of the project are
+     * started, so that it is not held up by a steady stream of them.
+     */
+    private boolean tryLockProject(TaskInfo taskInfo, boolean parallelizable) {
+        ResourceLock projectLock = getProjectLock(taskInfo);
+        Project project = taskInfo.getTask().getProject();
+        if (parallelizable) {
+            return !projectLock.isLocked() && !projectsDrainingParallelizableTasks.contains(project);
+        }
+        if (parallelizableTasksByProject.contains(project)) {
+            projectsDrainingParallelizableTasks.add(project);
+            return false;
+        }
+        return projectLock.tryLock();
+    }
+
+    /**
+     * Runs the given action while holding the lock of the project of the given task. Parallelizable tasks do not hold the lock while executing,
+     * but anything that runs around them, like task execution listeners, may access the project.
+     */
+    public void withProjectLock(final TaskInternal task, Runnable action) {
+        final AtomicReference<ResourceLock> projectLock = new AtomicReference<ResourceLock>();
+        final AtomicBoolean lockedByCurrentThread = new AtomicBoolean();
+        coordinationService.withStateLock(new Transformer<ResourceLockState.Disposition, ResourceLockState>() {
+            @Override
+            public ResourceLockState.Disposition transform(ResourceLockState resourceLockState) {
+                ResourceLock lock = projectLocks.get(task.getProject());
+                if (lock == null) {
+                    lock = getOrCreateProjectLock(task.getProject());
+                }
+                projectLock.set(lock);
+                lockedByCurrentThread.set(lock.isLockedByCurrentThread());
+                return FINISHED;
             }
+        });
+        if (lockedByCurrentThread.get()) {
+            action.run();
+        } else {
+            workerLeaseService.withLocks(projectLock.get()).execute(action);
         }
-        return true;
+    }
+
+    private boolean isParallelizable(TaskInfo taskInfo) {
+        if (!intraProjectParallelism) {
+            return false;
+        }
+        TaskInternal task = taskInfo.getTask();
+        // Custom actions may do anything, so do not trust the annotation of the task type for these
+        return !task.isHasCustomActions() && GeneratedSubclasses.unpack(task.getClass()).isAnnotationPresent(ParallelizableTask.class);
     }
 
     private ResourceLock getProjectLock(TaskInfo taskInfo) {
@@ -650,46 +973,52 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
             return null;
         }
 
+        claimOutputsOfRunningTasks();
         for (String candidateTaskOutputPath : canonicalizedOutputPaths(candidateTask)) {
-            for (TaskInternal runningTask : runningTasks) {
-                for (String runningTaskOutputPath : canonicalizedOutputPaths(runningTask)) {
-                    if (pathsOverlap(candidateTaskOutputPath, runningTaskOutputPath)) {
-                        return Pair.of(runningTask, TextUtil.shorterOf(candidateTaskOutputPath, runningTaskOutputPath));
-                    }
-                }
+            Pair<TaskInternal, String> overlap = claimedOutputPaths.findOverlap(candidateTaskOutputPath);
+            if (overlap != null) {
+                return overlap;
             }
         }
 
         return null;
     }
 
-
-    private boolean pathsOverlap(String firstPath, String secondPath) {
-        if (firstPath.equals(secondPath)) {
-            return true;
+    private void recordTaskStarted(TaskInfo taskInfo) {
+        TaskInternal task = taskInfo.getTask();
+        if (runningTasks.isEmpty()) {
+            tasksWithUnclaimedOutputs.add(task);
+        } else {
+            claimOutputsOfRunningTasks();
+            claimOutputs(task);
         }
+        runningTasks.add(task);
+    }
 
-        String shorter;
-        String longer;
-        if (firstPath.length() > secondPath.length()) {
-            shorter = secondPath;
-            longer = firstPath;
-        } else {
-            shorter = firstPath;
-            longer = secondPath;
+    private void claimOutputsOfRunningTasks() {
+        if (tasksWithUnclaimedOutputs.isEmpty()) {
+            return;
+        }
+        for (TaskInternal task : tasksWithUnclaimedOutputs) {
+            claimOutputs(task);
         }
-        return longer.startsWith(shorter + StandardSystemProperty.FILE_SEPARATOR.value());
+        tasksWithUnclaimedOutputs.clear();
     }
 
-    private void recordTaskStarted(TaskInfo taskInfo) {
-        TaskInternal task = taskInfo.getTask();
-        runningTasks.add(task);
+    private void claimOutputs(TaskInternal task) {
+        for (String outputPath : canonicalizedOutputPaths(task)) {
+            claimedOutputPaths.claim(task, outputPath);
+        }
     }
 
     private void recordTaskCompleted(TaskInfo taskInfo) {
         TaskInternal task = taskInfo.getTask();
+        if (runningTasks.remove(task) && !tasksWithUnclaimedOutputs.remove(task)) {
+            for (String outputPath : canonicalizedOutputPaths(task)) {
+                claimedOutputPaths.release(outputPath);
+            }
+        }
         canonicalizedOutputCache.remove(task);
-        runningTasks.remove(task);
     }
 
     public void taskComplete(final TaskInfo taskInfo) {
@@ -703,6 +1032,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
 
                 taskInfo.finishExecution();
                 recordTaskCompleted(taskInfo);
+                dependencyComplete(taskInfo);
                 return FINISHED;
             }
         });
@@ -728,7 +1058,13 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
                 candidateNodes.addAll(node.getDependencySuccessors());
 
                 if (node.isMustNotRun() || node.isRequired()) {
+                    boolean wasComplete = node.isComplete();
                     node.enforceRun();
+                    if (wasComplete && planPositions.containsKey(node)) {
+                        pendingTasks.add(node);
+                        dependencyIncomplete(node);
+                        addIfReady(node);
+                    }
                 }
             }
         }
@@ -760,6 +1096,8 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
         for (TaskInfo taskInfo : executionPlan.values()) {
             if (taskInfo.isRequired()) {
                 taskInfo.skipExecution();
+                pendingTasks.remove(taskInfo);
+                dependencyComplete(taskInfo);
                 aborted = true;
             }
         }
@@ -796,6 +1134,9 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     }
 
     private boolean allTasksComplete() {
+        if (!pendingTasks.isEmpty() || !runningTasks.isEmpty()) {
+            return false;
+        }
         for (TaskInfo taskInfo : executionPlan.values()) {
             if (!taskInfo.isComplete()) {
                 return false;
@@ -805,12 +1146,7 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     }
 
     private boolean workRemaining() {
-        for (TaskInfo taskInfo : executionQueue) {
-            if (!taskInfo.isComplete()) {
-                return true;
-            }
-        }
-        return false;
+        return !pendingTasks.isEmpty();
     }
 
     private static class GraphEdge {
@@ -826,6 +1162,8 @@ public class DefaultTaskExecutionPlan implements TaskExecutionPlan {
     private static class TaskInfoInVisitingSegment {
         private final TaskInfo taskInfo;
         private final int visitingSegment;
+        // Finalizers that are queued directly after this entry, in the order they were added
+        private List<TaskInfoInVisitingSegment> finalizersAfter;
 
         private TaskInfoInVisitingSegment(TaskInfo taskInfo, int visitingSegment) {
             this.taskInfo = taskInfo;
@@ -28,9 +28,12 @@ import org.gradle.api.execution.internal.InternalTaskExecutionListener;
 import org.gradle.api.execution.internal.TaskOperationDetails;
 import org.gradle.api.execution.internal.TaskOperationInternal;
 import org.gradle.api.internal.TaskInternal;
+import org.gradle.api.internal.changedetection.state.TaskDurationHistory;
 import org.gradle.api.internal.tasks.TaskExecuter;
+import org.gradle.api.internal.tasks.TaskExecutionOutcome;
 import org.gradle.api.internal.tasks.TaskStateInternal;
 import org.gradle.api.internal.tasks.execution.DefaultTaskExecutionContext;
+import org.gradle.api.internal.tasks.execution.TaskExecutionLookahead;
 import org.gradle.api.specs.Spec;
 import org.gradle.api.specs.Specs;
 import org.gradle.api.tasks.TaskState;
@@ -62,6 +65,7 @@ import java.util.Set;
 
 public class DefaultTaskGraphExecuter implements TaskGraphExecuter {
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultTaskGraphExecuter.class);
+    private static final int MAX_LOOKAHEAD_TASKS = 8;
 
     private enum TaskGraphState {
         EMPTY, DIRTY, POPULATED
@@ -70,24 +74,28 @@ public class DefaultTaskGraphExecuter implements TaskGraphExecuter {
     private final TaskPlanExecutor taskPlanExecutor;
     // This currently needs to be lazy, as it uses state that is not available when the graph is created
     private final Factory<? extends TaskExecuter> taskExecuter;
+    private final Factory<? extends TaskExecutionLookahead> taskExecutionLookahead;
     private final ListenerBroadcast<TaskExecutionGraphListener> graphListeners;
     private final ListenerBroadcast<TaskExecutionListener> taskListeners;
     private final InternalTaskExecutionListener internalTaskListener;
     private final DefaultTaskExecutionPlan taskExecutionPlan;
     private final BuildOperationExecutor buildOperationExecutor;
+    private final TaskDurationHistory taskDurationHistory;
     private TaskGraphState taskGraphState = TaskGraphState.EMPTY;
 
     private final Set<Task> requestedTasks = Sets.newTreeSet();
     private Spec<? super Task> filter = Specs.SATISFIES_ALL;
 
-    public DefaultTaskGraphExecuter(ListenerManager listenerManager, TaskPlanExecutor taskPlanExecutor, Factory<? extends TaskExecuter> taskExecuter, BuildCancellationToken cancellationToken, BuildOperationExecutor buildOperationExecutor, WorkerLeaseService workerLeaseService, ResourceLockCoordinationService coordinationService) {
+    public DefaultTaskGraphExecuter(ListenerManager listenerManager, TaskPlanExecutor taskPlanExecutor, Factory<? extends TaskExecuter> taskExecuter, Factory<? extends TaskExecutionLookahead> taskExecutionLookahead, BuildCancellationToken cancellationToken, BuildOperationExecutor buildOperationExecutor, WorkerLeaseService workerLeaseService, ResourceLockCoordinationService coordinationService, TaskDurationHistory taskDurationHistory, boolean prioritizeCriticalPath, boolean intraProjectParallelism) {
         this.taskPlanExecutor = taskPlanExecutor;
         this.taskExecuter = taskExecuter;
+        this.taskExecutionLookahead = taskExecutionLookahead;
         this.buildOperationExecutor = buildOperationExecutor;
+        this.taskDurationHistory = taskDurationHistory;
         graphListeners = listenerManager.createAnonymousBroadcaster(TaskExecutionGraphListener.class);
         taskListeners = listenerManager.createAnonymousBroadcaster(TaskExecutionListener.class);
         internalTaskListener = listenerManager.getBroadcaster(InternalTaskExecutionListener.class);
-        taskExecutionPlan = new DefaultTaskExecutionPlan(cancellationToken, coordinationService, workerLeaseService);
+        taskExecutionPlan = new DefaultTaskExecutionPlan(cancellationToken, coordinationService, workerLeaseService, prioritizeCriticalPath ? taskDurationHistory : TaskDurationHistory.NONE, intraProjectParallelism);
     }
 
     public void useFailureHandler(TaskFailureHandler handler) {
@@ -123,7 +131,7 @@ public class DefaultTaskGraphExecuter implements TaskGraphExecuter {
 
         graphListeners.getSource().graphPopulated(this);
         try {
-            taskPlanExecutor.process(taskExecutionPlan, new EventFiringTaskWorker(taskExecuter.create(), buildOperationExecutor.getCurrentOperation()));
+            taskPlanExecutor.process(taskExecutionPlan, new EventFiringTaskWorker(taskExecuter.create(), taskExecutionLookahead.create(), buildOperationExecutor.getCurrentOperation()));
             LOGGER.debug("Timing: Executing the DAG took " + clock.getElapsed());
         } finally {
             taskExecutionPlan.clear();
@@ -227,15 +235,30 @@ public class DefaultTaskGraphExecuter implements TaskGraphExecuter {
      */
     private class EventFiringTaskWorker implements Action<TaskInternal> {
         private final TaskExecuter taskExecuter;
+        private final TaskExecutionLookahead lookahead;
         private final BuildOperationState parentOperation;
 
-        EventFiringTaskWorker(TaskExecuter taskExecuter, BuildOperationState parentOperation) {
+        EventFiringTaskWorker(TaskExecuter taskExecuter, TaskExecutionLookahead lookahead, BuildOperationState parentOperation) {
             this.taskExecuter = taskExecuter;
+            this.lookahead = lookahead;
             this.parentOperation = parentOperation;
         }
 
         @Override
         public void execute(final TaskInternal task) {
+            if (lookahead != TaskExecutionLookahead.NONE) {
+                // The tasks that will run next in the projects locked for this task can be prepared for while it executes
+                lookahead.lookAhead(taskExecutionPlan.getReadyTasksLockedByCurrentThread(MAX_LOOKAHEAD_TASKS));
+            }
+            try {
+                lookahead.taskStarting(task);
+                executeWithEvents(task);
+            } finally {
+                lookahead.taskExecuted(task);
+            }
+        }
+
+        private void executeWithEvents(final TaskInternal task) {
             buildOperationExecutor.run(new RunnableBuildOperation() {
                 @Override
                 public void run(BuildOperationContext context) {
@@ -243,10 +266,24 @@ public class DefaultTaskGraphExecuter implements TaskGraphExecuter {
                     // These events are used by build scans
                     TaskOperationInternal legacyOperation = new TaskOperationInternal(task, taskExecutionOperationId);
                     internalTaskListener.beforeExecute(legacyOperation, new OperationStartEvent(0));
-                    TaskStateInternal state = task.getState();
-                    taskListeners.getSource().beforeExecute(task);
+                    final TaskStateInternal state = task.getState();
+                    taskExecutionPlan.withProjectLock(task, new Runnable() {
+                        @Override
+                        public void run() {
+                            taskListeners.getSource().beforeExecute(task);
+                        }
+                    });
+                    Timer clock = Timers.startTimer();
                     taskExecuter.execute(task, state, new DefaultTaskExecutionContext());
-                    taskListeners.getSource().afterExecute(task, state);
+                    if (state.getOutcome() == TaskExecutionOutcome.EXECUTED && state.getFailure() == null) {
+                        taskDurationHistory.recordDuration(task, clock.getElapsedMillis());
+                    }
+                    taskExecutionPlan.withProjectLock(task, new Runnable() {
+                        @Override
+                        public void run() {
+                            taskListeners.getSource().afterExecute(task, state);
+                        }
+                    });
                     context.failed(state.getFailure());
                     internalTaskListener.afterExecute(legacyOperation, new OperationFinishEvent(0, 0, state.getFailure(), null));
                 }
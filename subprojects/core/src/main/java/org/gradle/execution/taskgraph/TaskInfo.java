@@ -34,8 +34,10 @@ public class TaskInfo implements Comparable<TaskInfo> {
     private final TreeSet<TaskInfo> dependencyPredecessors = new TreeSet<TaskInfo>();
     private final TreeSet<TaskInfo> dependencySuccessors = new TreeSet<TaskInfo>();
     private final TreeSet<TaskInfo> mustSuccessors = new TreeSet<TaskInfo>();
+    private final TreeSet<TaskInfo> mustPredecessors = new TreeSet<TaskInfo>();
     private final TreeSet<TaskInfo> shouldSuccessors = new TreeSet<TaskInfo>();
     private final TreeSet<TaskInfo> finalizers = new TreeSet<TaskInfo>();
+    private int incompleteDependencies;
 
     public TaskInfo(TaskInternal task) {
         this.task = task;
@@ -159,6 +161,10 @@ public class TaskInfo implements Comparable<TaskInfo> {
         return mustSuccessors;
     }
 
+    public TreeSet<TaskInfo> getMustPredecessors() {
+        return mustPredecessors;
+    }
+
     public TreeSet<TaskInfo> getFinalizers() {
         return finalizers;
     }
@@ -182,6 +188,7 @@ public class TaskInfo implements Comparable<TaskInfo> {
 
     public void addMustSuccessor(TaskInfo toNode) {
         mustSuccessors.add(toNode);
+        toNode.mustPredecessors.add(this);
     }
 
     public void addFinalizer(TaskInfo finalizerNode) {
@@ -196,6 +203,17 @@ public class TaskInfo implements Comparable<TaskInfo> {
         shouldSuccessors.remove(toNode);
     }
 
+    /**
+     * The number of dependencies and must run after tasks of this task that are not complete, as tracked by the execution plan.
+     */
+    int getIncompleteDependencies() {
+        return incompleteDependencies;
+    }
+
+    void setIncompleteDependencies(int incompleteDependencies) {
+        this.incompleteDependencies = incompleteDependencies;
+    }
+
     public int compareTo(TaskInfo otherInfo) {
         return task.compareTo(otherInfo.getTask());
     }
@@ -23,6 +23,10 @@ import org.gradle.api.internal.GradleInternal;
 import org.gradle.api.internal.tasks.execution.statistics.TaskExecutionStatisticsEventAdapter;
 import org.gradle.api.logging.Logging;
 import org.gradle.api.logging.configuration.ShowStacktrace;
+import org.gradle.cache.internal.CacheAccessStatistics;
+import org.gradle.cache.internal.CacheAccessStatisticsReporter;
+import org.gradle.caching.internal.tasks.statistics.TaskOutputCacheStatistics;
+import org.gradle.caching.internal.tasks.statistics.TaskOutputCacheStatisticsReporter;
 import org.gradle.configuration.BuildConfigurer;
 import org.gradle.deployment.internal.DeploymentRegistry;
 import org.gradle.execution.BuildConfigurationActionExecuter;
@@ -129,6 +133,8 @@ public class DefaultGradleLauncherFactory implements GradleLauncherFactory {
 
         listenerManager.addListener(serviceRegistry.get(TaskExecutionStatisticsEventAdapter.class));
         listenerManager.addListener(new TaskExecutionStatisticsReporter(serviceRegistry.get(StyledTextOutputFactory.class)));
+        listenerManager.addListener(new TaskOutputCacheStatisticsReporter(serviceRegistry.get(TaskOutputCacheStatistics.class), serviceRegistry.get(StyledTextOutputFactory.class), startParameter.isProfile(), requestMetaData.getBuildTimeClock().getStartTime()));
+        listenerManager.addListener(new CacheAccessStatisticsReporter(serviceRegistry.get(CacheAccessStatistics.class), serviceRegistry.get(BuildOperationExecutor.class)));
 
         listenerManager.addListener(serviceRegistry.get(ProfileEventAdapter.class));
         if (startParameter.isProfile()) {
@@ -78,6 +78,7 @@ import org.gradle.caching.configuration.internal.BuildCacheServiceRegistration;
 import org.gradle.caching.configuration.internal.DefaultBuildCacheConfiguration;
 import org.gradle.caching.configuration.internal.DefaultBuildCacheServiceRegistration;
 import org.gradle.caching.internal.BuildCacheServiceProvider;
+import org.gradle.caching.internal.tasks.statistics.TaskOutputCacheStatistics;
 import org.gradle.caching.local.DirectoryBuildCache;
 import org.gradle.caching.local.internal.DirectoryBuildCacheServiceFactory;
 import org.gradle.configuration.BuildConfigurer;
@@ -406,6 +407,10 @@ public class BuildScopeServices extends DefaultServiceRegistry {
         return new TaskExecutionStatisticsEventAdapter(listenerManager.getBroadcaster(TaskExecutionStatisticsListener.class));
     }
 
+    protected TaskOutputCacheStatistics createTaskOutputCacheStatistics() {
+        return new TaskOutputCacheStatistics();
+    }
+
     protected ServiceRegistryFactory createServiceRegistryFactory(final ServiceRegistry services) {
         return new BuildScopeServiceRegistryFactory(services);
     }
@@ -456,13 +461,14 @@ public class BuildScopeServices extends DefaultServiceRegistry {
         return instantiator.newInstance(DefaultBuildCacheConfiguration.class, instantiator, allBuildCacheServiceFactories);
     }
 
-    BuildCacheServiceProvider createBuildCacheServiceProvider(BuildCacheConfigurationInternal buildCacheConfiguration, StartParameter startParameter, BuildOperationExecutor buildOperationExecutor, TemporaryFileProvider temporaryFileProvider, InstantiatorFactory instantiatorFactory) {
+    BuildCacheServiceProvider createBuildCacheServiceProvider(BuildCacheConfigurationInternal buildCacheConfiguration, StartParameter startParameter, BuildOperationExecutor buildOperationExecutor, TemporaryFileProvider temporaryFileProvider, InstantiatorFactory instantiatorFactory, ExecutorFactory executorFactory) {
         return new BuildCacheServiceProvider(
             buildCacheConfiguration,
             startParameter,
             instantiatorFactory.inject(this),
             buildOperationExecutor,
-            temporaryFileProvider
+            temporaryFileProvider,
+            executorFactory
         );
     }
 
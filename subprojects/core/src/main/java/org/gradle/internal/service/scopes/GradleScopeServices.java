@@ -15,6 +15,7 @@
  */
 package org.gradle.internal.service.scopes;
 
+import org.gradle.StartParameter;
 import org.gradle.api.Action;
 import org.gradle.api.internal.DocumentationRegistry;
 import org.gradle.api.internal.GradleInternal;
@@ -24,6 +25,7 @@ import org.gradle.api.internal.cache.DefaultFileContentCacheFactory;
 import org.gradle.api.internal.cache.FileContentCacheFactory;
 import org.gradle.api.internal.changedetection.state.FileSystemSnapshotter;
 import org.gradle.api.internal.changedetection.state.InMemoryCacheDecoratorFactory;
+import org.gradle.api.internal.changedetection.state.TaskDurationHistory;
 import org.gradle.api.internal.file.FileLookup;
 import org.gradle.api.internal.file.FileResolver;
 import org.gradle.api.internal.file.delete.Deleter;
@@ -34,6 +36,7 @@ import org.gradle.api.internal.plugins.PluginManagerInternal;
 import org.gradle.api.internal.plugins.PluginRegistry;
 import org.gradle.api.internal.project.ProjectInternal;
 import org.gradle.api.internal.tasks.TaskExecuter;
+import org.gradle.api.internal.tasks.execution.TaskExecutionLookahead;
 import org.gradle.api.internal.tasks.options.OptionReader;
 import org.gradle.api.invocation.Gradle;
 import org.gradle.cache.CacheRepository;
@@ -138,14 +141,23 @@ public class GradleScopeServices extends DefaultServiceRegistry {
         };
     }
 
-    TaskGraphExecuter createTaskGraphExecuter(ListenerManager listenerManager, TaskPlanExecutor taskPlanExecutor, BuildCancellationToken cancellationToken, BuildOperationExecutor buildOperationExecutor, WorkerLeaseService workerLeaseService, ResourceLockCoordinationService coordinationService) {
+    TaskGraphExecuter createTaskGraphExecuter(ListenerManager listenerManager, TaskPlanExecutor taskPlanExecutor, BuildCancellationToken cancellationToken, BuildOperationExecutor buildOperationExecutor, WorkerLeaseService workerLeaseService, ResourceLockCoordinationService coordinationService, TaskDurationHistory taskDurationHistory, StartParameter startParameter) {
         Factory<TaskExecuter> taskExecuterFactory = new Factory<TaskExecuter>() {
             @Override
             public TaskExecuter create() {
                 return get(TaskExecuter.class);
             }
         };
-        return new DefaultTaskGraphExecuter(listenerManager, taskPlanExecutor, taskExecuterFactory, cancellationToken, buildOperationExecutor, workerLeaseService, coordinationService);
+        Factory<TaskExecutionLookahead> taskExecutionLookaheadFactory = new Factory<TaskExecutionLookahead>() {
+            @Override
+            public TaskExecutionLookahead create() {
+                return get(TaskExecutionLookahead.class);
+            }
+        };
+        // Starting the longest chains of tasks first only pays off when tasks can run in parallel, other builds keep to the order of the plan
+        boolean prioritizeCriticalPath = startParameter.isParallelProjectExecutionEnabled();
+        boolean intraProjectParallelism = startParameter.isParallelProjectExecutionEnabled() && Boolean.getBoolean("org.gradle.parallel.intra");
+        return new DefaultTaskGraphExecuter(listenerManager, taskPlanExecutor, taskExecuterFactory, taskExecutionLookaheadFactory, cancellationToken, buildOperationExecutor, workerLeaseService, coordinationService, taskDurationHistory, prioritizeCriticalPath, intraProjectParallelism);
     }
 
     ServiceRegistryFactory createServiceRegistryFactory(final ServiceRegistry services) {
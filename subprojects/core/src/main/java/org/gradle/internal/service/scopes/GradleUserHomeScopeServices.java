@@ -27,6 +27,7 @@ import org.gradle.api.internal.changedetection.state.DefaultFileSystemMirror;
 import org.gradle.api.internal.changedetection.state.DefaultFileSystemSnapshotter;
 import org.gradle.api.internal.changedetection.state.DefaultGenericFileCollectionSnapshotter;
 import org.gradle.api.internal.changedetection.state.FileSystemMirror;
+import org.gradle.api.internal.changedetection.state.FileSystemMirrorRegistry;
 import org.gradle.api.internal.changedetection.state.FileSystemSnapshotter;
 import org.gradle.api.internal.changedetection.state.GenericFileCollectionSnapshotter;
 import org.gradle.api.internal.changedetection.state.GlobalScopeFileTimeStampInspector;
@@ -36,6 +37,7 @@ import org.gradle.api.internal.changedetection.state.TaskHistoryStore;
 import org.gradle.api.internal.changedetection.state.ValueSnapshotter;
 import org.gradle.api.internal.file.collections.DirectoryFileTreeFactory;
 import org.gradle.api.internal.hash.DefaultFileHasher;
+import org.gradle.api.internal.hash.FileHashAlgorithm;
 import org.gradle.api.internal.hash.FileHasher;
 import org.gradle.api.internal.initialization.loadercache.ClassLoaderCache;
 import org.gradle.api.internal.initialization.loadercache.DefaultClassLoaderCache;
@@ -63,12 +65,16 @@ import org.gradle.internal.serialize.HashCodeSerializer;
 import org.gradle.internal.service.ServiceRegistration;
 import org.gradle.internal.service.ServiceRegistry;
 
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Defines the shared services scoped to a particular Gradle user home directory. These services are reused across multiple builds and operations.
  */
 public class GradleUserHomeScopeServices {
+    private static final String RETAIN_FILE_SYSTEM_STATE_PROPERTY = "org.gradle.internal.retainFileSystemState";
+
     private final ServiceRegistry globalServices;
 
     public GradleUserHomeScopeServices(ServiceRegistry globalServices) {
@@ -97,6 +103,7 @@ public class GradleUserHomeScopeServices {
     }
 
     FileHasher createCachingFileHasher(StringInterner stringInterner, CrossBuildFileHashCache fileStore, FileSystem fileSystem, GlobalScopeFileTimeStampInspector fileTimeStampInspector) {
+        // These hashes end up in the hashes of classpaths, and so in build cache keys
         CachingFileHasher fileHasher = new CachingFileHasher(new DefaultFileHasher(), fileStore, stringInterner, fileTimeStampInspector, "fileHashes", fileSystem);
         fileTimeStampInspector.attach(fileHasher);
         return fileHasher;
@@ -114,10 +121,22 @@ public class GradleUserHomeScopeServices {
         return new RegistryAwareClassLoaderHierarchyHasher(registry, classLoaderHasher);
     }
 
-    FileSystemMirror createFileSystemMirror(ListenerManager listenerManager, List<CachedJarFileStore> fileStores) {
-        DefaultFileSystemMirror fileSystemMirror = new DefaultFileSystemMirror(fileStores);
-        listenerManager.addListener(fileSystemMirror);
-        return fileSystemMirror;
+    FileSystemMirrorRegistry createFileSystemMirrorRegistry(ListenerManager listenerManager, List<CachedJarFileStore> fileStores, FileSystem fileSystem, DirectoryFileTreeFactory directoryFileTreeFactory, GlobalScopeFileTimeStampInspector fileTimeStampInspector) {
+        boolean retainFileSystemState = Boolean.getBoolean(RETAIN_FILE_SYSTEM_STATE_PROPERTY);
+        Map<FileHashAlgorithm, FileSystemMirror> mirrors = new EnumMap<FileHashAlgorithm, FileSystemMirror>(FileHashAlgorithm.class);
+        for (FileHashAlgorithm algorithm : FileHashAlgorithm.values()) {
+            DefaultFileSystemMirror fileSystemMirror = retainFileSystemState
+                ? new DefaultFileSystemMirror(fileStores, fileSystem, directoryFileTreeFactory, fileTimeStampInspector)
+                : new DefaultFileSystemMirror(fileStores);
+            listenerManager.addListener(fileSystemMirror);
+            mirrors.put(algorithm, fileSystemMirror);
+        }
+        return new FileSystemMirrorRegistry(mirrors);
+    }
+
+    FileSystemMirror createFileSystemMirror(FileSystemMirrorRegistry fileSystemMirrorRegistry) {
+        // The file hasher of this scope always uses MD5
+        return fileSystemMirrorRegistry.getMirror(FileHashAlgorithm.MD5);
     }
 
     FileSystemSnapshotter createFileSystemSnapshotter(FileHasher hasher, StringInterner stringInterner, FileSystem fileSystem, DirectoryFileTreeFactory directoryFileTreeFactory, FileSystemMirror fileSystemMirror) {
@@ -27,7 +27,9 @@ import org.gradle.api.internal.changedetection.TaskArtifactStateRepository;
 import org.gradle.api.internal.changedetection.changes.DefaultTaskArtifactStateRepository;
 import org.gradle.api.internal.changedetection.changes.ShortCircuitTaskArtifactStateRepository;
 import org.gradle.api.internal.changedetection.state.CacheBackedFileSnapshotRepository;
+import org.gradle.api.internal.changedetection.state.CacheBackedTaskDurationHistory;
 import org.gradle.api.internal.changedetection.state.CacheBackedTaskHistoryRepository;
+import org.gradle.api.internal.changedetection.state.CachingFileCollectionSnapshotHasher;
 import org.gradle.api.internal.changedetection.state.DefaultFileCollectionSnapshotterRegistry;
 import org.gradle.api.internal.changedetection.state.DefaultTaskHistoryStore;
 import org.gradle.api.internal.changedetection.state.FileCollectionSnapshot;
@@ -36,6 +38,7 @@ import org.gradle.api.internal.changedetection.state.FileCollectionSnapshotterRe
 import org.gradle.api.internal.changedetection.state.GenericFileCollectionSnapshotter;
 import org.gradle.api.internal.changedetection.state.InMemoryCacheDecoratorFactory;
 import org.gradle.api.internal.changedetection.state.OutputFilesSnapshotter;
+import org.gradle.api.internal.changedetection.state.TaskDurationHistory;
 import org.gradle.api.internal.changedetection.state.TaskHistoryRepository;
 import org.gradle.api.internal.changedetection.state.TaskHistoryStore;
 import org.gradle.api.internal.changedetection.state.ValueSnapshotter;
@@ -44,6 +47,7 @@ import org.gradle.api.internal.project.taskfactory.FileSnapshottingPropertyAnnot
 import org.gradle.api.internal.tasks.TaskExecuter;
 import org.gradle.api.internal.tasks.execution.CatchExceptionTaskExecuter;
 import org.gradle.api.internal.tasks.execution.ExecuteActionsTaskExecuter;
+import org.gradle.api.internal.tasks.execution.BuildCacheEntryLookahead;
 import org.gradle.api.internal.tasks.execution.ExecuteAtMostOnceTaskExecuter;
 import org.gradle.api.internal.tasks.execution.ResolveBuildCacheKeyExecuter;
 import org.gradle.api.internal.tasks.execution.ResolveTaskArtifactStateTaskExecuter;
@@ -53,29 +57,30 @@ import org.gradle.api.internal.tasks.execution.SkipEmptySourceFilesTaskExecuter;
 import org.gradle.api.internal.tasks.execution.SkipOnlyIfTaskExecuter;
 import org.gradle.api.internal.tasks.execution.SkipTaskWithNoActionsExecuter;
 import org.gradle.api.internal.tasks.execution.SkipUpToDateTaskExecuter;
+import org.gradle.api.internal.tasks.execution.TaskExecutionLookahead;
 import org.gradle.api.internal.tasks.execution.TaskOutputsGenerationListener;
 import org.gradle.api.internal.tasks.execution.ValidatingTaskExecuter;
 import org.gradle.api.internal.tasks.execution.VerifyNoInputChangesTaskExecuter;
 import org.gradle.api.invocation.Gradle;
 import org.gradle.cache.CacheRepository;
 import org.gradle.caching.BuildCacheService;
+import org.gradle.caching.internal.BuildCacheEntryPrefetcher;
 import org.gradle.caching.internal.BuildCacheServiceProvider;
-import org.gradle.caching.internal.tasks.GZipTaskOutputPacker;
-import org.gradle.caching.internal.tasks.TarTaskOutputPacker;
 import org.gradle.caching.internal.tasks.TaskCacheKeyCalculator;
 import org.gradle.caching.internal.tasks.TaskOutputCachingListener;
 import org.gradle.caching.internal.tasks.TaskOutputPacker;
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginFactory;
+import org.gradle.caching.internal.tasks.statistics.TaskOutputCacheStatistics;
 import org.gradle.execution.taskgraph.TaskPlanExecutor;
 import org.gradle.execution.taskgraph.TaskPlanExecutorFactory;
 import org.gradle.internal.SystemProperties;
+import org.gradle.internal.classloader.CachingClassLoaderHierarchyHasher;
 import org.gradle.internal.classloader.ClassLoaderHierarchyHasher;
 import org.gradle.internal.concurrent.CompositeStoppable;
 import org.gradle.internal.concurrent.ExecutorFactory;
 import org.gradle.internal.environment.GradleBuildEnvironment;
 import org.gradle.internal.event.ListenerManager;
 import org.gradle.internal.id.RandomLongIdGenerator;
-import org.gradle.internal.nativeplatform.filesystem.FileSystem;
 import org.gradle.internal.operations.BuildOperationExecutor;
 import org.gradle.internal.os.OperatingSystem;
 import org.gradle.internal.reflect.Instantiator;
@@ -92,6 +97,7 @@ import java.io.File;
 import java.util.List;
 
 public class TaskExecutionServices {
+    private static final long MAX_REMEMBERED_FILE_SNAPSHOT_ENTRIES = 100000;
 
     TaskExecuter createTaskExecuter(TaskArtifactStateRepository repository,
                                     TaskOutputPacker packer,
@@ -100,6 +106,7 @@ public class TaskExecutionServices {
                                     ListenerManager listenerManager,
                                     GradleInternal gradle,
                                     TaskOutputOriginFactory taskOutputOriginFactory,
+                                    TaskOutputCacheStatistics taskOutputCacheStatistics,
                                     BuildOperationExecutor buildOperationExecutor,
                                     AsyncWorkTracker asyncWorkTracker) {
         // TODO - need a more comprehensible way to only collect inputs for the outer build
@@ -128,6 +135,7 @@ public class TaskExecutionServices {
                 buildCacheService,
                 packer,
                 taskOutputsGenerationListener,
+                taskOutputCacheStatistics,
                 executer
             );
         }
@@ -146,10 +154,22 @@ public class TaskExecutionServices {
         return executer;
     }
 
+    TaskExecutionLookahead createTaskExecutionLookahead(StartParameter startParameter, TaskArtifactStateRepository repository, BuildCacheService buildCacheService, ExecutorFactory executorFactory) {
+        // Only pays off when entries are looked up remotely
+        if (startParameter.isBuildCacheEnabled() && buildCacheService instanceof BuildCacheEntryPrefetcher) {
+            return new BuildCacheEntryLookahead(repository, (BuildCacheEntryPrefetcher) buildCacheService, executorFactory);
+        }
+        return TaskExecutionLookahead.NONE;
+    }
+
     TaskHistoryStore createCacheAccess(Gradle gradle, CacheRepository cacheRepository, InMemoryCacheDecoratorFactory inMemoryCacheDecoratorFactory, GradleBuildEnvironment environment) {
         return new DefaultTaskHistoryStore(gradle, cacheRepository, inMemoryCacheDecoratorFactory);
     }
 
+    TaskDurationHistory createTaskDurationHistory(TaskHistoryStore cacheAccess) {
+        return new CacheBackedTaskDurationHistory(cacheAccess);
+    }
+
     FileCollectionSnapshotterRegistry createFileCollectionSnapshotterRegistry(ServiceRegistry serviceRegistry) {
         List<FileSnapshottingPropertyAnnotationHandler> handlers = serviceRegistry.getAll(FileSnapshottingPropertyAnnotationHandler.class);
         ImmutableList.Builder<FileCollectionSnapshotter> snapshotters = ImmutableList.builder();
@@ -183,7 +203,8 @@ public class TaskExecutionServices {
                 outputFilesSnapshotter,
                 fileCollectionSnapshotterRegistry,
                 fileCollectionFactory,
-                classLoaderHierarchyHasher,
+                // Class loader scopes are locked by the time tasks execute, so the hashes can be reused for the rest of the build
+                new CachingClassLoaderHierarchyHasher(classLoaderHierarchyHasher),
                 cacheKeyCalculator,
                 valueSnapshotter
             )
@@ -191,7 +212,7 @@ public class TaskExecutionServices {
     }
 
     TaskCacheKeyCalculator createTaskCacheKeyCalculator() {
-        return new TaskCacheKeyCalculator();
+        return new TaskCacheKeyCalculator(new CachingFileCollectionSnapshotHasher(MAX_REMEMBERED_FILE_SNAPSHOT_ENTRIES));
     }
 
     TaskPlanExecutor createTaskExecutorFactory(StartParameter startParameter, ExecutorFactory executorFactory, WorkerLeaseService workerLeaseService) {
@@ -199,12 +220,6 @@ public class TaskExecutionServices {
         return new TaskPlanExecutorFactory(parallelThreads, executorFactory, workerLeaseService).create();
     }
 
-    TaskOutputPacker createTaskResultPacker(FileSystem fileSystem) {
-        return new GZipTaskOutputPacker(
-            new TarTaskOutputPacker(fileSystem)
-        );
-    }
-
     TaskOutputOriginFactory createTaskOutputOriginFactory(TimeProvider timeProvider, InetAddressFactory inetAddressFactory, GradleInternal gradleInternal) {
         File rootDir = gradleInternal.getRootProject().getRootDir();
         return new TaskOutputOriginFactory(timeProvider, inetAddressFactory, rootDir, SystemProperties.getInstance().getUserName(), OperatingSystem.current().getName(), GradleVersion.current());
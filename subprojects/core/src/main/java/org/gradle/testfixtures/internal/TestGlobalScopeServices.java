@@ -16,6 +16,7 @@
 package org.gradle.testfixtures.internal;
 
 import org.gradle.StartParameter;
+import org.gradle.cache.internal.CacheAccessStatistics;
 import org.gradle.cache.internal.CacheFactory;
 import org.gradle.cache.internal.FileLockManager;
 import org.gradle.internal.concurrent.ExecutorFactory;
@@ -35,7 +36,7 @@ public class TestGlobalScopeServices extends GlobalScopeServices {
     }
 
     @Override
-    protected CacheFactory createCacheFactory(FileLockManager fileLockManager, ExecutorFactory executorFactory) {
+    protected CacheFactory createCacheFactory(FileLockManager fileLockManager, ExecutorFactory executorFactory, CacheAccessStatistics cacheAccessStatistics) {
         return new InMemoryCacheFactory();
     }
 
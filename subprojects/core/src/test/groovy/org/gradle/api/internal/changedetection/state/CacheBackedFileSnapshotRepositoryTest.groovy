@@ -23,12 +23,14 @@ import spock.lang.Specification
 class CacheBackedFileSnapshotRepositoryTest extends Specification {
     final TaskHistoryStore cacheAccess = Mock()
     final PersistentIndexedCache<Object, Object> indexedCache = Mock()
+    final PersistentIndexedCache<Object, Object> referenceCache = Mock()
     final IdGenerator<Long> idGenerator = Mock()
     final Serializer<FileCollectionSnapshot> serializer = Mock()
     FileSnapshotRepository repository
 
     def setup() {
         1 * cacheAccess.createCache("fileSnapshots", _, _, _, _) >> indexedCache
+        1 * cacheAccess.createCache("fileSnapshotReferences", _, _, _, _) >> referenceCache
         repository = new CacheBackedFileSnapshotRepository(cacheAccess, serializer, idGenerator)
     }
 
@@ -41,10 +43,67 @@ class CacheBackedFileSnapshotRepositoryTest extends Specification {
         then:
         id == 15
         1 * idGenerator.generateId() >> 15L
+        1 * referenceCache.get(15) >> null
         1 * indexedCache.put(15, snapshot)
+        1 * referenceCache.put(15, 1)
         0 * _._
     }
 
+    def "stores snapshots in compact form keyed by their content"() {
+        def snapshot = new DefaultFileCollectionSnapshot([
+            "/1": new NonNormalizedFileSnapshot("/1", DirContentSnapshot.getInstance())
+        ], TaskFilePropertyCompareStrategy.UNORDERED, true)
+        def expectedId = ((CompactFileCollectionSnapshot) CompactFileCollectionSnapshot.of(snapshot)).contentHash.asLong()
+
+        when:
+        def id = repository.add(snapshot)
+
+        then:
+        id == expectedId
+        1 * referenceCache.get(expectedId) >> null
+        1 * indexedCache.put(expectedId, { it instanceof CompactFileCollectionSnapshot && it.snapshots == snapshot.snapshots })
+        1 * referenceCache.put(expectedId, 1)
+        0 * _._
+    }
+
+    def "shares the entry between identical snapshots"() {
+        def snapshot = new DefaultFileCollectionSnapshot([
+            "/1": new NonNormalizedFileSnapshot("/1", DirContentSnapshot.getInstance())
+        ], TaskFilePropertyCompareStrategy.UNORDERED, true)
+
+        when:
+        def id = repository.add(snapshot)
+
+        then:
+        1 * referenceCache.get(_) >> 1
+        1 * referenceCache.put(_, 2)
+        0 * _._
+
+        when:
+        repository.remove(id)
+
+        then:
+        1 * referenceCache.get(id) >> 2
+        1 * referenceCache.put(id, 1)
+        0 * _._
+    }
+
+    def "snapshots with different paths are stored separately"() {
+        def snapshot1 = new DefaultFileCollectionSnapshot([
+            "/1": new DefaultNormalizedFileSnapshot("1", DirContentSnapshot.getInstance())
+        ], TaskFilePropertyCompareStrategy.UNORDERED, true)
+        def snapshot2 = new DefaultFileCollectionSnapshot([
+            "/other/1": new DefaultNormalizedFileSnapshot("1", DirContentSnapshot.getInstance())
+        ], TaskFilePropertyCompareStrategy.UNORDERED, true)
+
+        when:
+        def id1 = repository.add(snapshot1)
+        def id2 = repository.add(snapshot2)
+
+        then:
+        id1 != id2
+    }
+
     def "can fetch a snapshot by id"() {
         FileCollectionSnapshot snapshot = Mock()
 
@@ -62,6 +121,8 @@ class CacheBackedFileSnapshotRepositoryTest extends Specification {
         repository.remove(4)
 
         then:
+        1 * referenceCache.get(4) >> 1
+        1 * referenceCache.remove(4)
         1 * indexedCache.remove(4)
         0 * _._
     }
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gradle.api.internal.changedetection.state
+
+import org.gradle.api.internal.TaskInternal
+import org.gradle.cache.PersistentIndexedCache
+import spock.lang.Specification
+
+class CacheBackedTaskDurationHistoryTest extends Specification {
+    final TaskHistoryStore cacheAccess = Mock()
+    final PersistentIndexedCache<String, Long> durationCache = Mock()
+    final TaskInternal task = Stub() {
+        getPath() >> ":task"
+    }
+    TaskDurationHistory history
+
+    def setup() {
+        1 * cacheAccess.createCache("taskDurations", String, _, _, _) >> durationCache
+        history = new CacheBackedTaskDurationHistory(cacheAccess)
+    }
+
+    def "records the first duration of a task as is"() {
+        when:
+        history.recordDuration(task, 1000)
+
+        then:
+        1 * durationCache.get(":task") >> null
+        1 * durationCache.put(":task", 1000)
+    }
+
+    def "moves the recorded duration a quarter of the way towards each new duration"() {
+        when:
+        history.recordDuration(task, newDuration)
+
+        then:
+        1 * durationCache.get(":task") >> 1000L
+        1 * durationCache.put(":task", expected)
+
+        where:
+        newDuration | expected
+        1000        | 1000
+        2000        | 1250
+        0           | 750
+        1002        | 1001
+    }
+}
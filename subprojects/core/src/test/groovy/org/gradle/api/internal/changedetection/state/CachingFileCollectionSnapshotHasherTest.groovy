@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import com.google.common.hash.HashCode
+import org.gradle.caching.internal.BuildCacheHasher
+import org.gradle.caching.internal.DefaultBuildCacheHasher
+import spock.lang.Specification
+
+import static org.gradle.api.internal.changedetection.state.TaskFilePropertyCompareStrategy.ORDERED
+import static org.gradle.api.internal.changedetection.state.TaskFilePropertyCompareStrategy.UNORDERED
+
+class CachingFileCollectionSnapshotHasherTest extends Specification {
+    def hasher = new CachingFileCollectionSnapshotHasher(100)
+
+    def "calculates the same hash as the snapshot itself"() {
+        def snapshot = snapshot(UNORDERED, "file1.txt": 123, "file2.txt": 234)
+
+        expect:
+        hasher.hash(snapshot) == hashOf(snapshot)
+    }
+
+    def "reuses hash of snapshot with the same contents"() {
+        def first = snapshot(UNORDERED, "file1.txt": 123, "file2.txt": 234)
+        def second = Spy(DefaultFileCollectionSnapshot, constructorArgs: [first.snapshots, UNORDERED, false])
+
+        when:
+        def hash = hasher.hash(first)
+        def reused = hasher.hash(second)
+
+        then:
+        reused == hash
+        0 * second.appendToHasher(_)
+    }
+
+    def "does not reuse hash of snapshot with different contents"() {
+        def first = snapshot(UNORDERED, "file1.txt": 123)
+        def differentContent = snapshot(UNORDERED, "file1.txt": 234)
+        def differentStrategy = snapshot(ORDERED, "file1.txt": 123)
+
+        expect:
+        hasher.hash(first) == hashOf(first)
+        hasher.hash(differentContent) == hashOf(differentContent)
+        hasher.hash(differentStrategy) == hashOf(differentStrategy)
+        hasher.hash(first) != hasher.hash(differentContent)
+    }
+
+    def "hashes other kinds of snapshots directly"() {
+        def snapshot = Mock(FileCollectionSnapshot)
+
+        when:
+        hasher.hash(snapshot)
+        hasher.hash(snapshot)
+
+        then:
+        2 * snapshot.appendToHasher(_) >> { BuildCacheHasher h -> h.putString("content") }
+    }
+
+    private static DefaultFileCollectionSnapshot snapshot(Map<String, Integer> contents, TaskFilePropertyCompareStrategy compareStrategy) {
+        Map<String, NormalizedFileSnapshot> snapshots = new LinkedHashMap<String, NormalizedFileSnapshot>()
+        contents.each { path, hash ->
+            snapshots.put(path, new DefaultNormalizedFileSnapshot(path, new FileHashSnapshot(HashCode.fromInt(hash))))
+        }
+        return new DefaultFileCollectionSnapshot(snapshots, compareStrategy, false)
+    }
+
+    private static HashCode hashOf(FileCollectionSnapshot snapshot) {
+        def hasher = new DefaultBuildCacheHasher()
+        snapshot.appendToHasher(hasher)
+        return hasher.hash()
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.changedetection.state
+
+import com.google.common.base.Charsets
+import com.google.common.hash.Hashing
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.caching.internal.DefaultBuildCacheHasher
+import org.gradle.internal.serialize.SerializerSpec
+
+import static org.gradle.api.internal.changedetection.state.TaskFilePropertyCompareStrategy.ORDERED
+import static org.gradle.api.internal.changedetection.state.TaskFilePropertyCompareStrategy.UNORDERED
+
+class CompactFileCollectionSnapshotTest extends SerializerSpec {
+    def serializer = new CompactFileCollectionSnapshot.SerializerImpl(new StringInterner())
+    def hash1 = Hashing.md5().hashString("foo", Charsets.UTF_8)
+    def hash2 = Hashing.md5().hashString("bar", Charsets.UTF_8)
+
+    def "compact snapshot has the same entries as the original"() {
+        def original = new DefaultFileCollectionSnapshot([
+            "/3": new DefaultNormalizedFileSnapshot("3", new FileHashSnapshot(hash1)),
+            "/2": new NonNormalizedFileSnapshot("/2", MissingFileContentSnapshot.getInstance()),
+            "/1": new IndexedNormalizedFileSnapshot("/1", 1, DirContentSnapshot.getInstance()),
+            "/0": new IgnoredPathFileSnapshot(new FileHashSnapshot(hash2))
+        ], ORDERED, true)
+
+        when:
+        def compact = CompactFileCollectionSnapshot.of(original)
+
+        then:
+        compact instanceof CompactFileCollectionSnapshot
+        compact.snapshots == original.snapshots
+        compact.snapshots.keySet() as List == ['/3', '/2', '/1', '/0']
+        compact.elements == original.elements
+        compact.files == original.files
+        hashOf(compact) == hashOf(original)
+        !compact.iterateContentChangesSince(original, "TYPE").hasNext()
+    }
+
+    def "reads and writes the compact snapshot"() {
+        def original = new DefaultFileCollectionSnapshot([
+            "/3": new DefaultNormalizedFileSnapshot("3", new FileHashSnapshot(hash1)),
+            "/2": new IndexedNormalizedFileSnapshot("/2", 1, MissingFileContentSnapshot.getInstance()),
+            "/1": new DefaultNormalizedFileSnapshot("1", DirContentSnapshot.getInstance()),
+            "/0": new NonNormalizedFileSnapshot("/0", new FileHashSnapshot(hash2))
+        ], UNORDERED, false)
+
+        when:
+        CompactFileCollectionSnapshot out = serialize(CompactFileCollectionSnapshot.of(original), serializer)
+
+        then:
+        out.snapshots == original.snapshots
+        out.snapshots.keySet() as List == ['/3', '/2', '/1', '/0']
+        out.snapshots['/3'].snapshot.contentMd5 == hash1
+        out.snapshots['/0'].snapshot.contentMd5 == hash2
+        out.compareStrategy == UNORDERED
+        !out.pathIsAbsolute
+    }
+
+    def "reads and writes an empty snapshot"() {
+        when:
+        CompactFileCollectionSnapshot out = serialize(CompactFileCollectionSnapshot.of(new DefaultFileCollectionSnapshot([:], UNORDERED, true)), serializer)
+
+        then:
+        out.empty
+        out.snapshots.isEmpty()
+    }
+
+    private static hashOf(FileCollectionSnapshot snapshot) {
+        def hasher = new DefaultBuildCacheHasher()
+        snapshot.appendToHasher(hasher)
+        return hasher.hash()
+    }
+}
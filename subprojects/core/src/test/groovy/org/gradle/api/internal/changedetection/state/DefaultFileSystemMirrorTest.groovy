@@ -18,6 +18,9 @@ package org.gradle.api.internal.changedetection.state
 
 import org.gradle.BuildResult
 import org.gradle.api.internal.GradleInternal
+import org.gradle.api.internal.cache.StringInterner
+import org.gradle.api.internal.file.TestFiles
+import org.gradle.api.internal.hash.DefaultFileHasher
 import org.gradle.internal.classpath.CachedJarFileStore
 import org.gradle.test.fixtures.file.TestFile
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
@@ -29,6 +32,9 @@ class DefaultFileSystemMirrorTest extends Specification {
     TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
 
     DefaultFileSystemMirror mirror
+    def timeStampInspector = Stub(FileTimeStampInspector) {
+        timestampCanBeUsedToDetectFileChange(_, _) >> true
+    }
     TestFile cacheDir
 
     def setup() {
@@ -68,6 +74,35 @@ class DefaultFileSystemMirrorTest extends Specification {
         mirror.getContent(file.path) == null
     }
 
+    def "discards state about output roots, their descendants and ancestors only when declared task outputs are generated"() {
+        def outputDir = tmpDir.file("build/output")
+        def outputFile = outputDir.file("a")
+        def buildDir = tmpDir.file("build")
+        def unrelatedFile = tmpDir.file("src/b")
+        def outputFileSnapshot = Stub(FileSnapshot)
+        def buildDirTreeSnapshot = Stub(FileTreeSnapshot)
+        def unrelatedFileSnapshot = Stub(FileSnapshot)
+        def unrelatedSnapshot = Stub(Snapshot)
+
+        given:
+        _ * outputFileSnapshot.path >> outputFile.path
+        _ * buildDirTreeSnapshot.path >> buildDir.path
+        _ * unrelatedFileSnapshot.path >> unrelatedFile.path
+
+        when:
+        mirror.putFile(outputFileSnapshot)
+        mirror.putDirectory(buildDirTreeSnapshot)
+        mirror.putFile(unrelatedFileSnapshot)
+        mirror.putContent(unrelatedFile.path, unrelatedSnapshot)
+        mirror.beforeTaskOutputsGenerated([outputDir.path])
+
+        then:
+        mirror.getFile(outputFile.path) == null
+        mirror.getDirectoryTree(buildDir.path) == null
+        mirror.getFile(unrelatedFile.path) == unrelatedFileSnapshot
+        mirror.getContent(unrelatedFile.path) == unrelatedSnapshot
+    }
+
     def "keeps state about a file until end of build"() {
         def file = tmpDir.file("a")
         def fileSnapshot = Stub(FileSnapshot)
@@ -141,4 +176,91 @@ class DefaultFileSystemMirrorTest extends Specification {
         mirror.getDirectoryTree(file.path) == null
         mirror.getContent(file.path) == null
     }
+
+    def "retains state about files and trees across builds while they are unchanged"() {
+        def retainingMirror = new DefaultFileSystemMirror([], TestFiles.fileSystem(), TestFiles.directoryFileTreeFactory(), timeStampInspector)
+        def snapshotter = new DefaultFileSystemSnapshotter(new DefaultFileHasher(), new StringInterner(), TestFiles.fileSystem(), TestFiles.directoryFileTreeFactory(), retainingMirror)
+        def dir = tmpDir.createDir("dir")
+        def file = dir.createFile("a")
+        def otherFile = tmpDir.createFile("b")
+
+        given:
+        def fileTreeSnapshot = snapshotter.snapshotDirectoryTree(dir)
+        def fileSnapshot = snapshotter.snapshotSelf(file)
+        def otherFileSnapshot = snapshotter.snapshotSelf(otherFile)
+
+        when:
+        retainingMirror.beforeComplete()
+
+        then:
+        retainingMirror.getDirectoryTree(dir.path) == fileTreeSnapshot
+        retainingMirror.getFile(file.path) == fileSnapshot
+        retainingMirror.getFile(otherFile.path) == otherFileSnapshot
+
+        when:
+        retainingMirror.beforeComplete()
+        file << "changed"
+
+        then:
+        retainingMirror.getDirectoryTree(dir.path) == null
+        retainingMirror.getFile(file.path) == null
+        retainingMirror.getFile(otherFile.path) == otherFileSnapshot
+    }
+
+    def "does not use retained state about a tree that has files added or removed"() {
+        def retainingMirror = new DefaultFileSystemMirror([], TestFiles.fileSystem(), TestFiles.directoryFileTreeFactory(), timeStampInspector)
+        def snapshotter = new DefaultFileSystemSnapshotter(new DefaultFileHasher(), new StringInterner(), TestFiles.fileSystem(), TestFiles.directoryFileTreeFactory(), retainingMirror)
+        def dir = tmpDir.createDir("dir")
+        dir.createFile("a")
+        def otherDir = tmpDir.createDir("other")
+        otherDir.createFile("b")
+
+        given:
+        snapshotter.snapshotDirectoryTree(dir)
+        snapshotter.snapshotDirectoryTree(otherDir)
+        retainingMirror.beforeComplete()
+
+        when:
+        dir.createFile("sub/c")
+        otherDir.file("b").delete()
+
+        then:
+        retainingMirror.getDirectoryTree(dir.path) == null
+        retainingMirror.getDirectoryTree(otherDir.path) == null
+    }
+
+    def "does not use retained state about files whose timestamp cannot be used to detect a change"() {
+        def timeStampInspector = Stub(FileTimeStampInspector)
+        def retainingMirror = new DefaultFileSystemMirror([], TestFiles.fileSystem(), TestFiles.directoryFileTreeFactory(), timeStampInspector)
+        def snapshotter = new DefaultFileSystemSnapshotter(new DefaultFileHasher(), new StringInterner(), TestFiles.fileSystem(), TestFiles.directoryFileTreeFactory(), retainingMirror)
+        def dir = tmpDir.createDir("dir")
+        def file = dir.createFile("a")
+        def otherFile = tmpDir.createFile("b")
+
+        given:
+        timeStampInspector.timestampCanBeUsedToDetectFileChange(file.path, _) >> false
+        timeStampInspector.timestampCanBeUsedToDetectFileChange(otherFile.path, _) >> true
+        snapshotter.snapshotDirectoryTree(dir)
+        snapshotter.snapshotSelf(file)
+        def otherFileSnapshot = snapshotter.snapshotSelf(otherFile)
+        retainingMirror.beforeComplete()
+
+        expect:
+        retainingMirror.getDirectoryTree(dir.path) == null
+        retainingMirror.getFile(file.path) == null
+        retainingMirror.getFile(otherFile.path) == otherFileSnapshot
+    }
+
+    def "does not retain content snapshots across builds"() {
+        def retainingMirror = new DefaultFileSystemMirror([], TestFiles.fileSystem(), TestFiles.directoryFileTreeFactory(), timeStampInspector)
+        def file = tmpDir.file("a")
+        def snapshot = Stub(Snapshot)
+
+        when:
+        retainingMirror.putContent(file.path, snapshot)
+        retainingMirror.beforeComplete()
+
+        then:
+        retainingMirror.getContent(file.path) == null
+    }
 }
@@ -16,6 +16,8 @@
 
 package org.gradle.api.internal.changedetection.state
 
+import org.gradle.api.file.FileVisitDetails
+import org.gradle.api.file.FileVisitor
 import org.gradle.api.internal.cache.StringInterner
 import org.gradle.api.internal.file.TestFiles
 import org.gradle.api.internal.hash.DefaultFileHasher
@@ -198,6 +200,37 @@ class DefaultFileSystemSnapshotterTest extends Specification {
         hash(snapshot) != hash(snapshot2)
     }
 
+    def "hashes the files of a large directory tree in parallel, preserving the visiting order"() {
+        def d = tmpDir.createDir("d")
+        10.times { dirIndex ->
+            50.times { fileIndex ->
+                d.createFile("dir${dirIndex}/file${fileIndex}") << "content ${dirIndex} ${fileIndex}"
+            }
+        }
+        def visitedPaths = []
+        TestFiles.directoryFileTreeFactory().create(d).visit(new FileVisitor() {
+            void visitDir(FileVisitDetails dirDetails) {
+                visitedPaths << dirDetails.file.path
+            }
+
+            void visitFile(FileVisitDetails fileDetails) {
+                visitedPaths << fileDetails.file.path
+            }
+        })
+
+        when:
+        def snapshot = snapshotter.snapshotDirectoryTree(d)
+
+        then:
+        snapshot.descendants*.path == visitedPaths
+        snapshot.descendants.findAll { it.type == FileType.RegularFile }.every {
+            it.content == new FileHashSnapshot(fileHasher.hash(new File(it.path)))
+        }
+
+        cleanup:
+        snapshotter.stop()
+    }
+
     def hash(Snapshot snapshot) {
         def builder = new DefaultBuildCacheHasher()
         snapshot.appendToHasher(builder)
@@ -232,6 +232,36 @@ class TaskFilePropertyCompareStrategyTest extends Specification {
         strategy << [ORDERED, UNORDERED, OUTPUT]
     }
 
+    @Unroll
+    def "changes after a common prefix (#strategy)"() {
+        expect:
+        changes(strategy,
+            ["one-new": snapshot("one"), "two-new": snapshot("two"), "three-new": snapshot("three", "9876cafe"), "five-new": snapshot("five")],
+            ["one-old": snapshot("one"), "two-old": snapshot("two"), "three-old": snapshot("three", "face1234"), "four-old": snapshot("four")]
+        ) == results
+
+        where:
+        strategy  | results
+        ORDERED   | [change("three-new", MODIFIED), change("four-old", REMOVED), change("five-new", ADDED)]
+        UNORDERED | [change("four-old", REMOVED), change("three-new", MODIFIED), change("five-new", ADDED)]
+        OUTPUT    | [change("four-old", REMOVED), change("three-new", MODIFIED)]
+    }
+
+    @Unroll
+    def "reports changes lazily with absolute paths (#strategy)"() {
+        def changes = strategy.iterateContentChangesSince(
+            ["one": snapshot("one", "9876cafe"), "two": snapshot("two"), "four": snapshot("four")],
+            ["one": snapshot("one", "face1234"), "three": snapshot("three"), "four": snapshot("four")],
+            "test", true)
+
+        expect:
+        changes.next() == change("one", MODIFIED)
+        changes.next() == change("three", REMOVED)
+
+        where:
+        strategy << [UNORDERED, OUTPUT]
+    }
+
     @Unroll
     def "too many elements not handled by trivial comparison (#current.size() current vs #previous.size() previous)"() {
         expect:
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.hash
+
+import com.google.common.base.Charsets
+import com.google.common.hash.Hashing
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class DefaultFileHasherTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+
+    @Unroll
+    def "hashing a file of #size bytes with #algorithm gives the same result as hashing its content as a stream"() {
+        def hasher = new DefaultFileHasher(algorithm)
+        def file = tmpDir.file("file")
+        def content = new byte[size]
+        new Random(size).nextBytes(content)
+        file.bytes = content
+
+        expect:
+        hasher.hash(file) == hasher.hash(new ByteArrayInputStream(content))
+
+        where:
+        [algorithm, size] << [FileHashAlgorithm.values(), [0, 1, 64 * 1024 + 1, 5 * 1024 * 1024]].combinations()
+    }
+
+    def "different algorithms give different hashes"() {
+        def file = tmpDir.createFile("file") << "content"
+
+        expect:
+        new DefaultFileHasher(FileHashAlgorithm.MD5).hash(file) != new DefaultFileHasher(FileHashAlgorithm.MURMUR3_128).hash(file)
+    }
+
+    def "hashes are the same as before for the default algorithm"() {
+        def file = tmpDir.createFile("file") << "content"
+
+        expect:
+        new DefaultFileHasher().hash(file).toString() == "43fe91f540c41554f239baf7d9e7e165"
+        new DefaultFileHasher(FileHashAlgorithm.MD5).hash(file).toString() == "43fe91f540c41554f239baf7d9e7e165"
+    }
+
+    @Unroll
+    def "murmur3 hash of a file of #size bytes is the same as calculated by Guava"() {
+        def file = tmpDir.file("file")
+        def content = new byte[size]
+        new Random(size).nextBytes(content)
+        file.bytes = content
+        def signature = Hashing.md5().hashString(DefaultFileHasher.name, Charsets.UTF_8).asBytes()
+
+        expect:
+        new DefaultFileHasher(FileHashAlgorithm.MURMUR3_128).hash(file) == Hashing.murmur3_128().newHasher().putBytes(signature).putBytes(content).hash()
+
+        where:
+        size << [0, 7, 16, 31, 64 * 1024 + 1, 5 * 1024 * 1024 + 3]
+    }
+
+    def "uses MD5 when the build cache is enabled"() {
+        expect:
+        FileHashAlgorithm.forUpToDateChecks(true) == FileHashAlgorithm.MD5
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.api.internal.tasks.execution
+
+import org.gradle.api.internal.TaskExecutionHistory
+import org.gradle.api.internal.TaskInternal
+import org.gradle.api.internal.TaskOutputCachingState
+import org.gradle.api.internal.TaskOutputsInternal
+import org.gradle.api.internal.changedetection.TaskArtifactState
+import org.gradle.api.internal.changedetection.TaskArtifactStateRepository
+import org.gradle.api.internal.tasks.ContextAwareTaskAction
+import org.gradle.caching.internal.BuildCacheEntryPrefetcher
+import org.gradle.caching.internal.tasks.TaskOutputCachingBuildCacheKey
+import org.gradle.internal.concurrent.ExecutorFactory
+import org.gradle.internal.concurrent.StoppableExecutor
+import spock.lang.Specification
+
+class BuildCacheEntryLookaheadTest extends Specification {
+    def outputs = Mock(TaskOutputsInternal)
+    def task = Stub(TaskInternal) {
+        getOutputs() >> outputs
+        getTaskActions() >> [Stub(ContextAwareTaskAction)]
+    }
+    def taskArtifactState = Mock(TaskArtifactState)
+    def history = Stub(TaskExecutionHistory)
+    def cachingState = Stub(TaskOutputCachingState) {
+        isEnabled() >> true
+    }
+    def cacheKey = Stub(TaskOutputCachingBuildCacheKey) {
+        isValid() >> true
+    }
+    def repository = Mock(TaskArtifactStateRepository)
+    def prefetcher = Mock(BuildCacheEntryPrefetcher)
+    def executor = Mock(StoppableExecutor) {
+        execute(_) >> { Runnable lookup -> lookup.run() }
+    }
+    def executorFactory = Stub(ExecutorFactory) {
+        create(_, _) >> executor
+    }
+    def lookahead = new BuildCacheEntryLookahead(repository, prefetcher, executorFactory)
+
+    def "looks up entry of task that is not up-to-date once"() {
+        when:
+        lookahead.lookAhead([task])
+        lookahead.lookAhead([task])
+
+        then:
+        1 * executor.execute(_) >> { Runnable lookup -> lookup.run() }
+        1 * outputs.getHasOutput() >> true
+        1 * repository.getStateFor(task) >> taskArtifactState
+        1 * taskArtifactState.getExecutionHistory() >> history
+        1 * outputs.setHistory(history)
+        1 * taskArtifactState.isAllowedToUseCachedResults() >> true
+        1 * outputs.getCachingState() >> cachingState
+        1 * taskArtifactState.calculateCacheKey() >> cacheKey
+        1 * taskArtifactState.isUpToDate(null) >> false
+        1 * outputs.setHistory(null)
+        1 * taskArtifactState.finished()
+        1 * prefetcher.prefetch(cacheKey)
+        0 * _
+
+        when:
+        lookahead.taskExecuted(task)
+
+        then:
+        1 * prefetcher.discard(cacheKey)
+        0 * _
+    }
+
+    def "does not look up entry of up-to-date task"() {
+        when:
+        lookahead.lookAhead([task])
+        lookahead.taskExecuted(task)
+
+        then:
+        _ * outputs.getHasOutput() >> true
+        _ * repository.getStateFor(task) >> taskArtifactState
+        _ * taskArtifactState.isAllowedToUseCachedResults() >> true
+        _ * outputs.getCachingState() >> cachingState
+        _ * taskArtifactState.calculateCacheKey() >> cacheKey
+        1 * taskArtifactState.isUpToDate(null) >> true
+        1 * taskArtifactState.finished()
+        0 * prefetcher._
+    }
+
+    def "does not look up entry of task that cannot use cached results"() {
+        when:
+        lookahead.lookAhead([task])
+
+        then:
+        _ * outputs.getHasOutput() >> true
+        _ * repository.getStateFor(task) >> taskArtifactState
+        1 * taskArtifactState.isAllowedToUseCachedResults() >> false
+        0 * taskArtifactState.calculateCacheKey()
+        0 * prefetcher._
+    }
+
+    def "does not look up entry when the cache key cannot be calculated"() {
+        when:
+        lookahead.lookAhead([task])
+
+        then:
+        _ * outputs.getHasOutput() >> true
+        _ * repository.getStateFor(task) >> taskArtifactState
+        _ * taskArtifactState.isAllowedToUseCachedResults() >> true
+        _ * outputs.getCachingState() >> cachingState
+        1 * taskArtifactState.calculateCacheKey() >> { throw new RuntimeException("broken") }
+        1 * outputs.setHistory(null)
+        1 * taskArtifactState.finished()
+        0 * prefetcher._
+    }
+
+    def "skips lookup that has not started when the task starts executing"() {
+        def lookup = null
+
+        when:
+        lookahead.lookAhead([task])
+        lookahead.taskStarting(task)
+        lookup.run()
+        lookahead.taskExecuted(task)
+
+        then:
+        1 * executor.execute(_) >> { Runnable r -> lookup = r }
+        0 * repository._
+        0 * prefetcher._
+    }
+
+    def "does not look ahead at task that has started executing"() {
+        when:
+        lookahead.taskStarting(task)
+        lookahead.lookAhead([task])
+
+        then:
+        0 * executor.execute(_)
+        0 * repository._
+    }
+
+    def "stops executor when stopped"() {
+        when:
+        lookahead.stop()
+
+        then:
+        1 * executor.stop()
+    }
+
+    def "does not look at task without outputs"() {
+        when:
+        lookahead.lookAhead([task])
+
+        then:
+        1 * outputs.getHasOutput() >> false
+        0 * repository._
+        0 * prefetcher._
+    }
+}
@@ -15,12 +15,16 @@
  */
 package org.gradle.api.internal.tasks.execution
 
+import com.google.common.collect.ImmutableSortedSet
 import org.gradle.api.execution.TaskActionListener
 import org.gradle.api.internal.TaskInternal
+import org.gradle.api.internal.TaskOutputsInternal
+import org.gradle.api.internal.file.collections.SimpleFileCollection
 import org.gradle.api.internal.project.ProjectInternal
 import org.gradle.api.internal.tasks.ContextAwareTaskAction
 import org.gradle.api.internal.tasks.TaskExecutionContext
 import org.gradle.api.internal.tasks.TaskExecutionOutcome
+import org.gradle.api.internal.tasks.TaskOutputFilePropertySpec
 import org.gradle.api.internal.tasks.TaskStateInternal
 import org.gradle.api.tasks.StopActionException
 import org.gradle.api.tasks.StopExecutionException
@@ -39,6 +43,7 @@ import static java.util.Collections.emptyList
 
 class ExecuteActionsTaskExecutorTest extends Specification {
     private final TaskInternal task = Mock(TaskInternal)
+    private final TaskOutputsInternal outputs = Stub(TaskOutputsInternal)
     private final ContextAwareTaskAction action1 = Mock(ContextAwareTaskAction)
     private final ContextAwareTaskAction action2 = Mock(ContextAwareTaskAction)
     private final TaskStateInternal state = new TaskStateInternal()
@@ -57,6 +62,7 @@ class ExecuteActionsTaskExecutorTest extends Specification {
         task.getState() >> state
         project.getBuildScriptSource() >> scriptSource
         task.getStandardOutputCapture() >> standardOutputCapture
+        task.getOutputs() >> outputs
     }
 
     void noMoreInteractions() {
@@ -142,6 +148,24 @@ class ExecuteActionsTaskExecutorTest extends Specification {
         state.actionsWereExecuted
     }
 
+    def notifiesListenerAboutDeclaredOutputsOnly() {
+        def outputFile = new File("output").absoluteFile
+        def outputProperty = Stub(TaskOutputFilePropertySpec)
+
+        given:
+        task.getTaskActions() >> [action1]
+        outputs.hasDeclaredOutputs() >> true
+        outputs.getFileProperties() >> ImmutableSortedSet.of(outputProperty)
+        outputProperty.getPropertyFiles() >> new SimpleFileCollection(outputFile)
+
+        when:
+        executer.execute(task, state, executionContext)
+
+        then:
+        1 * internalListener.beforeTaskOutputsGenerated([outputFile.path])
+        0 * internalListener.beforeTaskOutputsGenerated()
+    }
+
     def executeDoesOperateOnNewActionListInstance() {
         given:
         interaction {
@@ -25,6 +25,7 @@ import org.gradle.api.internal.changedetection.TaskArtifactState
 import org.gradle.api.internal.tasks.TaskExecuter
 import org.gradle.api.internal.tasks.TaskExecutionContext
 import org.gradle.api.internal.tasks.TaskExecutionOutcome
+import org.gradle.api.internal.tasks.TaskOutputFilePropertySpec
 import org.gradle.api.internal.tasks.TaskStateInternal
 import org.gradle.caching.BuildCacheEntryReader
 import org.gradle.caching.BuildCacheKey
@@ -32,7 +33,9 @@ import org.gradle.caching.BuildCacheService
 import org.gradle.caching.internal.tasks.TaskOutputCachingBuildCacheKey
 import org.gradle.caching.internal.tasks.TaskOutputPacker
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginFactory
+import org.gradle.caching.internal.tasks.origin.TaskOutputOriginMetadata
 import org.gradle.caching.internal.tasks.origin.TaskOutputOriginReader
+import org.gradle.caching.internal.tasks.statistics.TaskOutputCacheStatistics
 import spock.lang.Specification
 
 class SkipCachedTaskExecuterTest extends Specification {
@@ -56,7 +59,9 @@ class SkipCachedTaskExecuterTest extends Specification {
     def originReader = Mock(TaskOutputOriginReader)
     def internalTaskExecutionListener = Mock(TaskOutputsGenerationListener)
 
-    def executer = new SkipCachedTaskExecuter(taskOutputOriginFactory, buildCache, taskOutputPacker, internalTaskExecutionListener, delegate)
+    def statistics = new TaskOutputCacheStatistics()
+
+    def executer = new SkipCachedTaskExecuter(taskOutputOriginFactory, buildCache, taskOutputPacker, internalTaskExecutionListener, statistics, delegate)
 
     def "skip task when cached results exist"() {
         def inputStream = Mock(InputStream)
@@ -77,14 +82,24 @@ class SkipCachedTaskExecuterTest extends Specification {
             reader.readFrom(inputStream)
             return true
         }
-        1 * internalTaskExecutionListener.beforeTaskOutputsGenerated()
+        1 * internalTaskExecutionListener.beforeTaskOutputsGenerated([])
         1 * taskOutputOriginFactory.createReader(task) >> originReader
         1 * outputs.getFileProperties() >> ImmutableSortedSet.of()
-        1 * taskOutputPacker.unpack(_, inputStream, originReader)
+        1 * taskOutputPacker.unpack(_, _, _) >> { SortedSet<TaskOutputFilePropertySpec> specs, InputStream input, TaskOutputOriginReader reader ->
+            reader.execute(input)
+        }
+        1 * originReader.execute(_) >> new TaskOutputOriginMetadata(1000)
 
         then:
         1 * taskState.setOutcome(TaskExecutionOutcome.FROM_CACHE)
         0 * _
+
+        and:
+        with(statistics.taskTypes[0]) {
+            hits == 1
+            misses == 0
+            originalExecutionTime == 1000
+        }
     }
 
     def "executes task and stores result when no cached result is available"() {
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal
+
+import org.gradle.internal.Factory
+import spock.lang.Specification
+
+class AsyncCacheAccessDecoratedCacheTest extends Specification {
+    def queue = []
+    def asyncCacheAccess = new AsyncCacheAccess() {
+        @Override
+        void enqueue(Runnable task) {
+            queue << task
+        }
+
+        @Override
+        <T> T read(Factory<T> task) {
+            runQueued()
+            return task.create()
+        }
+
+        @Override
+        void flush() {
+            runQueued()
+        }
+    }
+    def persistentCache = Mock(MultiProcessSafePersistentIndexedCache)
+    def cache = new AsyncCacheAccessDecoratedCache<String, String>(asyncCacheAccess, persistentCache)
+
+    def "writes only the most recent value of a key that is still queued"() {
+        def completion1 = Mock(Runnable)
+        def completion2 = Mock(Runnable)
+        def completion3 = Mock(Runnable)
+
+        when:
+        cache.putLater("a", "1", completion1)
+        cache.putLater("b", "2", completion2)
+        cache.putLater("a", "3", completion3)
+
+        then:
+        queue.size() == 2
+        0 * _
+
+        when:
+        asyncCacheAccess.flush()
+
+        then:
+        1 * persistentCache.put("a", "3")
+        1 * completion1.run()
+        1 * completion3.run()
+
+        then:
+        1 * persistentCache.put("b", "2")
+        1 * completion2.run()
+        0 * _
+    }
+
+    def "coalesces removal with queued write"() {
+        def completion1 = Mock(Runnable)
+        def completion2 = Mock(Runnable)
+
+        when:
+        cache.putLater("a", "1", completion1)
+        cache.removeLater("a", completion2)
+        asyncCacheAccess.flush()
+
+        then:
+        1 * persistentCache.remove("a")
+        1 * completion1.run()
+        1 * completion2.run()
+        0 * _
+    }
+
+    def "queues a new write once the previous write of the key has started"() {
+        when:
+        cache.putLater("a", "1", {})
+        asyncCacheAccess.flush()
+        cache.putLater("a", "2", {})
+        asyncCacheAccess.flush()
+
+        then:
+        1 * persistentCache.put("a", "1")
+
+        then:
+        1 * persistentCache.put("a", "2")
+    }
+
+    def "runs completions when write fails"() {
+        def failure = new RuntimeException()
+        def completion1 = Mock(Runnable)
+        def completion2 = Mock(Runnable)
+
+        when:
+        cache.putLater("a", "1", completion1)
+        cache.putLater("a", "2", completion2)
+        asyncCacheAccess.flush()
+
+        then:
+        def e = thrown(RuntimeException)
+        e == failure
+        1 * persistentCache.put("a", "2") >> { throw failure }
+        1 * completion1.run()
+        1 * completion2.run()
+    }
+
+    private void runQueued() {
+        def tasks = new ArrayList(queue)
+        queue.clear()
+        tasks.each { it.run() }
+    }
+}
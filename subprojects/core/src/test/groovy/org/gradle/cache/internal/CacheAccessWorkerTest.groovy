@@ -22,12 +22,13 @@ import org.gradle.test.fixtures.concurrent.ConcurrentSpec
 class CacheAccessWorkerTest extends ConcurrentSpec {
     CacheAccess cacheAccess
     CacheAccessWorker cacheAccessWorker
+    CacheAccessStatistics statistics = new CacheAccessStatistics()
 
     def setup() {
         cacheAccess = Stub(CacheAccess) {
             useCache(_) >> { Runnable action -> action.run() }
         }
-        cacheAccessWorker = new CacheAccessWorker("<cache>", cacheAccess)
+        cacheAccessWorker = new CacheAccessWorker("<cache>", cacheAccess, statistics.forCache("<cache>"))
     }
 
     def "read runs after queued writes are processed"() {
@@ -47,6 +48,29 @@ class CacheAccessWorkerTest extends ConcurrentSpec {
         cacheAccessWorker?.stop()
     }
 
+    def "records statistics of the operations it runs"() {
+        given:
+        start(cacheAccessWorker)
+
+        when:
+        cacheAccessWorker.enqueue {}
+        cacheAccessWorker.enqueue {}
+        cacheAccessWorker.flush()
+        def worker = statistics.takeStatistics()[0]
+
+        then:
+        worker.cacheDisplayName == "<cache>"
+        worker.operations == 2
+        worker.batches >= 1
+        worker.flushes == 1
+
+        and:
+        statistics.takeStatistics().empty
+
+        cleanup:
+        cacheAccessWorker?.stop()
+    }
+
     def "read propagates failure"() {
         given:
         def failure = new RuntimeException()
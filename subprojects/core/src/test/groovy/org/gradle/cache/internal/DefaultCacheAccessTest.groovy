@@ -42,7 +42,7 @@ class DefaultCacheAccessTest extends ConcurrentSpec {
     final BTreePersistentIndexedCache<String, Integer> backingCache = Mock()
 
     private DefaultCacheAccess newAccess(LockMode lockMode) {
-        new DefaultCacheAccess("<display-name>", lockFile, mode(lockMode), cacheDir, lockManager, initializationAction, cleanupAction, executorFactory) {
+        new DefaultCacheAccess("<display-name>", lockFile, mode(lockMode), cacheDir, lockManager, initializationAction, cleanupAction, executorFactory, new CacheAccessStatistics()) {
             @Override
             <K, V> BTreePersistentIndexedCache<K, V> doCreateCache(File cacheFile, Serializer<K> keySerializer, Serializer<V> valueSerializer) {
                 return backingCache
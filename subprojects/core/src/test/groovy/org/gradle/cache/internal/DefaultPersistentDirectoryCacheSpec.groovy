@@ -42,7 +42,7 @@ class DefaultPersistentDirectoryCacheSpec extends Specification {
         def cache = new DefaultPersistentDirectoryCache(
             dir, "test", {
             true
-        } as CacheValidator, [:], CacheBuilder.LockTarget.DefaultTarget, mode(FileLockManager.LockMode.Exclusive), init, Actions.doNothing(), createDefaultFileLockManager(), Mock(ExecutorFactory)
+        } as CacheValidator, [:], CacheBuilder.LockTarget.DefaultTarget, mode(FileLockManager.LockMode.Exclusive), init, Actions.doNothing(), createDefaultFileLockManager(), Mock(ExecutorFactory), new CacheAccessStatistics()
         )
 
         when:
@@ -212,27 +212,55 @@ public class BTreePersistentIndexedCacheTest {
         cache.put("key_3", "abcd");
         cache.put("key_4", "abcd");
         cache.put("key_5", "abcd");
+        cache.flush();
 
         long len = cacheFile.length();
         assertThat(len, greaterThan(0L));
 
         cache.put("key_1", "1234");
+        cache.flush();
         assertThat(cacheFile.length(), equalTo(len));
 
         cache.remove("key_1");
         cache.put("key_new", "a1b2");
+        cache.flush();
         assertThat(cacheFile.length(), equalTo(len));
 
         cache.put("key_new", "longer value");
+        cache.flush();
         assertThat(cacheFile.length(), greaterThan(len));
         len = cacheFile.length();
 
         cache.put("key_1", "1234");
+        cache.flush();
         assertThat(cacheFile.length(), equalTo(len));
 
         cache.close();
     }
 
+    @Test
+    public void writesUpdatesToFileWhenFlushed() {
+        createCache();
+        long len = cacheFile.length();
+
+        cache.put("key_1", 1);
+        cache.put("key_2", 2);
+        cache.remove("key_1");
+
+        assertThat(cacheFile.length(), equalTo(len));
+        assertNull(cache.get("key_1"));
+        assertThat(cache.get("key_2"), equalTo(2));
+
+        cache.flush();
+        assertThat(cacheFile.length(), greaterThan(len));
+
+        cache.put("key_3", 3);
+        cache.reset();
+        assertThat(cache.get("key_2"), equalTo(2));
+        assertThat(cache.get("key_3"), equalTo(3));
+        verifyAndCloseCache();
+    }
+
     @Test
     public void canHandleLargeNumberOfEntries() {
         createCache();
@@ -243,15 +271,18 @@ public class BTreePersistentIndexedCacheTest {
         }
 
         checkAddsAndRemoves(null, values);
+        cache.flush();
 
         long len = cacheFile.length();
 
         checkAddsAndRemoves(Collections.<Integer>reverseOrder(), values);
+        cache.flush();
 
         // need to make this better
         assertThat(cacheFile.length(), lessThan((long)(1.4 * len)));
 
         checkAdds(values);
+        cache.flush();
 
         // need to make this better
         assertThat(cacheFile.length(), lessThan((long) (1.4 * 1.4 * len)));
@@ -344,6 +375,7 @@ public class BTreePersistentIndexedCacheTest {
 
         assertNull(cache.get("key_1"));
         cache.put("key_1", 99);
+        cache.flush();
 
         RandomAccessFile file = new RandomAccessFile(cacheFile, "rw");
         file.setLength(file.length() - 10);
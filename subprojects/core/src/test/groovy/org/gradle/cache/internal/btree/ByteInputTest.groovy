@@ -65,4 +65,60 @@ class ByteInputTest extends Specification {
         then:
         EOFException e = thrown()
     }
+
+    def "can read through memory mapping"() {
+        given:
+        def mappedInput = new ByteInput(file, true)
+        file.setLength(ByteInput.MIN_MAPPING_GROWTH)
+        file.seek(0)
+        file.writeInt(123)
+        file.seek(ByteInput.MIN_MAPPING_GROWTH - 4)
+        file.writeInt(321)
+
+        expect:
+        mappedInput.start(0).readInt() == 123
+        mappedInput.done()
+        mappedInput.start(ByteInput.MIN_MAPPING_GROWTH - 4).readInt() == 321
+        mappedInput.done()
+    }
+
+    def "continues reading from file past end of memory mapping"() {
+        given:
+        def mappedInput = new ByteInput(file, true)
+        file.setLength(ByteInput.MIN_MAPPING_GROWTH)
+        file.seek(ByteInput.MIN_MAPPING_GROWTH - 4)
+        file.writeInt(123)
+        mappedInput.start(0)
+        mappedInput.done()
+
+        when:
+        file.writeInt(456)
+        file.writeInt(789)
+
+        then:
+        def stream = mappedInput.start(ByteInput.MIN_MAPPING_GROWTH - 4)
+        stream.readInt() == 123
+        stream.readInt() == 456
+        mappedInput.done()
+        mappedInput.start(ByteInput.MIN_MAPPING_GROWTH + 4).readInt() == 789
+        mappedInput.done()
+    }
+
+    def "sees changes made to mapped region"() {
+        given:
+        def mappedInput = new ByteInput(file, true)
+        file.setLength(ByteInput.MIN_MAPPING_GROWTH)
+        file.seek(0)
+        file.writeInt(123)
+        mappedInput.start(0).readInt()
+        mappedInput.done()
+
+        when:
+        file.seek(0)
+        file.writeInt(456)
+
+        then:
+        mappedInput.start(0).readInt() == 456
+        mappedInput.done()
+    }
 }
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.cache.internal.logstructured
+
+import org.gradle.internal.serialize.BaseSerializerFactory
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+import java.util.concurrent.Executor
+
+class LogStructuredPersistentIndexedCacheTest extends Specification {
+    @Rule
+    TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def cacheFile = tmpDir.file("cache.log")
+    def indexFile = tmpDir.file("cache.log.idx")
+    def compactions = []
+    def executor = { compactions << it } as Executor
+
+    def "can add, update and remove entries"() {
+        def cache = open()
+
+        when:
+        cache.put("a", 1)
+        cache.put("b", 2)
+        cache.put("a", 3)
+        cache.remove("b")
+
+        then:
+        cache.get("a") == 3
+        cache.get("b") == null
+        cache.get("c") == null
+
+        cleanup:
+        cache.close()
+    }
+
+    def "entries are visible after reopening"() {
+        def cache = open()
+        cache.put("a", 1)
+        cache.put("b", 2)
+        cache.remove("b")
+        cache.close()
+
+        when:
+        cache = open()
+
+        then:
+        indexFile.file
+        cache.get("a") == 1
+        cache.get("b") == null
+
+        cleanup:
+        cache.close()
+    }
+
+    def "replays the log when the index is missing or out of date"() {
+        def cache = open()
+        cache.put("a", 1)
+        cache.close()
+        cache = open()
+        cache.put("b", 2)
+        cache.put("a", 3)
+        // Simulate a process that did not close the cache
+        cache.file.close()
+
+        when:
+        cache = open()
+
+        then:
+        cache.get("a") == 3
+        cache.get("b") == 2
+
+        when:
+        cache.close()
+        indexFile.delete()
+        cache = open()
+
+        then:
+        cache.get("a") == 3
+        cache.get("b") == 2
+
+        cleanup:
+        cache.close()
+    }
+
+    def "discards incomplete record at end of log"() {
+        def cache = open()
+        cache.put("a", 1)
+        cache.put("b", 2)
+        cache.close()
+        indexFile.delete()
+        def raf = new RandomAccessFile(cacheFile, "rw")
+        raf.setLength(raf.length() - 2)
+        raf.close()
+
+        when:
+        cache = open()
+
+        then:
+        cache.get("a") == 1
+        cache.get("b") == null
+
+        when:
+        cache.put("b", 4)
+        cache.close()
+        cache = open()
+
+        then:
+        cache.get("a") == 1
+        cache.get("b") == 4
+
+        cleanup:
+        cache.close()
+    }
+
+    def "discards log with unexpected content"() {
+        cacheFile.text = "not a log file"
+
+        when:
+        def cache = open()
+        cache.put("a", 1)
+
+        then:
+        cache.get("a") == 1
+
+        cleanup:
+        cache.close()
+    }
+
+    def "compacts log in the background when most records are superseded"() {
+        def cache = open()
+        (1..100).each { round ->
+            (1..100).each { key ->
+                cache.put("key-" + key, "value-" + round + "-" + ("x" * 100))
+            }
+        }
+        cache.close()
+        def uncompactedLength = cacheFile.length()
+
+        when:
+        cache = open()
+
+        then:
+        compactions.size() == 1
+        cacheFile.length() == uncompactedLength
+
+        when:
+        runCompactions()
+        cache.close()
+        cache = open()
+
+        then:
+        cacheFile.length() < uncompactedLength / 50
+        (1..100).every { cache.get("key-" + it) == "value-100-" + ("x" * 100) }
+        compactions.empty
+
+        cleanup:
+        cache.close()
+    }
+
+    def "keeps records appended while the log is compacted"() {
+        def cache = open()
+        (1..100).each { round ->
+            (1..100).each { key ->
+                cache.put("key-" + key, "value-" + round + "-" + ("x" * 100))
+            }
+        }
+        cache.close()
+        cache = open()
+        cache.put("key-1", "updated")
+        cache.remove("key-2")
+        cache.put("key-101", "added")
+        runCompactions()
+        cache.put("key-3", "updated")
+
+        when:
+        cache.close()
+
+        then:
+        !tmpDir.file("cache.log.compact").exists()
+
+        when:
+        cache.reopen()
+
+        then:
+        cache.get("key-1") == "updated"
+        cache.get("key-2") == null
+        cache.get("key-3") == "updated"
+        cache.get("key-4") == "value-100-" + ("x" * 100)
+        cache.get("key-101") == "added"
+
+        when:
+        cache.close()
+        indexFile.delete()
+        cache = open()
+
+        then:
+        cache.get("key-1") == "updated"
+        cache.get("key-2") == null
+        cache.get("key-3") == "updated"
+        cache.get("key-4") == "value-100-" + ("x" * 100)
+        cache.get("key-101") == "added"
+
+        cleanup:
+        cache.close()
+    }
+
+    def "abandons compaction that has not started when closed"() {
+        def cache = open()
+        (1..100).each { round ->
+            (1..100).each { key ->
+                cache.put("key-" + key, "value-" + round + "-" + ("x" * 100))
+            }
+        }
+        cache.close()
+        def uncompactedLength = cacheFile.length()
+        cache = open()
+
+        when:
+        cache.close()
+        runCompactions()
+
+        then:
+        cacheFile.length() == uncompactedLength
+        !tmpDir.file("cache.log.compact").exists()
+
+        when:
+        cache.reopen()
+
+        then:
+        compactions.size() == 1
+        (1..100).every { cache.get("key-" + it) == "value-100-" + ("x" * 100) }
+
+        cleanup:
+        cache.close()
+    }
+
+    def "does not compact log again until it has grown"() {
+        def cache = open()
+        (1..4).each { round ->
+            (1..3000).each { key ->
+                cache.put("key-" + key, "value-" + round + "-" + ("x" * 100))
+            }
+        }
+        cache.close()
+        cache = open()
+        runCompactions()
+        cache.close()
+        def compactedLength = cacheFile.length()
+        cache = open()
+        // Most records are superseded, but the log has not grown enough since it was compacted
+        (1..2).each { round ->
+            (1..3000).each { key ->
+                cache.put("key-" + key, "other-" + round + "-" + ("x" * 100))
+            }
+        }
+        def uncompactedLength = cacheFile.length()
+
+        when:
+        cache.close()
+
+        then:
+        uncompactedLength > 1024 * 1024
+        uncompactedLength < 4 * compactedLength
+        cacheFile.length() == uncompactedLength
+
+        when:
+        cache = open()
+
+        then:
+        compactions.empty
+
+        cleanup:
+        cache.close()
+    }
+
+    def "keeps index when reopened and replays records appended since"() {
+        def cache = open()
+        cache.put("a", 1)
+        cache.close()
+        def other = open()
+        other.put("b", 2)
+        other.put("a", 3)
+        other.close()
+
+        when:
+        indexFile.delete()
+        cache.reopen()
+
+        then:
+        cache.index.size() == 2
+        cache.get("a") == 3
+        cache.get("b") == 2
+
+        cleanup:
+        cache.close()
+    }
+
+    def "reloads index when reopened after the log was replaced"() {
+        def cache = open()
+        cache.put("a", 1)
+        cache.put("b", 2)
+        cache.close()
+        cacheFile.delete()
+        indexFile.delete()
+        def other = open()
+        other.put("a", 3)
+        other.close()
+
+        when:
+        cache.reopen()
+
+        then:
+        cache.get("a") == 3
+        cache.get("b") == null
+
+        cleanup:
+        cache.close()
+    }
+
+    private LogStructuredPersistentIndexedCache open() {
+        def factory = new BaseSerializerFactory()
+        return new LogStructuredPersistentIndexedCache(cacheFile, factory.getSerializerFor(String), factory.getSerializerFor(Object), executor)
+    }
+
+    private void runCompactions() {
+        def pending = new ArrayList(compactions)
+        compactions.clear()
+        pending*.run()
+    }
+}
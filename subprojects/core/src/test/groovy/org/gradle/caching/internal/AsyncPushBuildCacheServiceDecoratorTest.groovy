@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal
+
+import org.gradle.api.internal.file.TemporaryFileProvider
+import org.gradle.caching.BuildCacheEntryWriter
+import org.gradle.caching.BuildCacheException
+import org.gradle.caching.BuildCacheKey
+import org.gradle.internal.concurrent.DefaultExecutorFactory
+import org.gradle.internal.concurrent.ExecutorFactory
+import org.gradle.internal.operations.BuildOperationQueueFactory
+import org.gradle.internal.operations.RunnableBuildOperation
+import org.gradle.internal.progress.BuildOperationListener
+import org.gradle.internal.progress.DefaultBuildOperationExecutor
+import org.gradle.internal.progress.NoOpProgressLoggerFactory
+import org.gradle.internal.progress.TestBuildOperationExecutor
+import org.gradle.internal.time.TimeProvider
+import org.gradle.test.fixtures.concurrent.ConcurrentSpec
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+
+import static org.gradle.internal.progress.BuildOperationDescriptor.displayName
+
+class AsyncPushBuildCacheServiceDecoratorTest extends ConcurrentSpec {
+    @Rule TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def key = Mock(BuildCacheKey)
+    def delegate = Mock(RoleAwareBuildCacheService) {
+        getRole() >> "remote"
+    }
+    def temporaryFileProvider = Stub(TemporaryFileProvider) {
+        createTemporaryFile(_, _) >> { tmpDir.createFile("spool-${UUID.randomUUID()}") }
+    }
+    def executorFactory = new DefaultExecutorFactory()
+    def buildOperationExecutor = new TestBuildOperationExecutor()
+    def decorator = new AsyncPushBuildCacheServiceDecorator(executorFactory, buildOperationExecutor, temporaryFileProvider, 2, 2, 10, delegate)
+
+    def cleanup() {
+        executorFactory.stop()
+    }
+
+    def "pushes entry in the background"() {
+        def pushed = new ByteArrayOutputStream()
+
+        when:
+        async {
+            decorator.store(key, { output -> output << "entry" } as BuildCacheEntryWriter)
+            instant.stored
+            thread.blockUntil.pushed
+        }
+
+        then:
+        1 * delegate.store(key, _) >> { BuildCacheKey k, BuildCacheEntryWriter writer ->
+            thread.blockUntil.stored
+            writer.writeTo(pushed)
+            instant.pushed
+        }
+        pushed.toString() == "entry"
+        buildOperationExecutor.operations*.displayName == ["Push entry ${key} to remote build cache"]
+
+        when:
+        decorator.close()
+
+        then:
+        1 * delegate.close()
+        tmpDir.testDirectory.listFiles().length == 0
+    }
+
+    def "pushes entry after the operation that stored it has completed"() {
+        def listener = Mock(BuildOperationListener)
+        def realExecutor = new DefaultBuildOperationExecutor(listener, Mock(TimeProvider), new NoOpProgressLoggerFactory(), Mock(BuildOperationQueueFactory), Mock(ExecutorFactory), 1)
+        decorator = new AsyncPushBuildCacheServiceDecorator(executorFactory, realExecutor, temporaryFileProvider, 2, 2, 10, delegate)
+
+        when:
+        realExecutor.run([
+            run: { context -> decorator.store(key, { output -> output << "entry" } as BuildCacheEntryWriter) },
+            description: { displayName("Store entry") }
+        ] as RunnableBuildOperation)
+        instant.stored
+        decorator.close()
+
+        then:
+        1 * delegate.store(key, _) >> {
+            thread.blockUntil.stored
+        }
+        0 * listener.finished(_, { it.failure != null })
+
+        then:
+        1 * delegate.close()
+    }
+
+    def "close waits for pending pushes"() {
+        when:
+        decorator.store(key, { output -> output << "entry" } as BuildCacheEntryWriter)
+        decorator.close()
+
+        then:
+        1 * delegate.store(key, _) >> {
+            Thread.sleep(100)
+        }
+
+        then:
+        1 * delegate.close()
+    }
+
+    def "failure to push entry does not fail the next store"() {
+        decorator = new AsyncPushBuildCacheServiceDecorator(executorFactory, buildOperationExecutor, temporaryFileProvider, 1, 1, 10, delegate)
+
+        when:
+        decorator.store(key, { output -> output << "entry" } as BuildCacheEntryWriter)
+        // Blocks until the first push has completed
+        decorator.store(key, { output -> output << "entry" } as BuildCacheEntryWriter)
+        decorator.close()
+
+        then:
+        noExceptionThrown()
+        1 * delegate.store(key, _) >> { throw new BuildCacheException("broken") }
+        1 * delegate.store(key, _)
+        1 * delegate.close()
+        tmpDir.testDirectory.listFiles().length == 0
+    }
+
+    def "close cancels pending pushes that do not complete in time before closing the decorated service"() {
+        decorator = new AsyncPushBuildCacheServiceDecorator(executorFactory, buildOperationExecutor, temporaryFileProvider, 1, 2, 0, delegate)
+
+        when:
+        async {
+            decorator.store(key, { output -> output << "first" } as BuildCacheEntryWriter)
+            decorator.store(key, { output -> output << "second" } as BuildCacheEntryWriter)
+            thread.blockUntil.pushing
+            decorator.close()
+        }
+
+        then:
+        1 * delegate.store(key, _) >> {
+            instant.pushing
+            thread.block()
+        }
+        0 * delegate.store(key, _)
+
+        then:
+        1 * delegate.close()
+        tmpDir.testDirectory.listFiles().length == 0
+    }
+}
@@ -24,6 +24,7 @@ import org.gradle.caching.configuration.AbstractBuildCache
 import org.gradle.caching.configuration.internal.DefaultBuildCacheConfiguration
 import org.gradle.caching.configuration.internal.DefaultBuildCacheServiceRegistration
 import org.gradle.caching.local.DirectoryBuildCache
+import org.gradle.internal.concurrent.DefaultExecutorFactory
 import org.gradle.internal.progress.TestBuildOperationExecutor
 import org.gradle.internal.reflect.DirectInstantiator
 import org.gradle.testing.internal.util.Specification
@@ -43,7 +44,7 @@ class BuildCacheServiceProviderTest extends Specification {
         new DefaultBuildCacheServiceRegistration(TestRemoteBuildCache, TestRemoteBuildCacheServiceFactory),
 
     ])
-    def provider = new BuildCacheServiceProvider(config, startParameter, DirectInstantiator.INSTANCE, buildOperationExecuter, temporaryFileProvider)
+    def provider = new BuildCacheServiceProvider(config, startParameter, DirectInstantiator.INSTANCE, buildOperationExecuter, temporaryFileProvider, new DefaultExecutorFactory())
 
     private <T extends BuildCacheService> T create(Class<? extends T> serviceType) {
         def service = provider.createBuildCacheService()
@@ -105,9 +106,10 @@ class BuildCacheServiceProviderTest extends Specification {
         config.remote(TestRemoteBuildCache)
 
         when:
-        create(DispatchingBuildCacheService)
+        def s = create(DispatchingBuildCacheService)
 
         then:
+        s.remote instanceof PrefetchingBuildCacheServiceDecorator
         with(buildOpResult()) {
             local.type == "directory"
             remote.type == "remote"
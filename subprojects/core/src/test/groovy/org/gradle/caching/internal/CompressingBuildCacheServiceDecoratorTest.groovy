@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal
+
+import org.gradle.caching.BuildCacheEntryWriter
+import org.gradle.caching.BuildCacheKey
+import org.gradle.caching.internal.tasks.TaskOutputCompression
+import spock.lang.Specification
+
+import java.util.zip.GZIPInputStream
+
+class CompressingBuildCacheServiceDecoratorTest extends Specification {
+    def key = Mock(BuildCacheKey)
+    def delegate = Mock(RoleAwareBuildCacheService)
+    def decorator = new CompressingBuildCacheServiceDecorator(TaskOutputCompression.DEFAULT, delegate)
+
+    def "compresses stored entry"() {
+        def stored = new ByteArrayOutputStream()
+
+        when:
+        decorator.store(key, { output -> output << "entry" } as BuildCacheEntryWriter)
+
+        then:
+        1 * delegate.store(key, _) >> { BuildCacheKey k, BuildCacheEntryWriter writer -> writer.writeTo(stored) }
+        def input = new ByteArrayInputStream(stored.toByteArray())
+        TaskOutputCompression.isCompressed(input)
+        new GZIPInputStream(input).text == "entry"
+    }
+
+    def "stores uncompressed entry as it is"() {
+        decorator = new CompressingBuildCacheServiceDecorator(TaskOutputCompression.NONE, delegate)
+        def stored = new ByteArrayOutputStream()
+
+        when:
+        decorator.store(key, { output -> output << "entry" } as BuildCacheEntryWriter)
+
+        then:
+        1 * delegate.store(key, _) >> { BuildCacheKey k, BuildCacheEntryWriter writer -> writer.writeTo(stored) }
+        def input = new ByteArrayInputStream(stored.toByteArray())
+        !TaskOutputCompression.isCompressed(input)
+        input.text == "entry"
+    }
+
+    def "stores already compressed entry as it is"() {
+        def writer = Mock(CompressedBuildCacheEntryWriter)
+
+        when:
+        decorator.store(key, writer)
+
+        then:
+        1 * delegate.store(key, writer)
+    }
+
+    def "detects compressed entry without consuming it"() {
+        def compressed = new ByteArrayOutputStream()
+        def output = TaskOutputCompression.FAST.compress(compressed)
+        output << "entry"
+        output.close()
+        def input = new ByteArrayInputStream(compressed.toByteArray())
+
+        expect:
+        TaskOutputCompression.isCompressed(input)
+        new GZIPInputStream(input).text == "entry"
+        !TaskOutputCompression.isCompressed(new ByteArrayInputStream("entry".bytes))
+        !TaskOutputCompression.isCompressed(new ByteArrayInputStream(new byte[0]))
+    }
+}
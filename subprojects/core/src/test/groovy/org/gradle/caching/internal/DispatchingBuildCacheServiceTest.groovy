@@ -0,0 +1,235 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal
+
+import org.gradle.api.internal.file.TemporaryFileProvider
+import org.gradle.caching.BuildCacheEntryReader
+import org.gradle.caching.BuildCacheEntryWriter
+import org.gradle.caching.BuildCacheKey
+import org.gradle.caching.internal.tasks.TaskOutputCompression
+import org.gradle.internal.progress.TestBuildOperationExecutor
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class DispatchingBuildCacheServiceTest extends Specification {
+    @Rule TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def key = Mock(BuildCacheKey)
+    def local = Mock(RoleAwareBuildCacheService) {
+        getRole() >> "local"
+    }
+    def remote = Mock(RoleAwareBuildCacheService) {
+        getRole() >> "remote"
+    }
+    def temporaryFileProvider = Stub(TemporaryFileProvider) {
+        createTemporaryFile(_, _) >> { tmpDir.createFile("spool-${UUID.randomUUID()}") }
+    }
+    def buildOperationExecutor = new TestBuildOperationExecutor()
+
+    def "does not load from remote when entry is found locally"() {
+        def service = new DispatchingBuildCacheService(local, true, remote, true, 1024, temporaryFileProvider, buildOperationExecutor)
+        def reader = Mock(BuildCacheEntryReader)
+
+        when:
+        def found = service.load(key, reader)
+
+        then:
+        1 * local.load(key, reader) >> true
+        0 * remote.load(_, _)
+        0 * local.store(_, _)
+        found
+    }
+
+    def "stores entry loaded from remote in local cache"() {
+        def service = new DispatchingBuildCacheService(local, true, remote, true, 1024, temporaryFileProvider, buildOperationExecutor)
+        def loaded = null
+        def stored = new ByteArrayOutputStream()
+
+        when:
+        def found = service.load(key, { InputStream input ->
+            def buffer = new byte[3]
+            input.read(buffer)
+            loaded = new String(buffer)
+        } as BuildCacheEntryReader)
+
+        then:
+        1 * local.load(key, _) >> false
+        1 * remote.load(key, _) >> { BuildCacheKey k, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("entry".bytes))
+            true
+        }
+
+        then:
+        1 * local.store(key, { it instanceof CompressedBuildCacheEntryWriter }) >> { BuildCacheKey k, BuildCacheEntryWriter writer ->
+            writer.writeTo(stored)
+        }
+        found
+        loaded == "ent"
+        stored.toString() == "entry"
+        tmpDir.testDirectory.listFiles().length == 0
+    }
+
+    def "stores entry loaded from remote in local cache when the reader closes the stream"() {
+        def service = new DispatchingBuildCacheService(local, true, remote, true, 1024, temporaryFileProvider, buildOperationExecutor)
+        def remoteEntry = tmpDir.createDir("remote").file("entry")
+        remoteEntry.text = "entry"
+        def stored = new ByteArrayOutputStream()
+
+        when:
+        def found = service.load(key, { InputStream input ->
+            input.read(new byte[3])
+            input.close()
+        } as BuildCacheEntryReader)
+
+        then:
+        1 * local.load(key, _) >> false
+        1 * remote.load(key, _) >> { BuildCacheKey k, BuildCacheEntryReader reader ->
+            // Unlike a byte array stream, a file stream cannot be read after it has been closed
+            reader.readFrom(new FileInputStream(remoteEntry))
+            true
+        }
+
+        then:
+        1 * local.store(key, _) >> { BuildCacheKey k, BuildCacheEntryWriter writer ->
+            writer.writeTo(stored)
+        }
+        found
+        stored.toString() == "entry"
+    }
+
+    def "does not store entry in local cache when it is too large"() {
+        def service = new DispatchingBuildCacheService(local, true, remote, true, 3, temporaryFileProvider, buildOperationExecutor)
+        def reader = Mock(BuildCacheEntryReader)
+
+        when:
+        def found = service.load(key, reader)
+
+        then:
+        1 * local.load(key, _) >> false
+        1 * remote.load(key, _) >> { BuildCacheKey k, BuildCacheEntryReader r ->
+            r.readFrom(new ByteArrayInputStream("entry".bytes))
+            true
+        }
+        1 * reader.readFrom(_) >> { InputStream input -> input.bytes }
+        0 * local.store(_, _)
+        found
+    }
+
+    def "does not store entry in local cache when reading it fails"() {
+        def service = new DispatchingBuildCacheService(local, true, remote, true, 1024, temporaryFileProvider, buildOperationExecutor)
+        def failure = new IOException("broken")
+
+        when:
+        service.load(key, { input -> throw failure } as BuildCacheEntryReader)
+
+        then:
+        1 * local.load(key, _) >> false
+        1 * remote.load(key, _) >> { BuildCacheKey k, BuildCacheEntryReader reader ->
+            reader.readFrom(new ByteArrayInputStream("entry".bytes))
+            true
+        }
+        0 * local.store(_, _)
+        def e = thrown(IOException)
+        e == failure
+    }
+
+    def "does not store entry in local cache when pushing to local cache is disabled"() {
+        def service = new DispatchingBuildCacheService(local, false, remote, true, 1024, temporaryFileProvider, buildOperationExecutor)
+        def reader = Mock(BuildCacheEntryReader)
+
+        when:
+        def found = service.load(key, reader)
+
+        then:
+        1 * local.load(key, reader) >> false
+        1 * remote.load(key, reader) >> true
+        0 * local.store(_, _)
+        found
+    }
+
+    def "reports hits and misses of each cache when closed"() {
+        def service = new DispatchingBuildCacheService(local, true, remote, true, 3, temporaryFileProvider, buildOperationExecutor)
+        def reader = Mock(BuildCacheEntryReader)
+        local.load(_, _) >>> [true, false, false, false]
+        def remoteEntries = ["ent", "entry", null]
+        remote.load(_, _) >> { BuildCacheKey k, BuildCacheEntryReader r ->
+            def entry = remoteEntries.remove(0)
+            if (entry != null) {
+                r.readFrom(new ByteArrayInputStream(entry.bytes))
+            }
+            entry != null
+        }
+
+        when:
+        4.times { service.load(key, reader) }
+        service.close()
+
+        then:
+        def result = buildOperationExecutor.log.mostRecentResult(BuildCacheStatisticsDetails)
+        result.localHits == 1
+        result.remoteHits == 2
+        result.misses == 1
+        result.writtenThrough == 1
+        result.tooLargeToWriteThrough == 1
+        1 * local.close()
+        1 * remote.close()
+    }
+
+    def "prefetches only entries that are not found locally"() {
+        def prefetchingRemote = Mock(PrefetchingRemote)
+        def service = new DispatchingBuildCacheService(local, true, prefetchingRemote, true, 1024, temporaryFileProvider, buildOperationExecutor)
+
+        when:
+        service.prefetch(key)
+
+        then:
+        1 * local.mightContain(key) >> true
+        0 * prefetchingRemote.prefetch(_)
+
+        when:
+        service.prefetch(key)
+
+        then:
+        1 * local.mightContain(key) >> false
+        1 * prefetchingRemote.prefetch(key)
+    }
+
+    interface PrefetchingRemote extends RoleAwareBuildCacheService, BuildCacheEntryPrefetcher {
+    }
+
+    def "compresses entry stored in both caches once"() {
+        def service = new DispatchingBuildCacheService(local, true, remote, true, 1024, TaskOutputCompression.NONE, temporaryFileProvider, buildOperationExecutor)
+        def storedLocally = new ByteArrayOutputStream()
+        def storedRemotely = new ByteArrayOutputStream()
+
+        when:
+        service.store(key, { output -> output << "entry" } as BuildCacheEntryWriter)
+
+        then:
+        1 * local.store(key, { it instanceof CompressedBuildCacheEntryWriter }) >> { BuildCacheKey k, BuildCacheEntryWriter writer ->
+            writer.writeTo(storedLocally)
+        }
+        1 * remote.store(key, { it instanceof CompressedBuildCacheEntryWriter }) >> { BuildCacheKey k, BuildCacheEntryWriter writer ->
+            writer.writeTo(storedRemotely)
+        }
+        def input = new ByteArrayInputStream(storedLocally.toByteArray())
+        !TaskOutputCompression.isCompressed(input)
+        input.text == "entry"
+        storedRemotely.toByteArray() == storedLocally.toByteArray()
+        tmpDir.testDirectory.listFiles().length == 0
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal
+
+import org.gradle.api.internal.file.TemporaryFileProvider
+import org.gradle.caching.BuildCacheEntryReader
+import org.gradle.caching.BuildCacheException
+import org.gradle.caching.BuildCacheKey
+import org.gradle.internal.concurrent.ExecutorFactory
+import org.gradle.internal.concurrent.StoppableExecutor
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class PrefetchingBuildCacheServiceDecoratorTest extends Specification {
+    @Rule TestNameTestDirectoryProvider tmpDir = new TestNameTestDirectoryProvider()
+    def key = Mock(BuildCacheKey) {
+        getHashCode() >> "0123456789abcdef"
+    }
+    def delegate = Mock(RoleAwareBuildCacheService) {
+        getRole() >> "remote"
+    }
+    def executor = Mock(StoppableExecutor)
+    def executorFactory = Stub(ExecutorFactory) {
+        create(_, _) >> executor
+    }
+    def temporaryFileProvider = Stub(TemporaryFileProvider) {
+        createTemporaryFile(_, _) >> { tmpDir.createFile("spool-${UUID.randomUUID()}") }
+    }
+    def decorator = new PrefetchingBuildCacheServiceDecorator(executorFactory, temporaryFileProvider, 2, 2, delegate)
+    def reader = Mock(BuildCacheEntryReader)
+
+    def "loads prefetched entry from spool file"() {
+        def loaded = null
+
+        when:
+        decorator.prefetch(key)
+
+        then:
+        1 * executor.execute(_) >> { Runnable prefetch -> prefetch.run() }
+        1 * delegate.load(key, _) >> { BuildCacheKey k, BuildCacheEntryReader r ->
+            r.readFrom(new ByteArrayInputStream("entry".bytes))
+            true
+        }
+        tmpDir.testDirectory.listFiles().length == 1
+
+        when:
+        def found = decorator.load(key, reader)
+
+        then:
+        0 * delegate.load(_, _)
+        1 * reader.readFrom(_) >> { InputStream input -> loaded = input.text }
+        found
+        loaded == "entry"
+        tmpDir.testDirectory.listFiles().length == 0
+    }
+
+    def "does not load entry that prefetching found missing"() {
+        when:
+        decorator.prefetch(key)
+        def found = decorator.load(key, reader)
+
+        then:
+        1 * executor.execute(_) >> { Runnable prefetch -> prefetch.run() }
+        1 * delegate.load(key, _) >> false
+        0 * reader._
+        !found
+        tmpDir.testDirectory.listFiles().length == 0
+    }
+
+    def "loads entry when prefetching fails"() {
+        when:
+        decorator.prefetch(key)
+        def found = decorator.load(key, reader)
+
+        then:
+        1 * executor.execute(_) >> { Runnable prefetch -> prefetch.run() }
+        1 * delegate.load(key, _) >> { throw new BuildCacheException("broken") }
+
+        then:
+        1 * delegate.load(key, reader) >> true
+        found
+        tmpDir.testDirectory.listFiles().length == 0
+    }
+
+    def "loads entry directly when its download has not started"() {
+        def prefetch = null
+
+        when:
+        decorator.prefetch(key)
+        def found = decorator.load(key, reader)
+
+        then:
+        1 * executor.execute(_) >> { Runnable r -> prefetch = r }
+        1 * delegate.load(key, reader) >> true
+        found
+
+        when:
+        prefetch.run()
+
+        then:
+        0 * delegate.load(_, _)
+    }
+
+    def "does not download discarded entry"() {
+        def prefetch = null
+
+        when:
+        decorator.prefetch(key)
+        decorator.discard(key)
+        prefetch.run()
+
+        then:
+        1 * executor.execute(_) >> { Runnable r -> prefetch = r }
+        0 * delegate.load(_, _)
+    }
+
+    def "deletes spool file of discarded entry"() {
+        when:
+        decorator.prefetch(key)
+        decorator.discard(key)
+
+        then:
+        1 * executor.execute(_) >> { Runnable prefetch -> prefetch.run() }
+        1 * delegate.load(key, _) >> { BuildCacheKey k, BuildCacheEntryReader r ->
+            r.readFrom(new ByteArrayInputStream("entry".bytes))
+            true
+        }
+        tmpDir.testDirectory.listFiles().length == 0
+    }
+
+    def "ignores requests to prefetch when too many entries are pending"() {
+        def otherKey = Mock(BuildCacheKey) {
+            getHashCode() >> "1"
+        }
+        def anotherKey = Mock(BuildCacheKey) {
+            getHashCode() >> "2"
+        }
+
+        when:
+        decorator.prefetch(key)
+        decorator.prefetch(key)
+        decorator.prefetch(otherKey)
+        decorator.prefetch(anotherKey)
+
+        then:
+        2 * executor.execute(_)
+
+        when:
+        decorator.load(key, reader)
+        decorator.prefetch(anotherKey)
+
+        then:
+        1 * executor.execute(_)
+    }
+
+    def "loads directly when entry was not prefetched"() {
+        when:
+        decorator.load(key, reader)
+
+        then:
+        1 * delegate.load(key, reader) >> true
+    }
+
+    def "stops prefetching and deletes spool files when closed"() {
+        when:
+        decorator.prefetch(key)
+        decorator.close()
+
+        then:
+        1 * executor.execute(_) >> { Runnable prefetch -> prefetch.run() }
+        1 * delegate.load(key, _) >> { BuildCacheKey k, BuildCacheEntryReader r ->
+            r.readFrom(new ByteArrayInputStream("entry".bytes))
+            true
+        }
+
+        then:
+        1 * executor.stop()
+
+        then:
+        1 * delegate.close()
+        tmpDir.testDirectory.listFiles().length == 0
+    }
+}
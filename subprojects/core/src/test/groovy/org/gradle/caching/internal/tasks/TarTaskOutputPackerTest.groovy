@@ -16,6 +16,8 @@
 
 package org.gradle.caching.internal.tasks
 
+import org.gradle.api.UncheckedIOException
+import org.gradle.internal.concurrent.DefaultExecutorFactory
 import org.gradle.internal.nativeplatform.filesystem.FileSystem
 import spock.lang.Unroll
 
@@ -24,7 +26,13 @@ import static org.gradle.api.internal.tasks.CacheableTaskOutputFilePropertySpec.
 
 class TarTaskOutputPackerTest extends AbstractTaskOutputPackerSpec {
     def fileSystem = Mock(FileSystem)
-    private tarPacker = new TarTaskOutputPacker(fileSystem)
+    def executorFactory = new DefaultExecutorFactory()
+    def executor = executorFactory.create("unpack")
+    private tarPacker = new TarTaskOutputPacker(fileSystem, executor)
+
+    def cleanup() {
+        executorFactory.stop()
+    }
 
     @Override
     TaskOutputPacker getPacker() {
@@ -246,6 +254,78 @@ class TarTaskOutputPackerTest extends AbstractTaskOutputPackerSpec {
         0 * _
     }
 
+    @Unroll
+    def "can unpack task output directory with many small and some large files stored with #compression compression"() {
+        def sourceOutputDir = tempDir.file("source").createDir()
+        def largeContent = "0123456789abcdef" * 20000
+        (1..500).each { index ->
+            sourceOutputDir.file("dir-${index % 10}/file-${index}.txt") << (index % 100 == 0 ? largeContent + index : "content-${index}")
+        }
+        def targetOutputDir = tempDir.file("target").createDir()
+        targetOutputDir.file("stale.txt") << "stale"
+        def packer = new DecompressingTaskOutputPacker(tarPacker, executor)
+        def output = new ByteArrayOutputStream()
+
+        when:
+        def compressedOutput = compression.compress(output)
+        packer.pack([new TestProperty(propertyName: "test", outputFile: sourceOutputDir)] as SortedSet, compressedOutput, writeOrigin)
+        compressedOutput.close()
+        packer.unpack([new TestProperty(propertyName: "test", outputFile: targetOutputDir)] as SortedSet, new ByteArrayInputStream(output.toByteArray()), readOrigin)
+
+        then:
+        _ * fileSystem.getUnixMode(_) >> 0644
+        _ * fileSystem.chmod(_, _)
+        !targetOutputDir.file("stale.txt").exists()
+        (1..500).every { index ->
+            targetOutputDir.file("dir-${index % 10}/file-${index}.txt").text == (index % 100 == 0 ? largeContent + index : "content-${index}")
+        }
+
+        where:
+        compression << TaskOutputCompression.values()
+    }
+
+    def "reports failure to write output file"() {
+        def sourceOutputDir = tempDir.file("source").createDir()
+        sourceOutputDir.file("dir/file.txt") << "content"
+        def targetOutputDir = tempDir.file("target")
+        def output = new ByteArrayOutputStream()
+        pack output, new TestProperty(propertyName: "test", outputFile: sourceOutputDir)
+
+        when:
+        unpack new ByteArrayInputStream(output.toByteArray()), new TestProperty(propertyName: "test", outputFile: targetOutputDir)
+
+        then:
+        thrown(UncheckedIOException)
+        _ * fileSystem.getUnixMode(_) >> 0644
+        1 * fileSystem.chmod(targetOutputDir, _) >> {
+            // Occupy the location of the sub-directory with a file, so that it cannot be created
+            targetOutputDir.file("dir") << "not a directory"
+        }
+        0 * _
+    }
+
+    def "reports failure to write output file before a large file"() {
+        def sourceOutputDir = tempDir.file("source").createDir()
+        sourceOutputDir.file("dir/file.txt") << "content"
+        sourceOutputDir.file("dir/large.txt") << "0123456789abcdef" * 20000
+        def targetOutputDir = tempDir.file("target")
+        def output = new ByteArrayOutputStream()
+        pack output, new TestProperty(propertyName: "test", outputFile: sourceOutputDir)
+
+        when:
+        unpack new ByteArrayInputStream(output.toByteArray()), new TestProperty(propertyName: "test", outputFile: targetOutputDir)
+
+        then:
+        thrown(UncheckedIOException)
+        _ * fileSystem.getUnixMode(_) >> 0644
+        1 * fileSystem.chmod(targetOutputDir, _) >> {
+            // Occupy the location of the sub-directory with a file, so that it cannot be created
+            targetOutputDir.file("dir") << "not a directory"
+        }
+        0 * _
+        !targetOutputDir.file("dir/large.txt").exists()
+    }
+
     def "parent directory is created for output file"() {
         def targetOutputFile = tempDir.file("build/some-dir/output.txt")
         targetOutputFile << "Some data"
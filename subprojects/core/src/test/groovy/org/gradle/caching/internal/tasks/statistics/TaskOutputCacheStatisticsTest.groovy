@@ -0,0 +1,80 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.internal.tasks.statistics
+
+import org.gradle.api.DefaultTask
+import org.gradle.api.tasks.Copy
+import spock.lang.Specification
+
+class TaskOutputCacheStatisticsTest extends Specification {
+    def statistics = new TaskOutputCacheStatistics()
+
+    def "aggregates statistics per task type"() {
+        when:
+        statistics.loaded(Copy, 100, 10, 50)
+        statistics.loaded(Copy, 200, 20, 150)
+        statistics.missed(Copy)
+        statistics.stored(Copy, 300, 30, 100)
+
+        then:
+        def taskTypes = statistics.taskTypes
+        taskTypes.size() == 1
+        with(taskTypes[0]) {
+            taskType == Copy.name
+            hits == 2
+            misses == 1
+            stores == 1
+            loadedBytes == 300
+            storedBytes == 300
+            loadTime == 30
+            storeTime == 30
+            originalExecutionTime == 200
+            executionTime == 100
+            savedTime == 170
+            !moreExpensiveThanExecuting
+        }
+    }
+
+    def "reports declared type of generated task types"() {
+        when:
+        statistics.missed(Copy_Decorated)
+
+        then:
+        statistics.taskTypes*.taskType == [Copy.name]
+    }
+
+    def "flags task types that take longer to load or store than to execute"() {
+        when:
+        statistics.loaded(Copy, 100, 50, 10)
+        statistics.stored(DefaultTask, 100, 50, 10)
+
+        then:
+        statistics.taskTypes.every { it.moreExpensiveThanExecuting }
+    }
+
+    def "orders task types by saved time"() {
+        when:
+        statistics.loaded(DefaultTask, 100, 10, 20)
+        statistics.loaded(Copy, 100, 10, 100)
+
+        then:
+        statistics.taskTypes*.taskType == [Copy.name, DefaultTask.name]
+    }
+
+    static class Copy_Decorated extends Copy {
+    }
+}
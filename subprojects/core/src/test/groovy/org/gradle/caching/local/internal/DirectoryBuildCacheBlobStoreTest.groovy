@@ -0,0 +1,179 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal
+
+import org.apache.tools.tar.TarEntry
+import org.apache.tools.tar.TarInputStream
+import org.apache.tools.tar.TarOutputStream
+import org.gradle.caching.internal.tasks.TaskOutputCompression
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class DirectoryBuildCacheBlobStoreTest extends Specification {
+    @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    def cacheDir = temporaryFolder.createDir("cache")
+    def blobStore = new DirectoryBuildCacheBlobStore(cacheDir)
+    def largeContent = ("large" * 2000).bytes
+
+    def "reassembles deduplicated entry"() {
+        def entry = createEntry("0a", compressed, [
+            "METADATA": "origin".bytes,
+            "property-dir/": null,
+            "property-dir/small.txt": "small".bytes,
+            "property-dir/large.txt": largeContent
+        ])
+        def manifest = cacheDir.file("0a.manifest")
+
+        when:
+        def blobs = blobStore.deduplicate(entry, manifest)
+        blobStore.commit(blobs, false)
+
+        then:
+        blobs.size() == 1
+        blobStore.getBlobReferences(manifest) == blobs.keySet()
+        blobStore.getBlobFile(blobs.keySet().first()).bytes == largeContent
+
+        when:
+        def contents = readEntry(blobStore.open(manifest))
+
+        then:
+        contents.keySet() as List == ["METADATA", "property-dir/", "property-dir/small.txt", "property-dir/large.txt"]
+        contents["METADATA"].text == "origin"
+        contents["property-dir/"].directory
+        contents["property-dir/small.txt"].text == "small"
+        contents["property-dir/large.txt"].bytes == largeContent
+        contents["property-dir/large.txt"].groupId == -123L
+        contents["property-dir/large.txt"].modTime == 1234000L
+        contents["property-dir/large.txt"].mode == 0100644
+
+        where:
+        compressed << [false, true]
+    }
+
+    def "stores identical files only once"() {
+        def first = createEntry("0a", true, ["property-file": largeContent])
+        def second = createEntry("0b", true, ["property-dir/": null, "property-dir/copy.txt": largeContent])
+
+        when:
+        def firstBlobs = blobStore.deduplicate(first, cacheDir.file("0a.manifest"))
+        blobStore.commit(firstBlobs, false)
+        def secondBlobs = blobStore.deduplicate(second, cacheDir.file("0b.manifest"))
+        blobStore.commit(secondBlobs, false)
+
+        then:
+        firstBlobs.keySet() == secondBlobs.keySet()
+        blobStore.getBlobSizes() == [(firstBlobs.keySet().first()): (long) largeContent.length]
+    }
+
+    def "reads entries that are not deduplicated as they are"() {
+        def entry = cacheDir.file("0a")
+        entry.text = "entry"
+
+        expect:
+        blobStore.open(entry).text == "entry"
+        blobStore.getBlobReferences(entry).empty
+    }
+
+    def "does not open entry when blobs are missing"() {
+        def entry = createEntry("0a", true, ["property-file": largeContent])
+        def manifest = cacheDir.file("0a.manifest")
+        blobStore.deduplicate(entry, manifest)
+
+        expect:
+        blobStore.open(manifest) == null
+    }
+
+    def "reads opened entry when its blobs are removed"() {
+        def entry = createEntry("0a", true, ["first": largeContent, "second": largeContent])
+        def manifest = cacheDir.file("0a.manifest")
+        def blobs = blobStore.deduplicate(entry, manifest)
+        blobStore.commit(blobs, false)
+
+        when:
+        def input = blobStore.open(manifest)
+        // As done by a cleanup in another process
+        blobStore.getBlobFile(blobs.keySet().first()).delete()
+        def contents = readEntry(input)
+
+        then:
+        contents["first"].bytes == largeContent
+        contents["second"].bytes == largeContent
+    }
+
+    def "does not deduplicate entries that are not packed task output"() {
+        def entry = cacheDir.file("0a")
+        entry.text = "not a tar"
+
+        when:
+        blobStore.deduplicate(entry, cacheDir.file("0a.manifest"))
+
+        then:
+        thrown IOException
+        blobStore.getBlobSizes().isEmpty()
+    }
+
+    private TestFile createEntry(String key, boolean compressed, Map<String, byte[]> files) {
+        def entryFile = cacheDir.file(key)
+        def fileOutput = new FileOutputStream(entryFile)
+        def compression = compressed ? TaskOutputCompression.DEFAULT : TaskOutputCompression.NONE
+        def tarOutput = new TarOutputStream(compression.compress(fileOutput), "utf-8")
+        tarOutput.longFileMode = TarOutputStream.LONGFILE_POSIX
+        tarOutput.bigNumberMode = TarOutputStream.BIGNUMBER_POSIX
+        files.each { path, content ->
+            def entry = new TarEntry(path)
+            entry.modTime = 1234000L
+            entry.groupId = -123L
+            if (content != null) {
+                entry.mode = 0100644
+                entry.size = content.length
+            }
+            tarOutput.putNextEntry(entry)
+            if (content != null) {
+                tarOutput.write(content)
+            }
+            tarOutput.closeEntry()
+        }
+        tarOutput.close()
+        fileOutput.close()
+        return entryFile
+    }
+
+    private static Map<String, Map<String, Object>> readEntry(InputStream input) {
+        def contents = new LinkedHashMap<String, Map<String, Object>>()
+        def tarInput = new TarInputStream(input, "utf-8")
+        try {
+            TarEntry entry
+            while ((entry = tarInput.nextEntry) != null) {
+                def bytes = new ByteArrayOutputStream()
+                bytes << tarInput
+                contents[entry.name] = [
+                    directory: entry.directory,
+                    mode: entry.mode,
+                    modTime: entry.modTime.time,
+                    groupId: entry.longGroupId,
+                    bytes: bytes.toByteArray(),
+                    text: bytes.toString()
+                ]
+            }
+        } finally {
+            tarInput.close()
+        }
+        return contents
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.caching.local.internal
+
+import org.gradle.cache.PersistentCache
+import org.gradle.internal.progress.TestBuildOperationExecutor
+import org.gradle.test.fixtures.file.TestFile
+import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.junit.Rule
+import spock.lang.Specification
+
+class DirectoryBuildCacheCleanupTest extends Specification {
+    @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    def cacheDir = temporaryFolder.file("cache-dir").createDir()
+    def persistentCache = Mock(PersistentCache) {
+        getBaseDir() >> cacheDir
+    }
+    def index = new DirectoryBuildCacheIndex(cacheDir)
+    def blobStore = new DirectoryBuildCacheBlobStore(cacheDir)
+    def cleanup = new DirectoryBuildCacheCleanup(new TestBuildOperationExecutor(), index, blobStore, 10)
+
+    def "removes least recently used entries beyond the target size"() {
+        def newest = createCacheEntry("0a", 1024 * 1024, 1000)
+        def oldest = createCacheEntry("0b", 1024 * 1024 * 10, 500)
+        def recentlyUsed = createCacheEntry("0c", 1024 * 1024 * 4, 0)
+        // Used recently, even though it was stored long ago
+        index.append(["0c": new DirectoryBuildCacheIndex.Entry(1024 * 1024 * 4, 2000)])
+
+        when:
+        cleanup.cleanup(persistentCache)
+
+        then:
+        recentlyUsed.assertExists()
+        newest.assertExists()
+        oldest.assertDoesNotExist()
+        index.read().keySet() == ["0a", "0c"] as Set
+    }
+
+    def "keeps all entries when cache is smaller than target size"() {
+        def entries = [
+            createCacheEntry("0a", 1024, 0),
+            createCacheEntry("0b", 1024 * 1024, 0)
+        ]
+
+        when:
+        cleanup.cleanup(persistentCache)
+
+        then:
+        entries.each { it.assertExists() }
+        index.read().keySet() == ["0a", "0b"] as Set
+    }
+
+    def "removes blobs along with the last entry referring to them"() {
+        def shared = createBlob("0f1e", 1024 * 1024 * 4)
+        def unshared = createBlob("0f2e", 1024 * 1024 * 4)
+        def newest = createCacheEntry("0a", 1024, 1000)
+        def oldest = createCacheEntry("0b", 1024, 500)
+        def oldestRemaining = createCacheEntry("0c", 1024, 750)
+        def references = [(newest): ["0f1e"], (oldestRemaining): ["0f1e"], (oldest): ["0f2e"]]
+        def spyBlobStore = Spy(DirectoryBuildCacheBlobStore, constructorArgs: [cacheDir])
+        def cleanup = new DirectoryBuildCacheCleanup(new TestBuildOperationExecutor(), index, spyBlobStore, 5)
+        spyBlobStore.getBlobReferences(_ as File) >> { File entry -> references[entry] as Set }
+
+        when:
+        cleanup.cleanup(persistentCache)
+
+        then:
+        newest.assertExists()
+        oldestRemaining.assertExists()
+        shared.assertExists()
+        oldest.assertDoesNotExist()
+        unshared.assertDoesNotExist()
+        index.read().keySet() == ["0a", "0c"] as Set
+    }
+
+    def "removes entries that cannot be read and cleans up the others"() {
+        def blob = createBlob("0f1e", 1024)
+        def readable = createCacheEntry("0a", 1024, 1000)
+        def corrupt = createCacheEntry("0b", 1024, 2000)
+        // Starts like a manifest, but is truncated
+        corrupt.bytes = [0x47, 0x42, 0x4d, 0x31, 0x78] as byte[]
+        def cleanup = new DirectoryBuildCacheCleanup(new TestBuildOperationExecutor(), index, blobStore, 5)
+
+        when:
+        cleanup.cleanup(persistentCache)
+
+        then:
+        readable.assertExists()
+        corrupt.assertDoesNotExist()
+        blob.assertDoesNotExist()
+        index.read().keySet() == ["0a"] as Set
+    }
+
+    def "uses modification time of entries that are not recorded in the index"() {
+        index.append(["0a": new DirectoryBuildCacheIndex.Entry(1024 * 1024 * 4, 2000)])
+        def recorded = createCacheEntry("0a", 1024 * 1024 * 4, 0)
+        def newest = createCacheEntry("0b", 1024 * 1024 * 4, 3000)
+        def oldest = createCacheEntry("0c", 1024 * 1024 * 4, 1000)
+
+        when:
+        cleanup.cleanup(persistentCache)
+
+        then:
+        recorded.assertExists()
+        newest.assertExists()
+        oldest.assertDoesNotExist()
+        index.read().keySet() == ["0a", "0b"] as Set
+    }
+
+    def "removes temporary files left behind by stores that did not complete"() {
+        def staleEntry = cacheDir.file("0a123.part")
+        def staleManifest = cacheDir.file("0a123.part.manifest")
+        def staleBlob = cacheDir.file("blob456.part")
+        def inProgress = cacheDir.file("0b789.part")
+        [staleEntry, staleManifest, staleBlob].each {
+            it.touch()
+            it.lastModified = 0
+        }
+        inProgress.touch()
+
+        when:
+        cleanup.cleanup(persistentCache)
+
+        then:
+        staleEntry.assertDoesNotExist()
+        staleManifest.assertDoesNotExist()
+        staleBlob.assertDoesNotExist()
+        inProgress.assertExists()
+        index.read().isEmpty()
+    }
+
+    def "does not scan cache directory again until the scan interval has passed"() {
+        cacheDir.file(DirectoryBuildCacheCleanup.LAST_SCAN_FILE_NAME).touch()
+        index.append(["0a": new DirectoryBuildCacheIndex.Entry(1024, 2000)])
+        createCacheEntry("0a", 1024, 0)
+        def unrecorded = createCacheEntry("0b", 1024 * 1024 * 20, 1000)
+        def staleTemporaryFile = cacheDir.file("0a123.part")
+        staleTemporaryFile.touch()
+        staleTemporaryFile.lastModified = 0
+
+        when:
+        cleanup.cleanup(persistentCache)
+
+        then:
+        unrecorded.assertExists()
+        staleTemporaryFile.assertExists()
+        index.read().keySet() == ["0a"] as Set
+
+        when:
+        cacheDir.file(DirectoryBuildCacheCleanup.LAST_SCAN_FILE_NAME).lastModified = 0
+        cleanup.cleanup(persistentCache)
+
+        then:
+        unrecorded.assertDoesNotExist()
+        staleTemporaryFile.assertDoesNotExist()
+        index.read().keySet() == ["0a"] as Set
+    }
+
+    def "drops records of entries whose file is missing when evicting them"() {
+        cacheDir.file(DirectoryBuildCacheCleanup.LAST_SCAN_FILE_NAME).touch()
+        index.append([
+            "0a": new DirectoryBuildCacheIndex.Entry(1024 * 1024 * 4, 2000),
+            "0b": new DirectoryBuildCacheIndex.Entry(1024 * 1024 * 8, 1000)
+        ])
+        createCacheEntry("0a", 1024 * 1024 * 4, 0)
+
+        when:
+        cleanup.cleanup(persistentCache)
+
+        then:
+        index.read().keySet() == ["0a"] as Set
+    }
+
+    def "builds index from cache directory when there is none"() {
+        createCacheEntry("0a", 1024, 1000)
+        cacheDir.file("cache.properties").touch()
+        cacheDir.file("cache.lock").touch()
+        cacheDir.file("0b123.part").touch()
+
+        expect:
+        index.read().keySet() == ["0a"] as Set
+    }
+
+    def "ignores incompletely written record at the end of the index"() {
+        index.append(["0a": new DirectoryBuildCacheIndex.Entry(1, 2)])
+        cacheDir.file(DirectoryBuildCacheIndex.JOURNAL_FILE_NAME) << ([0, 2, 0x30] as byte[])
+
+        expect:
+        index.read().keySet() == ["0a"] as Set
+    }
+
+    def createBlob(String hash, int size) {
+        def blob = blobStore.getBlobFile(hash)
+        blob.parentFile.mkdirs()
+        blob.bytes = new byte[size]
+        return new TestFile(blob)
+    }
+
+    def createCacheEntry(String key, int size, long timestamp) {
+        def cacheEntry = cacheDir.file(key)
+        cacheEntry.bytes = new byte[size]
+        cacheEntry.lastModified = timestamp
+        return cacheEntry
+    }
+}
@@ -26,6 +26,7 @@ import org.gradle.caching.local.DirectoryBuildCache
 import org.gradle.internal.progress.TestBuildOperationExecutor
 import org.gradle.test.fixtures.file.CleanupTestDirectory
 import org.gradle.test.fixtures.file.TestNameTestDirectoryProvider
+import org.gradle.util.SetSystemProperties
 import org.gradle.util.UsesNativeServices
 import org.junit.Rule
 import spock.lang.Specification
@@ -42,6 +43,7 @@ class DirectoryBuildCacheServiceFactoryTest extends Specification {
     def buildCacheDescriber = new NoopBuildCacheDescriber()
 
     @Rule TestNameTestDirectoryProvider temporaryFolder = new TestNameTestDirectoryProvider()
+    @Rule SetSystemProperties systemProperties = new SetSystemProperties()
 
     def "can create service with default directory"() {
         def cacheDir = temporaryFolder.file("build-cache-1")
@@ -71,6 +73,30 @@ class DirectoryBuildCacheServiceFactoryTest extends Specification {
         0 * _
     }
 
+    def "keeps deduplicated entries apart from other entries"() {
+        def cacheDir = temporaryFolder.file("build-cache-deduplicated-1")
+        def givenDir = temporaryFolder.file("cache-dir")
+        System.setProperty("org.gradle.caching.local.deduplicate", "true")
+
+        when:
+        factory.createBuildCacheService(config, buildCacheDescriber)
+        then:
+        1 * config.getDirectory() >> null
+        1 * config.getTargetSizeInMB() >> 1000
+        1 * cacheScopeMapping.getBaseDirectory(null, "build-cache-deduplicated-1", VersionStrategy.SharedCache) >> cacheDir
+        1 * cacheRepository.cache(cacheDir) >> cacheBuilder
+        0 * _
+
+        when:
+        factory.createBuildCacheService(config, buildCacheDescriber)
+        then:
+        1 * config.getDirectory() >> givenDir
+        1 * config.getTargetSizeInMB() >> 1000
+        1 * resolver.resolve(givenDir) >> givenDir
+        1 * cacheRepository.cache(new File(givenDir, "build-cache-deduplicated-1")) >> cacheBuilder
+        0 * _
+    }
+
     private class NoopBuildCacheDescriber implements BuildCacheServiceFactory.Describer {
 
         @Override
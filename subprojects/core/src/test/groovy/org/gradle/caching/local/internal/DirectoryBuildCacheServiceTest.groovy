@@ -16,6 +16,9 @@
 
 package org.gradle.caching.local.internal
 
+import org.apache.tools.tar.TarEntry
+import org.apache.tools.tar.TarOutputStream
+import org.gradle.api.UncheckedIOException
 import org.gradle.cache.CacheBuilder
 import org.gradle.cache.CacheRepository
 import org.gradle.cache.PersistentCache
@@ -42,7 +45,7 @@ class DirectoryBuildCacheServiceTest extends Specification {
     def cacheRepository = Mock(CacheRepository) {
         cache(cacheDir) >> cacheBuilder
     }
-    def service = new DirectoryBuildCacheService(cacheRepository, Mock(BuildOperationExecutor), cacheDir, Long.MAX_VALUE)
+    def service = new DirectoryBuildCacheService(cacheRepository, Mock(BuildOperationExecutor), cacheDir, Long.MAX_VALUE, false)
     def key = Mock(BuildCacheKey)
 
     def "does not store partial result"() {
@@ -66,4 +69,162 @@ class DirectoryBuildCacheServiceTest extends Specification {
         cacheDir.listFiles() as List == []
         1 * key.getHashCode() >> hashCode
     }
+
+    def "loads entry without locking the cache and records its use when closed"() {
+        def hashCode = "1234abcd"
+        cacheDir.file(hashCode).text = "entry"
+        def content = null
+
+        when:
+        def found = service.load(key) { InputStream input ->
+            content = input.text
+        }
+
+        then:
+        found
+        content == "entry"
+        1 * key.getHashCode() >> hashCode
+        0 * persistentCache._
+
+        when:
+        service.close()
+
+        then:
+        1 * persistentCache.useCache(_ as Runnable) >> { Runnable action -> action.run() }
+        1 * persistentCache.close()
+        new DirectoryBuildCacheIndex(cacheDir).read()[hashCode].size == 5
+    }
+
+    def "does not find missing entry"() {
+        when:
+        def found = service.load(key) { InputStream input ->
+            throw new IllegalStateException()
+        }
+
+        then:
+        !found
+        1 * key.getHashCode() >> "1234abcd"
+    }
+
+    def "drops record of entry found missing when closed"() {
+        def index = new DirectoryBuildCacheIndex(cacheDir)
+        index.append(["1234abcd": new DirectoryBuildCacheIndex.Entry(5, 0), "5678abcd": new DirectoryBuildCacheIndex.Entry(5, 0)])
+
+        when:
+        service.load(key) { InputStream input -> }
+        service.close()
+
+        then:
+        1 * key.getHashCode() >> "1234abcd"
+        1 * persistentCache.useCache(_ as Runnable) >> { Runnable action -> action.run() }
+        index.read().keySet() == ["5678abcd"] as Set
+    }
+
+    def "stores entry and records it in the index"() {
+        def hashCode = "1234abcd"
+
+        when:
+        service.store(key) { OutputStream output ->
+            output << "entry"
+        }
+
+        then:
+        1 * key.getHashCode() >> hashCode
+        1 * persistentCache.useCache(_ as Runnable) >> { Runnable action -> action.run() }
+        cacheDir.file(hashCode).text == "entry"
+        new DirectoryBuildCacheIndex(cacheDir).read()[hashCode].size == 5
+        cacheDir.listFiles().findAll { it.name.endsWith(".part") }.empty
+    }
+
+    def "stores deduplicated entry and loads it"() {
+        def deduplicatingService = new DirectoryBuildCacheService(cacheRepository, Mock(BuildOperationExecutor), cacheDir, Long.MAX_VALUE, true)
+        def hashCode = "1234abcd"
+        def largeContent = new byte[8192]
+        new Random(1).nextBytes(largeContent)
+        def packed = new ByteArrayOutputStream()
+        def tarOutput = new TarOutputStream(packed, "utf-8")
+        def tarEntry = new TarEntry("property-file")
+        tarEntry.size = largeContent.length
+        tarOutput.putNextEntry(tarEntry)
+        tarOutput.write(largeContent)
+        tarOutput.closeEntry()
+        tarOutput.close()
+        def content = null
+
+        when:
+        deduplicatingService.store(key) { OutputStream output ->
+            output << packed.toByteArray()
+        }
+
+        then:
+        1 * key.getHashCode() >> hashCode
+        1 * persistentCache.useCache(_ as Runnable) >> { Runnable action -> action.run() }
+        cacheDir.file(hashCode).length() < largeContent.length
+        cacheDir.file(DirectoryBuildCacheBlobStore.BLOBS_DIR_NAME).assertIsDir()
+        cacheDir.listFiles().findAll { it.name.endsWith(".part") || it.name.endsWith(".manifest") }.empty
+
+        when:
+        def found = deduplicatingService.load(key) { InputStream input ->
+            content = input.bytes
+        }
+
+        then:
+        found
+        content == packed.toByteArray()
+        1 * key.getHashCode() >> hashCode
+    }
+
+    def "replaces entry that could not be loaded when it is stored again"() {
+        def hashCode = "1234abcd"
+        cacheDir.file(hashCode).text = "corrupt"
+
+        when:
+        service.load(key) { InputStream input ->
+            throw new IOException("Corrupt entry")
+        }
+
+        then:
+        thrown UncheckedIOException
+        1 * key.getHashCode() >> hashCode
+
+        when:
+        service.store(key) { OutputStream output ->
+            output << "entry"
+        }
+
+        then:
+        1 * key.getHashCode() >> hashCode
+        1 * persistentCache.useCache(_ as Runnable) >> { Runnable action -> action.run() }
+        cacheDir.file(hashCode).text == "entry"
+    }
+
+    def "does not replace existing entry when it is stored again"() {
+        def hashCode = "1234abcd"
+        cacheDir.file(hashCode).text = "existing"
+
+        when:
+        service.store(key) { OutputStream output ->
+            output << "entry"
+        }
+
+        then:
+        1 * key.getHashCode() >> hashCode
+        1 * persistentCache.useCache(_ as Runnable) >> { Runnable action -> action.run() }
+        cacheDir.file(hashCode).text == "existing"
+    }
+
+    def "stores entry as it is when it cannot be deduplicated"() {
+        def deduplicatingService = new DirectoryBuildCacheService(cacheRepository, Mock(BuildOperationExecutor), cacheDir, Long.MAX_VALUE, true)
+        def hashCode = "1234abcd"
+
+        when:
+        deduplicatingService.store(key) { OutputStream output ->
+            output << "entry"
+        }
+
+        then:
+        1 * key.getHashCode() >> hashCode
+        1 * persistentCache.useCache(_ as Runnable) >> { Runnable action -> action.run() }
+        cacheDir.file(hashCode).text == "entry"
+    }
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.gradle.execution.taskgraph
+
+import org.gradle.api.internal.TaskInternal
+import org.gradle.internal.Pair
+import spock.lang.Specification
+
+class ClaimedOutputPathsTest extends Specification {
+    def paths = new ClaimedOutputPaths()
+    def first = Mock(TaskInternal)
+    def second = Mock(TaskInternal)
+
+    def "finds claimed paths that are equal to, contain or are contained in a path"() {
+        given:
+        paths.claim(first, path("/a/b"))
+        paths.claim(second, path("/x/y/z"))
+
+        expect:
+        paths.findOverlap(path("/a/b")) == Pair.of(first, path("/a/b"))
+        paths.findOverlap(path("/a/b/c")) == Pair.of(first, path("/a/b"))
+        paths.findOverlap(path("/a")) == Pair.of(first, path("/a"))
+        paths.findOverlap(path("/x/y")) == Pair.of(second, path("/x/y"))
+        paths.findOverlap(path("/a/bc")) == null
+        paths.findOverlap(path("/x/w")) == null
+    }
+
+    def "released paths no longer overlap"() {
+        given:
+        paths.claim(first, path("/a/b"))
+        paths.claim(second, path("/a/c"))
+
+        when:
+        paths.release(path("/a/b"))
+
+        then:
+        paths.findOverlap(path("/a/b")) == null
+        paths.findOverlap(path("/a")) == Pair.of(second, path("/a"))
+
+        when:
+        paths.release(path("/a/c"))
+
+        then:
+        paths.findOverlap(path("/a")) == null
+    }
+
+    def "clear releases all paths"() {
+        given:
+        paths.claim(first, path("/a/b"))
+
+        when:
+        paths.clear()
+
+        then:
+        paths.findOverlap(path("/a")) == null
+    }
+
+    private static String path(String path) {
+        new File(path).path
+    }
+}
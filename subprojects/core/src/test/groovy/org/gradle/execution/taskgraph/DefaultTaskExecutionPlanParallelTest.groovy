@@ -20,12 +20,17 @@ import com.google.common.collect.Queues
 import org.gradle.api.Action
 import org.gradle.api.DefaultTask
 import org.gradle.api.Task
+import org.gradle.api.Transformer
+import org.gradle.api.internal.changedetection.state.TaskDurationHistory
 import org.gradle.api.internal.project.ProjectInternal
 import org.gradle.api.tasks.OutputDirectory
 import org.gradle.api.tasks.OutputFile
+import org.gradle.api.tasks.ParallelizableTask
 import org.gradle.initialization.BuildCancellationToken
 import org.gradle.internal.nativeintegration.filesystem.FileSystem
 import org.gradle.internal.resources.DefaultResourceLockCoordinationService
+import org.gradle.internal.resources.ResourceLock
+import org.gradle.internal.resources.ResourceLockState
 import org.gradle.internal.work.DefaultWorkerLeaseService
 import org.gradle.test.fixtures.concurrent.ConcurrentSpec
 import org.gradle.test.fixtures.file.CleanupTestDirectory
@@ -59,7 +64,7 @@ class DefaultTaskExecutionPlanParallelTest extends ConcurrentSpec {
 
     def setup() {
         root = createRootProject(temporaryFolder.testDirectory)
-        executionPlan = new DefaultTaskExecutionPlan(cancellationHandler, coordinationService, workerLeaseService)
+        executionPlan = new DefaultTaskExecutionPlan(cancellationHandler, coordinationService, workerLeaseService, TaskDurationHistory.NONE, false)
         parentWorkerLease.start()
     }
 
@@ -158,6 +163,97 @@ class DefaultTaskExecutionPlanParallelTest extends ConcurrentSpec {
         operation."${b.path}".start > operation."${a.path}".end
     }
 
+    def "parallelizable tasks from the same project are executed in parallel when intra project parallelism is enabled"() {
+        given:
+        executionPlan = new DefaultTaskExecutionPlan(cancellationHandler, coordinationService, workerLeaseService, TaskDurationHistory.NONE, true)
+        def a = root.task("a", type: Parallelizable)
+        def b = root.task("b", type: Parallelizable)
+
+        expect:
+        addToGraphAndPopulate(a, b)
+        async {
+            def taskWorker1 = taskWorker()
+            def taskWorker2 = taskWorker()
+
+            def task1 = taskWorker1.take()
+            def task2 = taskWorker2.take()
+
+            releaseTasks(task1.task, task2.task)
+        }
+    }
+
+    def "a task that is not parallelizable does not start while a parallelizable task from the same project is running"() {
+        given:
+        executionPlan = new DefaultTaskExecutionPlan(cancellationHandler, coordinationService, workerLeaseService, TaskDurationHistory.NONE, true)
+        def a = root.task("a", type: Parallelizable)
+        def b = root.task("b")
+
+        when:
+        addToGraphAndPopulate(a, b)
+        async {
+            startTaskWorkers(2)
+
+            releaseTasks(a, b)
+        }
+
+        then:
+        operation."${b.path}".start > operation."${a.path}".end
+    }
+
+    def "no more parallelizable tasks from the same project start once a task that is not parallelizable is waiting"() {
+        given:
+        executionPlan = new DefaultTaskExecutionPlan(cancellationHandler, coordinationService, workerLeaseService, TaskDurationHistory.NONE, true)
+        def a = root.task("a", type: Parallelizable)
+        def b = root.task("b")
+        def c = root.task("c", type: Parallelizable)
+
+        when:
+        addToGraphAndPopulate(a, b, c)
+        async {
+            startTaskWorkers(3)
+
+            releaseTasks(a, b, c)
+        }
+
+        then:
+        operation."${b.path}".start > operation."${a.path}".end
+        operation."${c.path}".start > operation."${b.path}".end
+    }
+
+    def "runs actions around a parallelizable task while holding the project lock"() {
+        given:
+        def a = root.task("a", type: Parallelizable)
+        def projectLock = workerLeaseService.getProjectLock(root.gradle.identityPath.toString(), root.identityPath.toString())
+        def lockedDuringAction = false
+
+        when:
+        executionPlan.withProjectLock(a) {
+            lockedDuringAction = isLockedByCurrentThread(projectLock)
+        }
+
+        then:
+        lockedDuringAction
+        !isLockedByCurrentThread(projectLock)
+    }
+
+    def "parallelizable tasks with custom actions are not executed in parallel"() {
+        given:
+        executionPlan = new DefaultTaskExecutionPlan(cancellationHandler, coordinationService, workerLeaseService, TaskDurationHistory.NONE, true)
+        def a = root.task("a", type: Parallelizable)
+        def b = root.task("b", type: Parallelizable).doLast {}
+
+        when:
+        addToGraphAndPopulate(a, b)
+        async {
+            startTaskWorkers(2)
+
+            releaseTasks(a, b)
+        }
+
+        then:
+        operation."${b.path}".start > operation."${a.path}".end
+    }
+
     def "two dependent tasks are not executed in parallel"() {
         given:
         Task a = root.task("a", type: Async)
@@ -399,6 +495,15 @@ class DefaultTaskExecutionPlanParallelTest extends ConcurrentSpec {
         operation."${b.path}".start > operation."${a.path}".end
     }
 
+    private boolean isLockedByCurrentThread(ResourceLock lock) {
+        def locked = false
+        coordinationService.withStateLock({ ResourceLockState state ->
+            locked = lock.lockedByCurrentThread
+            ResourceLockState.Disposition.FINISHED
+        } as Transformer)
+        return locked
+    }
+
     private void addToGraphAndPopulate(Task... tasks) {
         executionPlan.addToTaskGraph(Arrays.asList(tasks))
         executionPlan.determineExecutionPlan()
@@ -448,6 +553,9 @@ class DefaultTaskExecutionPlanParallelTest extends ConcurrentSpec {
 
     static class Async extends DefaultTask {}
 
+    @ParallelizableTask
+    static class Parallelizable extends DefaultTask {}
+
     static class AsyncWithOutputFile extends Async {
         @OutputFile
         File outputFile
@@ -22,6 +22,7 @@ import org.gradle.api.CircularReferenceException
 import org.gradle.api.Task
 import org.gradle.api.internal.TaskInternal
 import org.gradle.api.internal.TaskOutputsInternal
+import org.gradle.api.internal.changedetection.state.TaskDurationHistory
 import org.gradle.api.internal.project.ProjectInternal
 import org.gradle.api.internal.tasks.TaskStateInternal
 import org.gradle.api.specs.Spec
@@ -53,7 +54,7 @@ class DefaultTaskExecutionPlanTest extends AbstractProjectBuilderSpec {
 
     def setup() {
         root = createRootProject(temporaryFolder.testDirectory);
-        executionPlan = new DefaultTaskExecutionPlan(cancellationHandler, coordinationService, workerLeaseService)
+        executionPlan = new DefaultTaskExecutionPlan(cancellationHandler, coordinationService, workerLeaseService, TaskDurationHistory.NONE, false)
         _ * workerLeaseService.getProjectLock(_, _) >> Mock(ResourceLock) {
             _ * isLocked() >> false
             _ * tryLock() >> true
@@ -598,6 +599,76 @@ class DefaultTaskExecutionPlanTest extends AbstractProjectBuilderSpec {
 """)
     }
 
+    def "does not return a task until its dependencies have completed"() {
+        given:
+        Task a = task("a")
+        Task b = task("b", dependsOn: [a])
+        addToGraphAndPopulate([b])
+        def started = []
+        def startOnly = { TaskInfo taskInfo -> started << taskInfo } as Action<TaskInfo>
+
+        when:
+        executionPlan.executeWithTask(workerLease, startOnly)
+
+        then:
+        started*.task == [a]
+
+        when:
+        executionPlan.taskComplete(started[0])
+
+        then:
+        executedTasks == [b]
+    }
+
+    def "returns ready tasks of the projects locked by the current thread"() {
+        given:
+        def projectLock = Mock(ResourceLock)
+        def lockService = Mock(WorkerLeaseService) {
+            _ * getProjectLock(_, _) >> projectLock
+        }
+        _ * projectLock.tryLock() >> true
+        executionPlan = new DefaultTaskExecutionPlan(cancellationHandler, coordinationService, lockService, TaskDurationHistory.NONE, false)
+        Task a = task("a")
+        Task b = task("b")
+        Task c = task("c")
+        Task d = task("d", dependsOn: [a])
+        addToGraphAndPopulate([a, b, c, d])
+        def readyTasks = null
+        def lookAhead = { TaskInfo taskInfo -> readyTasks = executionPlan.getReadyTasksLockedByCurrentThread(maxTasks) } as Action<TaskInfo>
+
+        when:
+        executionPlan.executeWithTask(workerLease, lookAhead)
+
+        then:
+        _ * projectLock.isLockedByCurrentThread() >> locked
+        readyTasks == expected
+
+        where:
+        locked | maxTasks | expected
+        true   | 8        | [b, c]
+        true   | 1        | [b]
+        false  | 8        | []
+    }
+
+    def "returns tasks with the longest chain of dependent tasks first when previous durations are known"() {
+        given:
+        def durationHistory = Mock(TaskDurationHistory)
+        executionPlan = new DefaultTaskExecutionPlan(cancellationHandler, coordinationService, workerLeaseService, durationHistory, false)
+        Task a = task("a")
+        Task b = task("b")
+        Task c = task("c", dependsOn: [b])
+        _ * durationHistory.getPreviousDuration(a) >> 10
+        _ * durationHistory.getPreviousDuration(b) >> 10
+        _ * durationHistory.getPreviousDuration(c) >> 1000
+
+        when:
+        addToGraphAndPopulate([a, c])
+
+        then:
+        executes(a, b, c)
+        executedTasks == [b, c, a]
+    }
+
     def "stops returning tasks on task execution failure"() {
         RuntimeException exception = new RuntimeException("failure");
 
@@ -787,6 +858,21 @@ class DefaultTaskExecutionPlanTest extends AbstractProjectBuilderSpec {
         executes(b)
     }
 
+    def "does not resolve the outputs of tasks that run one at a time"() {
+        given:
+        Task a = task("a")
+        Task b = task("b", dependsOn: [a])
+
+        when:
+        addToGraphAndPopulate([b])
+        def executed = executedTasks
+
+        then:
+        executed == [a, b]
+        0 * a.getOutputs()
+        0 * b.getOutputs()
+    }
+
     def "does not build graph for or execute filtered tasks"() {
         given:
         Task a = filteredTask("a")
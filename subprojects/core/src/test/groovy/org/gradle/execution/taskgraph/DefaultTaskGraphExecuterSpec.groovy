@@ -23,8 +23,10 @@ import org.gradle.api.execution.internal.InternalTaskExecutionListener
 import org.gradle.api.execution.internal.TaskOperationInternal
 import org.gradle.api.internal.TaskInternal
 import org.gradle.api.internal.TaskOutputsInternal
+import org.gradle.api.internal.changedetection.state.TaskDurationHistory
 import org.gradle.api.internal.tasks.TaskExecuter
 import org.gradle.api.internal.tasks.TaskStateInternal
+import org.gradle.api.internal.tasks.execution.TaskExecutionLookahead
 import org.gradle.api.tasks.TaskDependency
 import org.gradle.initialization.BuildCancellationToken
 import org.gradle.internal.Factories
@@ -48,7 +50,7 @@ class DefaultTaskGraphExecuterSpec extends Specification {
     def coordinationService = new DefaultResourceLockCoordinationService()
     def workerLeases = new DefaultWorkerLeaseService(coordinationService, true, 1)
     def executorFactory = Mock(ExecutorFactory)
-    def taskExecuter = new DefaultTaskGraphExecuter(listenerManager, new DefaultTaskPlanExecutor(1, executorFactory, workerLeases), Factories.constant(executer), cancellationToken, buildOperationExecutor, workerLeases, coordinationService)
+    def taskExecuter = new DefaultTaskGraphExecuter(listenerManager, new DefaultTaskPlanExecutor(1, executorFactory, workerLeases), Factories.constant(executer), Factories.constant(TaskExecutionLookahead.NONE), cancellationToken, buildOperationExecutor, workerLeases, coordinationService, TaskDurationHistory.NONE, false, false)
     WorkerLeaseRegistry.WorkerLeaseCompletion parentWorkerLease
 
     def setup() {
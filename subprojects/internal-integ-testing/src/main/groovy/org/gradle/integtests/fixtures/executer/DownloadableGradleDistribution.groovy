@@ -19,6 +19,7 @@ package org.gradle.integtests.fixtures.executer
 import org.gradle.api.Action
 import org.gradle.cache.CacheBuilder
 import org.gradle.cache.PersistentCache
+import org.gradle.cache.internal.CacheAccessStatistics
 import org.gradle.cache.internal.CacheFactory
 import org.gradle.cache.internal.DefaultCacheFactory
 import org.gradle.cache.internal.DefaultFileLockManager
@@ -42,7 +43,7 @@ abstract class DownloadableGradleDistribution extends DefaultGradleDistribution
                         new DefaultProcessMetaDataProvider(
                                 NativeServicesTestFixture.getInstance().get(org.gradle.internal.nativeintegration.ProcessEnvironment)),
                         20 * 60 * 1000 // allow up to 20 minutes to download a distribution
-                        , new NoOpFileLockContentionHandler()), new DefaultExecutorFactory())
+                        , new NoOpFileLockContentionHandler()), new DefaultExecutorFactory(), new CacheAccessStatistics())
     }
 
     protected TestFile versionDir
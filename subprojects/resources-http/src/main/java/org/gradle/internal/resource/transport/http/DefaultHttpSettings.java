@@ -21,18 +21,30 @@ import org.gradle.authentication.Authentication;
 import java.util.Collection;
 
 public class DefaultHttpSettings implements HttpSettings {
+    public static final int DEFAULT_MAX_CONNECTIONS = 20;
+
     private final HttpProxySettings proxySettings = new JavaSystemPropertiesHttpProxySettings();
     private final HttpProxySettings secureProxySettings = new JavaSystemPropertiesSecureHttpProxySettings();
     private final Collection<Authentication> authenticationSettings;
     private final SslContextFactory sslContextFactory;
+    private final int maxConnections;
 
     public DefaultHttpSettings(Collection<Authentication> authenticationSettings, SslContextFactory sslContextFactory) {
+        this(authenticationSettings, sslContextFactory, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    public DefaultHttpSettings(Collection<Authentication> authenticationSettings, SslContextFactory sslContextFactory, int maxConnections) {
         if (authenticationSettings == null) {
             throw new IllegalArgumentException("Authentication settings cannot be null.");
         }
 
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Maximum number of connections must be positive.");
+        }
+
         this.authenticationSettings = authenticationSettings;
         this.sslContextFactory = sslContextFactory;
+        this.maxConnections = maxConnections;
     }
 
     @Override
@@ -54,4 +66,9 @@ public class DefaultHttpSettings implements HttpSettings {
     public SslContextFactory getSslContextFactory() {
         return sslContextFactory;
     }
+
+    @Override
+    public int getMaxConnections() {
+        return maxConnections;
+    }
 }
@@ -28,4 +28,9 @@ public interface HttpSettings {
     Collection<Authentication> getAuthenticationSettings();
 
     SslContextFactory getSslContextFactory();
+
+    /**
+     * The maximum number of connections to keep open, in total and to a single host.
+     */
+    int getMaxConnections();
 }
@@ -17,6 +17,7 @@ package org.gradle.internal.resource.transport.http
 
 import org.apache.http.auth.AuthScope
 import org.apache.http.impl.client.HttpClientBuilder
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager
 import org.apache.http.ssl.SSLContexts
 import org.gradle.api.artifacts.repositories.PasswordCredentials
 import org.gradle.internal.authentication.AllSchemesAuthentication
@@ -34,6 +35,7 @@ public class HttpClientConfigurerTest extends Specification {
     HttpSettings httpSettings = Mock() {
         getProxySettings() >> proxySettings
         getSecureProxySettings() >> secureProxySettings
+        getMaxConnections() >> 32
     }
     SslContextFactory sslContextFactory = Mock() {
         createSslContext() >> SSLContexts.createDefault()
@@ -110,4 +112,21 @@ public class HttpClientConfigurerTest extends Specification {
         then:
         httpClientBuilder.userAgent == UriTextResource.userAgentString
     }
+
+    def "configures http client with pooled connection manager"() {
+        httpSettings.authenticationSettings >> []
+        httpSettings.sslContextFactory >> sslContextFactory
+
+        when:
+        configurer.configure(httpClientBuilder)
+
+        then:
+        def connectionManager = httpClientBuilder.connManager
+        connectionManager instanceof InstrumentedHttpClientConnectionManager
+        with(connectionManager.delegate as PoolingHttpClientConnectionManager) {
+            maxTotal == 32
+            defaultMaxPerRoute == 32
+            validateAfterInactivity > 0
+        }
+    }
 }
@@ -82,6 +82,7 @@ class HttpClientHelperTest extends AbstractHttpClientTest {
             getSslContextFactory() >> Mock(SslContextFactory) {
                 createSslContext() >> SSLContexts.createDefault()
             }
+            getMaxConnections() >> DefaultHttpSettings.DEFAULT_MAX_CONNECTIONS
         }
     }
 }